@@ -0,0 +1,127 @@
+package com.ahm.capacitor.camera.preview;
+
+import static org.junit.Assert.*;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Bundle;
+import android.util.Log;
+import androidx.exifinterface.media.ExifInterface;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Time to read the orientation of a JPEG with {@link ExifOrientation#read} and with {@code ExifInterface}, which the
+ * picture callback used before. Runs on a device, with {@code ./gradlew connectedAndroidTest} and the runner argument
+ * {@code class=com.ahm.capacitor.camera.preview.ExifOrientationDeviceBenchmark}. The runner argument
+ * {@code pictures=/sdcard/DCIM/Camera} reads the pictures the device's camera took; without it one picture tagged by
+ * {@code ExifInterface} is used. Results are logged under the {@code ExifOrientationBenchmark} tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ExifOrientationDeviceBenchmark {
+
+    private static final String TAG = "ExifOrientationBenchmark";
+    private static final int WARMUP = 20;
+    private static final int RUNS = 200;
+
+    @Test
+    public void readOrientation() throws Exception {
+        Bundle arguments = InstrumentationRegistry.getArguments();
+        String pictures = arguments.getString("pictures");
+        List<byte[]> jpegs = pictures != null ? read(new File(pictures)) : Arrays.asList(tagged());
+
+        Log.i(TAG, "picture  bytes      scanner us  exifInterface us");
+        for (int i = 0; i < jpegs.size(); i++) {
+            final byte[] jpeg = jpegs.get(i);
+            int expected = exifInterface(jpeg);
+            assertEquals("picture " + i, expected, ExifOrientation.read(jpeg));
+
+            long[] scanner = new long[RUNS];
+            long[] platform = new long[RUNS];
+            for (int run = -WARMUP; run < RUNS; run++) {
+                long start = System.nanoTime();
+                ExifOrientation.read(jpeg);
+                long middle = System.nanoTime();
+                exifInterface(jpeg);
+                long end = System.nanoTime();
+                if (run >= 0) {
+                    scanner[run] = middle - start;
+                    platform[run] = end - middle;
+                }
+            }
+            Arrays.sort(scanner);
+            Arrays.sort(platform);
+            Log.i(TAG, String.format("%-8d %-10d %10.1f  %16.1f", i, jpeg.length, scanner[RUNS / 2] / 1e3, platform[RUNS / 2] / 1e3));
+        }
+    }
+
+    private static int exifInterface(byte[] jpeg) throws IOException {
+        ExifInterface exifInterface = new ExifInterface(new ByteArrayInputStream(jpeg));
+        return exifInterface.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+    }
+
+    private static List<byte[]> read(File pictures) throws IOException {
+        File[] files = pictures.isDirectory() ? pictures.listFiles() : new File[] { pictures };
+        List<byte[]> jpegs = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName().toLowerCase();
+                if (file.isFile() && (name.endsWith(".jpg") || name.endsWith(".jpeg"))) {
+                    jpegs.add(readFile(file));
+                }
+            }
+        }
+        assertFalse("no JPEGs in " + pictures, jpegs.isEmpty());
+        return jpegs;
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(data);
+        } finally {
+            in.close();
+        }
+        return data;
+    }
+
+    /**
+     * A 4000x3000 JPEG with the orientation and a few other tags written by {@code ExifInterface}.
+     */
+    private static byte[] tagged() throws IOException {
+        Bitmap bitmap = Bitmap.createBitmap(4000, 3000, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.GRAY);
+        File file = File.createTempFile("exif", ".jpg", InstrumentationRegistry.getInstrumentation().getTargetContext().getCacheDir());
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                bitmap.compress(Bitmap.CompressFormat.JPEG, 85, out);
+            } finally {
+                out.close();
+            }
+            bitmap.recycle();
+
+            ExifInterface exifInterface = new ExifInterface(file.getPath());
+            exifInterface.setAttribute(ExifInterface.TAG_MAKE, "CameraPreview");
+            exifInterface.setAttribute(ExifInterface.TAG_MODEL, "benchmark");
+            exifInterface.setAttribute(ExifInterface.TAG_DATETIME, "2024:01:01 12:00:00");
+            exifInterface.setAttribute(ExifInterface.TAG_ORIENTATION, String.valueOf(ExifInterface.ORIENTATION_ROTATE_90));
+            exifInterface.saveAttributes();
+            return readFile(file);
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.ahm.capacitor.camera.preview;
+
+import static org.junit.Assert.*;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.ImageFormat;
+import android.util.Log;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Encode time and size of every {@link FrameEncoder} on preview sized NV21 frames, and a check that the platform decodes
+ * what each of them writes. Runs on a device, with {@code ./gradlew connectedAndroidTest} and the runner argument
+ * {@code class=com.ahm.capacitor.camera.preview.FrameEncoderDeviceBenchmark}. Results are logged under the
+ * {@code FrameEncoderBenchmark} tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FrameEncoderDeviceBenchmark {
+
+    private static final String TAG = "FrameEncoderBenchmark";
+    private static final int[][] SIZES = { { 640, 480 }, { 1280, 720 }, { 1920, 1080 } };
+    private static final int QUALITY = 85;
+    private static final int WARMUP = 3;
+    private static final int RUNS = 9;
+
+    @Test
+    public void encodeWithEveryEncoder() throws Exception {
+        String[] names = { "yuvimage", "baseline", "baseline-optimized" };
+        FrameEncoder[] encoders = { new YuvImageFrameEncoder(), new BaselineJpegEncoder(), new BaselineJpegEncoder(0, true) };
+
+        Log.i(TAG, "size       encoder             median ms  bytes");
+        for (int[] size : SIZES) {
+            byte[] frame = frame(size[0], size[1]);
+            ReusableByteArrayOutputStream output = new ReusableByteArrayOutputStream(size[0] * size[1]);
+            for (int e = 0; e < encoders.length; e++) {
+                long[] nanos = new long[RUNS];
+                for (int run = -WARMUP; run < RUNS; run++) {
+                    output.reset();
+                    long start = System.nanoTime();
+                    encoders[e].encode(frame, ImageFormat.NV21, size[0], size[1], QUALITY, output);
+                    if (run >= 0) {
+                        nanos[run] = System.nanoTime() - start;
+                    }
+                }
+                Arrays.sort(nanos);
+
+                Bitmap decoded = BitmapFactory.decodeByteArray(output.buffer(), 0, output.size());
+                assertNotNull(names[e] + " output does not decode", decoded);
+                assertEquals(size[0], decoded.getWidth());
+                assertEquals(size[1], decoded.getHeight());
+                decoded.recycle();
+
+                Log.i(
+                    TAG,
+                    String.format("%-10s %-19s %9.1f  %d", size[0] + "x" + size[1], names[e], nanos[RUNS / 2] / 1e6, output.size())
+                );
+            }
+        }
+    }
+
+    /**
+     * Gradients with some sensor-like noise, closer to a camera frame than flat colors or pure noise.
+     */
+    private static byte[] frame(int width, int height) {
+        Random random = new Random(1);
+        byte[] frame = new byte[width * height * 3 / 2];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                frame[y * width + x] = (byte) (48 + (x * 128) / width + (y * 48) / height + random.nextInt(9));
+            }
+        }
+        for (int y = 0; y < height / 2; y++) {
+            for (int x = 0; x < width / 2; x++) {
+                int i = width * height + y * width + x * 2;
+                frame[i] = (byte) (96 + (x * 64) / width + random.nextInt(5));
+                frame[i + 1] = (byte) (160 - (y * 64) / height + random.nextInt(5));
+            }
+        }
+        return frame;
+    }
+}
@@ -0,0 +1,121 @@
+package com.ahm.capacitor.camera.preview;
+
+import static org.junit.Assert.*;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.LinearGradient;
+import android.graphics.Paint;
+import android.graphics.Shader;
+import android.os.Bundle;
+import android.util.Log;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Encode time and size of every {@link OutputFormat} at a few capture resolutions. Bitmap encoding is native, so this
+ * runs on a device, with {@code ./gradlew connectedAndroidTest} and the runner argument
+ * {@code class=com.ahm.capacitor.camera.preview.OutputFormatBenchmark}. The runner argument
+ * {@code picture=/sdcard/picture.jpg} encodes a real picture, scaled to each resolution, instead of the synthetic scene.
+ * Results are logged under the {@code OutputFormatBenchmark} tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class OutputFormatBenchmark {
+
+    private static final String TAG = "OutputFormatBenchmark";
+    private static final int[][] SIZES = { { 640, 480 }, { 1280, 720 }, { 1920, 1080 }, { 4000, 3000 } };
+    private static final int QUALITY = 85;
+    private static final int WARMUP = 2;
+    private static final int RUNS = 5;
+
+    @Test
+    public void encodeEveryFormat() throws Exception {
+        Bundle arguments = InstrumentationRegistry.getArguments();
+        Bitmap source = arguments.getString("picture") != null ? BitmapFactory.decodeFile(arguments.getString("picture")) : null;
+
+        Log.i(TAG, "size       format         median ms  bytes      vs jpeg");
+        for (int[] size : SIZES) {
+            Bitmap bitmap = source != null ? Bitmap.createScaledBitmap(source, size[0], size[1], true) : scene(size[0], size[1]);
+            int jpegBytes = 0;
+            for (OutputFormat format : OutputFormat.values()) {
+                byte[] encoded = null;
+                long[] nanos = new long[RUNS];
+                for (int run = -WARMUP; run < RUNS; run++) {
+                    long start = System.nanoTime();
+                    encoded = format.encode(bitmap, QUALITY);
+                    if (run >= 0) {
+                        nanos[run] = System.nanoTime() - start;
+                    }
+                }
+                Arrays.sort(nanos);
+                assertTrue(encoded.length > 0);
+                if (format == OutputFormat.JPEG) {
+                    jpegBytes = encoded.length;
+                }
+                Log.i(
+                    TAG,
+                    String.format(
+                        "%-10s %-14s %9.1f  %-10d %6.0f%%",
+                        size[0] + "x" + size[1],
+                        format.id,
+                        nanos[RUNS / 2] / 1e6,
+                        encoded.length,
+                        100.0 * encoded.length / jpegBytes
+                    )
+                );
+            }
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Smooth gradients with hard edged shapes and some sensor-like noise, closer to a camera picture than flat colors.
+     */
+    private static Bitmap scene(int width, int height) {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setShader(new LinearGradient(0, 0, width, height, Color.rgb(40, 90, 160), Color.rgb(230, 200, 120), Shader.TileMode.CLAMP));
+        canvas.drawRect(0, 0, width, height, paint);
+        paint.setShader(null);
+
+        Random random = new Random(42);
+        for (int i = 0; i < 40; i++) {
+            paint.setColor(Color.rgb(random.nextInt(256), random.nextInt(256), random.nextInt(256)));
+            float x = random.nextFloat() * width;
+            float y = random.nextFloat() * height;
+            float radius = (0.02f + random.nextFloat() * 0.1f) * width;
+            if (i % 2 == 0) {
+                canvas.drawCircle(x, y, radius, paint);
+            } else {
+                canvas.drawRect(x, y, x + radius, y + radius / 2, paint);
+            }
+        }
+
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            for (int x = 0; x < width; x++) {
+                int noise = random.nextInt(9) - 4;
+                int pixel = row[x];
+                row[x] = Color.rgb(
+                    clamp(Color.red(pixel) + noise),
+                    clamp(Color.green(pixel) + noise),
+                    clamp(Color.blue(pixel) + noise)
+                );
+            }
+            bitmap.setPixels(row, 0, width, 0, y, width, 1);
+        }
+        return bitmap;
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
@@ -0,0 +1,595 @@
+package com.ahm.capacitor.camera.preview;
+
+import android.graphics.ImageFormat;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A baseline JPEG encoder for NV21 frames in plain Java, so that it runs, and can be tested and benchmarked, off the
+ * device. Samples use it instead of the platform's encoder with the {@code snapshotEncoder: 'java'} start option.
+ *
+ * NV21 already holds its chroma at half resolution in both directions, so frames are written as 4:2:0 without any
+ * resampling: every 16x16 MCU takes four luma blocks straight from the Y plane and one block each from the interleaved
+ * U and V samples. Blocks go through the floating point AAN DCT, with the quantization folded into its output scaling.
+ * Huffman coding uses the standard tables or, with {@code optimizeHuffman}, tables built for the frame from a first
+ * pass over its coefficients, which trades a second entropy coding pass for a smaller output. With a positive
+ * {@code restartInterval} a restart marker follows every that many MCUs.
+ *
+ * The coefficients, the output and every other piece of scratch space are kept from one frame to the next, so an
+ * encoder is not thread safe.
+ */
+final class BaselineJpegEncoder implements FrameEncoder {
+
+    // standard quantization tables, ITU T.81 annex K.1, in natural order
+    private static final int[] LUMINANCE_QUANTIZATION = {
+        16, 11, 10, 16, 24, 40, 51, 61, 12, 12, 14, 19, 26, 58, 60, 55, 14, 13, 16, 24, 40, 57, 69, 56, 14, 17, 22, 29, 51, 87, 80, 62,
+        18, 22, 37, 56, 68, 109, 103, 77, 24, 35, 55, 64, 81, 104, 113, 92, 49, 64, 78, 87, 103, 121, 120, 101, 72, 92, 95, 98, 112,
+        100, 103, 99,
+    };
+    private static final int[] CHROMINANCE_QUANTIZATION = {
+        17, 18, 24, 47, 99, 99, 99, 99, 18, 21, 26, 66, 99, 99, 99, 99, 24, 26, 56, 99, 99, 99, 99, 99, 47, 66, 99, 99, 99, 99, 99, 99,
+        99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99,
+        99,
+    };
+    private static final double[] AAN_SCALE = { 1.0, 1.387039845, 1.306562965, 1.175875602, 1.0, 0.785694958, 0.5411961, 0.275899379 };
+
+    // blocks per MCU: four luma, then Cb and Cr
+    private static final int BLOCKS_PER_MCU = 6;
+
+    private static final int PASS_ENCODE = 0;
+    private static final int PASS_COUNT = 1;
+    private static final int PASS_ENCODE_STORED = 2;
+
+    private final int restartInterval;
+    private final boolean optimizeHuffman;
+
+    // quantization for this quality, in zigzag order, and the matching DCT output scaling
+    private int quality = -1;
+    private final int[][] quantization = new int[2][64];
+    private final float[][] divisors = new float[2][64];
+
+    // Huffman tables indexed by luma 0 / chroma 1: counts per code length, symbols, and the code and size per symbol
+    private final int[][] dcCounts = new int[2][];
+    private final int[][] dcValues = new int[2][];
+    private final int[][] acCounts = new int[2][];
+    private final int[][] acValues = new int[2][];
+    private final int[][] dcCodes = new int[2][256];
+    private final int[][] dcSizes = new int[2][256];
+    private final int[][] acCodes = new int[2][256];
+    private final int[][] acSizes = new int[2][256];
+    // symbol frequencies of the frame, with room for the reserved symbol 256
+    private final long[][] dcFrequencies = new long[2][257];
+    private final long[][] acFrequencies = new long[2][257];
+
+    private final float[] samples = new float[64];
+    private final int[] predictors = new int[3];
+    // quantized coefficients in zigzag order: one block, or the whole frame when optimizing the Huffman tables
+    private short[] coefficients = new short[64];
+
+    private byte[] output = new byte[64 * 1024];
+    private int size;
+    private long bitBuffer;
+    private int bitCount;
+
+    BaselineJpegEncoder() {
+        this(0, false);
+    }
+
+    BaselineJpegEncoder(int restartInterval, boolean optimizeHuffman) {
+        this.restartInterval = Math.max(0, Math.min(0xFFFF, restartInterval));
+        this.optimizeHuffman = optimizeHuffman;
+        if (!optimizeHuffman) {
+            useTable(
+                0,
+                JpegTransform.DC_LUMINANCE_COUNTS,
+                JpegTransform.DC_VALUES,
+                JpegTransform.AC_LUMINANCE_COUNTS,
+                JpegTransform.AC_LUMINANCE_VALUES
+            );
+            useTable(
+                1,
+                JpegTransform.DC_CHROMINANCE_COUNTS,
+                JpegTransform.DC_VALUES,
+                JpegTransform.AC_CHROMINANCE_COUNTS,
+                JpegTransform.AC_CHROMINANCE_VALUES
+            );
+        }
+    }
+
+    @Override
+    public void encode(byte[] frame, int format, int width, int height, int quality, OutputStream out) throws IOException {
+        if (format != ImageFormat.NV21) {
+            throw new IOException("Unsupported frame format " + format);
+        }
+        if (width <= 0 || height <= 0 || width > 0xFFFF || height > 0xFFFF || frame.length < width * height * 3 / 2) {
+            throw new IOException("Invalid frame size " + width + "x" + height);
+        }
+        setQuality(quality);
+
+        size = 0;
+        bitBuffer = 0;
+        bitCount = 0;
+        if (optimizeHuffman) {
+            int blocks = ((width + 15) / 16) * ((height + 15) / 16) * BLOCKS_PER_MCU;
+            if (coefficients.length < blocks * 64) {
+                coefficients = new short[blocks * 64];
+            }
+            for (int table = 0; table < 2; table++) {
+                Arrays.fill(dcFrequencies[table], 0);
+                Arrays.fill(acFrequencies[table], 0);
+            }
+            scan(frame, width, height, PASS_COUNT);
+            for (int table = 0; table < 2; table++) {
+                int[] dc = optimalTable(dcFrequencies[table]);
+                int[] ac = optimalTable(acFrequencies[table]);
+                useTable(
+                    table,
+                    Arrays.copyOf(dc, 16),
+                    Arrays.copyOfRange(dc, 16, dc.length),
+                    Arrays.copyOf(ac, 16),
+                    Arrays.copyOfRange(ac, 16, ac.length)
+                );
+            }
+            writeHeaders(width, height);
+            scan(frame, width, height, PASS_ENCODE_STORED);
+        } else {
+            writeHeaders(width, height);
+            scan(frame, width, height, PASS_ENCODE);
+        }
+        flushBits();
+        ensure(2);
+        writeMarker(0xD9);
+        out.write(output, 0, size);
+    }
+
+    /**
+     * Goes over every block of the frame in scan order. {@link #PASS_ENCODE} transforms and Huffman codes each block on
+     * its own; {@link #PASS_COUNT} transforms every block into {@link #coefficients} and counts the symbols it will need,
+     * for {@link #PASS_ENCODE_STORED} to Huffman code them from there.
+     */
+    private void scan(byte[] frame, int width, int height, int pass) {
+        int mcusX = (width + 15) / 16;
+        int mcusY = (height + 15) / 16;
+        int mcu = 0;
+        int restart = 0;
+        int offset = 0;
+        Arrays.fill(predictors, 0);
+        for (int mcuY = 0; mcuY < mcusY; mcuY++) {
+            for (int mcuX = 0; mcuX < mcusX; mcuX++, mcu++) {
+                if (restartInterval > 0 && mcu > 0 && mcu % restartInterval == 0) {
+                    if (pass != PASS_COUNT) {
+                        flushBits();
+                        ensure(2);
+                        writeMarker(0xD0 + restart);
+                    }
+                    restart = (restart + 1) & 7;
+                    Arrays.fill(predictors, 0);
+                }
+                for (int block = 0; block < BLOCKS_PER_MCU; block++) {
+                    int table = block < 4 ? 0 : 1;
+                    if (pass != PASS_ENCODE_STORED) {
+                        if (block < 4) {
+                            loadLuma(frame, width, height, mcuX * 16 + (block & 1) * 8, mcuY * 16 + (block >> 1) * 8);
+                        } else {
+                            // NV21 interleaves V and U, V first
+                            loadChroma(frame, width, height, mcuX * 8, mcuY * 8, block == 4 ? 1 : 0);
+                        }
+                        forwardDct(samples);
+                        quantize(samples, divisors[table], coefficients, offset);
+                    }
+                    int component = block < 4 ? 0 : block - 3;
+                    if (pass == PASS_COUNT) {
+                        countBlock(coefficients, offset, component, table);
+                    } else {
+                        encodeBlock(coefficients, offset, component, table);
+                    }
+                    if (pass != PASS_ENCODE) {
+                        offset += 64;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the 8x8 luma block at {@code x}, {@code y}, level shifted, repeating the last row and column past the edges.
+     */
+    private void loadLuma(byte[] frame, int width, int height, int x, int y) {
+        for (int row = 0; row < 8; row++) {
+            int line = Math.min(y + row, height - 1) * width;
+            int target = row * 8;
+            if (x + 8 <= width) {
+                for (int column = 0; column < 8; column++) {
+                    samples[target + column] = (frame[line + x + column] & 0xFF) - 128;
+                }
+            } else {
+                for (int column = 0; column < 8; column++) {
+                    samples[target + column] = (frame[line + Math.min(x + column, width - 1)] & 0xFF) - 128;
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the 8x8 chroma block at chroma sample {@code x}, {@code y}, taking every other byte of the interleaved plane
+     * from {@code channel}: 0 for V, 1 for U.
+     */
+    private void loadChroma(byte[] frame, int width, int height, int x, int y, int channel) {
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        int plane = width * height + channel;
+        for (int row = 0; row < 8; row++) {
+            int line = plane + Math.min(y + row, chromaHeight - 1) * width;
+            int target = row * 8;
+            for (int column = 0; column < 8; column++) {
+                samples[target + column] = (frame[line + 2 * Math.min(x + column, chromaWidth - 1)] & 0xFF) - 128;
+            }
+        }
+    }
+
+    /**
+     * The floating point AAN forward DCT, in place. The output is scaled by the AAN factors, which {@link #divisors}
+     * take out again.
+     */
+    static void forwardDct(float[] data) {
+        for (int pass = 0; pass < 2; pass++) {
+            // rows first, then columns
+            int step = pass == 0 ? 1 : 8;
+            int next = pass == 0 ? 8 : 1;
+            for (int line = 0; line < 8; line++) {
+                int p = line * next;
+                float tmp0 = data[p] + data[p + 7 * step];
+                float tmp7 = data[p] - data[p + 7 * step];
+                float tmp1 = data[p + step] + data[p + 6 * step];
+                float tmp6 = data[p + step] - data[p + 6 * step];
+                float tmp2 = data[p + 2 * step] + data[p + 5 * step];
+                float tmp5 = data[p + 2 * step] - data[p + 5 * step];
+                float tmp3 = data[p + 3 * step] + data[p + 4 * step];
+                float tmp4 = data[p + 3 * step] - data[p + 4 * step];
+
+                // even part
+                float tmp10 = tmp0 + tmp3;
+                float tmp13 = tmp0 - tmp3;
+                float tmp11 = tmp1 + tmp2;
+                float tmp12 = tmp1 - tmp2;
+                data[p] = tmp10 + tmp11;
+                data[p + 4 * step] = tmp10 - tmp11;
+                float z1 = (tmp12 + tmp13) * 0.707106781f;
+                data[p + 2 * step] = tmp13 + z1;
+                data[p + 6 * step] = tmp13 - z1;
+
+                // odd part
+                tmp10 = tmp4 + tmp5;
+                tmp11 = tmp5 + tmp6;
+                tmp12 = tmp6 + tmp7;
+                float z5 = (tmp10 - tmp12) * 0.382683433f;
+                float z2 = 0.5411961f * tmp10 + z5;
+                float z4 = 1.306562965f * tmp12 + z5;
+                float z3 = tmp11 * 0.707106781f;
+                float z11 = tmp7 + z3;
+                float z13 = tmp7 - z3;
+                data[p + 5 * step] = z13 + z2;
+                data[p + 3 * step] = z13 - z2;
+                data[p + step] = z11 + z4;
+                data[p + 7 * step] = z11 - z4;
+            }
+        }
+    }
+
+    private static void quantize(float[] data, float[] divisors, short[] coefficients, int offset) {
+        for (int k = 0; k < 64; k++) {
+            // rounds to nearest, also for negative values
+            coefficients[offset + k] = (short) ((int) (data[JpegTransform.ZIGZAG[k]] * divisors[k] + 16384.5f) - 16384);
+        }
+    }
+
+    private void countBlock(short[] coefficients, int offset, int component, int table) {
+        int dc = coefficients[offset];
+        dcFrequencies[table][JpegTransform.HuffmanEncoder.magnitudeSize(dc - predictors[component])]++;
+        predictors[component] = dc;
+
+        long[] frequencies = acFrequencies[table];
+        int run = 0;
+        for (int k = 1; k < 64; k++) {
+            int value = coefficients[offset + k];
+            if (value == 0) {
+                run++;
+                continue;
+            }
+            while (run > 15) {
+                frequencies[0xF0]++;
+                run -= 16;
+            }
+            frequencies[(run << 4) | JpegTransform.HuffmanEncoder.magnitudeSize(value)]++;
+            run = 0;
+        }
+        if (run > 0) {
+            frequencies[0]++;
+        }
+    }
+
+    private void encodeBlock(short[] coefficients, int offset, int component, int table) {
+        // a block takes at most 64 symbols of up to 16 + 11 bits, doubled by byte stuffing
+        ensure(512);
+
+        int dc = coefficients[offset];
+        int diff = dc - predictors[component];
+        predictors[component] = dc;
+        int size = JpegTransform.HuffmanEncoder.magnitudeSize(diff);
+        writeBits(dcCodes[table][size], dcSizes[table][size]);
+        if (size != 0) {
+            writeBits(diff < 0 ? diff - 1 : diff, size);
+        }
+
+        int[] codes = acCodes[table];
+        int[] sizes = acSizes[table];
+        int run = 0;
+        for (int k = 1; k < 64; k++) {
+            int value = coefficients[offset + k];
+            if (value == 0) {
+                run++;
+                continue;
+            }
+            while (run > 15) {
+                writeBits(codes[0xF0], sizes[0xF0]);
+                run -= 16;
+            }
+            size = JpegTransform.HuffmanEncoder.magnitudeSize(value);
+            int symbol = (run << 4) | size;
+            writeBits(codes[symbol], sizes[symbol]);
+            writeBits(value < 0 ? value - 1 : value, size);
+            run = 0;
+        }
+        if (run > 0) {
+            writeBits(codes[0], sizes[0]);
+        }
+    }
+
+    private void setQuality(int quality) {
+        quality = Math.max(1, Math.min(100, quality));
+        if (quality == this.quality) {
+            return;
+        }
+        this.quality = quality;
+        // the IJG quality scaling
+        int scale = quality < 50 ? 5000 / quality : 200 - quality * 2;
+        for (int table = 0; table < 2; table++) {
+            int[] base = table == 0 ? LUMINANCE_QUANTIZATION : CHROMINANCE_QUANTIZATION;
+            for (int k = 0; k < 64; k++) {
+                int natural = JpegTransform.ZIGZAG[k];
+                int q = Math.max(1, Math.min(255, (base[natural] * scale + 50) / 100));
+                quantization[table][k] = q;
+                divisors[table][k] = (float) (1.0 / (q * AAN_SCALE[natural >> 3] * AAN_SCALE[natural & 7] * 8.0));
+            }
+        }
+    }
+
+    private void useTable(int table, int[] dcCounts, int[] dcValues, int[] acCounts, int[] acValues) {
+        this.dcCounts[table] = dcCounts;
+        this.dcValues[table] = dcValues;
+        this.acCounts[table] = acCounts;
+        this.acValues[table] = acValues;
+        JpegTransform.HuffmanEncoder.build(dcCounts, dcValues, dcCodes[table], dcSizes[table]);
+        JpegTransform.HuffmanEncoder.build(acCounts, acValues, acCodes[table], acSizes[table]);
+    }
+
+    /**
+     * Builds the Huffman table with the shortest codes for {@code frequencies}, limited to 16 bits, as in ITU T.81
+     * annex K.2. The reserved symbol 256 keeps any code from being all ones.
+     *
+     * @return the number of codes of each length from 1 to 16, followed by the symbols in code order
+     */
+    static int[] optimalTable(long[] frequencies) {
+        long[] frequency = Arrays.copyOf(frequencies, 257);
+        frequency[256] = 1;
+        int[] codeSize = new int[257];
+        int[] others = new int[257];
+        Arrays.fill(others, -1);
+
+        while (true) {
+            // the two least frequent symbols, preferring the higher symbol on ties
+            int c1 = -1;
+            for (int i = 0; i <= 256; i++) {
+                if (frequency[i] != 0 && (c1 < 0 || frequency[i] <= frequency[c1])) {
+                    c1 = i;
+                }
+            }
+            int c2 = -1;
+            for (int i = 0; i <= 256; i++) {
+                if (frequency[i] != 0 && i != c1 && (c2 < 0 || frequency[i] <= frequency[c2])) {
+                    c2 = i;
+                }
+            }
+            if (c2 < 0) {
+                break;
+            }
+
+            frequency[c1] += frequency[c2];
+            frequency[c2] = 0;
+            codeSize[c1]++;
+            while (others[c1] >= 0) {
+                c1 = others[c1];
+                codeSize[c1]++;
+            }
+            others[c1] = c2;
+            codeSize[c2]++;
+            while (others[c2] >= 0) {
+                c2 = others[c2];
+                codeSize[c2]++;
+            }
+        }
+
+        int[] bits = new int[33];
+        for (int i = 0; i <= 256; i++) {
+            if (codeSize[i] > 0) {
+                bits[codeSize[i]]++;
+            }
+        }
+        // move codes longer than 16 bits up the tree
+        for (int i = 32; i > 16; i--) {
+            while (bits[i] > 0) {
+                int j = i - 2;
+                while (bits[j] == 0) {
+                    j--;
+                }
+                bits[i] -= 2;
+                bits[i - 1]++;
+                bits[j + 1] += 2;
+                bits[j]--;
+            }
+        }
+        // drop the reserved symbol, which has one of the longest codes
+        int longest = 16;
+        while (bits[longest] == 0) {
+            longest--;
+        }
+        bits[longest]--;
+
+        int symbols = 0;
+        for (int i = 1; i <= 16; i++) {
+            symbols += bits[i];
+        }
+        int[] table = new int[16 + symbols];
+        System.arraycopy(bits, 1, table, 0, 16);
+        int p = 16;
+        for (int length = 1; length <= 32; length++) {
+            for (int symbol = 0; symbol < 256; symbol++) {
+                if (codeSize[symbol] == length) {
+                    table[p++] = symbol;
+                }
+            }
+        }
+        return table;
+    }
+
+    private void writeHeaders(int width, int height) {
+        ensure(1024);
+        writeMarker(0xD8);
+
+        // JFIF APP0, no thumbnail
+        writeMarker(0xE0);
+        writeShort(16);
+        writeByte('J');
+        writeByte('F');
+        writeByte('I');
+        writeByte('F');
+        writeByte(0);
+        writeShort(0x0101);
+        writeByte(0);
+        writeShort(1);
+        writeShort(1);
+        writeByte(0);
+        writeByte(0);
+
+        writeMarker(0xDB);
+        writeShort(2 + 2 * 65);
+        for (int table = 0; table < 2; table++) {
+            writeByte(table);
+            for (int k = 0; k < 64; k++) {
+                writeByte(quantization[table][k]);
+            }
+        }
+
+        writeMarker(0xC0);
+        writeShort(17);
+        writeByte(8);
+        writeShort(height);
+        writeShort(width);
+        writeByte(3);
+        // Y sampled 2x2, Cb and Cr 1x1
+        writeComponent(1, 0x22, 0);
+        writeComponent(2, 0x11, 1);
+        writeComponent(3, 0x11, 1);
+
+        writeMarker(0xC4);
+        int length = 2;
+        for (int table = 0; table < 2; table++) {
+            length += 2 * 17 + dcValues[table].length + acValues[table].length;
+        }
+        writeShort(length);
+        for (int table = 0; table < 2; table++) {
+            writeHuffmanTable(table, dcCounts[table], dcValues[table]);
+            writeHuffmanTable(0x10 | table, acCounts[table], acValues[table]);
+        }
+
+        if (restartInterval > 0) {
+            writeMarker(0xDD);
+            writeShort(4);
+            writeShort(restartInterval);
+        }
+
+        writeMarker(0xDA);
+        writeShort(12);
+        writeByte(3);
+        writeComponent(1, 0x00, -1);
+        writeComponent(2, 0x11, -1);
+        writeComponent(3, 0x11, -1);
+        writeByte(0);
+        writeByte(63);
+        writeByte(0);
+    }
+
+    /**
+     * Writes a component of the frame header, or of the scan header when {@code quantizationTable} is negative.
+     */
+    private void writeComponent(int id, int value, int quantizationTable) {
+        writeByte(id);
+        writeByte(value);
+        if (quantizationTable >= 0) {
+            writeByte(quantizationTable);
+        }
+    }
+
+    private void writeHuffmanTable(int classAndId, int[] counts, int[] values) {
+        writeByte(classAndId);
+        for (int i = 0; i < 16; i++) {
+            writeByte(counts[i]);
+        }
+        for (int value : values) {
+            writeByte(value);
+        }
+    }
+
+    private void writeBits(int value, int count) {
+        bitBuffer = (bitBuffer << count) | (value & ((1 << count) - 1));
+        bitCount += count;
+        while (bitCount >= 8) {
+            int b = (int) (bitBuffer >>> (bitCount - 8)) & 0xFF;
+            output[size++] = (byte) b;
+            if (b == 0xFF) {
+                output[size++] = 0;
+            }
+            bitCount -= 8;
+        }
+    }
+
+    private void flushBits() {
+        ensure(4);
+        if (bitCount > 0) {
+            // pad the last byte with ones
+            writeBits(0x7F, 8 - bitCount);
+        }
+        bitBuffer = 0;
+    }
+
+    private void writeMarker(int marker) {
+        output[size++] = (byte) 0xFF;
+        output[size++] = (byte) marker;
+    }
+
+    private void writeShort(int value) {
+        output[size++] = (byte) (value >> 8);
+        output[size++] = (byte) value;
+    }
+
+    private void writeByte(int value) {
+        output[size++] = (byte) value;
+    }
+
+    private void ensure(int extra) {
+        if (size + extra > output.length) {
+            output = Arrays.copyOf(output, Math.max(output.length * 2, size + extra));
+        }
+    }
+}
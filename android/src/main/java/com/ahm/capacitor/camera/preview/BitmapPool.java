@@ -0,0 +1,104 @@
+package com.ahm.capacitor.camera.preview;
+
+import android.graphics.Bitmap;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Mutable ARGB_8888 bitmaps kept for reuse by {@link PictureTransform}, keyed by their allocation size.
+ *
+ * A pooled bitmap can be handed out for any size that fits its allocation and is reconfigured to it, which is also
+ * what {@code BitmapFactory.Options.inBitmap} needs, so decodes and scaled outputs of a repeated capture size reuse the
+ * same memory. Bitmaps much larger than asked for are not handed out, and the pool drops the largest ones once it holds
+ * more than {@code maxBytes}.
+ */
+final class BitmapPool {
+
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> free = new TreeMap<>();
+    private final long maxBytes;
+    private long pooledBytes;
+    private int allocationCount;
+
+    BitmapPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns a pooled bitmap reconfigured to {@code width} x {@code height}, or a newly allocated one. Its pixels are
+     * undefined.
+     */
+    synchronized Bitmap acquire(int width, int height) {
+        Bitmap bitmap = take(width * height * 4);
+        if (bitmap != null) {
+            bitmap.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+            return bitmap;
+        }
+        allocationCount++;
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Returns a pooled bitmap whose allocation holds at least {@code bytes}, as is, or {@code null}.
+     */
+    synchronized Bitmap take(int bytes) {
+        Map.Entry<Integer, ArrayDeque<Bitmap>> entry = free.ceilingEntry(bytes);
+        // don't tie up a much larger allocation for a small bitmap
+        if (entry == null || entry.getKey() > 2L * bytes) {
+            return null;
+        }
+        Bitmap bitmap = entry.getValue().pollFirst();
+        if (entry.getValue().isEmpty()) {
+            free.remove(entry.getKey());
+        }
+        pooledBytes -= entry.getKey();
+        return bitmap;
+    }
+
+    /**
+     * Returns a bitmap to the pool. Immutable or recycled bitmaps, and bitmaps larger than the whole pool, are dropped.
+     */
+    synchronized void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+        int bytes = bitmap.getAllocationByteCount();
+        if (bytes > maxBytes) {
+            bitmap.recycle();
+            return;
+        }
+        ArrayDeque<Bitmap> bitmaps = free.get(bytes);
+        if (bitmaps == null) {
+            bitmaps = new ArrayDeque<>();
+            free.put(bytes, bitmaps);
+        }
+        bitmaps.addFirst(bitmap);
+        pooledBytes += bytes;
+
+        while (pooledBytes > maxBytes) {
+            Map.Entry<Integer, ArrayDeque<Bitmap>> largest = free.lastEntry();
+            largest.getValue().pollLast().recycle();
+            if (largest.getValue().isEmpty()) {
+                free.remove(largest.getKey());
+            }
+            pooledBytes -= largest.getKey();
+        }
+    }
+
+    synchronized void clear() {
+        for (ArrayDeque<Bitmap> bitmaps : free.values()) {
+            for (Bitmap bitmap : bitmaps) {
+                bitmap.recycle();
+            }
+        }
+        free.clear();
+        pooledBytes = 0;
+    }
+
+    /**
+     * Total number of bitmaps this pool has allocated, for checking that repeated captures do not allocate.
+     */
+    synchronized int getAllocationCount() {
+        return allocationCount;
+    }
+}
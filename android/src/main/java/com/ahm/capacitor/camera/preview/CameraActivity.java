@@ -2,17 +2,13 @@ package com.ahm.capacitor.camera.preview;
 
 import android.app.Activity;
 import android.app.Fragment;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.pm.PackageManager;
 import android.content.res.Configuration;
-import android.graphics.Bitmap;
-import android.graphics.Bitmap.CompressFormat;
-import android.graphics.BitmapFactory;
-import android.graphics.Canvas;
+import android.content.res.Resources;
 import android.graphics.ImageFormat;
-import android.graphics.Matrix;
 import android.graphics.Rect;
-import android.graphics.YuvImage;
 import android.hardware.Camera;
 import android.hardware.Camera.PictureCallback;
 import android.hardware.Camera.ShutterCallback;
@@ -36,47 +32,170 @@ import android.view.ViewGroup;
 import android.view.ViewTreeObserver;
 import android.widget.FrameLayout;
 import android.widget.RelativeLayout;
-import androidx.exifinterface.media.ExifInterface;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class CameraActivity extends Fragment {
 
     public interface CameraPreviewListener {
-        void onPictureTaken(String originalPicture);
-        void onPictureTakenError(String message);
-        void onSnapshotTaken(String originalPicture);
-        void onSnapshotTakenError(String message);
+        void onPictureTaken(CaptureRequest request, String originalPicture);
+        void onPictureTakenError(CaptureRequest request, String message);
+        void onBurstTaken(CaptureRequest request, String[] pictures);
+        void onThumbnailTaken(CaptureRequest request, int index, String thumbnail);
+        void onSnapshotTaken(String id, String originalPicture, boolean chunked);
+        void onSnapshotTakenError(String id, String message);
+        void onResultChunk(String transferId, int index, int count, String chunk);
         void onFocusSet(int pointX, int pointY);
         void onFocusSetError(String message);
         void onBackButton();
-        void onCameraStarted();
+        /**
+         * @param firstFrameSeen whether the preview was seen to show its first frame, rather than given up on
+         */
+        void onCameraStarted(boolean firstFrameSeen);
+        void onCameraStartError(String message);
         void onStartRecordVideo();
         void onStartRecordVideoError(String message);
         void onStopRecordVideo(String file);
         void onStopRecordVideoError(String error);
     }
 
+    /**
+     * A piece of work run against the open camera on the camera thread.
+     */
+    public interface CameraCommand<T> {
+        T run(Camera camera) throws Exception;
+    }
+
     private CameraPreviewListener eventListener;
     private static final String TAG = "CameraActivity";
     public FrameLayout mainLayout;
     public FrameLayout frameContainerLayout;
 
     private Preview mPreview;
-    private boolean canTakePicture = true;
+    private final CaptureQueue captureQueue = new CaptureQueue(3, CaptureQueue.OverflowPolicy.REJECT_NEWEST);
+
+    // owns every call into mCamera, see CameraThread
+    private final CameraThread cameraThread = new CameraThread();
+
+    // preview callback buffers and rotation scratch space shared by every sample
+    private final FrameBufferPool previewBuffers = new FrameBufferPool(3);
+    private final ChunkedTransfer.Sink resultChunks = new ChunkedTransfer.Sink() {
+        @Override
+        public void onChunk(String transferId, int index, int count, String chunk) {
+            eventListener.onResultChunk(transferId, index, count, chunk);
+        }
+    };
+    // storeToFile output, off the picture processing threads
+    private final CaptureFileWriter fileWriter = new CaptureFileWriter();
+    // maxBytes compression, remembering the quality that fit each recent scene
+    private final QualitySearch qualitySearch = new QualitySearch();
+    // decoded pictures, resized outputs and WebP samples, shared by the picture processing workers and the snapshot
+    // pipeline; enough for a 12 MP decode at half size and its output
+    private static final long BITMAP_POOL_BYTES = 32L * 1024 * 1024;
+    private final BitmapPool bitmapPool = new BitmapPool(BITMAP_POOL_BYTES);
+    private final PictureTransform pictureTransform = new PictureTransform(bitmapPool, qualitySearch);
+    private final SnapshotPipeline snapshotPipeline = new SnapshotPipeline(
+        previewBuffers,
+        resultChunks,
+        fileWriter,
+        qualitySearch,
+        bitmapPool,
+        new YuvImageFrameEncoder()
+    );
+
+    // what each camera supports, so only calls that need the camera's current settings read its parameters
+    private CameraCapabilityIndex capabilityIndex = new CameraCapabilityIndex(null, null);
+    // of the open camera, set on the camera thread
+    private volatile CameraCapabilities capabilities;
+    // the open camera's parameters and the settings waiting to be written to them, only touched on the camera thread
+    private final CameraParameters currentParameters = new CameraParameters(cameraThread);
+    // chosen again for every picture
+    private final SizeSelector pictureSizes = new SizeSelector(8);
+    // how long start waits for the preview's first frame before reporting the camera as started anyway
+    private static final long FIRST_FRAME_TIMEOUT_MILLIS = 5000;
+    // whether the camera is kept open, its preview stopped, while the fragment is paused; camera thread only
+    private boolean inStandby;
+    // counts the pauses, so a release scheduled for an earlier one is ignored
+    private int standbyGeneration;
+    // the camera service takes a camera back from us when another app opens it
+    private final Camera.ErrorCallback cameraErrorCallback = new Camera.ErrorCallback() {
+        @Override
+        public void onError(int error, Camera camera) {
+            Log.d(TAG, "camera error " + error);
+            if (inStandby && camera == mCamera) {
+                releaseCamera();
+            }
+        }
+    };
+
+    // zero shutter lag: the latest preview frames and their size, only touched on the camera thread
+    private static final int ZSL_CAMERA_BUFFERS = 2;
+    private PreviewFrameRing zslRing;
+    private int zslWidth;
+    private int zslHeight;
+    private int zslFormat;
+
+    // samples and pictures waiting for the next preview frame, only touched on the camera thread
+    private final List<PreviewFrameRequest> pendingPreviewFrames = new ArrayList<>();
+
+    private static final class PreviewFrameRequest {
+
+        final OutputFormat outputFormat;
+        final int quality;
+        final int maxBytes;
+        final String filePath;
+        final int chunkSize;
+        final SnapshotPipeline.Callback callback;
+
+        PreviewFrameRequest(
+            OutputFormat outputFormat,
+            int quality,
+            int maxBytes,
+            String filePath,
+            int chunkSize,
+            SnapshotPipeline.Callback callback
+        ) {
+            this.outputFormat = outputFormat;
+            this.quality = quality;
+            this.maxBytes = maxBytes;
+            this.filePath = filePath;
+            this.chunkSize = chunkSize;
+            this.callback = callback;
+        }
+    }
+
+    // EXIF rotation, recompression and Base64 / file output of pictures, off the camera thread so the preview can be
+    // restarted as soon as the JPEG arrives. When both workers are busy and the queue is full, or they are shut down, the
+    // camera thread processes the picture itself, which holds back the next shot instead of piling up pictures in memory.
+    private final ThreadPoolExecutor pictureProcessor = new ThreadPoolExecutor(
+        2,
+        2,
+        0L,
+        TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(2),
+        new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "CameraPreview-picture");
+            }
+        },
+        new RunOnCallerPolicy()
+    );
 
     private View view;
     private Camera.Parameters cameraParameters;
-    private Camera mCamera;
+    private volatile Camera mCamera;
     private int numberOfCameras;
     private int cameraCurrentlyLocked;
-    private int currentQuality;
 
     private enum RecordingState {
         INITIALIZING,
@@ -100,6 +219,15 @@ public class CameraActivity extends Fragment {
     public boolean toBack;
     public boolean enableOpacity = false;
     public boolean enableZoom = false;
+    public boolean zeroShutterLag = false;
+    public int zeroShutterLagFrames = 4;
+    // how long a paused fragment keeps its camera open, 0 to release it right away
+    public int warmStandbyMillis = 0;
+    public boolean autoPreviewCapture = true;
+    public String orientationMode = ORIENTATION_MODE_LOSSLESS;
+
+    public static final String ORIENTATION_MODE_LOSSLESS = "lossless";
+    public static final String ORIENTATION_MODE_EXIF_TAG = "exifTag";
 
     public int width;
     public int height;
@@ -110,18 +238,37 @@ public class CameraActivity extends Fragment {
         eventListener = listener;
     }
 
-    private String appResourcesPackage;
+    // the layout and its views are looked up by name, which is slow, so only once per process; UI thread only
+    private static int cameraActivityLayoutId;
+    private static int frameContainerId;
+    private static int videoViewId;
+    private static int frameCameraContainerId;
+
+    private RelativeLayout frameCamContainerLayout;
 
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
-        appResourcesPackage = getActivity().getPackageName();
+        resolveResourceIds();
 
         // Inflate the layout for this fragment
-        view = inflater.inflate(getResources().getIdentifier("camera_activity", "layout", appResourcesPackage), container, false);
+        view = inflater.inflate(cameraActivityLayoutId, container, false);
+        frameCamContainerLayout = (RelativeLayout) view.findViewById(frameCameraContainerId);
         createCameraPreview();
         return view;
     }
 
+    private void resolveResourceIds() {
+        if (cameraActivityLayoutId != 0) {
+            return;
+        }
+        Resources resources = getResources();
+        String appResourcesPackage = getActivity().getPackageName();
+        frameContainerId = resources.getIdentifier("frame_container", "id", appResourcesPackage);
+        videoViewId = resources.getIdentifier("video_view", "id", appResourcesPackage);
+        frameCameraContainerId = resources.getIdentifier("frame_camera_cont", "id", appResourcesPackage);
+        cameraActivityLayoutId = resources.getIdentifier("camera_activity", "layout", appResourcesPackage);
+    }
+
     public void setRect(int x, int y, Integer width, Integer height) {
         this.x = x;
         this.y = y;
@@ -131,19 +278,15 @@ public class CameraActivity extends Fragment {
 
     private void createCameraPreview() {
         if (mPreview == null) {
-            setDefaultCameraId();
-
             //set box position and size
             FrameLayout.LayoutParams layoutParams = new FrameLayout.LayoutParams(width, height);
             layoutParams.setMargins(x, y, 0, 0);
-            frameContainerLayout = (FrameLayout) view.findViewById(
-                getResources().getIdentifier("frame_container", "id", appResourcesPackage)
-            );
+            frameContainerLayout = (FrameLayout) view.findViewById(frameContainerId);
             frameContainerLayout.setLayoutParams(layoutParams);
 
             //video view
-            mPreview = new Preview(getActivity(), enableOpacity);
-            mainLayout = (FrameLayout) view.findViewById(getResources().getIdentifier("video_view", "id", appResourcesPackage));
+            mPreview = new Preview(getActivity(), enableOpacity, cameraThread, currentParameters);
+            mainLayout = (FrameLayout) view.findViewById(videoViewId);
             mainLayout.setLayoutParams(
                 new RelativeLayout.LayoutParams(RelativeLayout.LayoutParams.MATCH_PARENT, RelativeLayout.LayoutParams.MATCH_PARENT)
             );
@@ -181,11 +324,10 @@ public class CameraActivity extends Fragment {
                                 Log.d(TAG, "onTouch event, action, count: " + event + ", " + action + ", " + eventCount);
                                 if (eventCount > 1) {
                                     // handle multi-touch events
-                                    Camera.Parameters params = mCamera.getParameters();
                                     if (action == MotionEvent.ACTION_POINTER_DOWN) {
                                         mDist = getFingerSpacing(event);
-                                    } else if (action == MotionEvent.ACTION_MOVE && params.isZoomSupported()) {
-                                        handleZoom(event, params);
+                                    } else if (action == MotionEvent.ACTION_MOVE) {
+                                        handleZoom(event);
                                     }
                                 } else {
                                     if (action != MotionEvent.ACTION_MOVE && isSingleTapTouch) {
@@ -196,7 +338,7 @@ public class CameraActivity extends Fragment {
                                                 new Camera.AutoFocusCallback() {
                                                     public void onAutoFocus(boolean success, Camera camera) {
                                                         if (success) {
-                                                            takePicture(0, 0, 85);
+                                                            takePicture(null, 0, 0, 85);
                                                         } else {
                                                             Log.d(TAG, "onTouch:" + " setFocusArea() did not suceed");
                                                         }
@@ -204,7 +346,7 @@ public class CameraActivity extends Fragment {
                                                 }
                                             );
                                         } else if (tapToTakePicture) {
-                                            takePicture(0, 0, 85);
+                                            takePicture(null, 0, 0, 85);
                                         } else if (tapToFocus) {
                                             setFocusArea(
                                                 (int) event.getX(0),
@@ -284,23 +426,37 @@ public class CameraActivity extends Fragment {
 
                 private float mDist = 0F;
 
-                private void handleZoom(MotionEvent event, Camera.Parameters params) {
-                    if (mCamera != null) {
-                        mCamera.cancelAutoFocus();
-                        int maxZoom = params.getMaxZoom();
-                        int zoom = params.getZoom();
-                        float newDist = getFingerSpacing(event);
-                        if (newDist > mDist) {
-                            //zoom in
-                            if (zoom < maxZoom) zoom++;
-                        } else if (newDist < mDist) {
-                            //zoom out
-                            if (zoom > 0) zoom--;
+                private void handleZoom(MotionEvent event) {
+                    float newDist = getFingerSpacing(event);
+                    final boolean zoomIn = newDist > mDist;
+                    final boolean zoomOut = newDist < mDist;
+                    mDist = newDist;
+
+                    cameraThread.post(
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                if (mCamera == null) {
+                                    return;
+                                }
+                                if (!capabilities.isZoomSupported()) {
+                                    return;
+                                }
+                                mCamera.cancelAutoFocus();
+                                int maxZoom = capabilities.getMaxZoom();
+                                int zoom = currentParameters.getInt(CameraParameters.KEY_ZOOM, 0);
+                                if (zoomIn) {
+                                    //zoom in
+                                    if (zoom < maxZoom) zoom++;
+                                } else if (zoomOut) {
+                                    //zoom out
+                                    if (zoom > 0) zoom--;
+                                }
+                                // a pinch moves many times per frame, the zoom is written once per frame
+                                currentParameters.set(CameraParameters.KEY_ZOOM, Integer.toString(zoom));
+                            }
                         }
-                        mDist = newDist;
-                        params.setZoom(zoom);
-                        mCamera.setParameters(params);
-                    }
+                    );
                 }
             }
         );
@@ -327,26 +483,13 @@ public class CameraActivity extends Fragment {
     public void onResume() {
         super.onResume();
 
-        mCamera = Camera.open(defaultCameraId);
-
-        if (cameraParameters != null) {
-            mCamera.setParameters(cameraParameters);
-        }
-
-        cameraCurrentlyLocked = defaultCameraId;
-
-        if (mPreview.mPreviewSize == null) {
-            mPreview.setCamera(mCamera, cameraCurrentlyLocked);
-            eventListener.onCameraStarted();
-        } else {
-            mPreview.switchCamera(mCamera, cameraCurrentlyLocked);
-            mCamera.startPreview();
-        }
-
-        Log.d(TAG, "cameraCurrentlyLocked:" + cameraCurrentlyLocked);
-
-        final FrameLayout frameContainerLayout = (FrameLayout) view.findViewById(
-            getResources().getIdentifier("frame_container", "id", appResourcesPackage)
+        cameraThread.post(
+            new Runnable() {
+                @Override
+                public void run() {
+                    openCamera();
+                }
+            }
         );
 
         ViewTreeObserver viewTreeObserver = frameContainerLayout.getViewTreeObserver();
@@ -360,10 +503,6 @@ public class CameraActivity extends Fragment {
                         frameContainerLayout.measure(View.MeasureSpec.UNSPECIFIED, View.MeasureSpec.UNSPECIFIED);
                         Activity activity = getActivity();
                         if (isAdded() && activity != null) {
-                            final RelativeLayout frameCamContainerLayout = (RelativeLayout) view.findViewById(
-                                getResources().getIdentifier("frame_camera_cont", "id", appResourcesPackage)
-                            );
-
                             FrameLayout.LayoutParams camViewLayout = new FrameLayout.LayoutParams(
                                 frameContainerLayout.getWidth(),
                                 frameContainerLayout.getHeight()
@@ -377,38 +516,253 @@ public class CameraActivity extends Fragment {
         }
     }
 
+    /**
+     * Starts opening the default camera and reading its parameters on the camera thread right away, while the fragment is
+     * still being added and its view inflated. Without it the camera is only opened once the fragment is resumed.
+     */
+    public void prepareCamera() {
+        cameraThread.post(
+            new Runnable() {
+                @Override
+                public void run() {
+                    if (mCamera == null) {
+                        openDefaultCamera();
+                    }
+                }
+            }
+        );
+    }
+
+    /**
+     * Releases the camera opened by {@link #prepareCamera}, if any, and stops the fragment's threads when it is not going to
+     * be added after all. The fragment cannot be used afterwards.
+     */
+    public void discardPreparedCamera() {
+        cameraThread.post(
+            new Runnable() {
+                @Override
+                public void run() {
+                    if (mCamera != null) {
+                        mCamera.release();
+                        mCamera = null;
+                        capabilities = null;
+                        currentParameters.attach(null);
+                    }
+                }
+            }
+        );
+        shutdownWorkers();
+    }
+
+    // Runs on the camera thread
+    private void openDefaultCamera() {
+        setDefaultCameraId();
+        Camera camera = Camera.open(defaultCameraId);
+        camera.setErrorCallback(cameraErrorCallback);
+        currentParameters.attach(camera);
+
+        if (cameraParameters != null) {
+            currentParameters.apply(cameraParameters);
+        }
+
+        cameraCurrentlyLocked = defaultCameraId;
+        mCamera = camera;
+        capabilities = loadCapabilities(camera, cameraCurrentlyLocked);
+    }
+
+    // Runs on the camera thread
+    private void openCamera() {
+        if (inStandby) {
+            inStandby = false;
+            mPreview.restartPreview();
+        } else {
+            startPreview();
+        }
+
+        Log.d(TAG, "cameraCurrentlyLocked:" + cameraCurrentlyLocked);
+        if (zeroShutterLag) {
+            startZeroShutterLag();
+        }
+        startNextPicture();
+    }
+
+    // Runs on the camera thread
+    private void startPreview() {
+        boolean starting = mPreview.mPreviewSize == null;
+        if (starting) {
+            mPreview.setFirstFrameListener(
+                new Preview.FirstFrameListener() {
+                    @Override
+                    public void onFirstFrame(boolean seen) {
+                        eventListener.onCameraStarted(seen);
+                    }
+
+                    @Override
+                    public void onPreviewFailed(String message) {
+                        eventListener.onCameraStartError(message);
+                    }
+                },
+                FIRST_FRAME_TIMEOUT_MILLIS
+            );
+        }
+
+        try {
+            // already open when prepareCamera was called
+            if (mCamera == null) {
+                openDefaultCamera();
+            }
+            Camera camera = mCamera;
+
+            if (starting) {
+                mPreview.setCamera(camera, cameraCurrentlyLocked, capabilities);
+            } else {
+                mPreview.switchCamera(camera, cameraCurrentlyLocked, capabilities);
+                camera.startPreview();
+            }
+        } catch (RuntimeException e) {
+            mPreview.notifyPreviewFailed("Failed to open camera");
+            throw e;
+        }
+    }
+
     @Override
     public void onPause() {
         super.onPause();
 
+        // a fragment being removed or an activity finishing does not come back, so its camera is not kept
+        final boolean standby = warmStandbyMillis > 0 && !isRemoving() && !getActivity().isFinishing();
+        cameraThread.post(
+            new Runnable() {
+                @Override
+                public void run() {
+                    if (standby) {
+                        enterStandby();
+                    } else {
+                        releaseCamera();
+                    }
+                }
+            }
+        );
+    }
+
+    /**
+     * Releases a camera kept in warm standby when the system is short of memory, rather than waiting for the grace
+     * timeout: at {@code TRIM_MEMORY_RUNNING_LOW} and {@code TRIM_MEMORY_RUNNING_CRITICAL} while the app is still
+     * running, and at {@code TRIM_MEMORY_BACKGROUND} and above once it is in the background. {@code TRIM_MEMORY_UI_HIDDEN}
+     * and {@code TRIM_MEMORY_RUNNING_MODERATE} keep it, as the app going out of view is what standby is for.
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (!isMemoryPressure(level)) {
+            return;
+        }
+        cameraThread.post(
+            new Runnable() {
+                @Override
+                public void run() {
+                    if (inStandby) {
+                        Log.d(TAG, "releasing camera kept in standby on memory pressure");
+                        releaseCamera();
+                    }
+                }
+            }
+        );
+    }
+
+    private static boolean isMemoryPressure(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            return true;
+        }
+        return level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW && level != ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN;
+    }
+
+    // Runs on the camera thread
+    private void enterStandby() {
+        if (mCamera == null) {
+            return;
+        }
+        // the camera stays open but delivers nothing while paused
+        captureQueue.stopShots();
+        pictureFailed(captureQueue.getActive(), "Camera was paused");
+        stopZeroShutterLag();
+        failPendingPreviewFrames("Camera was paused");
+        mCamera.stopPreview();
+        inStandby = true;
+
+        final int generation = ++standbyGeneration;
+        cameraThread.postDelayed(
+            new Runnable() {
+                @Override
+                public void run() {
+                    if (inStandby && standbyGeneration == generation) {
+                        Log.d(TAG, "releasing camera after " + warmStandbyMillis + " ms in standby");
+                        releaseCamera();
+                    }
+                }
+            },
+            warmStandbyMillis
+        );
+    }
+
+    // Runs on the camera thread
+    private void releaseCamera() {
         // Because the Camera object is a shared resource, it's very important to release it when the activity is paused.
+        inStandby = false;
         if (mCamera != null) {
+            // a picture in flight will never be delivered once the camera is gone
+            captureQueue.stopShots();
+            pictureFailed(captureQueue.getActive(), "Camera was released");
+            stopZeroShutterLag();
+            failPendingPreviewFrames("Camera was released");
             setDefaultCameraId();
-            mPreview.setCamera(null, -1);
+            mPreview.setCamera(null, -1, null);
             mCamera.setPreviewCallback(null);
             mCamera.release();
             mCamera = null;
+            capabilities = null;
+            currentParameters.attach(null);
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        // a camera kept in standby is still open
+        cameraThread.post(
+            new Runnable() {
+                @Override
+                public void run() {
+                    releaseCamera();
+                }
+            }
+        );
+        shutdownWorkers();
+        for (CaptureRequest request : captureQueue.drain()) {
+            eventListener.onPictureTakenError(request, "Camera was stopped");
         }
     }
 
+    // stops every thread of the fragment once the work already queued is done, so every capture still settles: pictures
+    // and writes handed over afterwards run on the caller, samples queued afterwards fail
+    private void shutdownWorkers() {
+        snapshotPipeline.shutdown();
+        pictureProcessor.shutdown();
+        fileWriter.shutdown();
+        bitmapPool.clear();
+        cameraThread.quit();
+    }
+
     @Override
     public void onConfigurationChanged(Configuration newConfig) {
         super.onConfigurationChanged(newConfig);
 
-        final FrameLayout frameContainerLayout = (FrameLayout) view.findViewById(
-            getResources().getIdentifier("frame_container", "id", appResourcesPackage)
-        );
-
         final int previousOrientation =
             frameContainerLayout.getHeight() > frameContainerLayout.getWidth()
                 ? Configuration.ORIENTATION_PORTRAIT
                 : Configuration.ORIENTATION_LANDSCAPE;
         // Checks if the orientation of the screen has changed
         if (newConfig.orientation != previousOrientation) {
-            final RelativeLayout frameCamContainerLayout = (RelativeLayout) view.findViewById(
-                getResources().getIdentifier("frame_camera_cont", "id", appResourcesPackage)
-            );
-
             frameContainerLayout.getLayoutParams().width = frameCamContainerLayout.getHeight();
             frameContainerLayout.getLayoutParams().height = frameCamContainerLayout.getWidth();
 
@@ -420,7 +774,16 @@ public class CameraActivity extends Fragment {
 
             frameCamContainerLayout.forceLayout();
 
-            mPreview.setCameraDisplayOrientation();
+            cameraThread.post(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mCamera != null) {
+                            mPreview.setCameraDisplayOrientation();
+                        }
+                    }
+                }
+            );
         }
     }
 
@@ -428,6 +791,25 @@ public class CameraActivity extends Fragment {
         return mCamera;
     }
 
+    /**
+     * Runs {@code command} against the open camera on the camera thread and waits for its result.
+     *
+     * @throws IllegalStateException if the camera is not running
+     */
+    public <T> T invoke(final CameraCommand<T> command) {
+        return cameraThread.invoke(
+            new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    if (mCamera == null) {
+                        throw new IllegalStateException("Camera is not running");
+                    }
+                    return command.run(mCamera);
+                }
+            }
+        );
+    }
+
     /**
      * Method to get the front camera id if the current camera is back and visa versa
      *
@@ -468,6 +850,18 @@ public class CameraActivity extends Fragment {
     }
 
     public void switchCamera() {
+        cameraThread.invoke(
+            new Callable<Void>() {
+                @Override
+                public Void call() {
+                    switchCameraOnCameraThread();
+                    return null;
+                }
+            }
+        );
+    }
+
+    private void switchCameraOnCameraThread() {
         // check for availability of multiple cameras
         if (numberOfCameras == 1) {
             //There is only one camera available
@@ -476,10 +870,17 @@ public class CameraActivity extends Fragment {
 
             // OK, we have multiple cameras. Release this camera -> cameraCurrentlyLocked
             if (mCamera != null) {
+                // the pictures asked of this camera will not arrive either
+                captureQueue.stopShots();
+                pictureFailed(captureQueue.getActive(), "Camera was switched");
+                stopZeroShutterLag();
+                failPendingPreviewFrames("Camera was switched");
                 mCamera.stopPreview();
-                mPreview.setCamera(null, -1);
+                mPreview.setCamera(null, -1, null);
                 mCamera.release();
                 mCamera = null;
+                capabilities = null;
+                currentParameters.attach(null);
             }
 
             Log.d(TAG, "cameraCurrentlyLocked := " + Integer.toString(cameraCurrentlyLocked));
@@ -492,12 +893,15 @@ public class CameraActivity extends Fragment {
 
             // Acquire the next camera and request Preview to reconfigure parameters.
             mCamera = Camera.open(cameraCurrentlyLocked);
+            mCamera.setErrorCallback(cameraErrorCallback);
+            currentParameters.attach(mCamera);
+            capabilities = loadCapabilities(mCamera, cameraCurrentlyLocked);
 
             if (cameraParameters != null) {
                 Log.d(TAG, "camera parameter not null");
 
                 // Check for flashMode as well to prevent error on frontward facing camera.
-                List<String> supportedFlashModesNewCamera = mCamera.getParameters().getSupportedFlashModes();
+                List<String> supportedFlashModesNewCamera = capabilities.getFlashModes();
                 String currentFlashModePreviousCamera = cameraParameters.getFlashMode();
                 if (supportedFlashModesNewCamera != null && supportedFlashModesNewCamera.contains(currentFlashModePreviousCamera)) {
                     Log.d(TAG, "current flash mode supported on new camera. setting params");
@@ -511,26 +915,82 @@ public class CameraActivity extends Fragment {
                 Log.d(TAG, "camera parameter NULL");
             }
 
-            mPreview.switchCamera(mCamera, cameraCurrentlyLocked);
+            mPreview.switchCamera(mCamera, cameraCurrentlyLocked, capabilities);
 
             mCamera.startPreview();
+            if (zeroShutterLag) {
+                startZeroShutterLag();
+            }
         }
     }
 
-    public void setCameraParameters(Camera.Parameters params) {
+    public void setCameraParameters(final Camera.Parameters params) {
+        if (cameraThread.isCurrentThread()) {
+            applyCameraParameters(params);
+            return;
+        }
+
+        cameraThread.post(
+            new Runnable() {
+                @Override
+                public void run() {
+                    applyCameraParameters(params);
+                }
+            }
+        );
+    }
+
+    private void applyCameraParameters(Camera.Parameters params) {
         cameraParameters = params;
 
         if (mCamera != null && cameraParameters != null) {
-            mCamera.setParameters(cameraParameters);
+            currentParameters.apply(cameraParameters);
         }
     }
 
-    public boolean hasFrontCamera() {
-        return getActivity().getApplicationContext().getPackageManager().hasSystemFeature(PackageManager.FEATURE_CAMERA_FRONT);
+    /**
+     * Runs on the camera thread. Changes the given settings with a single parameter write, together with any gesture
+     * change still pending, or changes none of them when one is not supported. {@code null} leaves a setting as it is.
+     *
+     * @param zoom the zoom ratio, 1 for none; the closest ratio the camera supports is used
+     * @param exposure the exposure compensation in EV; the closest step within the camera's range is used
+     * @throws IllegalArgumentException naming the first setting the camera does not support
+     */
+    void applySettings(String flashMode, Double zoom, String focusMode, Double exposure) {
+        List<String> flashModes = capabilities.getFlashModes();
+        if (flashMode != null && (flashModes == null || !flashModes.contains(flashMode))) {
+            throw new IllegalArgumentException("Flash mode not recognised: " + flashMode);
+        }
+        if (focusMode != null && !capabilities.getFocusModes().contains(focusMode)) {
+            throw new IllegalArgumentException("Focus mode not supported: " + focusMode);
+        }
+        if (zoom != null && !capabilities.isZoomSupported()) {
+            throw new IllegalArgumentException("Zoom not supported");
+        }
+        if (exposure != null && !capabilities.isExposureCompensationSupported()) {
+            throw new IllegalArgumentException("Exposure compensation not supported");
+        }
+
+        if (flashMode != null) {
+            currentParameters.set(CameraParameters.KEY_FLASH_MODE, flashMode);
+        }
+        if (zoom != null) {
+            currentParameters.set(CameraParameters.KEY_ZOOM, Integer.toString(capabilities.getZoomIndex(zoom.floatValue())));
+        }
+        if (focusMode != null) {
+            currentParameters.set(CameraParameters.KEY_FOCUS_MODE, focusMode);
+        }
+        if (exposure != null) {
+            int index = capabilities.getExposureCompensationIndex(exposure.floatValue());
+            currentParameters.set(CameraParameters.KEY_EXPOSURE_COMPENSATION, Integer.toString(index));
+        }
+        currentParameters.commit();
+        // reapplied when the camera is opened again, as with setCameraParameters
+        cameraParameters = currentParameters.get();
     }
 
-    public static Bitmap applyMatrix(Bitmap source, Matrix matrix) {
-        return Bitmap.createBitmap(source, 0, 0, source.getWidth(), source.getHeight(), matrix, true);
+    public boolean hasFrontCamera() {
+        return getActivity().getApplicationContext().getPackageManager().hasSystemFeature(PackageManager.FEATURE_CAMERA_FRONT);
     }
 
     ShutterCallback shutterCallback = new ShutterCallback() {
@@ -539,17 +999,6 @@ public class CameraActivity extends Fragment {
         }
     };
 
-    private static int exifToDegrees(int exifOrientation) {
-        if (exifOrientation == ExifInterface.ORIENTATION_ROTATE_90) {
-            return 90;
-        } else if (exifOrientation == ExifInterface.ORIENTATION_ROTATE_180) {
-            return 180;
-        } else if (exifOrientation == ExifInterface.ORIENTATION_ROTATE_270) {
-            return 270;
-        }
-        return 0;
-    }
-
     private String getTempDirectoryPath() {
         File cache = null;
 
@@ -561,182 +1010,254 @@ public class CameraActivity extends Fragment {
         return cache.getAbsolutePath();
     }
 
-    private String getTempFilePath() {
-        return getTempDirectoryPath() + "/cpcp_capture_" + UUID.randomUUID().toString().replace("-", "").substring(0, 8) + ".jpg";
+    private String getTempFilePath(OutputFormat format) {
+        String id = UUID.randomUUID().toString().replace("-", "").substring(0, 8);
+        return getTempDirectoryPath() + "/" + CaptureFileServer.CAPTURE_PREFIX + id + format.extension;
     }
 
+    // Delivered on the camera thread
     PictureCallback jpegPictureCallback = new PictureCallback() {
-        public void onPictureTaken(byte[] data, Camera arg1) {
+        public void onPictureTaken(final byte[] data, Camera camera) {
             Log.d(TAG, "CameraPreview jpegPictureCallback");
 
-            try {
-                if (!disableExifHeaderStripping) {
-                    Matrix matrix = new Matrix();
-                    if (cameraCurrentlyLocked == Camera.CameraInfo.CAMERA_FACING_FRONT) {
-                        matrix.preScale(1.0f, -1.0f);
+            // the camera stops its preview to take a picture; restart it before touching the bytes
+            camera.startPreview();
+
+            // the picture of a burst that failed meanwhile belongs to no request
+            final CaptureRequest request = captureQueue.shotArrived();
+            final int index = request == null ? -1 : request.pictureArrived(System.nanoTime());
+            if (index >= 0) {
+                final boolean front = cameraCurrentlyLocked == Camera.CameraInfo.CAMERA_FACING_FRONT;
+                // taken now, in case the preview is moved or resized while the picture is processed
+                final float[] region = request.cropToPreview ? getVisiblePreviewRegion() : null;
+                pictureProcessor.execute(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            processPicture(request, index, data, front, region);
+                        }
                     }
+                );
+            }
 
-                    ExifInterface exifInterface = new ExifInterface(new ByteArrayInputStream(data));
-                    int rotation = exifInterface.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
-                    int rotationInDegrees = exifToDegrees(rotation);
-
-                    if (rotation != 0f) {
-                        matrix.preRotate(rotationInDegrees);
-                    }
+            CaptureRequest burst = captureQueue.nextShot();
+            if (burst == null) {
+                // nothing is in flight any more, so the next capture can use the camera
+                startNextPicture();
+                return;
+            }
+            try {
+                camera.takePicture(shutterCallback, null, jpegPictureCallback);
+            } catch (RuntimeException e) {
+                Log.d(TAG, "CameraPreview burst takePicture failed", e);
+                captureQueue.stopShots();
+                pictureFailed(burst, "Failed to take picture");
+            }
+        }
+    };
 
-                    // Check if matrix has changed. In that case, apply matrix and override data
-                    if (!matrix.isIdentity()) {
-                        Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length);
-                        bitmap = applyMatrix(bitmap, matrix);
+    /**
+     * The part of the upright picture the preview shows, as fractions in {@code left, top, right, bottom} order, or
+     * {@code null} before the preview is laid out. The preview is scaled to cover its view, so two of its sides may be
+     * cut off; pictures are assumed to frame the same view as the preview.
+     */
+    private float[] getVisiblePreviewRegion() {
+        Preview preview = mPreview;
+        int[] size = preview == null ? null : preview.mPreviewSize;
+        if (size == null || preview.getWidth() <= 0 || preview.getHeight() <= 0) {
+            return null;
+        }
+        boolean transposed = preview.getDisplayOrientation() % 180 != 0;
+        return PictureTransform.coverRegion(
+            transposed ? size[1] : size[0],
+            transposed ? size[0] : size[1],
+            preview.getWidth(),
+            preview.getHeight()
+        );
+    }
 
-                        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-                        bitmap.compress(CompressFormat.JPEG, currentQuality, outputStream);
-                        data = outputStream.toByteArray();
-                    }
+    // Runs on a picture processing worker, or on the camera thread when the workers are saturated
+    private void processPicture(final CaptureRequest request, final int index, byte[] data, boolean front, float[] region) {
+        try {
+            int transform = JpegTransform.compose(
+                JpegTransform.fromExifOrientation(ExifOrientation.read(data)),
+                front && !disableExifHeaderStripping ? JpegTransform.FLIP_V : JpegTransform.NONE
+            );
+            if (request.thumbnailSize > 0) {
+                // ahead of the picture, so the UI can show something while the rest is processed
+                thumbnailTaken(request, index, data, transform, region);
+            }
+            byte[] resized = null;
+            if (region != null) {
+                // only the part the preview shows is decoded, then made upright and scaled in the same draw
+                resized = pictureTransform.crop(
+                    data,
+                    transform,
+                    region,
+                    request.width,
+                    request.height,
+                    request.format,
+                    request.quality,
+                    request.maxBytes
+                );
+            } else if (request.width > 0 && request.height > 0) {
+                // the camera only has a few picture sizes; scale to the one asked for, which also drops the EXIF
+                // orientation, so the pixels are made upright in the same draw
+                resized = pictureTransform.resize(
+                    data,
+                    transform,
+                    request.width,
+                    request.height,
+                    request.format,
+                    request.quality,
+                    request.maxBytes
+                );
+            }
+            if (resized != null) {
+                data = resized;
+            } else if (request.format != OutputFormat.JPEG) {
+                // the camera only delivers JPEG
+                data = pictureTransform.apply(data, transform, request.format, request.quality, request.maxBytes);
+            } else {
+                byte[] picture = data;
+                if (!disableExifHeaderStripping) {
+                    data = makeUpright(data, transform, request.quality);
+                }
+                if (request.maxBytes > 0 && data.length > request.maxBytes) {
+                    // too large at the requested quality: decode the picture once and search for a quality that fits
+                    data = pictureTransform.apply(picture, transform, OutputFormat.JPEG, request.quality, request.maxBytes);
                 }
+            }
 
-                if (!storeToFile) {
-                    String encodedImage = Base64.encodeToString(data, Base64.NO_WRAP);
+            if (storeToFile) {
+                // the result is set once the writer has the picture on disk
+                fileWriter.write(data, 0, data.length, getTempFilePath(request.format), new PictureResultCallback(request, index));
+                return;
+            }
 
-                    eventListener.onPictureTaken(encodedImage);
-                } else {
-                    String path = getTempFilePath();
-                    FileOutputStream out = new FileOutputStream(path);
-                    out.write(data);
-                    out.close();
-                    eventListener.onPictureTaken(path);
-                }
-                Log.d(TAG, "CameraPreview pictureTakenHandler called back");
-            } catch (OutOfMemoryError e) {
-                // most likely failed to allocate memory for rotateBitmap
-                Log.d(TAG, "CameraPreview OutOfMemoryError");
-                // failed to allocate memory
-                eventListener.onPictureTakenError("Picture too large (memory)");
-            } catch (IOException e) {
-                Log.d(TAG, "CameraPreview IOException");
-                eventListener.onPictureTakenError("IO Error when extracting exif");
-            } catch (Exception e) {
-                Log.d(TAG, "CameraPreview onPictureTaken general exception");
-            } finally {
-                canTakePicture = true;
-                mCamera.startPreview();
+            String result;
+            if (request.chunkSize > 0) {
+                result = ChunkedTransfer.send(data, 0, data.length, request.chunkSize, resultChunks);
+            } else {
+                result = Base64.encodeToString(data, Base64.NO_WRAP);
             }
-        }
-    };
 
-    private Camera.Size getOptimalPictureSize(
-        final int width,
-        final int height,
-        final Camera.Size previewSize,
-        final List<Camera.Size> supportedSizes
-    ) {
-        /*
-      get the supportedPictureSize that:
-      - matches exactly width and height
-      - has the closest aspect ratio to the preview aspect ratio
-      - has picture.width and picture.height closest to width and height
-      - has the highest supported picture width and height up to 2 Megapixel if width == 0 || height == 0
-    */
-        Camera.Size size = mCamera.new Size(width, height);
+            if (request.setResult(index, result)) {
+                pictureTaken(request);
+            }
+            Log.d(TAG, "CameraPreview pictureTakenHandler called back");
+        } catch (OutOfMemoryError e) {
+            // most likely failed to allocate memory for the decoded picture
+            Log.d(TAG, "CameraPreview OutOfMemoryError");
+            // failed to allocate memory
+            pictureFailed(request, "Picture too large (memory)");
+        } catch (QualitySearch.BudgetExceededException e) {
+            pictureFailed(request, e.getMessage());
+        } catch (IOException e) {
+            Log.d(TAG, "CameraPreview IOException");
+            pictureFailed(request, "IO Error when extracting exif");
+        } catch (Exception e) {
+            Log.d(TAG, "CameraPreview onPictureTaken general exception");
+            pictureFailed(request, "Failed to process picture");
+        }
+    }
 
-        // convert to landscape if necessary
-        if (size.width < size.height) {
-            int temp = size.width;
-            size.width = size.height;
-            size.height = temp;
+    /**
+     * Reports a Base64 JPEG thumbnail of picture {@code index}. A thumbnail that cannot be made is left out rather than
+     * failing the picture it belongs to.
+     */
+    private void thumbnailTaken(CaptureRequest request, int index, byte[] data, int transform, float[] region) {
+        byte[] thumbnail;
+        try {
+            thumbnail = pictureTransform.thumbnail(data, transform, region, request.thumbnailSize, request.quality);
+        } catch (IOException e) {
+            Log.d(TAG, "CameraPreview thumbnail not possible: " + e.getMessage());
+            return;
         }
+        eventListener.onThumbnailTaken(request, index, Base64.encodeToString(thumbnail, Base64.NO_WRAP));
+    }
 
-        Camera.Size requestedSize = mCamera.new Size(size.width, size.height);
+    /**
+     * Reports the file written for picture {@code index} of a request.
+     */
+    private final class PictureResultCallback implements CaptureFileWriter.Callback {
 
-        double previewAspectRatio = (double) previewSize.width / (double) previewSize.height;
+        private final CaptureRequest request;
+        private final int index;
 
-        if (previewAspectRatio < 1.0) {
-            // reset ratio to landscape
-            previewAspectRatio = 1.0 / previewAspectRatio;
+        PictureResultCallback(CaptureRequest request, int index) {
+            this.request = request;
+            this.index = index;
         }
 
-        Log.d(TAG, "CameraPreview previewAspectRatio " + previewAspectRatio);
+        @Override
+        public void onWritten(String path) {
+            if (request.setResult(index, path)) {
+                pictureTaken(request);
+            }
+        }
 
-        double aspectTolerance = 0.1;
-        double bestDifference = Double.MAX_VALUE;
+        @Override
+        public void onError(String message) {
+            pictureFailed(request, message);
+        }
+    }
 
-        for (int i = 0; i < supportedSizes.size(); i++) {
-            Camera.Size supportedSize = supportedSizes.get(i);
+    /**
+     * Applies the EXIF orientation of a picture and mirrors front camera pictures, as given by {@code transform}. With
+     * {@code orientationMode} "exifTag" only the orientation tag is rewritten; otherwise the picture is transformed
+     * losslessly and is only decoded and recompressed when it is not a baseline JPEG.
+     */
+    private byte[] makeUpright(byte[] data, int transform, int quality) throws IOException {
+        if (transform == JpegTransform.NONE) {
+            return data;
+        }
 
-            // Perfect match
-            if (supportedSize.equals(requestedSize)) {
-                Log.d(TAG, "CameraPreview optimalPictureSize " + supportedSize.width + 'x' + supportedSize.height);
-                return supportedSize;
-            }
+        if (ORIENTATION_MODE_EXIF_TAG.equals(orientationMode) && ExifOrientation.write(data, JpegTransform.toExifOrientation(transform))) {
+            return data;
+        }
 
-            double difference = Math.abs(previewAspectRatio - ((double) supportedSize.width / (double) supportedSize.height));
+        try {
+            return JpegTransform.transform(data, transform);
+        } catch (IOException e) {
+            Log.d(TAG, "CameraPreview lossless transform not possible, recompressing: " + e.getMessage());
+        }
+        return pictureTransform.apply(data, transform, OutputFormat.JPEG, quality, 0);
+    }
 
-            if (difference < bestDifference - aspectTolerance) {
-                // better aspectRatio found
-                if ((width != 0 && height != 0) || (supportedSize.width * supportedSize.height < 2048 * 1024)) {
-                    size.width = supportedSize.width;
-                    size.height = supportedSize.height;
-                    bestDifference = difference;
-                }
-            } else if (difference < bestDifference + aspectTolerance) {
-                // same aspectRatio found (within tolerance)
-                if (width == 0 || height == 0) {
-                    // set highest supported resolution below 2 Megapixel
-                    if ((size.width < supportedSize.width) && (supportedSize.width * supportedSize.height < 2048 * 1024)) {
-                        size.width = supportedSize.width;
-                        size.height = supportedSize.height;
-                    }
-                } else {
-                    // check if this pictureSize closer to requested width and height
-                    if (
-                        Math.abs(width * height - supportedSize.width * supportedSize.height) <
-                        Math.abs(width * height - size.width * size.height)
-                    ) {
-                        size.width = supportedSize.width;
-                        size.height = supportedSize.height;
-                    }
-                }
+    private void pictureTaken(CaptureRequest request) {
+        if (captureQueue.finish(request, System.nanoTime())) {
+            String[] pictures = request.getResults();
+            if (request.count == 1) {
+                eventListener.onPictureTaken(request, pictures[0]);
+            } else {
+                eventListener.onBurstTaken(request, pictures);
             }
         }
-        Log.d(TAG, "CameraPreview optimalPictureSize " + size.width + 'x' + size.height);
+        postNextPicture();
+    }
+
+    private void pictureFailed(CaptureRequest request, String message) {
+        if (captureQueue.finish(request, System.nanoTime())) {
+            eventListener.onPictureTakenError(request, message);
+        }
+        postNextPicture();
+    }
+
+    /**
+     * The supported picture size that matches {@code width} x {@code height}, or else has the closest aspect ratio to
+     * the preview and, among those, the closest area; or the largest below 2 megapixels when no size is asked for.
+     */
+    private int[] getOptimalPictureSize(int width, int height, Camera.Size previewSize, int[][] supportedSizes) {
+        SizeSelector.Strategy strategy = width == 0 || height == 0 ? SizeSelector.MAX_UNDER_BUDGET : SizeSelector.AREA_CLOSEST;
+        double previewAspectRatio = (double) previewSize.width / (double) previewSize.height;
+        int[] size = pictureSizes.select(strategy, supportedSizes, width, height, previewAspectRatio);
+        Log.d(TAG, "CameraPreview optimalPictureSize " + size[0] + 'x' + size[1]);
         return size;
     }
 
     static byte[] rotateNV21(final byte[] yuv, final int width, final int height, final int rotation) {
-        if (rotation == 0) return yuv;
-        if (rotation % 90 != 0 || rotation < 0 || rotation > 270) {
-            throw new IllegalArgumentException("0 <= rotation < 360, rotation % 90 == 0");
-        }
-
-        final byte[] output = new byte[yuv.length];
-        final int frameSize = width * height;
-        final boolean swap = rotation % 180 != 0;
-        final boolean xflip = rotation % 270 != 0;
-        final boolean yflip = rotation >= 180;
-
-        for (int j = 0; j < height; j++) {
-            for (int i = 0; i < width; i++) {
-                final int yIn = j * width + i;
-                final int uIn = frameSize + (j >> 1) * width + (i & ~1);
-                final int vIn = uIn + 1;
-
-                final int wOut = swap ? height : width;
-                final int hOut = swap ? width : height;
-                final int iSwapped = swap ? j : i;
-                final int jSwapped = swap ? i : j;
-                final int iOut = xflip ? wOut - iSwapped - 1 : iSwapped;
-                final int jOut = yflip ? hOut - jSwapped - 1 : jSwapped;
-
-                final int yOut = jOut * wOut + iOut;
-                final int uOut = frameSize + (jOut >> 1) * wOut + (iOut & ~1);
-                final int vOut = uOut + 1;
-
-                output[yOut] = (byte) (0xff & yuv[yIn]);
-                output[uOut] = (byte) (0xff & yuv[uIn]);
-                output[vOut] = (byte) (0xff & yuv[vIn]);
-            }
-        }
-        return output;
+        return NV21Transform.rotate(yuv, width, height, rotation);
     }
 
     public void setOpacity(final float opacity) {
@@ -745,108 +1266,500 @@ public class CameraActivity extends Fragment {
         mPreview.setOpacity(opacity);
     }
 
-    public void takeSnapshot(final int quality) {
-        mCamera.setPreviewCallback(
-            new Camera.PreviewCallback() {
+    /**
+     * @param id the callback id of the plugin call the sample is reported to
+     * @param maxBytes when positive, the sample is compressed at the highest quality up to {@code quality} that fits
+     * @param chunkSize when positive, the sample is sent in Base64 chunks of this many characters
+     */
+    public void takeSnapshot(final String id, final OutputFormat format, final int quality, final int maxBytes, final int chunkSize) {
+        final SnapshotPipeline.Callback callback = new SnapshotPipeline.Callback() {
+            @Override
+            public void onEncoded(String image) {
+                eventListener.onSnapshotTaken(id, image, chunkSize > 0);
+            }
+
+            @Override
+            public void onError(String message) {
+                eventListener.onSnapshotTakenError(id, message);
+            }
+        };
+        cameraThread.post(
+            new Runnable() {
                 @Override
-                public void onPreviewFrame(byte[] bytes, Camera camera) {
-                    try {
-                        Camera.Parameters parameters = camera.getParameters();
-                        Camera.Size size = parameters.getPreviewSize();
-                        int orientation = mPreview.getDisplayOrientation();
-                        if (mPreview.getCameraFacing() == Camera.CameraInfo.CAMERA_FACING_FRONT) {
-                            bytes = rotateNV21(bytes, size.width, size.height, (360 - orientation) % 360);
-                        } else {
-                            bytes = rotateNV21(bytes, size.width, size.height, orientation);
-                        }
-                        // switch width/height when rotating 90/270 deg
-                        Rect rect =
-                            orientation == 90 || orientation == 270
-                                ? new Rect(0, 0, size.height, size.width)
-                                : new Rect(0, 0, size.width, size.height);
-                        YuvImage yuvImage = new YuvImage(bytes, parameters.getPreviewFormat(), rect.width(), rect.height(), null);
-                        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-                        yuvImage.compressToJpeg(rect, quality, byteArrayOutputStream);
-                        byte[] data = byteArrayOutputStream.toByteArray();
-                        byteArrayOutputStream.close();
-                        eventListener.onSnapshotTaken(Base64.encodeToString(data, Base64.NO_WRAP));
-                    } catch (IOException e) {
-                        Log.d(TAG, "CameraPreview IOException");
-                        eventListener.onSnapshotTakenError("IO Error");
-                    } finally {
-                        mCamera.setPreviewCallback(null);
+                public void run() {
+                    if (mCamera == null) {
+                        callback.onError("Camera is not running");
+                        return;
                     }
+                    startSnapshot(format, quality, maxBytes, chunkSize, callback);
                 }
             }
         );
     }
 
-    public void takePicture(final int width, final int height, final int quality) {
-        Log.d(TAG, "CameraPreview takePicture width: " + width + ", height: " + height + ", quality: " + quality);
-
-        if (mPreview != null) {
-            if (!canTakePicture) {
+    // Runs on the camera thread, which is also where the preview callback is delivered
+    private void startSnapshot(OutputFormat format, int quality, int maxBytes, int chunkSize, SnapshotPipeline.Callback callback) {
+        if (zslRing != null) {
+            // the preview callback is taken by the ring, so the sample is its newest frame
+            byte[] frame = takeZeroShutterLagFrame(System.nanoTime());
+            if (frame == null) {
+                callback.onError("No preview frame available yet");
                 return;
             }
+            encodePreviewFrame(frame, zslWidth, zslHeight, zslFormat, format, quality, maxBytes, null, chunkSize, callback);
+            return;
+        }
 
-            canTakePicture = false;
+        capturePreviewFrame(format, quality, maxBytes, null, chunkSize, callback);
+    }
 
-            new Thread() {
-                public void run() {
-                    Camera.Parameters params = mCamera.getParameters();
+    // Runs on the camera thread. Encodes the next preview frame; requests made before it arrives share that frame.
+    private void capturePreviewFrame(
+        OutputFormat outputFormat,
+        int quality,
+        int maxBytes,
+        String filePath,
+        int chunkSize,
+        SnapshotPipeline.Callback callback
+    ) {
+        pendingPreviewFrames.add(new PreviewFrameRequest(outputFormat, quality, maxBytes, filePath, chunkSize, callback));
+        if (pendingPreviewFrames.size() > 1) {
+            return;
+        }
 
-                    Camera.Size size = getOptimalPictureSize(width, height, params.getPreviewSize(), params.getSupportedPictureSizes());
-                    params.setPictureSize(size.width, size.height);
-                    currentQuality = quality;
+        Camera.Parameters parameters = currentParameters.get();
+        final Camera.Size size = parameters.getPreviewSize();
+        final int previewFormat = parameters.getPreviewFormat();
+        previewBuffers.resize((size.width * size.height * ImageFormat.getBitsPerPixel(previewFormat)) / 8);
 
-                    if (cameraCurrentlyLocked == Camera.CameraInfo.CAMERA_FACING_FRONT && !storeToFile) {
-                        // The image will be recompressed in the callback
-                        params.setJpegQuality(99);
-                    } else {
-                        params.setJpegQuality(quality);
+        mCamera.setPreviewCallbackWithBuffer(
+            new Camera.PreviewCallback() {
+                @Override
+                public void onPreviewFrame(byte[] bytes, Camera camera) {
+                    camera.setPreviewCallbackWithBuffer(null);
+                    if (bytes == null) {
+                        // the preview size changed after the buffer was sized
+                        failPendingPreviewFrames("Preview frame unavailable");
+                        return;
                     }
 
-                    if (cameraCurrentlyLocked == Camera.CameraInfo.CAMERA_FACING_FRONT && disableExifHeaderStripping) {
-                        Activity activity = getActivity();
-                        int rotation = activity.getWindowManager().getDefaultDisplay().getRotation();
-                        int degrees = 0;
-                        switch (rotation) {
-                            case Surface.ROTATION_0:
-                                degrees = 0;
-                                break;
-                            case Surface.ROTATION_90:
-                                degrees = 180;
-                                break;
-                            case Surface.ROTATION_180:
-                                degrees = 270;
-                                break;
-                            case Surface.ROTATION_270:
-                                degrees = 0;
-                                break;
+                    List<PreviewFrameRequest> requests = new ArrayList<>(pendingPreviewFrames);
+                    pendingPreviewFrames.clear();
+                    for (int i = 0; i < requests.size(); i++) {
+                        byte[] frame = bytes;
+                        if (i < requests.size() - 1) {
+                            // the pipeline takes ownership of each frame, so every extra request gets its own copy
+                            frame = previewBuffers.acquire();
+                            System.arraycopy(bytes, 0, frame, 0, bytes.length);
                         }
-                        int orientation;
-                        Camera.CameraInfo info = new Camera.CameraInfo();
-                        if (info.facing == Camera.CameraInfo.CAMERA_FACING_FRONT) {
-                            orientation = (info.orientation + degrees) % 360;
-                            if (degrees != 0) {
-                                orientation = (360 - orientation) % 360;
-                            }
-                        } else {
-                            orientation = (info.orientation - degrees + 360) % 360;
+                        PreviewFrameRequest request = requests.get(i);
+                        encodePreviewFrame(
+                            frame,
+                            size.width,
+                            size.height,
+                            previewFormat,
+                            request.outputFormat,
+                            request.quality,
+                            request.maxBytes,
+                            request.filePath,
+                            request.chunkSize,
+                            request.callback
+                        );
+                    }
+                }
+            }
+        );
+        mCamera.addCallbackBuffer(previewBuffers.acquire());
+    }
+
+    // Runs on the camera thread
+    private void failPendingPreviewFrames(String message) {
+        List<PreviewFrameRequest> requests = new ArrayList<>(pendingPreviewFrames);
+        pendingPreviewFrames.clear();
+        for (PreviewFrameRequest request : requests) {
+            request.callback.onError(message);
+        }
+    }
+
+    // Runs on the camera thread. Hands the frame over; rotation and encoding happen off the camera thread.
+    private void encodePreviewFrame(
+        byte[] frame,
+        int width,
+        int height,
+        int format,
+        OutputFormat outputFormat,
+        int quality,
+        int maxBytes,
+        String filePath,
+        int chunkSize,
+        SnapshotPipeline.Callback callback
+    ) {
+        int orientation = mPreview.getDisplayOrientation();
+        boolean front = mPreview.getCameraFacing() == Camera.CameraInfo.CAMERA_FACING_FRONT;
+        // front camera frames are made upright and mirrored like the preview, in a single pass
+        int rotation = front ? (360 - orientation) % 360 : orientation;
+        snapshotPipeline.encode(
+            frame,
+            width,
+            height,
+            format,
+            rotation,
+            front,
+            outputFormat,
+            quality,
+            maxBytes,
+            filePath,
+            chunkSize,
+            callback
+        );
+    }
+
+    // Runs on the camera thread. Keeps the latest preview frames in zslRing, so captures that fit the preview size are
+    // served from a frame taken around the time they were requested instead of going through Camera.takePicture.
+    private void startZeroShutterLag() {
+        stopZeroShutterLag();
+
+        Camera.Parameters parameters = currentParameters.get();
+        Camera.Size size = parameters.getPreviewSize();
+        zslWidth = size.width;
+        zslHeight = size.height;
+        zslFormat = parameters.getPreviewFormat();
+        previewBuffers.resize((zslWidth * zslHeight * ImageFormat.getBitsPerPixel(zslFormat)) / 8);
+
+        final PreviewFrameRing ring = new PreviewFrameRing(zeroShutterLagFrames);
+        zslRing = ring;
+        mCamera.setPreviewCallbackWithBuffer(
+            new Camera.PreviewCallback() {
+                @Override
+                public void onPreviewFrame(byte[] bytes, Camera camera) {
+                    if (bytes == null) {
+                        // the camera drops buffers that are too small for the frame, the preview size has grown
+                        if (ring == zslRing && previewSizeChanged()) {
+                            startZeroShutterLag();
                         }
-                        params.setRotation(orientation);
-                    } else {
-                        params.setRotation(mPreview.getDisplayOrientation());
+                        return;
                     }
+                    byte[] evicted = ring.add(bytes, System.nanoTime());
+                    if (evicted != null) {
+                        camera.addCallbackBuffer(evicted);
+                    }
+                }
+            }
+        );
+        // every buffer is allocated up front: the ring fills up while the camera always has a few to write into
+        for (int i = 0; i < ring.capacity() + ZSL_CAMERA_BUFFERS; i++) {
+            mCamera.addCallbackBuffer(previewBuffers.acquire());
+        }
+    }
+
+    // Runs on the camera thread
+    private void stopZeroShutterLag() {
+        if (zslRing == null) {
+            return;
+        }
+        mCamera.setPreviewCallbackWithBuffer(null);
+        for (byte[] frame : zslRing.clear()) {
+            previewBuffers.release(frame);
+        }
+        zslRing = null;
+    }
+
+    // Runs on the camera thread
+    private boolean previewSizeChanged() {
+        Camera.Size size = currentParameters.get().getPreviewSize();
+        return size.width != zslWidth || size.height != zslHeight;
+    }
 
-                    mCamera.setParameters(params);
-                    mCamera.takePicture(shutterCallback, null, jpegPictureCallback);
+    /**
+     * Runs on the camera thread. Takes the ring frame closest to {@code nanos} and gives the camera a buffer in its place.
+     *
+     * @return the frame, now owned by the caller, or {@code null} if the ring has no usable frame
+     */
+    private byte[] takeZeroShutterLagFrame(long nanos) {
+        if (previewSizeChanged()) {
+            // the frames in the ring have the old size
+            startZeroShutterLag();
+            return null;
+        }
+        byte[] frame = zslRing.takeClosest(nanos);
+        if (frame != null) {
+            mCamera.addCallbackBuffer(previewBuffers.acquire());
+        }
+        return frame;
+    }
+
+    /**
+     * Runs on the camera thread. Serves a single uncropped picture without a thumbnail that fits within the preview size
+     * from a preview frame: the
+     * zero shutter lag frame closest to the request when the ring is running, otherwise the next frame when
+     * {@link #autoPreviewCapture} is set. That skips the picture size switch, the shutter and the preview restart.
+     *
+     * @return whether the request is being served from a preview frame
+     */
+    private boolean takePreviewFramePicture(final CaptureRequest request) {
+        if (request.count != 1 || request.thumbnailSize > 0 || request.cropToPreview || (zslRing == null && !autoPreviewCapture)) {
+            return false;
+        }
+
+        SnapshotPipeline.Callback callback = new SnapshotPipeline.Callback() {
+            @Override
+            public void onEncoded(String picture) {
+                request.pictureArrived(System.nanoTime());
+                if (request.setResult(0, picture)) {
+                    pictureTaken(request);
+                }
+            }
+
+            @Override
+            public void onError(String message) {
+                pictureFailed(request, message);
+            }
+        };
+
+        if (zslRing != null) {
+            if (!fitsPreviewSize(request.width, request.height, zslWidth, zslHeight)) {
+                return false;
+            }
+            byte[] frame = takeZeroShutterLagFrame(request.getEnqueuedNanos());
+            if (frame == null) {
+                return false;
+            }
+            request.markFromPreviewFrame();
+            String filePath = storeToFile ? getTempFilePath(request.format) : null;
+            encodePreviewFrame(
+                frame,
+                zslWidth,
+                zslHeight,
+                zslFormat,
+                request.format,
+                request.quality,
+                request.maxBytes,
+                filePath,
+                request.chunkSize,
+                callback
+            );
+            return true;
+        }
+
+        Camera.Size size = currentParameters.get().getPreviewSize();
+        if (!fitsPreviewSize(request.width, request.height, size.width, size.height)) {
+            return false;
+        }
+        request.markFromPreviewFrame();
+        String filePath = storeToFile ? getTempFilePath(request.format) : null;
+        capturePreviewFrame(request.format, request.quality, request.maxBytes, filePath, request.chunkSize, callback);
+        return true;
+    }
+
+    private static boolean fitsPreviewSize(int width, int height, int previewWidth, int previewHeight) {
+        return (
+            width > 0 &&
+            height > 0 &&
+            Math.max(width, height) <= Math.max(previewWidth, previewHeight) &&
+            Math.min(width, height) <= Math.min(previewWidth, previewHeight)
+        );
+    }
+
+    public void takePicture(final String requestId, final int width, final int height, final int quality) {
+        takePicture(requestId, width, height, OutputFormat.JPEG, quality, 0, 0, 0, false);
+    }
+
+    /**
+     * Queues a picture. The result, or the reason it could not be taken, is reported to the listener with the same
+     * request, whose id is {@code requestId}.
+     *
+     * @param maxBytes when positive, the picture is compressed at the highest quality up to {@code quality} that fits in
+     *     this many bytes, or fails if it does not fit at all
+     * @param chunkSize when positive and pictures are not stored to files, the picture is sent in Base64 chunks of this
+     *     many characters and the result is the transfer id
+     * @param thumbnailSize when positive, a JPEG thumbnail at most this many pixels on its long edge is reported with
+     *     {@link CameraPreviewListener#onThumbnailTaken} before the picture
+     * @param cropToPreview whether to keep only the part of the picture the preview shows, before it is scaled to
+     *     {@code width} x {@code height}
+     */
+    public void takePicture(
+        final String requestId,
+        final int width,
+        final int height,
+        final OutputFormat format,
+        final int quality,
+        final int maxBytes,
+        final int chunkSize,
+        final int thumbnailSize,
+        final boolean cropToPreview
+    ) {
+        Log.d(TAG, "CameraPreview takePicture width: " + width + ", height: " + height + ", quality: " + quality);
+        queuePicture(new CaptureRequest(requestId, 1, width, height, format, quality, maxBytes, chunkSize, thumbnailSize, cropToPreview));
+    }
+
+    /**
+     * Queues {@code count} pictures taken back to back. The camera takes the next picture as soon as the previous
+     * JPEG arrives while earlier pictures are still being processed; the results are reported together, in the order
+     * they were taken. With a {@code maxBytes}, {@code chunkSize}, {@code thumbnailSize} or {@code cropToPreview} every
+     * picture is compressed, sent in chunks, reported as a thumbnail or cropped on its own, as for {@link #takePicture}.
+     */
+    public void takeBurst(
+        final String requestId,
+        final int count,
+        final int width,
+        final int height,
+        final OutputFormat format,
+        final int quality,
+        final int maxBytes,
+        final int chunkSize,
+        final int thumbnailSize,
+        final boolean cropToPreview
+    ) {
+        Log.d(TAG, "CameraPreview takeBurst count: " + count + ", width: " + width + ", height: " + height + ", quality: " + quality);
+        queuePicture(
+            new CaptureRequest(requestId, count, width, height, format, quality, maxBytes, chunkSize, thumbnailSize, cropToPreview)
+        );
+    }
+
+    private void queuePicture(CaptureRequest request) {
+        if (mPreview == null) {
+            eventListener.onPictureTakenError(request, "Camera is not running");
+            return;
+        }
+
+        CaptureRequest turnedAway = captureQueue.offer(request, System.nanoTime());
+        if (turnedAway != null) {
+            Log.d(TAG, "CameraPreview capture queue full, turning away " + turnedAway.id);
+            eventListener.onPictureTakenError(turnedAway, "Capture queue is full");
+        }
+
+        postNextPicture();
+    }
+
+    private void postNextPicture() {
+        cameraThread.post(
+            new Runnable() {
+                @Override
+                public void run() {
+                    startNextPicture();
                 }
             }
-                .start();
+        );
+    }
+
+    /**
+     * @param janitor keeps the files written for {@code storeToFile} within bounds, or {@code null} to keep them all
+     */
+    public void setFileStorageOptions(CaptureFileWriter.SyncPolicy syncPolicy, CaptureFileJanitor janitor) {
+        fileWriter.configure(syncPolicy, janitor);
+        fileWriter.trim();
+    }
+
+    CaptureFileWriter getFileWriter() {
+        return fileWriter;
+    }
+
+    /**
+     * @param index where the capabilities of every camera opened are kept, across starts of the app
+     */
+    public void setCapabilityIndex(CameraCapabilityIndex index) {
+        capabilityIndex = index;
+    }
+
+    /**
+     * @return what the open camera supports, or {@code null} while no camera is open
+     */
+    CameraCapabilities getCapabilities() {
+        return capabilities;
+    }
+
+    // Runs on the camera thread. Reads the parameters of a camera only the first time it is ever opened.
+    private CameraCapabilities loadCapabilities(Camera camera, int cameraId) {
+        CameraCapabilities cameraCapabilities = capabilityIndex.get(cameraId);
+        if (cameraCapabilities == null) {
+            cameraCapabilities = CameraCapabilities.from(currentParameters.get());
+            capabilityIndex.put(cameraId, cameraCapabilities);
+        }
+        return cameraCapabilities;
+    }
+
+    /**
+     * @param encoder compresses JPEG samples taken from preview frames
+     */
+    public void setSnapshotEncoder(FrameEncoder encoder) {
+        snapshotPipeline.setFrameEncoder(encoder);
+    }
+
+    /**
+     * @param depth how many captures may wait while one is being taken
+     */
+    public void setCaptureQueueOptions(int depth, CaptureQueue.OverflowPolicy policy) {
+        captureQueue.configure(depth, policy);
+    }
+
+    // Runs on the camera thread
+    private void startNextPicture() {
+        if (mCamera == null || inStandby) {
+            // picked up again once the camera is open and its preview running
+            return;
+        }
+
+        CaptureRequest request = captureQueue.next(System.nanoTime());
+        if (request == null) {
+            return;
+        }
+
+        try {
+            if (!takePreviewFramePicture(request)) {
+                startPicture(request);
+            }
+        } catch (RuntimeException e) {
+            Log.d(TAG, "CameraPreview takePicture failed", e);
+            pictureFailed(request, "Failed to take picture");
+        }
+    }
+
+    // Runs on the camera thread, which is also where jpegPictureCallback is delivered
+    private void startPicture(CaptureRequest request) {
+        Camera.Parameters params = currentParameters.get();
+
+        int[] size = getOptimalPictureSize(request.width, request.height, params.getPreviewSize(), capabilities.getPictureSizes());
+        params.setPictureSize(size[0], size[1]);
+
+        // orientation is applied losslessly in the callback, so the camera encodes at the final quality
+        params.setJpegQuality(request.quality);
+
+        if (cameraCurrentlyLocked == Camera.CameraInfo.CAMERA_FACING_FRONT && disableExifHeaderStripping) {
+            Activity activity = getActivity();
+            int rotation = activity.getWindowManager().getDefaultDisplay().getRotation();
+            int degrees = 0;
+            switch (rotation) {
+                case Surface.ROTATION_0:
+                    degrees = 0;
+                    break;
+                case Surface.ROTATION_90:
+                    degrees = 180;
+                    break;
+                case Surface.ROTATION_180:
+                    degrees = 270;
+                    break;
+                case Surface.ROTATION_270:
+                    degrees = 0;
+                    break;
+            }
+            int orientation;
+            Camera.CameraInfo info = new Camera.CameraInfo();
+            if (info.facing == Camera.CameraInfo.CAMERA_FACING_FRONT) {
+                orientation = (info.orientation + degrees) % 360;
+                if (degrees != 0) {
+                    orientation = (360 - orientation) % 360;
+                }
+            } else {
+                orientation = (info.orientation - degrees + 360) % 360;
+            }
+            params.setRotation(orientation);
         } else {
-            canTakePicture = true;
+            params.setRotation(mPreview.getDisplayOrientation());
         }
+
+        currentParameters.apply(params);
+        mCamera.takePicture(shutterCallback, null, jpegPictureCallback);
+        captureQueue.startShots(request);
     }
 
     public void startRecord(
@@ -858,6 +1771,18 @@ public class CameraActivity extends Fragment {
         final boolean withFlash,
         final int maxDuration
     ) {
+        cameraThread.post(
+            new Runnable() {
+                @Override
+                public void run() {
+                    startRecording(filePath, camera, width, height, quality, withFlash, maxDuration);
+                }
+            }
+        );
+    }
+
+    // Runs on the camera thread
+    private void startRecording(String filePath, String camera, int width, int height, int quality, boolean withFlash, int maxDuration) {
         Log.d(TAG, "CameraPreview startRecord camera: " + camera + " width: " + width + ", height: " + height + ", quality: " + quality);
         Activity activity = getActivity();
         muteStream(true, activity);
@@ -871,12 +1796,11 @@ public class CameraActivity extends Fragment {
         int videoWidth = 0; //set whatever
         int videoHeight = 0; //set whatever
 
-        Camera.Parameters cameraParams = mCamera.getParameters();
         if (withFlash) {
-            cameraParams.setFlashMode(withFlash ? Camera.Parameters.FLASH_MODE_TORCH : Camera.Parameters.FLASH_MODE_OFF);
-            mCamera.setParameters(cameraParams);
-            mCamera.startPreview();
+            currentParameters.set(CameraParameters.KEY_FLASH_MODE, Camera.Parameters.FLASH_MODE_TORCH);
         }
+        // the camera cannot be configured while the recorder holds it
+        currentParameters.commit();
 
         mCamera.unlock();
         mRecorder = new MediaRecorder();
@@ -960,6 +1884,18 @@ public class CameraActivity extends Fragment {
     }
 
     public void stopRecord() {
+        cameraThread.post(
+            new Runnable() {
+                @Override
+                public void run() {
+                    stopRecording();
+                }
+            }
+        );
+    }
+
+    // Runs on the camera thread
+    private void stopRecording() {
         Log.d(TAG, "stopRecord");
 
         try {
@@ -968,9 +1904,12 @@ public class CameraActivity extends Fragment {
             mRecorder.release(); // release the recorder object
             mRecorder = null;
             mCamera.lock();
-            Camera.Parameters cameraParams = mCamera.getParameters();
-            cameraParams.setFlashMode(Camera.Parameters.FLASH_MODE_OFF);
-            mCamera.setParameters(cameraParams);
+            // the recorder changes the parameters while it holds the camera
+            currentParameters.invalidate();
+            if (capabilities.getFlashModes() != null) {
+                currentParameters.set(CameraParameters.KEY_FLASH_MODE, Camera.Parameters.FLASH_MODE_OFF);
+                currentParameters.commit();
+            }
             mCamera.startPreview();
             eventListener.onStopRecordVideo(this.recordFilePath);
         } catch (Exception e) {
@@ -984,16 +1923,28 @@ public class CameraActivity extends Fragment {
     }
 
     public void setFocusArea(final int pointX, final int pointY, final Camera.AutoFocusCallback callback) {
+        cameraThread.post(
+            new Runnable() {
+                @Override
+                public void run() {
+                    focusOnArea(pointX, pointY, callback);
+                }
+            }
+        );
+    }
+
+    // Runs on the camera thread, which is also where the auto focus callback is delivered
+    private void focusOnArea(int pointX, int pointY, Camera.AutoFocusCallback callback) {
         if (mCamera != null) {
             mCamera.cancelAutoFocus();
 
-            Camera.Parameters parameters = mCamera.getParameters();
+            Camera.Parameters parameters = currentParameters.get();
 
             Rect focusRect = calculateTapArea(pointX, pointY, 1f);
             parameters.setFocusMode(Camera.Parameters.FOCUS_MODE_AUTO);
             parameters.setFocusAreas(Arrays.asList(new Camera.Area(focusRect, 1000)));
 
-            if (parameters.getMaxNumMeteringAreas() > 0) {
+            if (capabilities.getMaxNumMeteringAreas() > 0) {
                 Rect meteringRect = calculateTapArea(pointX, pointY, 1.5f);
                 parameters.setMeteringAreas(Arrays.asList(new Camera.Area(meteringRect, 1000)));
             }
@@ -0,0 +1,303 @@
+package com.ahm.capacitor.camera.preview;
+
+import android.hardware.Camera;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What one camera supports: its preview and picture sizes, flash and focus modes, zoom ratios, exposure compensation,
+ * preview fps ranges and focus and metering areas. None of it changes while the camera is open, or until the system is
+ * updated, so it is read from {@link Camera#getParameters()} once and kept in the {@link CameraCapabilityIndex}. Only
+ * what the camera is currently set to still needs the parameters.
+ *
+ * Sizes are kept as {@code {width, height}} pairs since a {@link Camera.Size} can only be made from an open camera. The
+ * size tables are shared, as they are to be chosen from by a {@link SizeSelector}, and must not be changed.
+ */
+final class CameraCapabilities {
+
+    // far more entries than any camera lists, a damaged file must not make us allocate whatever its counts say
+    private static final int MAX_COUNT = 4096;
+
+    private final int[][] previewSizes;
+    private final int[][] pictureSizes;
+    // null when the camera has no flash, as with Camera.Parameters
+    private final List<String> flashModes;
+    private final List<String> focusModes;
+    // in 1/100 increments, empty when the camera does not zoom
+    private final int[] zoomRatios;
+    // both 0 when exposure compensation is not supported
+    private final int minExposureCompensation;
+    private final int maxExposureCompensation;
+    // in EV
+    private final float exposureCompensationStep;
+    // {min, max} in frames per second times 1000
+    private final int[][] fpsRanges;
+    private final int maxNumFocusAreas;
+    private final int maxNumMeteringAreas;
+
+    CameraCapabilities(
+        int[][] previewSizes,
+        int[][] pictureSizes,
+        List<String> flashModes,
+        List<String> focusModes,
+        int[] zoomRatios,
+        int minExposureCompensation,
+        int maxExposureCompensation,
+        float exposureCompensationStep,
+        int[][] fpsRanges,
+        int maxNumFocusAreas,
+        int maxNumMeteringAreas
+    ) {
+        this.previewSizes = previewSizes;
+        this.pictureSizes = pictureSizes;
+        this.flashModes = flashModes == null ? null : Collections.unmodifiableList(new ArrayList<>(flashModes));
+        this.focusModes = Collections.unmodifiableList(focusModes == null ? new ArrayList<String>() : new ArrayList<>(focusModes));
+        this.zoomRatios = zoomRatios;
+        this.minExposureCompensation = minExposureCompensation;
+        this.maxExposureCompensation = maxExposureCompensation;
+        this.exposureCompensationStep = exposureCompensationStep;
+        this.fpsRanges = fpsRanges;
+        this.maxNumFocusAreas = maxNumFocusAreas;
+        this.maxNumMeteringAreas = maxNumMeteringAreas;
+    }
+
+    static CameraCapabilities from(Camera.Parameters parameters) {
+        int[] zoomRatios = new int[0];
+        if (parameters.isZoomSupported()) {
+            List<Integer> ratios = parameters.getZoomRatios();
+            zoomRatios = new int[ratios.size()];
+            for (int i = 0; i < zoomRatios.length; i++) {
+                zoomRatios[i] = ratios.get(i);
+            }
+        }
+        List<int[]> fpsRanges = parameters.getSupportedPreviewFpsRange();
+        return new CameraCapabilities(
+            toPairs(parameters.getSupportedPreviewSizes()),
+            toPairs(parameters.getSupportedPictureSizes()),
+            parameters.getSupportedFlashModes(),
+            parameters.getSupportedFocusModes(),
+            zoomRatios,
+            parameters.getMinExposureCompensation(),
+            parameters.getMaxExposureCompensation(),
+            parameters.getExposureCompensationStep(),
+            fpsRanges == null ? new int[0][] : fpsRanges.toArray(new int[0][]),
+            parameters.getMaxNumFocusAreas(),
+            parameters.getMaxNumMeteringAreas()
+        );
+    }
+
+    int[][] getPreviewSizes() {
+        return previewSizes;
+    }
+
+    int[][] getPictureSizes() {
+        return pictureSizes;
+    }
+
+    List<String> getFlashModes() {
+        return flashModes;
+    }
+
+    List<String> getFocusModes() {
+        return focusModes;
+    }
+
+    boolean isZoomSupported() {
+        return zoomRatios.length > 0;
+    }
+
+    int getMaxZoom() {
+        return Math.max(0, zoomRatios.length - 1);
+    }
+
+    int[] getZoomRatios() {
+        return zoomRatios.clone();
+    }
+
+    /**
+     * @return the zoom index whose ratio is closest to {@code ratio}, where 1 is no zoom
+     */
+    int getZoomIndex(float ratio) {
+        int index = 0;
+        for (int i = 1; i < zoomRatios.length; i++) {
+            if (Math.abs(zoomRatios[i] - ratio * 100) < Math.abs(zoomRatios[index] - ratio * 100)) {
+                index = i;
+            }
+        }
+        return index;
+    }
+
+    boolean isExposureCompensationSupported() {
+        return minExposureCompensation != 0 || maxExposureCompensation != 0;
+    }
+
+    /**
+     * @return the exposure compensation index closest to {@code ev}, within what the camera supports
+     */
+    int getExposureCompensationIndex(float ev) {
+        if (exposureCompensationStep <= 0) {
+            return 0;
+        }
+        int index = Math.round(ev / exposureCompensationStep);
+        return Math.max(minExposureCompensation, Math.min(maxExposureCompensation, index));
+    }
+
+    int[][] getFpsRanges() {
+        return copy(fpsRanges);
+    }
+
+    int getMaxNumFocusAreas() {
+        return maxNumFocusAreas;
+    }
+
+    int getMaxNumMeteringAreas() {
+        return maxNumMeteringAreas;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        writePairs(out, previewSizes);
+        writePairs(out, pictureSizes);
+        writeStrings(out, flashModes);
+        writeStrings(out, focusModes);
+        out.writeInt(zoomRatios.length);
+        for (int ratio : zoomRatios) {
+            out.writeInt(ratio);
+        }
+        out.writeInt(minExposureCompensation);
+        out.writeInt(maxExposureCompensation);
+        out.writeFloat(exposureCompensationStep);
+        writePairs(out, fpsRanges);
+        out.writeInt(maxNumFocusAreas);
+        out.writeInt(maxNumMeteringAreas);
+    }
+
+    static CameraCapabilities read(DataInputStream in) throws IOException {
+        int[][] previewSizes = readPairs(in);
+        int[][] pictureSizes = readPairs(in);
+        List<String> flashModes = readStrings(in);
+        List<String> focusModes = readStrings(in);
+        int[] zoomRatios = new int[readCount(in)];
+        for (int i = 0; i < zoomRatios.length; i++) {
+            zoomRatios[i] = in.readInt();
+        }
+        int minExposureCompensation = in.readInt();
+        int maxExposureCompensation = in.readInt();
+        float exposureCompensationStep = in.readFloat();
+        int[][] fpsRanges = readPairs(in);
+        int maxNumFocusAreas = in.readInt();
+        int maxNumMeteringAreas = in.readInt();
+        return new CameraCapabilities(
+            previewSizes,
+            pictureSizes,
+            flashModes,
+            focusModes,
+            zoomRatios,
+            minExposureCompensation,
+            maxExposureCompensation,
+            exposureCompensationStep,
+            fpsRanges,
+            maxNumFocusAreas,
+            maxNumMeteringAreas
+        );
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof CameraCapabilities)) {
+            return false;
+        }
+        CameraCapabilities other = (CameraCapabilities) o;
+        return (
+            Arrays.deepEquals(previewSizes, other.previewSizes) &&
+            Arrays.deepEquals(pictureSizes, other.pictureSizes) &&
+            (flashModes == null ? other.flashModes == null : flashModes.equals(other.flashModes)) &&
+            focusModes.equals(other.focusModes) &&
+            Arrays.equals(zoomRatios, other.zoomRatios) &&
+            minExposureCompensation == other.minExposureCompensation &&
+            maxExposureCompensation == other.maxExposureCompensation &&
+            exposureCompensationStep == other.exposureCompensationStep &&
+            Arrays.deepEquals(fpsRanges, other.fpsRanges) &&
+            maxNumFocusAreas == other.maxNumFocusAreas &&
+            maxNumMeteringAreas == other.maxNumMeteringAreas
+        );
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.deepHashCode(previewSizes) * 31 + Arrays.deepHashCode(pictureSizes);
+    }
+
+    private static int[][] toPairs(List<Camera.Size> sizes) {
+        if (sizes == null) {
+            return new int[0][];
+        }
+        int[][] pairs = new int[sizes.size()][];
+        for (int i = 0; i < pairs.length; i++) {
+            pairs[i] = new int[] { sizes.get(i).width, sizes.get(i).height };
+        }
+        return pairs;
+    }
+
+    private static int[][] copy(int[][] pairs) {
+        int[][] copy = new int[pairs.length][];
+        for (int i = 0; i < pairs.length; i++) {
+            copy[i] = pairs[i].clone();
+        }
+        return copy;
+    }
+
+    private static void writePairs(DataOutputStream out, int[][] pairs) throws IOException {
+        out.writeInt(pairs.length);
+        for (int[] pair : pairs) {
+            out.writeInt(pair[0]);
+            out.writeInt(pair[1]);
+        }
+    }
+
+    private static int[][] readPairs(DataInputStream in) throws IOException {
+        int[][] pairs = new int[readCount(in)][];
+        for (int i = 0; i < pairs.length; i++) {
+            pairs[i] = new int[] { in.readInt(), in.readInt() };
+        }
+        return pairs;
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException {
+        if (strings == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            out.writeUTF(string);
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            return null;
+        }
+        if (count > MAX_COUNT) {
+            throw new IOException("Invalid count " + count);
+        }
+        List<String> strings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            strings.add(in.readUTF());
+        }
+        return strings;
+    }
+
+    private static int readCount(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > MAX_COUNT) {
+            throw new IOException("Invalid count " + count);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,119 @@
+package com.ahm.capacitor.camera.preview;
+
+import android.util.Log;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The {@link CameraCapabilities} of every camera opened so far, by camera id, kept in a file so later starts of the app
+ * do not read them from the camera again.
+ *
+ * The file is tied to the build fingerprint: a system update can change what the cameras support, so a file written
+ * under another fingerprint, or one that cannot be read, is ignored and replaced as cameras are opened again. Without a
+ * file the index only lives in memory.
+ */
+final class CameraCapabilityIndex {
+
+    private static final String TAG = "CameraCapabilityIndex";
+    // bump when the layout written by CameraCapabilities changes
+    private static final int VERSION = 2;
+
+    private final File file;
+    private final String fingerprint;
+    private final Map<Integer, CameraCapabilities> capabilities = new HashMap<>();
+    private boolean loaded;
+
+    /**
+     * @param file where the index is kept, or {@code null} to keep it in memory only
+     * @param fingerprint the build fingerprint the capabilities are valid for
+     */
+    CameraCapabilityIndex(File file, String fingerprint) {
+        this.file = file;
+        this.fingerprint = fingerprint == null ? "" : fingerprint;
+    }
+
+    /**
+     * @return the capabilities of camera {@code cameraId}, or {@code null} if they are not known yet
+     */
+    synchronized CameraCapabilities get(int cameraId) {
+        load();
+        return capabilities.get(cameraId);
+    }
+
+    /**
+     * Adds the capabilities of camera {@code cameraId} and writes the index to its file.
+     */
+    synchronized void put(int cameraId, CameraCapabilities cameraCapabilities) {
+        load();
+        capabilities.put(cameraId, cameraCapabilities);
+        save();
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (file == null || !file.exists()) {
+            return;
+        }
+
+        Map<Integer, CameraCapabilities> read = new HashMap<>();
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != VERSION || !fingerprint.equals(in.readUTF())) {
+                    return;
+                }
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    int cameraId = in.readInt();
+                    read.put(cameraId, CameraCapabilities.read(in));
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            Log.d(TAG, "ignoring unreadable capability index", e);
+            return;
+        }
+        capabilities.putAll(read);
+    }
+
+    private void save() {
+        if (file == null) {
+            return;
+        }
+
+        // written next to the file and renamed over it, so a reader never sees half an index
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            try {
+                out.writeInt(VERSION);
+                out.writeUTF(fingerprint);
+                out.writeInt(capabilities.size());
+                for (Map.Entry<Integer, CameraCapabilities> entry : capabilities.entrySet()) {
+                    out.writeInt(entry.getKey());
+                    entry.getValue().write(out);
+                }
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("Failed to rename " + temp);
+            }
+        } catch (IOException e) {
+            Log.d(TAG, "failed to write capability index", e);
+            temp.delete();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.ahm.capacitor.camera.preview;
+
+import android.hardware.Camera;
+import android.util.Log;
+import java.util.Map;
+
+/**
+ * The open camera's {@link Camera.Parameters}, read from the camera once rather than on every call that needs them.
+ *
+ * Settings changed with {@link #set} are tracked in a {@link ParameterTransaction} and written with a single
+ * {@code setParameters} one preview frame interval after the first of them, so a pinch or a few setters in a row cost one
+ * write, and none at all when nothing really changed. Code that needs the whole parameters, to set sizes or focus areas,
+ * edits {@link #get()} and writes it right away with {@link #apply}, taking the pending settings along. Once a write
+ * fails the parameters are read from the camera again. Used on the camera thread only.
+ */
+final class CameraParameters {
+
+    static final String KEY_FLASH_MODE = "flash-mode";
+    static final String KEY_FOCUS_MODE = "focus-mode";
+    static final String KEY_ZOOM = "zoom";
+    static final String KEY_EXPOSURE_COMPENSATION = "exposure-compensation";
+
+    private static final String TAG = "CameraParameters";
+    private static final long DEFAULT_FRAME_INTERVAL_MILLIS = 33;
+
+    private final CameraThread cameraThread;
+    private final ParameterTransaction transaction = new ParameterTransaction();
+    private final Runnable scheduledCommit = new Runnable() {
+        @Override
+        public void run() {
+            commitScheduled = false;
+            try {
+                commit();
+            } catch (RuntimeException e) {
+                Log.d(TAG, "failed to apply camera settings", e);
+            }
+        }
+    };
+
+    private Camera camera;
+    // null until read, and again after a failed write
+    private Camera.Parameters parameters;
+    private long frameIntervalMillis = DEFAULT_FRAME_INTERVAL_MILLIS;
+    private boolean commitScheduled;
+
+    CameraParameters(CameraThread cameraThread) {
+        this.cameraThread = cameraThread;
+    }
+
+    /**
+     * Switches to {@code camera}, or to none when {@code null}. Settings still pending for the previous camera are dropped.
+     */
+    void attach(Camera camera) {
+        this.camera = camera;
+        invalidate();
+    }
+
+    /**
+     * Forgets the parameters, for when something else, such as a {@code MediaRecorder}, changed them.
+     */
+    void invalidate() {
+        parameters = null;
+        transaction.reset(null);
+    }
+
+    /**
+     * @return the parameters including the pending settings; only change them to write them with {@link #apply}
+     */
+    Camera.Parameters get() {
+        if (parameters == null) {
+            parameters = camera.getParameters();
+            transaction.reset(parameters.flatten());
+            int[] fpsRange = new int[2];
+            parameters.getPreviewFpsRange(fpsRange);
+            int maxFps = fpsRange[Camera.Parameters.PREVIEW_FPS_MAX_INDEX];
+            frameIntervalMillis = maxFps > 0 ? Math.max(1, 1000000L / maxFps) : DEFAULT_FRAME_INTERVAL_MILLIS;
+        }
+        return parameters;
+    }
+
+    String get(String key) {
+        return get().get(key);
+    }
+
+    int getInt(String key, int defaultValue) {
+        String value = get(key);
+        try {
+            return value == null ? defaultValue : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Changes one setting, written with any other change made within the next frame interval.
+     */
+    void set(String key, String value) {
+        get().set(key, value);
+        if (transaction.set(key, value) && !commitScheduled) {
+            commitScheduled = true;
+            cameraThread.postDelayed(scheduledCommit, frameIntervalMillis);
+        }
+    }
+
+    /**
+     * Writes the pending settings now, if there are any.
+     */
+    void commit() {
+        if (camera == null || transaction.isEmpty()) {
+            return;
+        }
+        Map<String, String> changes = transaction.commit();
+        Log.d(TAG, "applying " + changes.keySet());
+        write(parameters);
+    }
+
+    /**
+     * Writes {@code edited}, with the pending settings if it is what {@link #get()} returned, and keeps it as the
+     * camera's parameters.
+     */
+    void apply(Camera.Parameters edited) {
+        write(edited);
+        parameters = edited;
+        transaction.reset(edited.flatten());
+    }
+
+    private void write(Camera.Parameters edited) {
+        try {
+            camera.setParameters(edited);
+        } catch (RuntimeException e) {
+            invalidate();
+            throw e;
+        }
+    }
+}
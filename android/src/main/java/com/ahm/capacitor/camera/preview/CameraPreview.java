@@ -9,12 +9,18 @@ import android.content.pm.ActivityInfo;
 import android.graphics.Color;
 import android.graphics.Point;
 import android.hardware.Camera;
+import android.net.Uri;
+import android.os.Build;
+import android.os.SystemClock;
 import android.util.DisplayMetrics;
 import android.util.TypedValue;
 import android.view.Display;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+import android.webkit.WebView;
 import android.widget.FrameLayout;
 import com.getcapacitor.JSObject;
 import com.getcapacitor.Logger;
@@ -26,7 +32,9 @@ import com.getcapacitor.annotation.CapacitorPlugin;
 import com.getcapacitor.annotation.Permission;
 import com.getcapacitor.annotation.PermissionCallback;
 import java.io.File;
+import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import org.json.JSONArray;
 
 @CapacitorPlugin(name = "CameraPreview", permissions = { @Permission(strings = { CAMERA }, alias = CameraPreview.CAMERA_PERMISSION_ALIAS) })
@@ -35,12 +43,14 @@ public class CameraPreview extends Plugin implements CameraActivity.CameraPrevie
     static final String CAMERA_PERMISSION_ALIAS = "camera";
 
     private static String VIDEO_FILE_PATH = "";
-    private static String VIDEO_FILE_EXTENSION = ".mp4";
+    private static String VIDEO_FILE_EXTENSION = CaptureFileServer.VIDEO_EXTENSION;
+    private static final long DEFAULT_STORE_TO_FILE_MAX_BYTES = 256L * 1024 * 1024;
+    private static final String CAPABILITY_INDEX_FILE = "cpcp_camera_capabilities";
 
-    private String captureCallbackId = "";
-    private String snapshotCallbackId = "";
     private String recordCallbackId = "";
     private String cameraStartCallbackId = "";
+    // elapsedRealtime when start began opening the camera, for timeToFirstFrame
+    private long startRequestedAt;
 
     // keep track of previously specified orientation to support locking orientation:
     private int previousOrientationRequest = -1;
@@ -48,6 +58,66 @@ public class CameraPreview extends Plugin implements CameraActivity.CameraPrevie
     private CameraActivity fragment;
     private int containerViewId = 20;
 
+    // serves pictures stored to files and recorded videos to the WebView, see load()
+    private CaptureFileServer fileServer;
+    private boolean storeToFile = false;
+
+    // what each camera supports, kept across starts of the app, see load()
+    private CameraCapabilityIndex capabilityIndex;
+
+    @Override
+    public void load() {
+        fileServer = new CaptureFileServer(getContext().getCacheDir());
+        // not backed up: the capabilities are only valid on this device
+        capabilityIndex = new CameraCapabilityIndex(new File(getContext().getNoBackupFilesDir(), CAPABILITY_INDEX_FILE), Build.FINGERPRINT);
+        // keeps the client installed so far working; one installed later must delegate the same way or the file URLs stop
+        // working
+        bridge.setWebViewClient(
+            new DelegatingWebViewClient(bridge, bridge.getWebViewClient()) {
+                @Override
+                public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+                    WebResourceResponse response = serveFile(request);
+                    return response != null ? response : super.shouldInterceptRequest(view, request);
+                }
+            }
+        );
+    }
+
+    private WebResourceResponse serveFile(WebResourceRequest request) {
+        Uri url = request.getUrl();
+        String localHost = Uri.parse(bridge.getLocalUrl()).getHost();
+        if (localHost == null || !localHost.equals(url.getHost())) {
+            return null;
+        }
+
+        String range = null;
+        for (Map.Entry<String, String> header : request.getRequestHeaders().entrySet()) {
+            if ("Range".equalsIgnoreCase(header.getKey())) {
+                range = header.getValue();
+            }
+        }
+
+        CaptureFileServer.Response response;
+        try {
+            response = fileServer.handle(request.getMethod(), url.getPath(), range);
+        } catch (IOException e) {
+            Logger.debug(getLogTag(), "Serving " + url.getPath() + " failed: " + e);
+            return new WebResourceResponse("text/plain", null, 500, "Internal Server Error", null, null);
+        }
+        if (response == null) {
+            return null;
+        }
+        return new WebResourceResponse(response.mimeType, null, response.status, response.reason, response.headers, response.body);
+    }
+
+    /**
+     * The URL the WebView can load {@code filePath} from, or {@code null} when the file is not served.
+     */
+    private String getFileUrl(String filePath) {
+        String path = fileServer == null ? null : fileServer.pathFor(filePath);
+        return path == null ? null : bridge.getLocalUrl() + path;
+    }
+
     @PluginMethod
     public void start(PluginCall call) {
         if (PermissionState.GRANTED.equals(getPermissionState(CAMERA_PERMISSION_ALIAS))) {
@@ -86,14 +156,66 @@ public class CameraPreview extends Plugin implements CameraActivity.CameraPrevie
             call.reject("Camera is not running");
             return;
         }
+        OutputFormat format = OutputFormat.fromString(call.getString("format"));
+        if (format == null) {
+            call.reject("Unsupported format");
+            return;
+        }
+        // every capture is queued under its own callback id and resolves its own call
         bridge.saveCall(call);
-        captureCallbackId = call.getCallbackId();
 
         Integer quality = call.getInt("quality", 85);
         // Image Dimensions - Optional
         Integer width = call.getInt("width", 0);
         Integer height = call.getInt("height", 0);
-        fragment.takePicture(width, height, quality);
+        fragment.takePicture(
+            call.getCallbackId(),
+            width,
+            height,
+            format,
+            quality,
+            getMaxBytes(call),
+            getChunkSize(call),
+            getThumbnailSize(call),
+            call.getBoolean("cropToPreview", false)
+        );
+    }
+
+    @PluginMethod
+    public void captureBurst(PluginCall call) {
+        if (this.hasCamera(call) == false) {
+            call.reject("Camera is not running");
+            return;
+        }
+
+        Integer count = call.getInt("count", 3);
+        if (count == null || count < 1) {
+            call.reject("count must be at least 1");
+            return;
+        }
+        OutputFormat format = OutputFormat.fromString(call.getString("format"));
+        if (format == null) {
+            call.reject("Unsupported format");
+            return;
+        }
+        bridge.saveCall(call);
+
+        Integer quality = call.getInt("quality", 85);
+        // Image Dimensions - Optional
+        Integer width = call.getInt("width", 0);
+        Integer height = call.getInt("height", 0);
+        fragment.takeBurst(
+            call.getCallbackId(),
+            count,
+            width,
+            height,
+            format,
+            quality,
+            getMaxBytes(call),
+            getChunkSize(call),
+            getThumbnailSize(call),
+            call.getBoolean("cropToPreview", false)
+        );
     }
 
     @PluginMethod
@@ -102,11 +224,38 @@ public class CameraPreview extends Plugin implements CameraActivity.CameraPrevie
             call.reject("Camera is not running");
             return;
         }
+        OutputFormat format = OutputFormat.fromString(call.getString("format"));
+        if (format == null) {
+            call.reject("Unsupported format");
+            return;
+        }
         bridge.saveCall(call);
-        snapshotCallbackId = call.getCallbackId();
 
         Integer quality = call.getInt("quality", 85);
-        fragment.takeSnapshot(quality);
+        Integer chunkSize = call.getInt("chunkSize", 0);
+        fragment.takeSnapshot(call.getCallbackId(), format, quality, getMaxBytes(call), chunkSize);
+    }
+
+    /**
+     * The byte budget asked for by {@code call}, or 0 to compress at the requested quality whatever the size.
+     */
+    private int getMaxBytes(PluginCall call) {
+        return Math.max(0, call.getInt("maxBytes", 0));
+    }
+
+    /**
+     * The Base64 chunk size asked for by {@code call}, or 0 when the result is delivered in one piece. Pictures stored
+     * to files are never chunked.
+     */
+    private int getChunkSize(PluginCall call) {
+        return fragment.storeToFile ? 0 : Math.max(0, call.getInt("chunkSize", 0));
+    }
+
+    /**
+     * The longest edge of the thumbnails asked for by {@code call}, or 0 for none.
+     */
+    private int getThumbnailSize(PluginCall call) {
+        return Math.max(0, call.getInt("thumbnailSize", 0));
     }
 
     @SuppressLint("WrongConstant")
@@ -151,10 +300,13 @@ public class CameraPreview extends Plugin implements CameraActivity.CameraPrevie
             return;
         }
 
-        Camera camera = fragment.getCamera();
-        Camera.Parameters params = camera.getParameters();
-        List<String> supportedFlashModes;
-        supportedFlashModes = params.getSupportedFlashModes();
+        // answered from the capabilities, without waiting for the camera thread
+        CameraCapabilities capabilities = fragment.getCapabilities();
+        if (capabilities == null) {
+            call.reject("Camera is not running");
+            return;
+        }
+        List<String> supportedFlashModes = capabilities.getFlashModes();
         JSONArray jsonFlashModes = new JSONArray();
 
         if (supportedFlashModes != null) {
@@ -181,19 +333,61 @@ public class CameraPreview extends Plugin implements CameraActivity.CameraPrevie
             return;
         }
 
-        Camera camera = fragment.getCamera();
-        Camera.Parameters params = camera.getParameters();
+        final String requestedFlashMode = flashMode;
+        try {
+            fragment.invoke(
+                new CameraActivity.CameraCommand<Void>() {
+                    @Override
+                    public Void run(Camera camera) {
+                        fragment.applySettings(requestedFlashMode, null, null, null);
+                        return null;
+                    }
+                }
+            );
+        } catch (IllegalArgumentException e) {
+            call.reject(e.getMessage());
+            return;
+        } catch (Exception e) {
+            Logger.debug(getLogTag(), "setFlashMode exception: " + e);
+            call.reject("Camera is not running");
+            return;
+        }
+
+        call.resolve();
+    }
 
-        List<String> supportedFlashModes;
-        supportedFlashModes = camera.getParameters().getSupportedFlashModes();
-        if (supportedFlashModes.indexOf(flashMode) > -1) {
-            params.setFlashMode(flashMode);
-        } else {
-            call.reject("Flash mode not recognised: " + flashMode);
+    @PluginMethod
+    public void setSettings(PluginCall call) {
+        if (this.hasCamera(call) == false) {
+            call.reject("Camera is not running");
             return;
         }
 
-        fragment.setCameraParameters(params);
+        final String flashMode = call.getString("flash");
+        final Double zoom = call.getDouble("zoom");
+        final String focusMode = call.getString("focusMode");
+        final Double exposure = call.getDouble("exposure");
+        try {
+            fragment.invoke(
+                new CameraActivity.CameraCommand<Void>() {
+                    @Override
+                    public Void run(Camera camera) {
+                        fragment.applySettings(flashMode, zoom, focusMode, exposure);
+                        return null;
+                    }
+                }
+            );
+        } catch (IllegalArgumentException e) {
+            call.reject(e.getMessage());
+            return;
+        } catch (IllegalStateException e) {
+            call.reject("Camera is not running");
+            return;
+        } catch (Exception e) {
+            Logger.debug(getLogTag(), "setSettings exception: " + e);
+            call.reject("Failed to apply settings");
+            return;
+        }
 
         call.resolve();
     }
@@ -204,7 +398,7 @@ public class CameraPreview extends Plugin implements CameraActivity.CameraPrevie
             call.reject("Camera is not running");
             return;
         }
-        final String filename = "videoTmp";
+        final String filename = CaptureFileServer.VIDEO_PREFIX;
         VIDEO_FILE_PATH = getActivity().getCacheDir().toString() + "/";
 
         final String position = call.getString("position", "front");
@@ -254,6 +448,28 @@ public class CameraPreview extends Plugin implements CameraActivity.CameraPrevie
         // call.resolve();
     }
 
+    @PluginMethod
+    public void getStorageMetrics(PluginCall call) {
+        if (this.hasView(call) == false) {
+            call.reject("Camera is not running");
+            return;
+        }
+
+        CaptureFileWriter writer = fragment.getFileWriter();
+        CaptureFileJanitor janitor = writer.getJanitor();
+        JSObject jsObject = new JSObject();
+        jsObject.put("filesWritten", writer.getFilesWritten());
+        jsObject.put("bytesWritten", writer.getBytesWritten());
+        jsObject.put("averageWriteTime", writer.getAverageWriteMillis());
+        jsObject.put("maxWriteTime", writer.getMaxWriteMillis());
+        jsObject.put("lastWriteTime", writer.getLastWriteMillis());
+        jsObject.put("pendingWrites", writer.getPendingWrites());
+        jsObject.put("filesDeleted", janitor == null ? 0 : janitor.getFilesDeleted());
+        jsObject.put("bytesDeleted", janitor == null ? 0 : janitor.getBytesDeleted());
+        jsObject.put("bytesStored", janitor == null ? 0 : janitor.getBytesStored());
+        call.resolve(jsObject);
+    }
+
     @PluginMethod
     public void isCameraStarted(PluginCall call) {
         boolean isCameraStarted = hasCamera(call);
@@ -273,6 +489,12 @@ public class CameraPreview extends Plugin implements CameraActivity.CameraPrevie
     }
 
     private void startCamera(final PluginCall call) {
+        if (fragment != null) {
+            call.reject("camera already started");
+            return;
+        }
+        startRequestedAt = SystemClock.elapsedRealtime();
+
         String position = call.getString("position");
 
         if (position == null || position.isEmpty() || "rear".equals(position)) {
@@ -288,10 +510,24 @@ public class CameraPreview extends Plugin implements CameraActivity.CameraPrevie
         final Integer paddingBottom = call.getInt("paddingBottom", 0);
         final Boolean toBack = call.getBoolean("toBack", false);
         final Boolean storeToFile = call.getBoolean("storeToFile", false);
+        this.storeToFile = storeToFile;
         final Boolean enableOpacity = call.getBoolean("enableOpacity", false);
         final Boolean enableZoom = call.getBoolean("enableZoom", false);
         final Boolean disableExifHeaderStripping = call.getBoolean("disableExifHeaderStripping", true);
         final Boolean lockOrientation = call.getBoolean("lockAndroidOrientation", false);
+        final Integer captureQueueDepth = call.getInt("captureQueueDepth", 3);
+        final String captureQueuePolicy = call.getString("captureQueuePolicy", "rejectNewest");
+        final Boolean zeroShutterLag = call.getBoolean("zeroShutterLag", false);
+        final Integer zeroShutterLagFrames = call.getInt("zeroShutterLagFrames", 4);
+        final Integer warmStandbyTimeout = call.getInt("warmStandbyTimeout", 0);
+        final Boolean autoPreviewCapture = call.getBoolean("autoPreviewCapture", true);
+        final String orientationMode = call.getString("orientationMode", CameraActivity.ORIENTATION_MODE_LOSSLESS);
+        final String snapshotEncoder = call.getString("snapshotEncoder", "platform");
+        final Boolean snapshotOptimizeHuffman = call.getBoolean("snapshotOptimizeHuffman", false);
+        final Integer snapshotRestartInterval = call.getInt("snapshotRestartInterval", 0);
+        final String storeToFileSync = call.getString("storeToFileSync", "none");
+        final Double storeToFileMaxBytes = call.getDouble("storeToFileMaxBytes", (double) DEFAULT_STORE_TO_FILE_MAX_BYTES);
+        final Double storeToFileMaxAge = call.getDouble("storeToFileMaxAge", 0d);
         previousOrientationRequest = getBridge().getActivity().getRequestedOrientation();
 
         fragment = new CameraActivity();
@@ -305,6 +541,21 @@ public class CameraPreview extends Plugin implements CameraActivity.CameraPrevie
         fragment.toBack = toBack;
         fragment.enableOpacity = enableOpacity;
         fragment.enableZoom = enableZoom;
+        fragment.zeroShutterLag = zeroShutterLag;
+        fragment.zeroShutterLagFrames = Math.max(1, zeroShutterLagFrames);
+        fragment.warmStandbyMillis = Math.max(0, warmStandbyTimeout);
+        fragment.autoPreviewCapture = autoPreviewCapture;
+        fragment.orientationMode = orientationMode;
+        fragment.setCaptureQueueOptions(captureQueueDepth, CaptureQueue.OverflowPolicy.fromString(captureQueuePolicy));
+        fragment.setCapabilityIndex(capabilityIndex);
+        if ("java".equals(snapshotEncoder)) {
+            fragment.setSnapshotEncoder(new BaselineJpegEncoder(snapshotRestartInterval, snapshotOptimizeHuffman));
+        }
+        fragment.setFileStorageOptions(
+            CaptureFileWriter.SyncPolicy.fromString(storeToFileSync),
+            new CaptureFileJanitor(getContext().getCacheDir(), storeToFileMaxBytes.longValue(), (long) (storeToFileMaxAge * 1000))
+        );
+        final CameraActivity startingFragment = fragment;
 
         bridge
             .getActivity()
@@ -353,6 +604,8 @@ public class CameraPreview extends Plugin implements CameraActivity.CameraPrevie
                                 getBridge().getWebView().getParent().bringChildToFront(getBridge().getWebView());
                             }
 
+                            // the camera opens on its own thread while the fragment is added and inflated on the UI thread
+                            startingFragment.prepareCamera();
                             FragmentManager fragmentManager = getBridge().getActivity().getFragmentManager();
                             FragmentTransaction fragmentTransaction = fragmentManager.beginTransaction();
                             fragmentTransaction.add(containerView.getId(), fragment);
@@ -360,13 +613,20 @@ public class CameraPreview extends Plugin implements CameraActivity.CameraPrevie
 
                             // NOTE: we don't return invoke call.resolve here because it must be invoked in onCameraStarted
                             // otherwise the plugin start method might resolve/return before the camera is actually set in CameraActivity
-                            // onResume method (see this line mCamera = Camera.open(defaultCameraId);) and the next subsequent plugin
+                            // openCamera method (see this line mCamera = camera;) and the next subsequent plugin
                             // method invocations (for example, getSupportedFlashModes) might fails with "Camera is not running" error
                             // because camera is not available yet and hasCamera method will return false
                             // Please also see https://developer.android.com/reference/android/hardware/Camera.html#open%28int%29
+                            // onCameraStarted is only called once the preview shows its first frame, or gives up waiting for it,
+                            // so it can report how long that took
                             bridge.saveCall(call);
                             cameraStartCallbackId = call.getCallbackId();
                         } else {
+                            // never added, so it only has its threads to stop
+                            startingFragment.discardPreparedCamera();
+                            if (fragment == startingFragment) {
+                                fragment = null;
+                            }
                             call.reject("camera already started");
                         }
                     }
@@ -380,27 +640,133 @@ public class CameraPreview extends Plugin implements CameraActivity.CameraPrevie
     }
 
     @Override
-    public void onPictureTaken(String originalPicture) {
+    public void onPictureTaken(CaptureRequest request, String originalPicture) {
+        PluginCall pluginCall = getSavedCaptureCall(request);
+        if (pluginCall == null) {
+            return;
+        }
+
         JSObject jsObject = new JSObject();
         jsObject.put("value", originalPicture);
-        bridge.getSavedCall(captureCallbackId).resolve(jsObject);
+        if (storeToFile) {
+            jsObject.put("url", getFileUrl(originalPicture));
+        }
+        jsObject.put("source", request.isFromPreviewFrame() ? "preview" : "picture");
+        if (request.chunkSize > 0) {
+            jsObject.put("chunked", true);
+        }
+        jsObject.put("queueWaitTime", request.getQueueWaitMillis());
+        jsObject.put("serviceTime", request.getServiceMillis());
+        pluginCall.resolve(jsObject);
+        bridge.releaseCall(pluginCall);
     }
 
     @Override
-    public void onPictureTakenError(String message) {
-        bridge.getSavedCall(captureCallbackId).reject(message);
+    public void onPictureTakenError(CaptureRequest request, String message) {
+        PluginCall pluginCall = getSavedCaptureCall(request);
+        if (pluginCall == null) {
+            return;
+        }
+
+        pluginCall.reject(message);
+        bridge.releaseCall(pluginCall);
     }
 
     @Override
-    public void onSnapshotTaken(String originalPicture) {
+    public void onBurstTaken(CaptureRequest request, String[] pictures) {
+        PluginCall pluginCall = getSavedCaptureCall(request);
+        if (pluginCall == null) {
+            return;
+        }
+
+        JSONArray values = new JSONArray();
+        JSONArray urls = new JSONArray();
+        for (String picture : pictures) {
+            values.put(picture);
+            urls.put(getFileUrl(picture));
+        }
+
+        JSONArray frameIntervals = new JSONArray();
+        long totalInterval = 0;
+        long[] intervals = request.getPictureIntervalsMillis();
+        for (long interval : intervals) {
+            frameIntervals.put(interval);
+            totalInterval += interval;
+        }
+
+        JSObject jsObject = new JSObject();
+        jsObject.put("values", values);
+        if (storeToFile) {
+            jsObject.put("urls", urls);
+        }
+        if (request.chunkSize > 0) {
+            jsObject.put("chunked", true);
+        }
+        jsObject.put("frameIntervals", frameIntervals);
+        jsObject.put("averageFrameInterval", intervals.length == 0 ? 0 : (double) totalInterval / intervals.length);
+        jsObject.put("queueWaitTime", request.getQueueWaitMillis());
+        jsObject.put("serviceTime", request.getServiceMillis());
+        pluginCall.resolve(jsObject);
+        bridge.releaseCall(pluginCall);
+    }
+
+    @Override
+    public void onThumbnailTaken(CaptureRequest request, int index, String thumbnail) {
+        PluginCall pluginCall = getSavedCaptureCall(request);
+        if (pluginCall == null) {
+            return;
+        }
+
+        // the id the caller tagged the capture with, as its own call id is not known to it
+        JSObject jsObject = new JSObject();
+        jsObject.put("thumbnailId", pluginCall.getString("thumbnailId"));
+        jsObject.put("index", index);
+        jsObject.put("value", thumbnail);
+        notifyListeners("captureThumbnail", jsObject);
+    }
+
+    private PluginCall getSavedCaptureCall(CaptureRequest request) {
+        // pictures taken by tapping the preview have no call to resolve
+        return request.id == null ? null : bridge.getSavedCall(request.id);
+    }
+
+    @Override
+    public void onSnapshotTaken(String id, String originalPicture, boolean chunked) {
+        PluginCall pluginCall = bridge.getSavedCall(id);
+        if (pluginCall == null) {
+            return;
+        }
+
         JSObject jsObject = new JSObject();
         jsObject.put("value", originalPicture);
-        bridge.getSavedCall(snapshotCallbackId).resolve(jsObject);
+        if (chunked) {
+            jsObject.put("chunked", true);
+        }
+        pluginCall.resolve(jsObject);
+        bridge.releaseCall(pluginCall);
     }
 
     @Override
-    public void onSnapshotTakenError(String message) {
-        bridge.getSavedCall(snapshotCallbackId).reject(message);
+    public void onSnapshotTakenError(String id, String message) {
+        PluginCall pluginCall = bridge.getSavedCall(id);
+        if (pluginCall == null) {
+            return;
+        }
+
+        pluginCall.reject(message);
+        bridge.releaseCall(pluginCall);
+    }
+
+    @Override
+    public void onResultChunk(String transferId, int index, int count, String chunk) {
+        JSObject jsObject = new JSObject();
+        jsObject.put("transferId", transferId);
+        jsObject.put("index", index);
+        jsObject.put("count", count);
+        jsObject.put("data", chunk);
+        // not waiting for delivery: this may be the camera thread, and events and results reach the WebView in the
+        // order they are sent, so the result always arrives after its last chunk
+        notifyListeners("captureChunk", jsObject);
     }
 
     @Override
@@ -413,20 +779,39 @@ public class CameraPreview extends Plugin implements CameraActivity.CameraPrevie
     public void onBackButton() {}
 
     @Override
-    public void onCameraStarted() {
+    public void onCameraStarted(boolean firstFrameSeen) {
         if (fragment != null && fragment.toBack) {
             setupBroadcast();
         }
 
         PluginCall pluginCall = bridge.getSavedCall(cameraStartCallbackId);
         if (pluginCall != null) {
-            pluginCall.resolve();
+            JSObject jsObject = new JSObject();
+            if (firstFrameSeen) {
+                long timeToFirstFrame = SystemClock.elapsedRealtime() - startRequestedAt;
+                Logger.debug(getLogTag(), "camera started, first frame after " + timeToFirstFrame + " ms");
+                jsObject.put("timeToFirstFrame", timeToFirstFrame);
+            } else {
+                Logger.warn(getLogTag(), "camera started, but no preview frame was seen");
+            }
+            pluginCall.resolve(jsObject);
             bridge.releaseCall(pluginCall);
         } else {
             Logger.warn(getLogTag(), "onCameraStarted but no saved start call (cameraStartCallbackId=" + cameraStartCallbackId + ")");
         }
     }
 
+    @Override
+    public void onCameraStartError(String message) {
+        PluginCall pluginCall = bridge.getSavedCall(cameraStartCallbackId);
+        if (pluginCall != null) {
+            pluginCall.reject(message);
+            bridge.releaseCall(pluginCall);
+        } else {
+            Logger.warn(getLogTag(), "onCameraStartError but no saved start call (cameraStartCallbackId=" + cameraStartCallbackId + ")");
+        }
+    }
+
     @Override
     public void onStartRecordVideo() {}
 
@@ -440,6 +825,7 @@ public class CameraPreview extends Plugin implements CameraActivity.CameraPrevie
         PluginCall pluginCall = bridge.getSavedCall(recordCallbackId);
         JSObject jsObject = new JSObject();
         jsObject.put("videoFilePath", file);
+        jsObject.put("videoFileUrl", getFileUrl(file));
         pluginCall.resolve(jsObject);
     }
 
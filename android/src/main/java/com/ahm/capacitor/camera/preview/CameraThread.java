@@ -0,0 +1,101 @@
+package com.ahm.capacitor.camera.preview;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * The single thread that owns the {@link android.hardware.Camera}.
+ *
+ * Every call into the camera is serialized onto this thread's looper. Because the camera is opened here, the camera
+ * also delivers its preview, picture and auto focus callbacks on this thread, so slow {@code open},
+ * {@code setParameters} and {@code startPreview} calls never block the UI thread and no two threads touch the camera at
+ * the same time.
+ */
+final class CameraThread {
+
+    private static final String TAG = "CameraThread";
+
+    private final HandlerThread thread;
+    private final Handler handler;
+
+    CameraThread() {
+        thread = new HandlerThread("CameraPreview-camera");
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    boolean isCurrentThread() {
+        return Looper.myLooper() == thread.getLooper();
+    }
+
+    /**
+     * Queues {@code runnable} behind every camera command posted so far. Failures are logged rather than crashing the
+     * host app.
+     */
+    void post(Runnable runnable) {
+        handler.post(logFailures(runnable));
+    }
+
+    /**
+     * Like {@link #post}, but runs {@code runnable} no sooner than {@code delayMillis} from now.
+     */
+    void postDelayed(Runnable runnable, long delayMillis) {
+        handler.postDelayed(logFailures(runnable), delayMillis);
+    }
+
+    private static Runnable logFailures(final Runnable runnable) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runnable.run();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "camera command failed", e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Runs {@code callable} on the camera thread and waits for its result. Runs inline when already on the camera
+     * thread. Exceptions thrown by {@code callable} are rethrown, wrapped in a {@link RuntimeException} when checked.
+     */
+    <T> T invoke(Callable<T> callable) {
+        try {
+            if (isCurrentThread()) {
+                return callable.call();
+            }
+
+            FutureTask<T> task = new FutureTask<>(callable);
+            if (!handler.post(task)) {
+                throw new IllegalStateException("Camera thread has been stopped");
+            }
+            return task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the camera thread", e);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Stops the thread once every command already queued has run.
+     */
+    void quit() {
+        thread.quitSafely();
+    }
+}
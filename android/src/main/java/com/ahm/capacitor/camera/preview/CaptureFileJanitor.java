@@ -0,0 +1,105 @@
+package com.ahm.capacitor.camera.preview;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Keeps the {@code cpcp_capture_*} pictures written for {@code storeToFile} within a total size and age.
+ *
+ * Files not used for longer than the maximum age are deleted, then the least recently used ones until the rest fit
+ * within the maximum size. A file counts as used when it is written and whenever {@link CaptureFileServer} serves it,
+ * both of which set its modification time. A limit of 0 disables that bound. Other files in the directory, including
+ * recorded videos, are never touched.
+ */
+final class CaptureFileJanitor {
+
+    private final File directory;
+    private final long maxBytes;
+    private final long maxAgeMillis;
+
+    private long filesDeleted;
+    private long bytesDeleted;
+    private long bytesStored;
+
+    CaptureFileJanitor(File directory, long maxBytes, long maxAgeMillis) {
+        this.directory = directory;
+        this.maxBytes = Math.max(0, maxBytes);
+        this.maxAgeMillis = Math.max(0, maxAgeMillis);
+    }
+
+    /**
+     * Deletes files until the directory is within bounds again. {@code keep}, the file just written, is never deleted.
+     *
+     * @return the number of bytes still used by capture files
+     */
+    synchronized long trim(long nowMillis, File keep) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return 0;
+        }
+
+        int count = 0;
+        for (File file : files) {
+            String name = file.getName();
+            if (CaptureFileServer.isCapture(name)) {
+                files[count] = file;
+                count++;
+            }
+        }
+        files = Arrays.copyOf(files, count);
+        // lastModified() is a file system call, read it once per file rather than on every comparison
+        final long[] lastUsed = new long[count];
+        long[] sizes = new long[count];
+        Integer[] order = new Integer[count];
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            lastUsed[i] = files[i].lastModified();
+            sizes[i] = files[i].length();
+            order[i] = i;
+            total += sizes[i];
+        }
+        Arrays.sort(
+            order,
+            new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return Long.compare(lastUsed[a], lastUsed[b]);
+                }
+            }
+        );
+
+        for (int i = 0; i < count; i++) {
+            int index = order[i];
+            boolean expired = maxAgeMillis > 0 && nowMillis - lastUsed[index] > maxAgeMillis;
+            boolean overSize = maxBytes > 0 && total > maxBytes;
+            if (!expired && !overSize) {
+                // everything after this file was used more recently
+                break;
+            }
+            if (files[index].equals(keep) || !files[index].delete()) {
+                continue;
+            }
+            total -= sizes[index];
+            filesDeleted++;
+            bytesDeleted += sizes[index];
+        }
+        bytesStored = total;
+        return total;
+    }
+
+    synchronized long getFilesDeleted() {
+        return filesDeleted;
+    }
+
+    synchronized long getBytesDeleted() {
+        return bytesDeleted;
+    }
+
+    /**
+     * The size of the capture files left after the last trim.
+     */
+    synchronized long getBytesStored() {
+        return bytesStored;
+    }
+}
@@ -0,0 +1,258 @@
+package com.ahm.capacitor.camera.preview;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Serves captured pictures and recorded videos from the cache directory under {@link #PATH_PREFIX} of the WebView's
+ * own origin, so {@code <img>}, {@code <video>} and {@code fetch()} read the files directly instead of going through
+ * Base64 or a second read by the web layer.
+ *
+ * Only files the plugin writes itself are served: a single path segment with the capture or video prefix and
+ * extension, inside the cache directory. A single byte range is honored, which is what {@code <video>} asks for when
+ * seeking; other ranges get the whole file. The response body streams straight from the file.
+ *
+ * Kept free of WebView types so that it can be exercised with plain method, path and header values.
+ */
+final class CaptureFileServer {
+
+    static final String PATH_PREFIX = "/_capacitor_camera_preview_/";
+    static final String CAPTURE_PREFIX = "cpcp_capture_";
+    static final String VIDEO_PREFIX = "videoTmp";
+    static final String VIDEO_EXTENSION = ".mp4";
+
+    static final class Response {
+
+        final int status;
+        final String reason;
+        final String mimeType;
+        final Map<String, String> headers = new LinkedHashMap<>();
+        final InputStream body;
+
+        Response(int status, String reason, String mimeType, InputStream body) {
+            this.status = status;
+            this.reason = reason;
+            this.mimeType = mimeType;
+            this.body = body;
+        }
+    }
+
+    // returned by parseRange for a range that lies outside the file
+    private static final long[] UNSATISFIABLE = new long[0];
+
+    private final File directory;
+
+    CaptureFileServer(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * The path {@code filePath} is served under, or {@code null} when it is not a file this server serves.
+     */
+    String pathFor(String filePath) {
+        if (filePath == null) {
+            return null;
+        }
+        File file = new File(filePath);
+        String name = file.getName();
+        if (!isServable(name) || !directory.equals(file.getParentFile())) {
+            return null;
+        }
+        return PATH_PREFIX + name;
+    }
+
+    /**
+     * Answers a request for {@code path}.
+     *
+     * @param range the value of the {@code Range} header, or {@code null}
+     * @return the response, or {@code null} when the path is not under {@link #PATH_PREFIX}
+     */
+    Response handle(String method, String path, String range) throws IOException {
+        if (path == null || !path.startsWith(PATH_PREFIX)) {
+            return null;
+        }
+
+        String name = path.substring(PATH_PREFIX.length());
+        File file = new File(directory, name);
+        if (!isServable(name) || !file.isFile()) {
+            return empty(404, "Not Found");
+        }
+        boolean head = "HEAD".equals(method);
+        if (!head && !"GET".equals(method)) {
+            Response response = empty(405, "Method Not Allowed");
+            response.headers.put("Allow", "GET, HEAD");
+            return response;
+        }
+
+        long size = file.length();
+        long start = 0;
+        long end = size - 1;
+        boolean partial = false;
+        long[] requested = parseRange(range, size);
+        if (requested == UNSATISFIABLE) {
+            Response response = empty(416, "Range Not Satisfiable");
+            response.headers.put("Content-Range", "bytes */" + size);
+            return response;
+        } else if (requested != null) {
+            start = requested[0];
+            end = requested[1];
+            partial = true;
+        }
+
+        if (!head) {
+            // marks the file as recently used for CaptureFileJanitor
+            file.setLastModified(System.currentTimeMillis());
+        }
+        long length = end - start + 1;
+        InputStream body = head ? new ByteArrayInputStream(new byte[0]) : open(file, start, length);
+        Response response = partial
+            ? new Response(206, "Partial Content", mimeTypeOf(name), body)
+            : new Response(200, "OK", mimeTypeOf(name), body);
+        response.headers.put("Accept-Ranges", "bytes");
+        response.headers.put("Content-Length", Long.toString(length));
+        if (partial) {
+            response.headers.put("Content-Range", "bytes " + start + "-" + end + "/" + size);
+        }
+        return response;
+    }
+
+    /**
+     * Parses a single {@code bytes=} range against a file of {@code size} bytes.
+     *
+     * @return the first and last byte of the range, {@code null} to serve the whole file, or {@link #UNSATISFIABLE}
+     */
+    static long[] parseRange(String range, long size) {
+        if (range == null) {
+            return null;
+        }
+        String value = range.trim();
+        if (!value.startsWith("bytes=") || value.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = value.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                // the last N bytes
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0 || size == 0) {
+                    return UNSATISFIABLE;
+                }
+                return new long[] { Math.max(0, size - suffix), size - 1 };
+            }
+
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+            if (start < 0 || start >= size || end < start) {
+                return UNSATISFIABLE;
+            }
+            return new long[] { start, end };
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static boolean isServable(String name) {
+        if (name.indexOf('/') >= 0 || name.indexOf('\\') >= 0 || name.contains("..")) {
+            return false;
+        }
+        return (
+            isCapture(name) ||
+            (name.startsWith(VIDEO_PREFIX) && name.endsWith(VIDEO_EXTENSION))
+        );
+    }
+
+    /**
+     * Whether {@code name} is a picture written for {@code storeToFile}, in any {@link OutputFormat}.
+     */
+    static boolean isCapture(String name) {
+        return name.startsWith(CAPTURE_PREFIX) && OutputFormat.fromFileName(name) != null;
+    }
+
+    private static String mimeTypeOf(String name) {
+        return name.endsWith(VIDEO_EXTENSION) ? "video/mp4" : OutputFormat.fromFileName(name).mimeType;
+    }
+
+    private static Response empty(int status, String reason) {
+        Response response = new Response(status, reason, "text/plain", new ByteArrayInputStream(new byte[0]));
+        response.headers.put("Content-Length", "0");
+        return response;
+    }
+
+    private static InputStream open(File file, long start, long length) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            in.getChannel().position(start);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return new RangeInputStream(in, length);
+    }
+
+    /**
+     * Ends after {@code remaining} bytes of the underlying stream.
+     */
+    private static final class RangeInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        RangeInputStream(InputStream in, long remaining) {
+            super(in);
+            this.remaining = remaining;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = in.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.ahm.capacitor.camera.preview;
+
+import android.util.Log;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes {@code storeToFile} pictures on a dedicated thread, so a slow flash write never holds up picture processing
+ * or the camera.
+ *
+ * Each picture is written straight from its byte array through a {@link FileChannel} and, depending on the
+ * {@link SyncPolicy}, forced to storage before the callback is told where it is. After every write the
+ * {@link CaptureFileJanitor}, if any, trims the directory. A few writes may wait; beyond that the caller writes the
+ * picture itself, which slows down taking pictures instead of holding more of them in memory.
+ */
+class CaptureFileWriter {
+
+    enum SyncPolicy {
+        // leave flushing to the kernel, like a plain FileOutputStream
+        NONE,
+        // force the picture data, but not necessarily the file metadata
+        DATA,
+        // force the picture data and the file metadata
+        FULL;
+
+        static SyncPolicy fromString(String value) {
+            if ("data".equals(value)) {
+                return DATA;
+            } else if ("full".equals(value)) {
+                return FULL;
+            }
+            return NONE;
+        }
+    }
+
+    interface Callback {
+        void onWritten(String path);
+        void onError(String message);
+    }
+
+    private static final String TAG = "CaptureFileWriter";
+    private static final int MAX_PENDING = 4;
+
+    private volatile SyncPolicy syncPolicy = SyncPolicy.NONE;
+    private volatile CaptureFileJanitor janitor;
+
+    private long filesWritten;
+    private long bytesWritten;
+    private long totalWriteNanos;
+    private long maxWriteNanos;
+    private long lastWriteNanos;
+
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+        1,
+        1,
+        0L,
+        TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(MAX_PENDING),
+        new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "CameraPreview-writer");
+            }
+        },
+        new RunOnCallerPolicy()
+    );
+
+    /**
+     * @param janitor trims the directory after every write, or {@code null} to keep every file
+     */
+    void configure(SyncPolicy syncPolicy, CaptureFileJanitor janitor) {
+        this.syncPolicy = syncPolicy;
+        this.janitor = janitor;
+    }
+
+    /**
+     * Queues {@code length} bytes of {@code data} from {@code offset} to be written to {@code path}. The array must not
+     * be modified until the callback has been called.
+     */
+    void write(final byte[] data, final int offset, final int length, final String path, final Callback callback) {
+        executor.execute(
+            new Runnable() {
+                @Override
+                public void run() {
+                    File file = new File(path);
+                    try {
+                        writeFile(data, offset, length, file);
+                    } catch (IOException e) {
+                        Log.d(TAG, "write failed", e);
+                        // don't leave a truncated picture behind
+                        file.delete();
+                        callback.onError("IO Error when writing picture");
+                        return;
+                    }
+                    callback.onWritten(path);
+                }
+            }
+        );
+    }
+
+    /**
+     * Trims the directory without writing anything, on the writer thread.
+     */
+    void trim() {
+        executor.execute(
+            new Runnable() {
+                @Override
+                public void run() {
+                    CaptureFileJanitor current = janitor;
+                    if (current != null) {
+                        current.trim(System.currentTimeMillis(), null);
+                    }
+                }
+            }
+        );
+    }
+
+    /**
+     * Lets queued writes finish, then stops the writer thread. Pictures handed over afterwards are written by the caller.
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    synchronized long getFilesWritten() {
+        return filesWritten;
+    }
+
+    synchronized long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    synchronized double getAverageWriteMillis() {
+        return filesWritten == 0 ? 0 : totalWriteNanos / 1e6 / filesWritten;
+    }
+
+    synchronized double getMaxWriteMillis() {
+        return maxWriteNanos / 1e6;
+    }
+
+    synchronized double getLastWriteMillis() {
+        return lastWriteNanos / 1e6;
+    }
+
+    int getPendingWrites() {
+        return executor.getQueue().size();
+    }
+
+    CaptureFileJanitor getJanitor() {
+        return janitor;
+    }
+
+    private void writeFile(byte[] data, int offset, int length, File file) throws IOException {
+        long start = System.nanoTime();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            FileChannel channel = out.getChannel();
+            ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            SyncPolicy policy = syncPolicy;
+            if (policy != SyncPolicy.NONE) {
+                channel.force(policy == SyncPolicy.FULL);
+            }
+        } finally {
+            out.close();
+        }
+        recordWrite(length, System.nanoTime() - start);
+
+        CaptureFileJanitor current = janitor;
+        if (current != null) {
+            current.trim(System.currentTimeMillis(), file);
+        }
+    }
+
+    private synchronized void recordWrite(long bytes, long nanos) {
+        filesWritten++;
+        bytesWritten += bytes;
+        totalWriteNanos += nanos;
+        maxWriteNanos = Math.max(maxWriteNanos, nanos);
+        lastWriteNanos = nanos;
+    }
+}
@@ -0,0 +1,156 @@
+package com.ahm.capacitor.camera.preview;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Serializes {@code capture} requests: one capture is active at a time and up to {@code depth} more wait behind it.
+ * When the queue is full the {@link OverflowPolicy} decides whether the oldest waiting request or the new one is
+ * turned away; either way the caller gets the evicted request back so its plugin call can be rejected instead of being
+ * left hanging.
+ *
+ * The queue also tracks the pictures the camera has been asked for. A request may finish, by failing, while its burst
+ * is still being shot; the pictures still on their way then belong to no request, and the next request only starts
+ * once the last of them has arrived.
+ */
+class CaptureQueue {
+
+    enum OverflowPolicy {
+        DROP_OLDEST,
+        REJECT_NEWEST;
+
+        static OverflowPolicy fromString(String value) {
+            return "dropOldest".equals(value) ? DROP_OLDEST : REJECT_NEWEST;
+        }
+    }
+
+    private final ArrayDeque<CaptureRequest> pending = new ArrayDeque<>();
+    private int depth;
+    private OverflowPolicy policy;
+    private CaptureRequest active;
+    // the request the camera is taking pictures for, and how many it still has to deliver
+    private CaptureRequest shooting;
+    private int shotsRemaining;
+
+    CaptureQueue(int depth, OverflowPolicy policy) {
+        configure(depth, policy);
+    }
+
+    synchronized void configure(int depth, OverflowPolicy policy) {
+        this.depth = Math.max(0, depth);
+        this.policy = policy;
+    }
+
+    /**
+     * Adds a request behind the ones already waiting.
+     *
+     * @return the request turned away because the queue was full, or {@code null}
+     */
+    synchronized CaptureRequest offer(CaptureRequest request, long nowNanos) {
+        request.markEnqueued(nowNanos);
+        if (pending.size() < depth || (active == null && pending.isEmpty())) {
+            pending.addLast(request);
+            return null;
+        }
+        if (policy == OverflowPolicy.DROP_OLDEST && !pending.isEmpty()) {
+            CaptureRequest dropped = pending.pollFirst();
+            pending.addLast(request);
+            return dropped;
+        }
+        return request;
+    }
+
+    /**
+     * Makes the next waiting request the active one.
+     *
+     * @return the request to start now, or {@code null} if a capture is already active, the camera is still taking
+     *     pictures, or nothing is waiting
+     */
+    synchronized CaptureRequest next(long nowNanos) {
+        if (active != null || shooting != null || pending.isEmpty()) {
+            return null;
+        }
+        active = pending.pollFirst();
+        active.markStarted(nowNanos);
+        return active;
+    }
+
+    synchronized CaptureRequest getActive() {
+        return active;
+    }
+
+    /**
+     * Records that the camera was asked for the pictures of {@code request}, one at a time.
+     */
+    synchronized void startShots(CaptureRequest request) {
+        shooting = request;
+        shotsRemaining = request.count;
+    }
+
+    /**
+     * Records that the camera delivered one of the pictures asked for with {@link #startShots}.
+     *
+     * @return the request the picture belongs to, or {@code null} when that request has finished already
+     */
+    synchronized CaptureRequest shotArrived() {
+        CaptureRequest request = shooting;
+        if (request == null) {
+            return null;
+        }
+        if (--shotsRemaining <= 0 || request != active) {
+            shooting = null;
+        }
+        return request == active ? request : null;
+    }
+
+    /**
+     * @return the request to ask the camera for its next picture, or {@code null} when it has all of them or has finished
+     */
+    synchronized CaptureRequest nextShot() {
+        if (shooting != active) {
+            shooting = null;
+        }
+        return shooting;
+    }
+
+    /**
+     * Forgets the pictures asked for, when the camera is not going to deliver them.
+     */
+    synchronized void stopShots() {
+        shooting = null;
+    }
+
+    /**
+     * Completes {@code request} if it is the active one, freeing the queue for the next one.
+     *
+     * @return whether {@code request} was active; a request completes only once, even if it fails on several threads
+     */
+    synchronized boolean finish(CaptureRequest request, long nowNanos) {
+        if (request == null || request != active) {
+            return false;
+        }
+        active = null;
+        request.markFinished(nowNanos);
+        return true;
+    }
+
+    /**
+     * Removes every request, the active one first.
+     */
+    synchronized List<CaptureRequest> drain() {
+        List<CaptureRequest> drained = new ArrayList<>(pending.size() + 1);
+        if (active != null) {
+            drained.add(active);
+            active = null;
+        }
+        drained.addAll(pending);
+        pending.clear();
+        shooting = null;
+        return drained;
+    }
+
+    synchronized int size() {
+        return pending.size() + (active == null ? 0 : 1);
+    }
+}
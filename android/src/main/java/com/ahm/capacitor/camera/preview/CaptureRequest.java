@@ -0,0 +1,152 @@
+package com.ahm.capacitor.camera.preview;
+
+/**
+ * A single {@code capture} or {@code captureBurst} request as it moves through the {@link CaptureQueue}.
+ *
+ * The id is the callback id of the plugin call that asked for the pictures, so every result can be routed back to its
+ * own call. Requests that did not come from a plugin call (tap to take picture) have a {@code null} id. A request
+ * covers {@code count} pictures; their processed results are collected by index, so they are reported in the order
+ * they were taken even when processing finishes out of order. With a {@code chunkSize} the Base64 results are sent in
+ * chunks through {@link ChunkedTransfer} and the results are their transfer ids. With a {@code maxBytes} every picture
+ * is compressed to fit in that many bytes. Pictures are delivered in the request's {@link OutputFormat}. With a
+ * {@code thumbnailSize} a small JPEG of every picture is reported ahead of the request's results. With
+ * {@code cropToPreview} pictures are cropped to the part of the camera's view the preview shows.
+ */
+class CaptureRequest {
+
+    final String id;
+    final int count;
+    final int width;
+    final int height;
+    final OutputFormat format;
+    final int quality;
+    // 0 for pictures compressed at quality whatever their size
+    final int maxBytes;
+    // 0 for results delivered in one piece
+    final int chunkSize;
+    // longest edge of the thumbnail reported ahead of each picture, 0 for none
+    final int thumbnailSize;
+    final boolean cropToPreview;
+
+    private final String[] results;
+    private final long[] arrivedAtNanos;
+    private int arrived;
+    private int processed;
+
+    // set when the picture is served from a preview frame instead of Camera.takePicture
+    private volatile boolean fromPreviewFrame;
+
+    private long enqueuedAtNanos;
+    private long startedAtNanos;
+    private long finishedAtNanos;
+
+    CaptureRequest(String id, int width, int height, int quality) {
+        this(id, 1, width, height, quality);
+    }
+
+    CaptureRequest(String id, int count, int width, int height, int quality) {
+        this(id, count, width, height, OutputFormat.JPEG, quality, 0, 0, 0, false);
+    }
+
+    CaptureRequest(
+        String id,
+        int count,
+        int width,
+        int height,
+        OutputFormat format,
+        int quality,
+        int maxBytes,
+        int chunkSize,
+        int thumbnailSize,
+        boolean cropToPreview
+    ) {
+        this.id = id;
+        this.count = Math.max(1, count);
+        this.width = width;
+        this.height = height;
+        this.format = format;
+        this.quality = quality;
+        this.maxBytes = Math.max(0, maxBytes);
+        this.chunkSize = Math.max(0, chunkSize);
+        this.thumbnailSize = Math.max(0, thumbnailSize);
+        this.cropToPreview = cropToPreview;
+        this.results = new String[this.count];
+        this.arrivedAtNanos = new long[this.count];
+    }
+
+    void markEnqueued(long nanos) {
+        enqueuedAtNanos = nanos;
+    }
+
+    void markFromPreviewFrame() {
+        fromPreviewFrame = true;
+    }
+
+    boolean isFromPreviewFrame() {
+        return fromPreviewFrame;
+    }
+
+    long getEnqueuedNanos() {
+        return enqueuedAtNanos;
+    }
+
+    void markStarted(long nanos) {
+        startedAtNanos = nanos;
+    }
+
+    void markFinished(long nanos) {
+        finishedAtNanos = nanos;
+    }
+
+    /**
+     * Records that the camera delivered the next picture of this request.
+     *
+     * @return the index of that picture, or -1 if every picture of the request has arrived already
+     */
+    synchronized int pictureArrived(long nanos) {
+        if (arrived == count) {
+            return -1;
+        }
+        arrivedAtNanos[arrived] = nanos;
+        return arrived++;
+    }
+
+    /**
+     * Stores the processed result of picture {@code index}.
+     *
+     * @return whether every picture of the request has now been processed
+     */
+    synchronized boolean setResult(int index, String result) {
+        results[index] = result;
+        return ++processed == count;
+    }
+
+    synchronized String[] getResults() {
+        return results.clone();
+    }
+
+    /**
+     * Time spent waiting behind other captures, in milliseconds.
+     */
+    long getQueueWaitMillis() {
+        return startedAtNanos == 0 ? 0 : (startedAtNanos - enqueuedAtNanos) / 1000000L;
+    }
+
+    /**
+     * Time from starting the capture to having its result, in milliseconds.
+     */
+    long getServiceMillis() {
+        return startedAtNanos == 0 || finishedAtNanos == 0 ? 0 : (finishedAtNanos - startedAtNanos) / 1000000L;
+    }
+
+    /**
+     * Milliseconds between the arrival of consecutive pictures, one entry fewer than the pictures taken.
+     */
+    synchronized long[] getPictureIntervalsMillis() {
+        long[] intervals = new long[Math.max(0, arrived - 1)];
+        for (int i = 0; i < intervals.length; i++) {
+            intervals[i] = (arrivedAtNanos[i + 1] - arrivedAtNanos[i]) / 1000000L;
+        }
+        return intervals;
+    }
+}
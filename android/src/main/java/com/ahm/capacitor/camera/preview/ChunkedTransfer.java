@@ -0,0 +1,85 @@
+package com.ahm.capacitor.camera.preview;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers a Base64 encoded result as a sequence of bounded chunks instead of one string.
+ *
+ * Encoding a 4 MB JPEG with {@code Base64.encodeToString} and resolving it through the bridge keeps the bytes, a
+ * 5.3 MB string and its JSON copies alive at once. Here the picture is encoded one chunk at a time into a single
+ * buffer, and each chunk is handed to the {@link Sink} before the next one is encoded, so the whole Base64 string never
+ * exists in one piece. The chunks concatenate to the Base64 encoding of the whole picture.
+ */
+final class ChunkedTransfer {
+
+    interface Sink {
+        /**
+         * Delivers chunk {@code index} of {@code count}. Called on the encoding thread, which may be the camera thread,
+         * so it must not wait for the chunk to be delivered.
+         */
+        void onChunk(String transferId, int index, int count, String chunk);
+    }
+
+    private static final byte[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(
+        StandardCharsets.US_ASCII
+    );
+
+    private static final AtomicLong lastTransferId = new AtomicLong();
+
+    private ChunkedTransfer() {}
+
+    /**
+     * Sends {@code length} bytes of {@code data} from {@code offset} to {@code sink} as Base64 chunks of at most
+     * {@code chunkSize} characters, rounded down to a multiple of 4 so that every chunk but the last is unpadded.
+     *
+     * @return the transfer id the chunks were sent under
+     */
+    static String send(byte[] data, int offset, int length, int chunkSize, Sink sink) {
+        String transferId = "cpcp_transfer_" + lastTransferId.incrementAndGet();
+        int chunkBytes = Math.max(1, chunkSize / 4) * 3;
+        int count = Math.max(1, (length + chunkBytes - 1) / chunkBytes);
+        byte[] buffer = new byte[encodedLength(Math.min(length, chunkBytes))];
+        for (int index = 0; index < count; index++) {
+            int start = index * chunkBytes;
+            int encoded = encode(data, offset + start, Math.min(chunkBytes, length - start), buffer);
+            sink.onChunk(transferId, index, count, new String(buffer, 0, encoded, StandardCharsets.US_ASCII));
+        }
+        return transferId;
+    }
+
+    static int encodedLength(int length) {
+        return (length + 2) / 3 * 4;
+    }
+
+    /**
+     * Base64 encodes {@code length} bytes of {@code data} from {@code offset} into the start of {@code out}, with
+     * padding and without line breaks.
+     *
+     * @return the number of characters written
+     */
+    static int encode(byte[] data, int offset, int length, byte[] out) {
+        int end = offset + length - length % 3;
+        int o = 0;
+        for (int i = offset; i < end; i += 3) {
+            int bits = ((data[i] & 0xFF) << 16) | ((data[i + 1] & 0xFF) << 8) | (data[i + 2] & 0xFF);
+            out[o++] = ALPHABET[bits >>> 18];
+            out[o++] = ALPHABET[(bits >>> 12) & 0x3F];
+            out[o++] = ALPHABET[(bits >>> 6) & 0x3F];
+            out[o++] = ALPHABET[bits & 0x3F];
+        }
+
+        int remaining = offset + length - end;
+        if (remaining > 0) {
+            int bits = (data[end] & 0xFF) << 16;
+            if (remaining == 2) {
+                bits |= (data[end + 1] & 0xFF) << 8;
+            }
+            out[o++] = ALPHABET[bits >>> 18];
+            out[o++] = ALPHABET[(bits >>> 12) & 0x3F];
+            out[o++] = remaining == 2 ? ALPHABET[(bits >>> 6) & 0x3F] : (byte) '=';
+            out[o++] = '=';
+        }
+        return o;
+    }
+}
@@ -0,0 +1,92 @@
+package com.ahm.capacitor.camera.preview;
+
+import android.graphics.Bitmap;
+import android.net.http.SslError;
+import android.webkit.RenderProcessGoneDetail;
+import android.webkit.SslErrorHandler;
+import android.webkit.WebResourceError;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+import android.webkit.WebView;
+import com.getcapacitor.Bridge;
+import com.getcapacitor.BridgeWebViewClient;
+
+/**
+ * A {@link BridgeWebViewClient} that passes every callback on to the client installed before it, so the plugin can add
+ * to the WebView's client without dropping what the host app or another plugin set up. Subclasses override a callback
+ * and call {@code super} for whatever they do not handle themselves.
+ *
+ * A WebView has a single client, so one installed after this one replaces it unless it delegates in the same way.
+ */
+class DelegatingWebViewClient extends BridgeWebViewClient {
+
+    private final BridgeWebViewClient previous;
+
+    /**
+     * @param previous the client installed so far, normally Capacitor's own
+     */
+    DelegatingWebViewClient(Bridge bridge, BridgeWebViewClient previous) {
+        super(bridge);
+        this.previous = previous;
+    }
+
+    @Override
+    public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+        return previous != null ? previous.shouldInterceptRequest(view, request) : super.shouldInterceptRequest(view, request);
+    }
+
+    @Override
+    public boolean shouldOverrideUrlLoading(WebView view, WebResourceRequest request) {
+        return previous != null ? previous.shouldOverrideUrlLoading(view, request) : super.shouldOverrideUrlLoading(view, request);
+    }
+
+    @Override
+    public void onPageStarted(WebView view, String url, Bitmap favicon) {
+        if (previous != null) {
+            previous.onPageStarted(view, url, favicon);
+        } else {
+            super.onPageStarted(view, url, favicon);
+        }
+    }
+
+    @Override
+    public void onPageFinished(WebView view, String url) {
+        if (previous != null) {
+            previous.onPageFinished(view, url);
+        } else {
+            super.onPageFinished(view, url);
+        }
+    }
+
+    @Override
+    public void onReceivedError(WebView view, WebResourceRequest request, WebResourceError error) {
+        if (previous != null) {
+            previous.onReceivedError(view, request, error);
+        } else {
+            super.onReceivedError(view, request, error);
+        }
+    }
+
+    @Override
+    public void onReceivedHttpError(WebView view, WebResourceRequest request, WebResourceResponse errorResponse) {
+        if (previous != null) {
+            previous.onReceivedHttpError(view, request, errorResponse);
+        } else {
+            super.onReceivedHttpError(view, request, errorResponse);
+        }
+    }
+
+    @Override
+    public void onReceivedSslError(WebView view, SslErrorHandler handler, SslError error) {
+        if (previous != null) {
+            previous.onReceivedSslError(view, handler, error);
+        } else {
+            super.onReceivedSslError(view, handler, error);
+        }
+    }
+
+    @Override
+    public boolean onRenderProcessGone(WebView view, RenderProcessGoneDetail detail) {
+        return previous != null ? previous.onRenderProcessGone(view, detail) : super.onRenderProcessGone(view, detail);
+    }
+}
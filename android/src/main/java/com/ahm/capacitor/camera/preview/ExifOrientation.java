@@ -0,0 +1,154 @@
+package com.ahm.capacitor.camera.preview;
+
+/**
+ * Reads and rewrites the orientation tag in the EXIF segment of a JPEG, in place.
+ *
+ * Only the marker headers in front of the first scan, the APP1 header and the entries of IFD0 are looked at. Nothing
+ * else is parsed and nothing is copied or allocated, so reading the orientation of a multi-megabyte picture costs a few
+ * dozen byte reads instead of a full {@code ExifInterface} parse.
+ */
+final class ExifOrientation {
+
+    static final int NORMAL = 1;
+
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TYPE_SHORT = 3;
+
+    private ExifOrientation() {}
+
+    /**
+     * Reads the orientation tag of {@code jpeg}.
+     *
+     * @return the EXIF orientation, or {@link #NORMAL} when the picture has none
+     */
+    static int read(byte[] jpeg) {
+        int located = locate(jpeg);
+        if (located < 0) {
+            return NORMAL;
+        }
+        int orientation = readShort(jpeg, located >>> 1, (located & 1) != 0);
+        return orientation >= 1 && orientation <= 8 ? orientation : NORMAL;
+    }
+
+    /**
+     * Sets the orientation tag of {@code jpeg} to {@code orientation}.
+     *
+     * @return whether the picture had an orientation tag to rewrite
+     */
+    static boolean write(byte[] jpeg, int orientation) {
+        int located = locate(jpeg);
+        if (located < 0) {
+            return false;
+        }
+        int offset = located >>> 1;
+        if ((located & 1) != 0) {
+            jpeg[offset] = (byte) orientation;
+            jpeg[offset + 1] = (byte) (orientation >>> 8);
+        } else {
+            jpeg[offset] = (byte) (orientation >>> 8);
+            jpeg[offset + 1] = (byte) orientation;
+        }
+        return true;
+    }
+
+    /**
+     * Finds the value of the orientation entry in IFD0.
+     *
+     * @return the offset of the value shifted left by one, with the low bit set for little endian TIFF data, or -1
+     */
+    private static int locate(byte[] jpeg) {
+        long segment = locateTiff(jpeg);
+        return segment < 0 ? -1 : locateInTiff(jpeg, (int) (segment >>> 32), (int) segment);
+    }
+
+    /**
+     * Finds the TIFF data of the EXIF segment.
+     *
+     * @return the offset of the TIFF header in the upper 32 bits and the end of the segment in the lower, or -1
+     */
+    static long locateTiff(byte[] jpeg) {
+        int length = jpeg.length;
+        if (length < 4 || (jpeg[0] & 0xFF) != 0xFF || (jpeg[1] & 0xFF) != 0xD8) {
+            return -1;
+        }
+
+        int pos = 2;
+        while (pos + 4 <= length) {
+            if ((jpeg[pos] & 0xFF) != 0xFF) {
+                return -1;
+            }
+            int marker = jpeg[pos + 1] & 0xFF;
+            if (marker == 0xFF) {
+                pos++;
+                continue;
+            }
+            if (marker == 0xDA || marker == 0xD9) {
+                // the EXIF segment always comes before the image data
+                return -1;
+            }
+            int segmentEnd = pos + 2 + (((jpeg[pos + 2] & 0xFF) << 8) | (jpeg[pos + 3] & 0xFF));
+            if (segmentEnd > length) {
+                return -1;
+            }
+            if (marker == 0xE1 && isExifHeader(jpeg, pos + 4, segmentEnd)) {
+                return ((long) (pos + 10) << 32) | segmentEnd;
+            }
+            pos = segmentEnd;
+        }
+        return -1;
+    }
+
+    private static boolean isExifHeader(byte[] jpeg, int pos, int end) {
+        return (
+            pos + 6 <= end &&
+            jpeg[pos] == 'E' &&
+            jpeg[pos + 1] == 'x' &&
+            jpeg[pos + 2] == 'i' &&
+            jpeg[pos + 3] == 'f' &&
+            jpeg[pos + 4] == 0 &&
+            jpeg[pos + 5] == 0
+        );
+    }
+
+    private static int locateInTiff(byte[] jpeg, int tiff, int end) {
+        if (tiff + 8 > end) {
+            return -1;
+        }
+        boolean littleEndian;
+        if (jpeg[tiff] == 'I' && jpeg[tiff + 1] == 'I') {
+            littleEndian = true;
+        } else if (jpeg[tiff] == 'M' && jpeg[tiff + 1] == 'M') {
+            littleEndian = false;
+        } else {
+            return -1;
+        }
+
+        long ifd = tiff + readInt(jpeg, tiff + 4, littleEndian);
+        if (ifd < tiff || ifd + 2 > end) {
+            return -1;
+        }
+        int entries = readShort(jpeg, (int) ifd, littleEndian);
+        int entry = (int) ifd + 2;
+        for (int i = 0; i < entries && entry + 12 <= end; i++, entry += 12) {
+            if (readShort(jpeg, entry, littleEndian) == TAG_ORIENTATION) {
+                if (readShort(jpeg, entry + 2, littleEndian) != TYPE_SHORT) {
+                    return -1;
+                }
+                return ((entry + 8) << 1) | (littleEndian ? 1 : 0);
+            }
+        }
+        return -1;
+    }
+
+    static int readShort(byte[] data, int pos, boolean littleEndian) {
+        int b0 = data[pos] & 0xFF;
+        int b1 = data[pos + 1] & 0xFF;
+        return littleEndian ? (b1 << 8) | b0 : (b0 << 8) | b1;
+    }
+
+    static long readInt(byte[] data, int pos, boolean littleEndian) {
+        long high = readShort(data, littleEndian ? pos + 2 : pos, littleEndian);
+        long low = readShort(data, littleEndian ? pos : pos + 2, littleEndian);
+        return (high << 16) | low;
+    }
+}
@@ -0,0 +1,79 @@
+package com.ahm.capacitor.camera.preview;
+
+import java.util.Arrays;
+
+/**
+ * Extracts the JPEG thumbnail many cameras embed in IFD1 of the EXIF segment.
+ *
+ * Like {@link ExifOrientation}, only the marker headers, the IFD entry tables and the thumbnail itself are touched. The
+ * thumbnail is stored as taken, so it needs the same orientation as the picture it belongs to.
+ */
+final class ExifThumbnail {
+
+    private static final int TAG_THUMBNAIL_OFFSET = 0x0201;
+    private static final int TAG_THUMBNAIL_LENGTH = 0x0202;
+
+    private ExifThumbnail() {}
+
+    /**
+     * @return a copy of the embedded thumbnail, or {@code null} when there is no usable one
+     */
+    static byte[] extract(byte[] jpeg) {
+        long segment = ExifOrientation.locateTiff(jpeg);
+        if (segment < 0) {
+            return null;
+        }
+        int tiff = (int) (segment >>> 32);
+        int end = (int) segment;
+        if (tiff + 8 > end) {
+            return null;
+        }
+        boolean littleEndian;
+        if (jpeg[tiff] == 'I' && jpeg[tiff + 1] == 'I') {
+            littleEndian = true;
+        } else if (jpeg[tiff] == 'M' && jpeg[tiff + 1] == 'M') {
+            littleEndian = false;
+        } else {
+            return null;
+        }
+
+        // IFD1 follows IFD0 through the next IFD offset after its entries
+        long ifd0 = tiff + ExifOrientation.readInt(jpeg, tiff + 4, littleEndian);
+        if (ifd0 < tiff || ifd0 + 2 > end) {
+            return null;
+        }
+        long next = ifd0 + 2 + 12L * ExifOrientation.readShort(jpeg, (int) ifd0, littleEndian);
+        if (next + 4 > end) {
+            return null;
+        }
+        long nextOffset = ExifOrientation.readInt(jpeg, (int) next, littleEndian);
+        if (nextOffset == 0) {
+            return null;
+        }
+        long ifd1 = tiff + nextOffset;
+        if (ifd1 + 2 > end) {
+            return null;
+        }
+
+        long offset = -1;
+        long length = -1;
+        int entries = ExifOrientation.readShort(jpeg, (int) ifd1, littleEndian);
+        int entry = (int) ifd1 + 2;
+        for (int i = 0; i < entries && entry + 12 <= end; i++, entry += 12) {
+            int tag = ExifOrientation.readShort(jpeg, entry, littleEndian);
+            if (tag == TAG_THUMBNAIL_OFFSET) {
+                offset = tiff + ExifOrientation.readInt(jpeg, entry + 8, littleEndian);
+            } else if (tag == TAG_THUMBNAIL_LENGTH) {
+                length = ExifOrientation.readInt(jpeg, entry + 8, littleEndian);
+            }
+        }
+        if (offset < tiff || length < 4 || offset + length > end) {
+            return null;
+        }
+        int start = (int) offset;
+        if ((jpeg[start] & 0xFF) != 0xFF || (jpeg[start + 1] & 0xFF) != 0xD8) {
+            return null;
+        }
+        return Arrays.copyOfRange(jpeg, start, start + (int) length);
+    }
+}
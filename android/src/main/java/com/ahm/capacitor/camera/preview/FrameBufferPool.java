@@ -0,0 +1,62 @@
+package com.ahm.capacitor.camera.preview;
+
+import java.util.ArrayDeque;
+
+/**
+ * A small pool of equally sized frame buffers, used as the callback buffers handed to
+ * {@link android.hardware.Camera#addCallbackBuffer(byte[])} and as scratch space for rotated frames, so that taking
+ * samples does not allocate a new frame for every preview callback.
+ */
+final class FrameBufferPool {
+
+    private final ArrayDeque<byte[]> free = new ArrayDeque<>();
+    private final int capacity;
+    private int bufferSize;
+    private int allocationCount;
+
+    FrameBufferPool(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Sets the size of the buffers handed out from now on. Pooled buffers of a different size are dropped.
+     */
+    synchronized void resize(int bufferSize) {
+        if (this.bufferSize != bufferSize) {
+            this.bufferSize = bufferSize;
+            free.clear();
+        }
+    }
+
+    synchronized int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Returns a pooled buffer, or a newly allocated one if every pooled buffer is in use.
+     */
+    synchronized byte[] acquire() {
+        byte[] buffer = free.pollFirst();
+        if (buffer == null) {
+            buffer = new byte[bufferSize];
+            allocationCount++;
+        }
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool. Buffers of a stale size, or beyond the pool capacity, are left to the garbage collector.
+     */
+    synchronized void release(byte[] buffer) {
+        if (buffer != null && buffer.length == bufferSize && free.size() < capacity && !free.contains(buffer)) {
+            free.addFirst(buffer);
+        }
+    }
+
+    /**
+     * Total number of buffers this pool has allocated, for checking that steady state use does not allocate.
+     */
+    synchronized int getAllocationCount() {
+        return allocationCount;
+    }
+}
@@ -0,0 +1,20 @@
+package com.ahm.capacitor.camera.preview;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Compresses preview frames to JPEG for the {@link SnapshotPipeline}.
+ *
+ * Implementations may keep scratch space from one frame to the next, so an encoder is only used by one thread at a
+ * time.
+ */
+interface FrameEncoder {
+    /**
+     * Writes the JPEG of a {@code width} x {@code height} frame to {@code out}.
+     *
+     * @param format the {@link android.graphics.ImageFormat} of {@code frame}
+     * @throws IOException when the frame cannot be encoded
+     */
+    void encode(byte[] frame, int format, int width, int height, int quality, OutputStream out) throws IOException;
+}
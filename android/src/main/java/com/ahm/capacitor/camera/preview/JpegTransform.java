@@ -0,0 +1,852 @@
+package com.ahm.capacitor.camera.preview;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lossless rotation and mirroring of baseline JPEGs, in the way {@code jpegtran} does it.
+ *
+ * The entropy coded data is decoded to quantized DCT coefficients only. The coefficient blocks are moved to their new
+ * position, transposed and sign flipped, then Huffman coded again with the standard tables. The picture is never
+ * decoded to pixels, so it loses no quality, and only the coefficients are held in memory.
+ *
+ * A transform is an optional {@link #TRANSPOSE} followed by optional {@link #FLIP_H} and {@link #FLIP_V} flips, which
+ * covers the eight EXIF orientations. Blocks can only be moved whole, so when a mirrored edge is not a whole number of
+ * MCUs the partial MCUs on that edge are trimmed away, as {@code jpegtran -trim} does.
+ */
+final class JpegTransform {
+
+    static final int NONE = 0;
+    static final int FLIP_H = 1;
+    static final int FLIP_V = 2;
+    static final int TRANSPOSE = 4;
+    static final int ROTATE_90 = TRANSPOSE | FLIP_H;
+    static final int ROTATE_180 = FLIP_H | FLIP_V;
+    static final int ROTATE_270 = TRANSPOSE | FLIP_V;
+    static final int TRANSVERSE = TRANSPOSE | FLIP_H | FLIP_V;
+
+    // the transform that makes a picture upright, indexed by EXIF orientation
+    private static final int[] EXIF_TRANSFORMS = { NONE, NONE, FLIP_H, ROTATE_180, FLIP_V, TRANSPOSE, ROTATE_90, TRANSVERSE, ROTATE_270 };
+
+    // natural (row major) index of each coefficient in zigzag order
+    static final int[] ZIGZAG = {
+        0, 1, 8, 16, 9, 2, 3, 10, 17, 24, 32, 25, 18, 11, 4, 5, 12, 19, 26, 33, 40, 48, 41, 34, 27, 20, 13, 6, 7, 14, 21, 28, 35,
+        42, 49, 56, 57, 50, 43, 36, 29, 22, 15, 23, 30, 37, 44, 51, 58, 59, 52, 45, 38, 31, 39, 46, 53, 60, 61, 54, 47, 55, 62, 63,
+    };
+
+    private static final int[] UNZIGZAG = new int[64];
+
+    static {
+        for (int k = 0; k < 64; k++) {
+            UNZIGZAG[ZIGZAG[k]] = k;
+        }
+    }
+
+    // standard Huffman tables, ITU T.81 annex K.3
+    static final int[] DC_LUMINANCE_COUNTS = { 0, 1, 5, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0 };
+    static final int[] DC_CHROMINANCE_COUNTS = { 0, 3, 1, 1, 1, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0 };
+    static final int[] DC_VALUES = { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11 };
+    static final int[] AC_LUMINANCE_COUNTS = { 0, 2, 1, 3, 3, 2, 4, 3, 5, 5, 4, 4, 0, 0, 1, 0x7d };
+    static final int[] AC_LUMINANCE_VALUES = {
+        0x01, 0x02, 0x03, 0x00, 0x04, 0x11, 0x05, 0x12, 0x21, 0x31, 0x41, 0x06, 0x13, 0x51, 0x61, 0x07, 0x22, 0x71, 0x14, 0x32,
+        0x81, 0x91, 0xa1, 0x08, 0x23, 0x42, 0xb1, 0xc1, 0x15, 0x52, 0xd1, 0xf0, 0x24, 0x33, 0x62, 0x72, 0x82, 0x09, 0x0a, 0x16,
+        0x17, 0x18, 0x19, 0x1a, 0x25, 0x26, 0x27, 0x28, 0x29, 0x2a, 0x34, 0x35, 0x36, 0x37, 0x38, 0x39, 0x3a, 0x43, 0x44, 0x45,
+        0x46, 0x47, 0x48, 0x49, 0x4a, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58, 0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69,
+        0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78, 0x79, 0x7a, 0x83, 0x84, 0x85, 0x86, 0x87, 0x88, 0x89, 0x8a, 0x92, 0x93, 0x94,
+        0x95, 0x96, 0x97, 0x98, 0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5, 0xa6, 0xa7, 0xa8, 0xa9, 0xaa, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6,
+        0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3, 0xc4, 0xc5, 0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2, 0xd3, 0xd4, 0xd5, 0xd6, 0xd7, 0xd8,
+        0xd9, 0xda, 0xe1, 0xe2, 0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea, 0xf1, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8,
+        0xf9, 0xfa,
+    };
+    static final int[] AC_CHROMINANCE_COUNTS = { 0, 2, 1, 2, 4, 4, 3, 4, 7, 5, 4, 4, 0, 1, 2, 0x77 };
+    static final int[] AC_CHROMINANCE_VALUES = {
+        0x00, 0x01, 0x02, 0x03, 0x11, 0x04, 0x05, 0x21, 0x31, 0x06, 0x12, 0x41, 0x51, 0x07, 0x61, 0x71, 0x13, 0x22, 0x32, 0x81,
+        0x08, 0x14, 0x42, 0x91, 0xa1, 0xb1, 0xc1, 0x09, 0x23, 0x33, 0x52, 0xf0, 0x15, 0x62, 0x72, 0xd1, 0x0a, 0x16, 0x24, 0x34,
+        0xe1, 0x25, 0xf1, 0x17, 0x18, 0x19, 0x1a, 0x26, 0x27, 0x28, 0x29, 0x2a, 0x35, 0x36, 0x37, 0x38, 0x39, 0x3a, 0x43, 0x44,
+        0x45, 0x46, 0x47, 0x48, 0x49, 0x4a, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58, 0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68,
+        0x69, 0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78, 0x79, 0x7a, 0x82, 0x83, 0x84, 0x85, 0x86, 0x87, 0x88, 0x89, 0x8a, 0x92,
+        0x93, 0x94, 0x95, 0x96, 0x97, 0x98, 0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5, 0xa6, 0xa7, 0xa8, 0xa9, 0xaa, 0xb2, 0xb3, 0xb4,
+        0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3, 0xc4, 0xc5, 0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2, 0xd3, 0xd4, 0xd5, 0xd6,
+        0xd7, 0xd8, 0xd9, 0xda, 0xe2, 0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8,
+        0xf9, 0xfa,
+    };
+
+    private JpegTransform() {}
+
+    /**
+     * The transform that makes a picture with the given EXIF orientation upright.
+     */
+    static int fromExifOrientation(int orientation) {
+        return orientation >= 1 && orientation <= 8 ? EXIF_TRANSFORMS[orientation] : NONE;
+    }
+
+    /**
+     * The EXIF orientation that tells viewers to apply {@code transform} when displaying the picture.
+     */
+    static int toExifOrientation(int transform) {
+        for (int orientation = 1; orientation <= 8; orientation++) {
+            if (EXIF_TRANSFORMS[orientation] == transform) {
+                return orientation;
+            }
+        }
+        return ExifOrientation.NORMAL;
+    }
+
+    /**
+     * The single transform equivalent to applying {@code first}, then {@code second}.
+     */
+    static int compose(int first, int second) {
+        int flips = first & (FLIP_H | FLIP_V);
+        if ((second & TRANSPOSE) != 0) {
+            // a flip followed by a transpose is the transpose followed by the flip along the other axis
+            flips = ((first & FLIP_H) != 0 ? FLIP_V : 0) | ((first & FLIP_V) != 0 ? FLIP_H : 0);
+        }
+        return ((first ^ second) & TRANSPOSE) | (flips ^ (second & (FLIP_H | FLIP_V)));
+    }
+
+    /**
+     * Applies {@code transform} to a baseline JPEG. APPn and COM segments are kept, with the EXIF orientation reset to
+     * normal.
+     *
+     * @throws IOException when the picture is not a baseline Huffman coded JPEG with a single scan, or is corrupt
+     */
+    static byte[] transform(byte[] jpeg, int transform) throws IOException {
+        if (transform == NONE) {
+            return jpeg;
+        }
+        try {
+            Image image = new Image(jpeg);
+            image.read();
+            byte[] result = image.write(transform);
+            ExifOrientation.write(result, ExifOrientation.NORMAL);
+            return result;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Corrupt JPEG", e);
+        }
+    }
+
+    private static final class Component {
+
+        int id;
+        int h;
+        int v;
+        int quantTable;
+        int dcTable;
+        int acTable;
+        // allocated blocks, padded to whole MCUs
+        int blocksPerLine;
+        int blocksPerColumn;
+        // 64 coefficients per block, in natural order
+        short[] coefficients;
+        int predictor;
+    }
+
+    private static final class Image {
+
+        final byte[] data;
+        // {start, end} of every APPn and COM segment
+        final List<int[]> segments = new ArrayList<>();
+        final int[][] quantTables = new int[4][];
+        final int[] quantPrecision = new int[4];
+        final HuffmanTable[] dcTables = new HuffmanTable[4];
+        final HuffmanTable[] acTables = new HuffmanTable[4];
+        Component[] components;
+        int width;
+        int height;
+        int hMax;
+        int vMax;
+        int mcusPerLine;
+        int mcusPerColumn;
+        int restartInterval;
+
+        Image(byte[] data) {
+            this.data = data;
+        }
+
+        int u8(int pos) {
+            return data[pos] & 0xFF;
+        }
+
+        int u16(int pos) {
+            return (u8(pos) << 8) | u8(pos + 1);
+        }
+
+        void read() throws IOException {
+            if (data.length < 4 || u8(0) != 0xFF || u8(1) != 0xD8) {
+                throw new IOException("Not a JPEG");
+            }
+
+            int pos = 2;
+            while (true) {
+                if (pos + 4 > data.length) {
+                    throw new IOException("No image data");
+                }
+                if (u8(pos) != 0xFF) {
+                    throw new IOException("Marker expected at " + pos);
+                }
+                int marker = u8(pos + 1);
+                if (marker == 0xFF) {
+                    pos++;
+                    continue;
+                }
+                if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD8)) {
+                    pos += 2;
+                    continue;
+                }
+                if (marker == 0xD9) {
+                    throw new IOException("No image data");
+                }
+
+                int body = pos + 4;
+                int end = pos + 2 + u16(pos + 2);
+                if (end > data.length) {
+                    throw new IOException("Truncated segment at " + pos);
+                }
+                if (marker == 0xDB) {
+                    readQuantTables(body, end);
+                } else if (marker == 0xC4) {
+                    readHuffmanTables(body, end);
+                } else if (marker == 0xC0 || marker == 0xC1) {
+                    readFrame(body);
+                } else if (marker == 0xDD) {
+                    restartInterval = u16(body);
+                } else if (marker == 0xDA) {
+                    readScan(body, end);
+                    return;
+                } else if (marker == 0xFE || (marker >= 0xE0 && marker <= 0xEF)) {
+                    segments.add(new int[] { pos, end });
+                } else if (marker >= 0xC2 && marker <= 0xCF && marker != 0xC8 && marker != 0xCC) {
+                    throw new IOException("Only baseline JPEGs can be transformed losslessly");
+                }
+                pos = end;
+            }
+        }
+
+        void readQuantTables(int pos, int end) throws IOException {
+            while (pos < end) {
+                int precision = u8(pos) >> 4;
+                int id = u8(pos) & 15;
+                if (id > 3) {
+                    throw new IOException("Bad quantization table " + id);
+                }
+                pos++;
+                int[] table = new int[64];
+                for (int k = 0; k < 64; k++) {
+                    table[k] = precision == 0 ? u8(pos + k) : u16(pos + 2 * k);
+                }
+                pos += precision == 0 ? 64 : 128;
+                quantTables[id] = table;
+                quantPrecision[id] = precision;
+            }
+        }
+
+        void readHuffmanTables(int pos, int end) throws IOException {
+            while (pos < end) {
+                int tableClass = u8(pos) >> 4;
+                int id = u8(pos) & 15;
+                if (id > 3 || tableClass > 1) {
+                    throw new IOException("Bad Huffman table " + id);
+                }
+                int[] counts = new int[16];
+                int total = 0;
+                for (int i = 0; i < 16; i++) {
+                    counts[i] = u8(pos + 1 + i);
+                    total += counts[i];
+                }
+                int[] values = new int[total];
+                for (int i = 0; i < total; i++) {
+                    values[i] = u8(pos + 17 + i);
+                }
+                pos += 17 + total;
+                (tableClass == 0 ? dcTables : acTables)[id] = new HuffmanTable(counts, values);
+            }
+        }
+
+        void readFrame(int pos) throws IOException {
+            if (u8(pos) != 8) {
+                throw new IOException("Only 8 bit JPEGs can be transformed losslessly");
+            }
+            height = u16(pos + 1);
+            width = u16(pos + 3);
+            if (width == 0 || height == 0) {
+                throw new IOException("Missing picture size");
+            }
+
+            components = new Component[u8(pos + 5)];
+            for (int i = 0; i < components.length; i++) {
+                int p = pos + 6 + 3 * i;
+                Component component = new Component();
+                component.id = u8(p);
+                component.h = u8(p + 1) >> 4;
+                component.v = u8(p + 1) & 15;
+                component.quantTable = u8(p + 2) & 3;
+                if (component.h < 1 || component.h > 4 || component.v < 1 || component.v > 4) {
+                    throw new IOException("Bad sampling factors");
+                }
+                hMax = Math.max(hMax, component.h);
+                vMax = Math.max(vMax, component.v);
+                components[i] = component;
+            }
+
+            mcusPerLine = ceilDiv(width, 8 * hMax);
+            mcusPerColumn = ceilDiv(height, 8 * vMax);
+            for (Component component : components) {
+                component.blocksPerLine = mcusPerLine * component.h;
+                component.blocksPerColumn = mcusPerColumn * component.v;
+                component.coefficients = new short[component.blocksPerLine * component.blocksPerColumn * 64];
+            }
+        }
+
+        void readScan(int pos, int end) throws IOException {
+            if (components == null) {
+                throw new IOException("Scan before frame header");
+            }
+            int count = u8(pos);
+            if (count != components.length) {
+                throw new IOException("Only single scan JPEGs can be transformed losslessly");
+            }
+            for (int i = 0; i < count; i++) {
+                int id = u8(pos + 1 + 2 * i);
+                int tables = u8(pos + 2 + 2 * i);
+                Component component = findComponent(id);
+                component.dcTable = tables >> 4;
+                component.acTable = tables & 15;
+                if (component.dcTable > 3 || component.acTable > 3) {
+                    throw new IOException("Bad Huffman table selector");
+                }
+                if (dcTables[component.dcTable] == null || acTables[component.acTable] == null) {
+                    throw new IOException("Missing Huffman table");
+                }
+            }
+
+            BitReader reader = new BitReader(data, end);
+            if (components.length == 1) {
+                // a single component scan is not interleaved and only covers the blocks inside the picture
+                Component component = components[0];
+                int blocksPerLine = ceilDiv(ceilDiv(width * component.h, hMax), 8);
+                int blocksPerColumn = ceilDiv(ceilDiv(height * component.v, vMax), 8);
+                int blocks = blocksPerLine * blocksPerColumn;
+                for (int i = 0; i < blocks; i++) {
+                    restartIfNeeded(reader, i);
+                    int offset = ((i / blocksPerLine) * component.blocksPerLine + i % blocksPerLine) * 64;
+                    decodeBlock(reader, component, offset);
+                }
+                return;
+            }
+
+            int mcus = mcusPerLine * mcusPerColumn;
+            for (int mcu = 0; mcu < mcus; mcu++) {
+                restartIfNeeded(reader, mcu);
+                int mcuX = mcu % mcusPerLine;
+                int mcuY = mcu / mcusPerLine;
+                for (Component component : components) {
+                    for (int v = 0; v < component.v; v++) {
+                        int row = (mcuY * component.v + v) * component.blocksPerLine + mcuX * component.h;
+                        for (int h = 0; h < component.h; h++) {
+                            decodeBlock(reader, component, (row + h) * 64);
+                        }
+                    }
+                }
+            }
+        }
+
+        Component findComponent(int id) throws IOException {
+            for (Component component : components) {
+                if (component.id == id) {
+                    return component;
+                }
+            }
+            throw new IOException("Unknown component " + id);
+        }
+
+        void restartIfNeeded(BitReader reader, int unit) throws IOException {
+            if (restartInterval > 0 && unit > 0 && unit % restartInterval == 0) {
+                reader.restart();
+                for (Component component : components) {
+                    component.predictor = 0;
+                }
+            }
+        }
+
+        void decodeBlock(BitReader reader, Component component, int offset) throws IOException {
+            short[] coefficients = component.coefficients;
+            int size = reader.decode(dcTables[component.dcTable]);
+            component.predictor += reader.receiveExtend(size);
+            coefficients[offset] = (short) component.predictor;
+
+            HuffmanTable ac = acTables[component.acTable];
+            for (int k = 1; k < 64; k++) {
+                int symbol = reader.decode(ac);
+                int run = symbol >> 4;
+                size = symbol & 15;
+                if (size == 0) {
+                    if (run != 15) {
+                        break;
+                    }
+                    k += 15;
+                    continue;
+                }
+                k += run;
+                if (k > 63) {
+                    throw new IOException("Corrupt JPEG data");
+                }
+                coefficients[offset + ZIGZAG[k]] = (short) reader.receiveExtend(size);
+            }
+        }
+
+        byte[] write(int transform) throws IOException {
+            boolean transpose = (transform & TRANSPOSE) != 0;
+            boolean flipH = (transform & FLIP_H) != 0;
+            boolean flipV = (transform & FLIP_V) != 0;
+
+            int outWidth = transpose ? height : width;
+            int outHeight = transpose ? width : height;
+            int outHMax = transpose ? vMax : hMax;
+            int outVMax = transpose ? hMax : vMax;
+            // partial MCUs cannot be mirrored, drop them
+            if (flipH) {
+                outWidth -= outWidth % (8 * outHMax);
+            }
+            if (flipV) {
+                outHeight -= outHeight % (8 * outVMax);
+            }
+            if (outWidth == 0 || outHeight == 0) {
+                throw new IOException("Picture too small to transform");
+            }
+
+            ByteWriter out = new ByteWriter(data.length + 1024);
+            out.writeShort(0xFFD8);
+            for (int[] segment : segments) {
+                out.write(data, segment[0], segment[1] - segment[0]);
+            }
+            writeQuantTables(out, transpose);
+            writeFrame(out, outWidth, outHeight, transpose);
+            writeHuffmanTables(out);
+            writeScanHeader(out);
+            writeScan(out, transform, outWidth, outHeight, outHMax, outVMax);
+            out.writeShort(0xFFD9);
+            return out.toByteArray();
+        }
+
+        void writeQuantTables(ByteWriter out, boolean transpose) {
+            for (int id = 0; id < 4; id++) {
+                int[] table = quantTables[id];
+                if (table == null) {
+                    continue;
+                }
+                int precision = quantPrecision[id];
+                out.writeShort(0xFFDB);
+                out.writeShort(2 + 1 + (precision == 0 ? 64 : 128));
+                out.writeByte((precision << 4) | id);
+                for (int k = 0; k < 64; k++) {
+                    int value = table[transpose ? UNZIGZAG[transposed(ZIGZAG[k])] : k];
+                    if (precision == 0) {
+                        out.writeByte(value);
+                    } else {
+                        out.writeShort(value);
+                    }
+                }
+            }
+        }
+
+        void writeFrame(ByteWriter out, int outWidth, int outHeight, boolean transpose) {
+            out.writeShort(0xFFC0);
+            out.writeShort(8 + 3 * components.length);
+            out.writeByte(8);
+            out.writeShort(outHeight);
+            out.writeShort(outWidth);
+            out.writeByte(components.length);
+            for (Component component : components) {
+                out.writeByte(component.id);
+                out.writeByte(transpose ? (component.v << 4) | component.h : (component.h << 4) | component.v);
+                out.writeByte(component.quantTable);
+            }
+        }
+
+        void writeHuffmanTables(ByteWriter out) {
+            writeHuffmanTable(out, 0x00, DC_LUMINANCE_COUNTS, DC_VALUES);
+            writeHuffmanTable(out, 0x10, AC_LUMINANCE_COUNTS, AC_LUMINANCE_VALUES);
+            if (components.length > 1) {
+                writeHuffmanTable(out, 0x01, DC_CHROMINANCE_COUNTS, DC_VALUES);
+                writeHuffmanTable(out, 0x11, AC_CHROMINANCE_COUNTS, AC_CHROMINANCE_VALUES);
+            }
+        }
+
+        void writeHuffmanTable(ByteWriter out, int classAndId, int[] counts, int[] values) {
+            out.writeShort(0xFFC4);
+            out.writeShort(2 + 1 + 16 + values.length);
+            out.writeByte(classAndId);
+            for (int count : counts) {
+                out.writeByte(count);
+            }
+            for (int value : values) {
+                out.writeByte(value);
+            }
+        }
+
+        void writeScanHeader(ByteWriter out) {
+            out.writeShort(0xFFDA);
+            out.writeShort(6 + 2 * components.length);
+            out.writeByte(components.length);
+            for (int i = 0; i < components.length; i++) {
+                out.writeByte(components[i].id);
+                out.writeByte(i == 0 ? 0x00 : 0x11);
+            }
+            out.writeByte(0);
+            out.writeByte(63);
+            out.writeByte(0);
+        }
+
+        void writeScan(ByteWriter out, int transform, int outWidth, int outHeight, int outHMax, int outVMax) {
+            boolean transpose = (transform & TRANSPOSE) != 0;
+            boolean flipH = (transform & FLIP_H) != 0;
+            boolean flipV = (transform & FLIP_V) != 0;
+
+            // where each output coefficient, in zigzag order, comes from and whether its sign flips
+            int[] source = new int[64];
+            boolean[] negate = new boolean[64];
+            for (int k = 0; k < 64; k++) {
+                int natural = ZIGZAG[k];
+                int row = natural >> 3;
+                int column = natural & 7;
+                source[k] = transpose ? transposed(natural) : natural;
+                negate[k] = (flipH && (column & 1) != 0) ^ (flipV && (row & 1) != 0);
+            }
+
+            HuffmanEncoder luminance = new HuffmanEncoder(DC_LUMINANCE_COUNTS, DC_VALUES, AC_LUMINANCE_COUNTS, AC_LUMINANCE_VALUES);
+            HuffmanEncoder chrominance = new HuffmanEncoder(
+                DC_CHROMINANCE_COUNTS,
+                DC_VALUES,
+                AC_CHROMINANCE_COUNTS,
+                AC_CHROMINANCE_VALUES
+            );
+            BitWriter writer = new BitWriter(out);
+            int[] block = new int[64];
+            for (Component component : components) {
+                component.predictor = 0;
+            }
+
+            if (components.length == 1) {
+                Component component = components[0];
+                int blocksPerLine = ceilDiv(outWidth, 8);
+                int blocksPerColumn = ceilDiv(outHeight, 8);
+                for (int y = 0; y < blocksPerColumn; y++) {
+                    for (int x = 0; x < blocksPerLine; x++) {
+                        int offset = sourceBlock(component, x, y, blocksPerLine, blocksPerColumn, transform);
+                        transformBlock(component.coefficients, offset, source, negate, block);
+                        luminance.encodeBlock(writer, component, block);
+                    }
+                }
+            } else {
+                int outMcusPerLine = ceilDiv(outWidth, 8 * outHMax);
+                int outMcusPerColumn = ceilDiv(outHeight, 8 * outVMax);
+                for (int mcuY = 0; mcuY < outMcusPerColumn; mcuY++) {
+                    for (int mcuX = 0; mcuX < outMcusPerLine; mcuX++) {
+                        for (int i = 0; i < components.length; i++) {
+                            Component component = components[i];
+                            int h = transpose ? component.v : component.h;
+                            int v = transpose ? component.h : component.v;
+                            int blocksPerLine = outMcusPerLine * h;
+                            int blocksPerColumn = outMcusPerColumn * v;
+                            for (int by = 0; by < v; by++) {
+                                for (int bx = 0; bx < h; bx++) {
+                                    int x = mcuX * h + bx;
+                                    int y = mcuY * v + by;
+                                    int offset = sourceBlock(component, x, y, blocksPerLine, blocksPerColumn, transform);
+                                    transformBlock(component.coefficients, offset, source, negate, block);
+                                    (i == 0 ? luminance : chrominance).encodeBlock(writer, component, block);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+            writer.flush();
+        }
+
+        /**
+         * Offset of the source block that ends up at block ({@code x}, {@code y}) of the output component, whose mirrored
+         * axes are exactly {@code blocksPerLine} by {@code blocksPerColumn} blocks after trimming.
+         */
+        int sourceBlock(Component component, int x, int y, int blocksPerLine, int blocksPerColumn, int transform) {
+            if ((transform & FLIP_H) != 0) {
+                x = blocksPerLine - 1 - x;
+            }
+            if ((transform & FLIP_V) != 0) {
+                y = blocksPerColumn - 1 - y;
+            }
+            if ((transform & TRANSPOSE) != 0) {
+                int swap = x;
+                x = y;
+                y = swap;
+            }
+            return (y * component.blocksPerLine + x) * 64;
+        }
+    }
+
+    private static void transformBlock(short[] coefficients, int offset, int[] source, boolean[] negate, int[] block) {
+        for (int k = 0; k < 64; k++) {
+            int value = coefficients[offset + source[k]];
+            block[k] = negate[k] ? -value : value;
+        }
+    }
+
+    private static int transposed(int natural) {
+        return ((natural & 7) << 3) | (natural >> 3);
+    }
+
+    private static int ceilDiv(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+
+    private static final class HuffmanTable {
+
+        // maxCode[l] is the largest code of length l, or -1 when there is none
+        final int[] maxCode = new int[17];
+        final int[] valueOffset = new int[17];
+        final int[] values;
+        // (length << 8 | value) for every code of up to 8 bits, indexed by the next 8 bits of the stream
+        final int[] lookup = new int[256];
+
+        HuffmanTable(int[] counts, int[] values) {
+            this.values = values;
+            int code = 0;
+            int index = 0;
+            for (int length = 1; length <= 16; length++) {
+                int count = counts[length - 1];
+                valueOffset[length] = index - code;
+                for (int i = 0; i < count; i++, code++, index++) {
+                    if (length <= 8) {
+                        int shift = 8 - length;
+                        int entry = (length << 8) | values[index];
+                        for (int fill = 0; fill < 1 << shift; fill++) {
+                            lookup[(code << shift) | fill] = entry;
+                        }
+                    }
+                }
+                maxCode[length] = count == 0 ? -1 : code - 1;
+                code <<= 1;
+            }
+        }
+    }
+
+    static final class HuffmanEncoder {
+
+        final int[] dcCodes = new int[256];
+        final int[] dcSizes = new int[256];
+        final int[] acCodes = new int[256];
+        final int[] acSizes = new int[256];
+
+        HuffmanEncoder(int[] dcCounts, int[] dcValues, int[] acCounts, int[] acValues) {
+            build(dcCounts, dcValues, dcCodes, dcSizes);
+            build(acCounts, acValues, acCodes, acSizes);
+        }
+
+        static void build(int[] counts, int[] values, int[] codes, int[] sizes) {
+            int code = 0;
+            int index = 0;
+            for (int length = 1; length <= 16; length++) {
+                for (int i = 0; i < counts[length - 1]; i++, code++, index++) {
+                    codes[values[index]] = code;
+                    sizes[values[index]] = length;
+                }
+                code <<= 1;
+            }
+        }
+
+        void encodeBlock(BitWriter writer, Component component, int[] block) {
+            int diff = block[0] - component.predictor;
+            component.predictor = block[0];
+            int size = magnitudeSize(diff);
+            writer.write(dcCodes[size], dcSizes[size]);
+            if (size != 0) {
+                writer.write(diff < 0 ? diff - 1 : diff, size);
+            }
+
+            int run = 0;
+            for (int k = 1; k < 64; k++) {
+                int value = block[k];
+                if (value == 0) {
+                    run++;
+                    continue;
+                }
+                while (run > 15) {
+                    writer.write(acCodes[0xF0], acSizes[0xF0]);
+                    run -= 16;
+                }
+                size = magnitudeSize(value);
+                int symbol = (run << 4) | size;
+                writer.write(acCodes[symbol], acSizes[symbol]);
+                writer.write(value < 0 ? value - 1 : value, size);
+                run = 0;
+            }
+            if (run > 0) {
+                writer.write(acCodes[0], acSizes[0]);
+            }
+        }
+
+        static int magnitudeSize(int value) {
+            return 32 - Integer.numberOfLeadingZeros(Math.abs(value));
+        }
+    }
+
+    /**
+     * Reads the entropy coded data of a scan, removing byte stuffing and stopping at markers.
+     */
+    private static final class BitReader {
+
+        final byte[] data;
+        final int end;
+        int pos;
+        // the next bits of the stream, left aligned
+        long buffer;
+        int bits;
+        boolean atMarker;
+
+        BitReader(byte[] data, int start) {
+            this.data = data;
+            this.end = data.length;
+            this.pos = start;
+        }
+
+        void fill() {
+            while (bits <= 56) {
+                int b = 0;
+                if (!atMarker && pos < end) {
+                    b = data[pos] & 0xFF;
+                    if (b != 0xFF) {
+                        pos++;
+                    } else if (pos + 1 < end && data[pos + 1] == 0) {
+                        pos += 2;
+                    } else {
+                        // past the end of the scan, feed zeros
+                        atMarker = true;
+                        b = 0;
+                    }
+                }
+                buffer |= (long) b << (56 - bits);
+                bits += 8;
+            }
+        }
+
+        int decode(HuffmanTable table) throws IOException {
+            fill();
+            int entry = table.lookup[(int) (buffer >>> 56)];
+            if (entry != 0) {
+                consume(entry >> 8);
+                return entry & 0xFF;
+            }
+            for (int length = 9; length <= 16; length++) {
+                int code = (int) (buffer >>> (64 - length));
+                if (code <= table.maxCode[length]) {
+                    consume(length);
+                    return table.values[code + table.valueOffset[length]];
+                }
+            }
+            throw new IOException("Corrupt JPEG data");
+        }
+
+        int receiveExtend(int size) {
+            if (size == 0) {
+                return 0;
+            }
+            fill();
+            int value = (int) (buffer >>> (64 - size));
+            consume(size);
+            return value < 1 << (size - 1) ? value - (1 << size) + 1 : value;
+        }
+
+        void consume(int count) {
+            buffer <<= count;
+            bits -= count;
+        }
+
+        void restart() throws IOException {
+            buffer = 0;
+            bits = 0;
+            atMarker = false;
+            while (pos < end && (data[pos] & 0xFF) == 0xFF && pos + 1 < end && (data[pos + 1] & 0xFF) == 0xFF) {
+                pos++;
+            }
+            if (pos + 1 >= end || (data[pos] & 0xFF) != 0xFF || (data[pos + 1] & 0xF8) != 0xD0) {
+                throw new IOException("Restart marker expected at " + pos);
+            }
+            pos += 2;
+        }
+    }
+
+    /**
+     * Writes Huffman coded bits, stuffing a zero byte after every 0xFF.
+     */
+    private static final class BitWriter {
+
+        final ByteWriter out;
+        long buffer;
+        int bits;
+
+        BitWriter(ByteWriter out) {
+            this.out = out;
+        }
+
+        void write(int value, int count) {
+            buffer = (buffer << count) | (value & ((1 << count) - 1));
+            bits += count;
+            while (bits >= 8) {
+                int b = (int) (buffer >>> (bits - 8)) & 0xFF;
+                out.writeByte(b);
+                if (b == 0xFF) {
+                    out.writeByte(0);
+                }
+                bits -= 8;
+            }
+        }
+
+        void flush() {
+            if (bits > 0) {
+                // pad the last byte with ones
+                write(0x7F, 8 - bits);
+            }
+        }
+    }
+
+    /**
+     * An unsynchronized growable byte array.
+     */
+    private static final class ByteWriter {
+
+        byte[] bytes;
+        int size;
+
+        ByteWriter(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            bytes[size++] = (byte) b;
+        }
+
+        void writeShort(int value) {
+            writeByte(value >> 8);
+            writeByte(value);
+        }
+
+        void write(byte[] source, int offset, int length) {
+            ensure(length);
+            System.arraycopy(source, offset, bytes, size, length);
+            size += length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package com.ahm.capacitor.camera.preview;
+
+/**
+ * Geometric transforms for NV21 preview frames, and their conversion to ARGB.
+ *
+ * The luma plane and the interleaved VU plane are walked separately with one specialized loop per rotation, so the
+ * inner loops are free of per-pixel branching and every chroma pair is written once instead of once per luma pixel.
+ * Rotations that transpose the image are processed in square tiles to keep both the reads and the strided writes
+ * inside the cache. Rotation and mirroring can be fused so a front camera frame is made upright and mirrored in a single
+ * pass.
+ */
+final class NV21Transform {
+
+    private static final int TILE = 32;
+
+    private NV21Transform() {}
+
+    /**
+     * Rotates an NV21 frame clockwise into a newly allocated buffer of the same length.
+     *
+     * @return the input buffer itself when {@code rotation} is 0
+     */
+    static byte[] rotate(final byte[] yuv, final int width, final int height, final int rotation) {
+        return transform(yuv, width, height, rotation, false, false);
+    }
+
+    /**
+     * Rotates an NV21 frame clockwise into {@code output}, which must hold at least {@code width * height * 3 / 2}
+     * bytes and must not be the input buffer.
+     */
+    static void rotate(final byte[] yuv, final byte[] output, final int width, final int height, final int rotation) {
+        transform(yuv, output, width, height, rotation, false, false);
+    }
+
+    /**
+     * Rotates an NV21 frame clockwise and then mirrors the rotated image, into a newly allocated buffer of the same
+     * length.
+     *
+     * @param mirrorHorizontal swap left and right of the rotated image
+     * @param mirrorVertical swap top and bottom of the rotated image
+     * @return the input buffer itself when the transform is the identity
+     */
+    static byte[] transform(
+        final byte[] yuv,
+        final int width,
+        final int height,
+        final int rotation,
+        final boolean mirrorHorizontal,
+        final boolean mirrorVertical
+    ) {
+        checkRotation(rotation);
+        if (rotation == 0 && !mirrorHorizontal && !mirrorVertical) return yuv;
+
+        final byte[] output = new byte[yuv.length];
+        transform(yuv, output, width, height, rotation, mirrorHorizontal, mirrorVertical);
+        return output;
+    }
+
+    /**
+     * Rotates an NV21 frame clockwise and then mirrors the rotated image into {@code output}, which must hold at least
+     * {@code width * height * 3 / 2} bytes and must not be the input buffer.
+     */
+    static void transform(
+        final byte[] yuv,
+        final byte[] output,
+        final int width,
+        final int height,
+        final int rotation,
+        final boolean mirrorHorizontal,
+        final boolean mirrorVertical
+    ) {
+        checkRotation(rotation);
+        final int frameSize = width * height;
+        final int frameLength = frameSize + 2 * ((width + 1) / 2) * ((height + 1) / 2);
+        if (yuv == output) {
+            throw new IllegalArgumentException("output must not be the input buffer");
+        }
+        if (output.length < frameLength || yuv.length < frameLength) {
+            throw new IllegalArgumentException("buffer too small for a " + width + "x" + height + " NV21 frame");
+        }
+
+        final boolean mirror = mirrorHorizontal || mirrorVertical;
+        if (rotation == 0 && !mirror) {
+            System.arraycopy(yuv, 0, output, 0, frameLength);
+            return;
+        }
+
+        if (((width | height) & 1) != 0) {
+            // Odd dimensions leave chroma pairs straddling the frame edge; keep the per-pixel mapping for those.
+            transformPerPixel(yuv, output, width, height, rotation, mirrorHorizontal, mirrorVertical);
+            return;
+        }
+
+        final int chromaWidth = width / 2;
+        final int chromaHeight = height / 2;
+        if (mirror) {
+            final Mapping luma = new Mapping(width, height, rotation, mirrorHorizontal, mirrorVertical);
+            final Mapping chroma = new Mapping(chromaWidth, chromaHeight, rotation, mirrorHorizontal, mirrorVertical);
+            lumaTransform(yuv, output, width, height, luma);
+            chromaTransform(yuv, output, frameSize, chromaWidth, chromaHeight, chroma);
+            return;
+        }
+
+        switch (rotation) {
+            case 90:
+                lumaRotate90(yuv, output, width, height);
+                chromaRotate90(yuv, output, frameSize, chromaWidth, chromaHeight);
+                break;
+            case 180:
+                lumaRotate180(yuv, output, frameSize);
+                chromaRotate180(yuv, output, frameSize, chromaWidth * chromaHeight);
+                break;
+            default:
+                lumaRotate270(yuv, output, width, height);
+                chromaRotate270(yuv, output, frameSize, chromaWidth, chromaHeight);
+                break;
+        }
+    }
+
+    /**
+     * Any rotation followed by a mirror is affine in the pixel coordinates, so the output index of pixel (x, y) is
+     * {@code origin + x * stepX + y * stepY} in units of pixels of the plane.
+     */
+    private static final class Mapping {
+
+        final int origin;
+        final int stepX;
+        final int stepY;
+
+        Mapping(final int w, final int h, final int rotation, final boolean mirrorHorizontal, final boolean mirrorVertical) {
+            final int outWidth = rotation % 180 == 0 ? w : h;
+            final int outHeight = rotation % 180 == 0 ? h : w;
+            origin = index(0, 0, w, h, outWidth, outHeight, rotation, mirrorHorizontal, mirrorVertical);
+            stepX = index(1, 0, w, h, outWidth, outHeight, rotation, mirrorHorizontal, mirrorVertical) - origin;
+            stepY = index(0, 1, w, h, outWidth, outHeight, rotation, mirrorHorizontal, mirrorVertical) - origin;
+        }
+
+        private static int index(
+            final int x,
+            final int y,
+            final int w,
+            final int h,
+            final int outWidth,
+            final int outHeight,
+            final int rotation,
+            final boolean mirrorHorizontal,
+            final boolean mirrorVertical
+        ) {
+            int outX;
+            int outY;
+            switch (rotation) {
+                case 90:
+                    outX = h - 1 - y;
+                    outY = x;
+                    break;
+                case 180:
+                    outX = w - 1 - x;
+                    outY = h - 1 - y;
+                    break;
+                case 270:
+                    outX = y;
+                    outY = w - 1 - x;
+                    break;
+                default:
+                    outX = x;
+                    outY = y;
+                    break;
+            }
+            if (mirrorHorizontal) outX = outWidth - 1 - outX;
+            if (mirrorVertical) outY = outHeight - 1 - outY;
+            return outY * outWidth + outX;
+        }
+    }
+
+    /**
+     * Converts an NV21 frame to opaque ARGB pixels for encoders that take a bitmap, with the full range BT.601 matrix
+     * of JFIF that {@code YuvImage.compressToJpeg} assumes for camera frames. {@code argb} must hold at least
+     * {@code width * height} pixels.
+     */
+    static void toArgb(final byte[] yuv, final int[] argb, final int width, final int height) {
+        final int frameSize = width * height;
+        for (int j = 0; j < height; j++) {
+            final int row = j * width;
+            final int chromaRow = frameSize + (j >> 1) * width;
+            for (int i = 0; i < width; i++) {
+                final int luma = yuv[row + i] & 0xff;
+                final int uv = chromaRow + (i & ~1);
+                final int v = (yuv[uv] & 0xff) - 128;
+                final int u = (yuv[uv + 1] & 0xff) - 128;
+                // 1.402, 0.344136, 0.714136 and 1.772 in 16.16 fixed point
+                final int r = luma + ((91881 * v) >> 16);
+                final int g = luma - ((22554 * u + 46802 * v) >> 16);
+                final int b = luma + ((116130 * u) >> 16);
+                argb[row + i] = 0xff000000 | (clamp(r) << 16) | (clamp(g) << 8) | clamp(b);
+            }
+        }
+    }
+
+    private static int clamp(final int value) {
+        return value < 0 ? 0 : value > 255 ? 255 : value;
+    }
+
+    private static void checkRotation(final int rotation) {
+        if (rotation % 90 != 0 || rotation < 0 || rotation > 270) {
+            throw new IllegalArgumentException("0 <= rotation < 360, rotation % 90 == 0");
+        }
+    }
+
+    // out(x', y') = in(x, y) with x' = h - 1 - y, y' = x
+    private static void lumaRotate90(final byte[] in, final byte[] out, final int w, final int h) {
+        for (int ty = 0; ty < h; ty += TILE) {
+            final int yEnd = Math.min(ty + TILE, h);
+            for (int tx = 0; tx < w; tx += TILE) {
+                final int xEnd = Math.min(tx + TILE, w);
+                for (int y = ty; y < yEnd; y++) {
+                    int src = y * w + tx;
+                    int dst = tx * h + (h - 1 - y);
+                    for (int x = tx; x < xEnd; x++) {
+                        out[dst] = in[src++];
+                        dst += h;
+                    }
+                }
+            }
+        }
+    }
+
+    // out(x', y') = in(x, y) with x' = y, y' = w - 1 - x
+    private static void lumaRotate270(final byte[] in, final byte[] out, final int w, final int h) {
+        for (int ty = 0; ty < h; ty += TILE) {
+            final int yEnd = Math.min(ty + TILE, h);
+            for (int tx = 0; tx < w; tx += TILE) {
+                final int xEnd = Math.min(tx + TILE, w);
+                for (int y = ty; y < yEnd; y++) {
+                    int src = y * w + tx;
+                    int dst = (w - 1 - tx) * h + y;
+                    for (int x = tx; x < xEnd; x++) {
+                        out[dst] = in[src++];
+                        dst -= h;
+                    }
+                }
+            }
+        }
+    }
+
+    // A half turn is a plain reversal of the plane.
+    private static void lumaRotate180(final byte[] in, final byte[] out, final int size) {
+        for (int src = 0, dst = size - 1; src < size; src++, dst--) {
+            out[dst] = in[src];
+        }
+    }
+
+    private static void chromaRotate90(final byte[] in, final byte[] out, final int offset, final int cw, final int ch) {
+        final int dstStride = 2 * ch;
+        for (int ty = 0; ty < ch; ty += TILE) {
+            final int yEnd = Math.min(ty + TILE, ch);
+            for (int tx = 0; tx < cw; tx += TILE) {
+                final int xEnd = Math.min(tx + TILE, cw);
+                for (int y = ty; y < yEnd; y++) {
+                    int src = offset + 2 * (y * cw + tx);
+                    int dst = offset + 2 * (tx * ch + (ch - 1 - y));
+                    for (int x = tx; x < xEnd; x++) {
+                        out[dst] = in[src];
+                        out[dst + 1] = in[src + 1];
+                        src += 2;
+                        dst += dstStride;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void chromaRotate270(final byte[] in, final byte[] out, final int offset, final int cw, final int ch) {
+        final int dstStride = 2 * ch;
+        for (int ty = 0; ty < ch; ty += TILE) {
+            final int yEnd = Math.min(ty + TILE, ch);
+            for (int tx = 0; tx < cw; tx += TILE) {
+                final int xEnd = Math.min(tx + TILE, cw);
+                for (int y = ty; y < yEnd; y++) {
+                    int src = offset + 2 * (y * cw + tx);
+                    int dst = offset + 2 * ((cw - 1 - tx) * ch + y);
+                    for (int x = tx; x < xEnd; x++) {
+                        out[dst] = in[src];
+                        out[dst + 1] = in[src + 1];
+                        src += 2;
+                        dst -= dstStride;
+                    }
+                }
+            }
+        }
+    }
+
+    // Reverses the order of the VU pairs while keeping the byte order inside each pair.
+    private static void chromaRotate180(final byte[] in, final byte[] out, final int offset, final int pairs) {
+        final int end = offset + 2 * pairs;
+        for (int src = offset, dst = end - 2; src < end; src += 2, dst -= 2) {
+            out[dst] = in[src];
+            out[dst + 1] = in[src + 1];
+        }
+    }
+
+    private static void lumaTransform(final byte[] in, final byte[] out, final int w, final int h, final Mapping m) {
+        for (int ty = 0; ty < h; ty += TILE) {
+            final int yEnd = Math.min(ty + TILE, h);
+            for (int tx = 0; tx < w; tx += TILE) {
+                final int xEnd = Math.min(tx + TILE, w);
+                for (int y = ty; y < yEnd; y++) {
+                    int src = y * w + tx;
+                    int dst = m.origin + tx * m.stepX + y * m.stepY;
+                    for (int x = tx; x < xEnd; x++) {
+                        out[dst] = in[src++];
+                        dst += m.stepX;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void chromaTransform(final byte[] in, final byte[] out, final int offset, final int cw, final int ch, final Mapping m) {
+        final int dstStep = 2 * m.stepX;
+        for (int ty = 0; ty < ch; ty += TILE) {
+            final int yEnd = Math.min(ty + TILE, ch);
+            for (int tx = 0; tx < cw; tx += TILE) {
+                final int xEnd = Math.min(tx + TILE, cw);
+                for (int y = ty; y < yEnd; y++) {
+                    int src = offset + 2 * (y * cw + tx);
+                    int dst = offset + 2 * (m.origin + tx * m.stepX + y * m.stepY);
+                    for (int x = tx; x < xEnd; x++) {
+                        out[dst] = in[src];
+                        out[dst + 1] = in[src + 1];
+                        src += 2;
+                        dst += dstStep;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void transformPerPixel(
+        final byte[] yuv,
+        final byte[] output,
+        final int width,
+        final int height,
+        final int rotation,
+        final boolean mirrorHorizontal,
+        final boolean mirrorVertical
+    ) {
+        final int frameSize = width * height;
+        final boolean swap = rotation % 180 != 0;
+        final boolean xflip = rotation % 270 != 0;
+        final boolean yflip = rotation >= 180;
+        final int wOut = swap ? height : width;
+        final int hOut = swap ? width : height;
+
+        for (int j = 0; j < height; j++) {
+            for (int i = 0; i < width; i++) {
+                final int yIn = j * width + i;
+                final int uIn = frameSize + (j >> 1) * width + (i & ~1);
+
+                final int iSwapped = swap ? j : i;
+                final int jSwapped = swap ? i : j;
+                int iOut = xflip ? wOut - iSwapped - 1 : iSwapped;
+                int jOut = yflip ? hOut - jSwapped - 1 : jSwapped;
+                if (mirrorHorizontal) iOut = wOut - iOut - 1;
+                if (mirrorVertical) jOut = hOut - jOut - 1;
+
+                final int yOut = jOut * wOut + iOut;
+                final int uOut = frameSize + (jOut >> 1) * wOut + (iOut & ~1);
+
+                output[yOut] = yuv[yIn];
+                output[uOut] = yuv[uIn];
+                output[uOut + 1] = yuv[uIn + 1];
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.ahm.capacitor.camera.preview;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The image formats captures can be delivered in, and how a bitmap is encoded to each.
+ *
+ * The camera and {@code YuvImage} only produce JPEG, so any other format is encoded from a bitmap. Lossless WebP needs
+ * Android 10; before that the highest lossy WebP quality is used instead.
+ */
+enum OutputFormat {
+    JPEG("jpeg", ".jpg", "image/jpeg", false),
+    WEBP_LOSSY("webp-lossy", ".webp", "image/webp", false),
+    WEBP_LOSSLESS("webp-lossless", ".webp", "image/webp", true);
+
+    // the value of the plugin's format option
+    final String id;
+    final String extension;
+    final String mimeType;
+    // quality is ignored, or only trades encoding time for size
+    final boolean lossless;
+
+    OutputFormat(String id, String extension, String mimeType, boolean lossless) {
+        this.id = id;
+        this.extension = extension;
+        this.mimeType = mimeType;
+        this.lossless = lossless;
+    }
+
+    /**
+     * @return the format with this {@link #id}, {@link #JPEG} when {@code value} is {@code null}, or {@code null} for an
+     *     unknown format
+     */
+    static OutputFormat fromString(String value) {
+        if (value == null) {
+            return JPEG;
+        }
+        for (OutputFormat format : values()) {
+            if (format.id.equals(value)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the format whose files end in the extension of {@code name}, or {@code null}
+     */
+    static OutputFormat fromFileName(String name) {
+        for (OutputFormat format : values()) {
+            if (name.endsWith(format.extension)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    byte[] encode(Bitmap bitmap, int quality) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bitmap.getWidth() * bitmap.getHeight() / 4);
+        encode(bitmap, quality, out);
+        return out.toByteArray();
+    }
+
+    @SuppressWarnings("deprecation")
+    void encode(Bitmap bitmap, int quality, OutputStream out) throws IOException {
+        Bitmap.CompressFormat compressFormat;
+        if (this == JPEG) {
+            compressFormat = Bitmap.CompressFormat.JPEG;
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            compressFormat = lossless ? Bitmap.CompressFormat.WEBP_LOSSLESS : Bitmap.CompressFormat.WEBP_LOSSY;
+        } else {
+            compressFormat = Bitmap.CompressFormat.WEBP;
+            if (lossless) {
+                // quality 100 is lossless from Android 10 on, and the best lossy quality before
+                quality = 100;
+            } else {
+                // and must be kept below 100 to stay lossy
+                quality = Math.min(quality, 99);
+            }
+        }
+        if (!bitmap.compress(compressFormat, quality, out)) {
+            throw new IOException("Picture cannot be encoded");
+        }
+    }
+}
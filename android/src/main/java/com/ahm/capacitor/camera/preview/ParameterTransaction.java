@@ -0,0 +1,69 @@
+package com.ahm.capacitor.camera.preview;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Camera parameter changes waiting to be written together, by key as in {@code Camera.Parameters}.
+ *
+ * The transaction knows the values the camera was last given, so a change to the value a key already has is dropped and
+ * a key changed several times before the commit is written once, with its last value. Used on the camera thread only.
+ */
+final class ParameterTransaction {
+
+    private final Map<String, String> current = new HashMap<>();
+    private final Map<String, String> pending = new LinkedHashMap<>();
+
+    /**
+     * Starts again from the camera's values, flattened as by {@code Camera.Parameters.flatten()}. Changes not yet
+     * committed are dropped.
+     */
+    void reset(String flattened) {
+        current.clear();
+        pending.clear();
+        if (flattened == null) {
+            return;
+        }
+        for (String pair : flattened.split(";")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                current.put(pair.substring(0, separator), pair.substring(separator + 1));
+            }
+        }
+    }
+
+    /**
+     * @return the value {@code key} will have once the pending changes are committed, {@code null} if it has none
+     */
+    String get(String key) {
+        return pending.containsKey(key) ? pending.get(key) : current.get(key);
+    }
+
+    /**
+     * @return whether this is the first pending change, so a commit needs to be scheduled
+     */
+    boolean set(String key, String value) {
+        boolean wasEmpty = pending.isEmpty();
+        if (value.equals(current.get(key))) {
+            pending.remove(key);
+        } else {
+            pending.put(key, value);
+        }
+        return wasEmpty && !pending.isEmpty();
+    }
+
+    boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    /**
+     * @return the pending changes in the order their keys were first changed, from now on taken as the camera's values
+     */
+    Map<String, String> commit() {
+        Map<String, String> changes = new LinkedHashMap<>(pending);
+        current.putAll(pending);
+        pending.clear();
+        return changes;
+    }
+}
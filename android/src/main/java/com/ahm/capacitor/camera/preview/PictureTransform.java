@@ -0,0 +1,371 @@
+package com.ahm.capacitor.camera.preview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Build;
+import java.io.IOException;
+
+/**
+ * Decodes a JPEG and redraws it rotated, mirrored and scaled in a single pass, for pictures that have to be
+ * recompressed anyway: captures asked for at an exact size, thumbnails, and pictures {@link JpegTransform} cannot
+ * rotate losslessly. Captures cropped to the preview only decode the region they keep.
+ *
+ * The decode is subsampled by the largest power of two that still leaves enough pixels for the output, and both the
+ * decoded bitmap and the output come from a {@link BitmapPool}, so repeated captures of the same size reuse their
+ * memory. Transforms use the {@link JpegTransform} constants. The output is encoded in any {@link OutputFormat}; with a
+ * {@code maxBytes} at the highest quality, up to the one asked for, that fits, as found by a {@link QualitySearch}.
+ */
+final class PictureTransform {
+
+    private final BitmapPool pool;
+    private final QualitySearch qualitySearch;
+
+    PictureTransform(BitmapPool pool, QualitySearch qualitySearch) {
+        this.pool = pool;
+        this.qualitySearch = qualitySearch;
+    }
+
+    /**
+     * Makes the picture upright and scales it to exactly {@code width} x {@code height}, swapped if needed to match the
+     * orientation of the upright picture, cropping the center if the aspect ratio differs.
+     *
+     * @param maxBytes the largest output allowed, or 0 to compress at {@code quality}
+     * @return the encoded picture, or {@code null} when the upright picture already has the requested size
+     */
+    byte[] resize(byte[] jpeg, int transform, int width, int height, OutputFormat format, int quality, int maxBytes) throws IOException {
+        BitmapFactory.Options options = decodeBounds(jpeg);
+        boolean transpose = (transform & JpegTransform.TRANSPOSE) != 0;
+        int uprightWidth = transpose ? options.outHeight : options.outWidth;
+        int uprightHeight = transpose ? options.outWidth : options.outHeight;
+        int[] size = outputSize(uprightWidth, uprightHeight, width, height);
+        if (size[0] == uprightWidth && size[1] == uprightHeight) {
+            return null;
+        }
+        return draw(jpeg, options, null, transform, size[0], size[1], format, quality, maxBytes);
+    }
+
+    /**
+     * Decodes only {@code region} of the picture, given as fractions of the upright picture in {@code left, top, right,
+     * bottom} order, then makes it upright and scales it like {@link #resize}, or keeps its size when {@code width} or
+     * {@code height} is 0.
+     *
+     * @param maxBytes the largest output allowed, or 0 to compress at {@code quality}
+     */
+    byte[] crop(byte[] jpeg, int transform, float[] region, int width, int height, OutputFormat format, int quality, int maxBytes)
+        throws IOException {
+        BitmapFactory.Options options = decodeBounds(jpeg);
+        int[] rect = regionRect(transform, region, options);
+        boolean transpose = (transform & JpegTransform.TRANSPOSE) != 0;
+        int rectWidth = rect[2] - rect[0];
+        int rectHeight = rect[3] - rect[1];
+        int[] size = outputSize(transpose ? rectHeight : rectWidth, transpose ? rectWidth : rectHeight, width, height);
+        return draw(jpeg, options, rect, transform, size[0], size[1], format, quality, maxBytes);
+    }
+
+    /**
+     * Applies {@code transform} to the picture at its full size.
+     *
+     * @param maxBytes the largest output allowed, or 0 to compress at {@code quality}
+     */
+    byte[] apply(byte[] jpeg, int transform, OutputFormat format, int quality, int maxBytes) throws IOException {
+        BitmapFactory.Options options = decodeBounds(jpeg);
+        boolean transpose = (transform & JpegTransform.TRANSPOSE) != 0;
+        int width = transpose ? options.outHeight : options.outWidth;
+        int height = transpose ? options.outWidth : options.outHeight;
+        return draw(jpeg, options, null, transform, width, height, format, quality, maxBytes);
+    }
+
+    /**
+     * Makes a thumbnail of the picture: upright, scaled down to fit in {@code maxSize} x {@code maxSize} keeping its
+     * aspect ratio, as a JPEG. It is drawn from the thumbnail embedded in the EXIF segment when that is at least
+     * {@code maxSize} on its long edge, which is far cheaper to decode, and from a subsampled decode of the picture
+     * otherwise.
+     *
+     * @param region the part of the upright picture to make the thumbnail of, as for {@link #crop}, or {@code null} for
+     *     all of it
+     */
+    byte[] thumbnail(byte[] jpeg, int transform, float[] region, int maxSize, int quality) throws IOException {
+        byte[] source = ExifThumbnail.extract(jpeg);
+        BitmapFactory.Options options = source == null ? null : readBounds(source);
+        int[] rect = options == null ? null : regionRect(transform, region, options);
+        if (options == null || Math.max(rectWidth(rect, options), rectHeight(rect, options)) < maxSize) {
+            source = jpeg;
+            options = decodeBounds(jpeg);
+            rect = regionRect(transform, region, options);
+        }
+        boolean transpose = (transform & JpegTransform.TRANSPOSE) != 0;
+        int width = rectWidth(rect, options);
+        int height = rectHeight(rect, options);
+        int[] size = thumbnailSize(transpose ? height : width, transpose ? width : height, maxSize);
+        if (source != jpeg && rect == null && transform == JpegTransform.NONE && size[0] == width && size[1] == height) {
+            // the embedded thumbnail is already what was asked for
+            return source;
+        }
+        return draw(source, options, rect, transform, size[0], size[1], OutputFormat.JPEG, quality, 0);
+    }
+
+    private static BitmapFactory.Options decodeBounds(byte[] jpeg) throws IOException {
+        BitmapFactory.Options options = readBounds(jpeg);
+        if (options == null) {
+            throw new IOException("Picture cannot be decoded");
+        }
+        return options;
+    }
+
+    /**
+     * @return the options holding the size of {@code jpeg}, or {@code null} when it cannot be decoded
+     */
+    private static BitmapFactory.Options readBounds(byte[] jpeg) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+        return options.outWidth > 0 && options.outHeight > 0 ? options : null;
+    }
+
+    private static int[] regionRect(int transform, float[] region, BitmapFactory.Options options) {
+        return region == null ? null : pixelRect(sourceRegion(transform, region), options.outWidth, options.outHeight);
+    }
+
+    private static int rectWidth(int[] rect, BitmapFactory.Options options) {
+        return rect == null ? options.outWidth : rect[2] - rect[0];
+    }
+
+    private static int rectHeight(int[] rect, BitmapFactory.Options options) {
+        return rect == null ? options.outHeight : rect[3] - rect[1];
+    }
+
+    /**
+     * @param rect the part of the picture to decode, in {@link #pixelRect} form, or {@code null} for all of it
+     */
+    private byte[] draw(
+        byte[] jpeg,
+        BitmapFactory.Options options,
+        int[] rect,
+        int transform,
+        int width,
+        int height,
+        final OutputFormat format,
+        int quality,
+        int maxBytes
+    ) throws IOException {
+        boolean transpose = (transform & JpegTransform.TRANSPOSE) != 0;
+        int sourceWidth = rectWidth(rect, options);
+        int sourceHeight = rectHeight(rect, options);
+        int sample = transpose
+            ? sampleSize(sourceHeight, sourceWidth, width, height)
+            : sampleSize(sourceWidth, sourceHeight, width, height);
+        int sampledWidth = (sourceWidth + sample - 1) / sample;
+        int sampledHeight = (sourceHeight + sample - 1) / sample;
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sample;
+        options.inMutable = true;
+        options.inBitmap = pool.take(sampledWidth * sampledHeight * 4);
+        Bitmap decoded;
+        try {
+            decoded = decode(jpeg, rect, options);
+        } catch (IllegalArgumentException e) {
+            // the pooled bitmap could not be reused for this picture after all
+            pool.release(options.inBitmap);
+            options.inBitmap = null;
+            decoded = decode(jpeg, rect, options);
+        }
+        if (decoded == null) {
+            pool.release(options.inBitmap);
+            throw new IOException("Picture cannot be decoded");
+        }
+
+        final Bitmap output = pool.acquire(width, height);
+        try {
+            Matrix matrix = new Matrix();
+            matrix.setValues(matrixValues(transform, decoded.getWidth(), decoded.getHeight(), width, height));
+            new Canvas(output).drawBitmap(decoded, matrix, new Paint(Paint.FILTER_BITMAP_FLAG));
+            // the output is all that is needed from here on
+            pool.release(decoded);
+            decoded = null;
+
+            if (maxBytes <= 0) {
+                return format.encode(output, quality);
+            }
+            return qualitySearch.fit(
+                "picture " + width + "x" + height,
+                format,
+                quality,
+                maxBytes,
+                new QualitySearch.Encoder() {
+                    @Override
+                    public byte[] encode(int quality) throws IOException {
+                        return format.encode(output, quality);
+                    }
+                }
+            );
+        } finally {
+            pool.release(decoded);
+            pool.release(output);
+        }
+    }
+
+    /**
+     * Decodes {@code rect} of the picture, or all of it. Only the blocks of the JPEG that overlap the region are
+     * decoded, so a small region of a large picture takes a fraction of the time and memory of a full decode.
+     */
+    @SuppressWarnings("deprecation")
+    private static Bitmap decode(byte[] jpeg, int[] rect, BitmapFactory.Options options) throws IOException {
+        if (rect == null) {
+            return BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+        }
+        BitmapRegionDecoder decoder = Build.VERSION.SDK_INT >= Build.VERSION_CODES.S
+            ? BitmapRegionDecoder.newInstance(jpeg, 0, jpeg.length)
+            : BitmapRegionDecoder.newInstance(jpeg, 0, jpeg.length, false);
+        try {
+            return decoder.decodeRegion(new Rect(rect[0], rect[1], rect[2], rect[3]), options);
+        } finally {
+            decoder.recycle();
+        }
+    }
+
+    /**
+     * The output size for a requested {@code width} x {@code height}: swapped when the request is landscape and the
+     * picture portrait or the other way around, like the picture size selection does, and the picture's own size when
+     * either is 0.
+     *
+     * @return the width and height
+     */
+    static int[] outputSize(int pictureWidth, int pictureHeight, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return new int[] { pictureWidth, pictureHeight };
+        }
+        if ((pictureHeight > pictureWidth) != (height > width)) {
+            return new int[] { height, width };
+        }
+        return new int[] { width, height };
+    }
+
+    /**
+     * The part of a {@code width} x {@code height} picture that shows when it is scaled to cover a
+     * {@code viewWidth} x {@code viewHeight} view and centered on it, the way the preview is laid out.
+     *
+     * @return the region as fractions of the picture, in {@code left, top, right, bottom} order
+     */
+    static float[] coverRegion(int width, int height, int viewWidth, int viewHeight) {
+        float scale = coverScale(width, height, viewWidth, viewHeight);
+        float visibleWidth = Math.min(1, viewWidth / (width * scale));
+        float visibleHeight = Math.min(1, viewHeight / (height * scale));
+        return new float[] { (1 - visibleWidth) / 2, (1 - visibleHeight) / 2, (1 + visibleWidth) / 2, (1 + visibleHeight) / 2 };
+    }
+
+    /**
+     * Maps a {@code region} of the upright picture, as fractions in {@code left, top, right, bottom} order, back to the
+     * picture as stored, before {@code transform}.
+     */
+    static float[] sourceRegion(int transform, float[] region) {
+        float left = region[0];
+        float top = region[1];
+        float right = region[2];
+        float bottom = region[3];
+        if ((transform & JpegTransform.FLIP_H) != 0) {
+            float flipped = 1 - right;
+            right = 1 - left;
+            left = flipped;
+        }
+        if ((transform & JpegTransform.FLIP_V) != 0) {
+            float flipped = 1 - bottom;
+            bottom = 1 - top;
+            top = flipped;
+        }
+        if ((transform & JpegTransform.TRANSPOSE) != 0) {
+            return new float[] { top, left, bottom, right };
+        }
+        return new float[] { left, top, right, bottom };
+    }
+
+    /**
+     * The pixels of a {@code width} x {@code height} picture covered by {@code region}, at least one in either
+     * direction.
+     *
+     * @return the left, top, right and bottom edges, right and bottom exclusive
+     */
+    static int[] pixelRect(float[] region, int width, int height) {
+        int left = clamp(Math.round(region[0] * width), 0, width - 1);
+        int top = clamp(Math.round(region[1] * height), 0, height - 1);
+        int right = clamp(Math.round(region[2] * width), left + 1, width);
+        int bottom = clamp(Math.round(region[3] * height), top + 1, height);
+        return new int[] { left, top, right, bottom };
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /**
+     * The size of a {@code width} x {@code height} picture scaled down to fit in {@code maxSize} x {@code maxSize}, at
+     * least one pixel on either side. Pictures that already fit keep their size.
+     *
+     * @return the width and height
+     */
+    static int[] thumbnailSize(int width, int height, int maxSize) {
+        int longEdge = Math.max(width, height);
+        if (longEdge <= maxSize) {
+            return new int[] { width, height };
+        }
+        return new int[] {
+            Math.max(1, Math.round((float) width * maxSize / longEdge)),
+            Math.max(1, Math.round((float) height * maxSize / longEdge))
+        };
+    }
+
+    /**
+     * The largest power of two a {@code width} x {@code height} picture can be subsampled by while still covering
+     * {@code outputWidth} x {@code outputHeight} when made upright. Both sizes are in the same orientation.
+     */
+    static int sampleSize(int width, int height, int outputWidth, int outputHeight) {
+        float scale = coverScale(width, height, outputWidth, outputHeight);
+        int sample = 1;
+        while (sample * 2 * scale <= 1) {
+            sample *= 2;
+        }
+        return sample;
+    }
+
+    /**
+     * The 3x3 matrix, in {@link Matrix#setValues} order, that draws a {@code width} x {@code height} bitmap with
+     * {@code transform} applied, scaled to cover {@code outputWidth} x {@code outputHeight} and centered on it.
+     */
+    static float[] matrixValues(int transform, int width, int height, int outputWidth, int outputHeight) {
+        boolean transpose = (transform & JpegTransform.TRANSPOSE) != 0;
+        int transformedWidth = transpose ? height : width;
+        int transformedHeight = transpose ? width : height;
+
+        // output x = ux * x + uy * y + u0, output y = vx * x + vy * y + v0, before scaling
+        float ux = transpose ? 0 : 1;
+        float uy = transpose ? 1 : 0;
+        float u0 = 0;
+        float vx = transpose ? 1 : 0;
+        float vy = transpose ? 0 : 1;
+        float v0 = 0;
+        if ((transform & JpegTransform.FLIP_H) != 0) {
+            ux = -ux;
+            uy = -uy;
+            u0 = transformedWidth;
+        }
+        if ((transform & JpegTransform.FLIP_V) != 0) {
+            vx = -vx;
+            vy = -vy;
+            v0 = transformedHeight;
+        }
+
+        float scale = coverScale(transformedWidth, transformedHeight, outputWidth, outputHeight);
+        float dx = (outputWidth - transformedWidth * scale) / 2;
+        float dy = (outputHeight - transformedHeight * scale) / 2;
+        return new float[] { scale * ux, scale * uy, scale * u0 + dx, scale * vx, scale * vy, scale * v0 + dy, 0, 0, 1 };
+    }
+
+    private static float coverScale(int width, int height, int outputWidth, int outputHeight) {
+        return Math.max((float) outputWidth / width, (float) outputHeight / height);
+    }
+}
@@ -4,6 +4,8 @@ import android.app.Activity;
 import android.content.Context;
 import android.graphics.SurfaceTexture;
 import android.hardware.Camera;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.Surface;
@@ -13,18 +15,33 @@ import android.view.View;
 import android.widget.RelativeLayout;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 class Preview extends RelativeLayout implements SurfaceHolder.Callback, TextureView.SurfaceTextureListener {
 
+    /**
+     * Told, on the UI thread, how the preview of a newly opened camera got started. Exactly one method is called.
+     */
+    interface FirstFrameListener {
+        /**
+         * @param seen whether the first frame was shown, or the wait for it gave up
+         */
+        void onFirstFrame(boolean seen);
+
+        void onPreviewFailed(String message);
+    }
+
     private final String TAG = "Preview";
 
     CustomSurfaceView mSurfaceView;
     CustomTextureView mTextureView;
     SurfaceHolder mHolder;
-    SurfaceTexture mSurface;
-    Camera.Size mPreviewSize;
-    List<Camera.Size> mSupportedPreviewSizes;
-    Camera mCamera;
+    volatile SurfaceTexture mSurface;
+    // the camera fields are written on the camera thread and read during layout on the UI thread
+    // {width, height}
+    volatile int[] mPreviewSize;
+    volatile int[][] mSupportedPreviewSizes;
+    volatile Camera mCamera;
     int cameraId;
     int displayOrientation;
     int facing = Camera.CameraInfo.CAMERA_FACING_BACK;
@@ -32,14 +49,26 @@ class Preview extends RelativeLayout implements SurfaceHolder.Callback, TextureV
     int viewHeight;
     private boolean enableOpacity = false;
     private float opacity = 1F;
-
-    Preview(Context context) {
-        this(context, false);
-    }
-
-    Preview(Context context, boolean enableOpacity) {
+    private final CameraThread cameraThread;
+    private final CameraParameters cameraParameters;
+    // chosen again on every measure pass
+    private final SizeSelector sizeSelector = new SizeSelector(8);
+    // told once, on the UI thread, how the preview of a newly opened camera got started
+    private FirstFrameListener firstFrameListener;
+    // the listener is not called on the view's handler, which does nothing until the view is attached
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // whether the camera has a surface to draw into; camera thread only
+    private boolean surfaceReady;
+
+    /**
+     * @param cameraThread the thread owning the camera; every camera call made by this view is posted to it
+     * @param cameraParameters the parameters of the camera given to {@link #setCamera}, read and written through it
+     */
+    Preview(Context context, boolean enableOpacity, CameraThread cameraThread, CameraParameters cameraParameters) {
         super(context);
         this.enableOpacity = enableOpacity;
+        this.cameraThread = cameraThread;
+        this.cameraParameters = cameraParameters;
         if (!enableOpacity) {
             mSurfaceView = new CustomSurfaceView(context);
             addView(mSurfaceView);
@@ -61,16 +90,17 @@ class Preview extends RelativeLayout implements SurfaceHolder.Callback, TextureV
         }
     }
 
-    public void setCamera(Camera camera, int cameraId) {
+    // Must be called on the camera thread
+    public void setCamera(Camera camera, int cameraId, CameraCapabilities capabilities) {
         if (camera != null) {
             mCamera = camera;
             this.cameraId = cameraId;
-            mSupportedPreviewSizes = mCamera.getParameters().getSupportedPreviewSizes();
+            mSupportedPreviewSizes = capabilities.getPreviewSizes();
             setCameraDisplayOrientation();
 
-            List<String> mFocusModes = mCamera.getParameters().getSupportedFocusModes();
+            List<String> mFocusModes = capabilities.getFocusModes();
 
-            Camera.Parameters params = mCamera.getParameters();
+            Camera.Parameters params = cameraParameters.get();
             if (mFocusModes.contains("continuous-picture")) {
                 params.setFocusMode(Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE);
             } else if (mFocusModes.contains("continuous-video")) {
@@ -78,7 +108,89 @@ class Preview extends RelativeLayout implements SurfaceHolder.Callback, TextureV
             } else if (mFocusModes.contains("auto")) {
                 params.setFocusMode(Camera.Parameters.FOCUS_MODE_AUTO);
             }
-            mCamera.setParameters(params);
+            cameraParameters.apply(params);
+        }
+    }
+
+    /**
+     * Tells {@code listener} once the preview of the camera given next to {@link #setCamera} shows its first frame, or
+     * fails to start. A preview that has shown nothing after {@code timeoutMillis}, for example because the view has no
+     * size or was detached, is reported as started without its first frame having been seen.
+     */
+    void setFirstFrameListener(final FirstFrameListener listener, long timeoutMillis) {
+        synchronized (this) {
+            firstFrameListener = listener;
+        }
+        cameraThread.postDelayed(
+            new Runnable() {
+                @Override
+                public void run() {
+                    if (takeFirstFrameListener(listener) != null) {
+                        Log.d(TAG, "no preview frame seen, reporting the camera as started anyway");
+                        dispatchFirstFrame(listener, false);
+                    }
+                }
+            },
+            timeoutMillis
+        );
+    }
+
+    private void notifyFirstFrame() {
+        FirstFrameListener listener = takeFirstFrameListener(null);
+        if (listener != null) {
+            dispatchFirstFrame(listener, true);
+        }
+    }
+
+    /**
+     * Reports a preview that failed to start, if a {@link FirstFrameListener} is still waiting for it.
+     */
+    void notifyPreviewFailed(final String message) {
+        final FirstFrameListener listener = takeFirstFrameListener(null);
+        if (listener != null) {
+            mainHandler.post(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onPreviewFailed(message);
+                    }
+                }
+            );
+        }
+    }
+
+    /**
+     * @param expected the listener to take, or {@code null} for whichever is waiting
+     * @return the listener, now no longer waiting, or {@code null} if it was told already
+     */
+    private synchronized FirstFrameListener takeFirstFrameListener(FirstFrameListener expected) {
+        FirstFrameListener listener = firstFrameListener;
+        if (listener == null || (expected != null && listener != expected)) {
+            return null;
+        }
+        firstFrameListener = null;
+        return listener;
+    }
+
+    private void dispatchFirstFrame(final FirstFrameListener listener, final boolean seen) {
+        mainHandler.post(
+            new Runnable() {
+                @Override
+                public void run() {
+                    listener.onFirstFrame(seen);
+                }
+            }
+        );
+    }
+
+    /**
+     * Starts the stopped preview of the camera it has again. If the surface was destroyed in the meantime, nothing is done
+     * here: the preview starts once the surface is back.
+     */
+    // Must be called on the camera thread
+    void restartPreview() {
+        if (mCamera != null && mPreviewSize != null && surfaceReady) {
+            startCamera();
         }
     }
 
@@ -91,17 +203,25 @@ class Preview extends RelativeLayout implements SurfaceHolder.Callback, TextureV
     }
 
     public void printPreviewSize(String from) {
-        Log.d(TAG, "printPreviewSize from " + from + ": > width: " + mPreviewSize.width + " height: " + mPreviewSize.height);
+        Log.d(TAG, "printPreviewSize from " + from + ": > width: " + mPreviewSize[0] + " height: " + mPreviewSize[1]);
     }
 
     public void setCameraPreviewSize() {
-        if (mCamera != null) {
-            Camera.Parameters parameters = mCamera.getParameters();
-            parameters.setPreviewSize(mPreviewSize.width, mPreviewSize.height);
-            mCamera.setParameters(parameters);
-        }
+        cameraThread.post(
+            new Runnable() {
+                @Override
+                public void run() {
+                    if (mCamera != null) {
+                        Camera.Parameters parameters = cameraParameters.get();
+                        parameters.setPreviewSize(mPreviewSize[0], mPreviewSize[1]);
+                        cameraParameters.apply(parameters);
+                    }
+                }
+            }
+        );
     }
 
+    // Must be called on the camera thread
     public void setCameraDisplayOrientation() {
         Camera.CameraInfo info = new Camera.CameraInfo();
         int rotation = ((Activity) getContext()).getWindowManager().getDefaultDisplay().getRotation();
@@ -145,9 +265,10 @@ class Preview extends RelativeLayout implements SurfaceHolder.Callback, TextureV
         mCamera.setDisplayOrientation(displayOrientation);
     }
 
-    public void switchCamera(Camera camera, int cameraId) {
+    // Must be called on the camera thread
+    public void switchCamera(Camera camera, int cameraId, CameraCapabilities capabilities) {
         try {
-            setCamera(camera, cameraId);
+            setCamera(camera, cameraId, capabilities);
 
             Log.d("CameraPreview", "before set camera");
 
@@ -162,16 +283,15 @@ class Preview extends RelativeLayout implements SurfaceHolder.Callback, TextureV
 
             Log.d("CameraPreview", "before getParameters");
 
-            Camera.Parameters parameters = camera.getParameters();
+            Camera.Parameters parameters = cameraParameters.get();
 
             Log.d("CameraPreview", "before setPreviewSize");
 
-            mSupportedPreviewSizes = parameters.getSupportedPreviewSizes();
             mPreviewSize = getOptimalPreviewSize(mSupportedPreviewSizes, v.getWidth(), v.getHeight());
-            parameters.setPreviewSize(mPreviewSize.width, mPreviewSize.height);
-            Log.d(TAG, mPreviewSize.width + " " + mPreviewSize.height);
+            parameters.setPreviewSize(mPreviewSize[0], mPreviewSize[1]);
+            Log.d(TAG, mPreviewSize[0] + " " + mPreviewSize[1]);
 
-            camera.setParameters(parameters);
+            cameraParameters.apply(parameters);
         } catch (IOException exception) {
             Log.e(TAG, exception.getMessage());
         }
@@ -203,12 +323,12 @@ class Preview extends RelativeLayout implements SurfaceHolder.Callback, TextureV
             int previewHeight = height;
 
             if (mPreviewSize != null) {
-                previewWidth = mPreviewSize.width;
-                previewHeight = mPreviewSize.height;
+                previewWidth = mPreviewSize[0];
+                previewHeight = mPreviewSize[1];
 
                 if (displayOrientation == 90 || displayOrientation == 270) {
-                    previewWidth = mPreviewSize.height;
-                    previewHeight = mPreviewSize.width;
+                    previewWidth = mPreviewSize[1];
+                    previewHeight = mPreviewSize[0];
                 }
                 //        LOG.d(TAG, "previewWidth:" + previewWidth + " previewHeight:" + previewHeight);
             }
@@ -245,123 +365,156 @@ class Preview extends RelativeLayout implements SurfaceHolder.Callback, TextureV
         }
     }
 
-    public void surfaceCreated(SurfaceHolder holder) {
+    public void surfaceCreated(final SurfaceHolder holder) {
         // The Surface has been created, acquire the camera and tell it where
         // to draw.
-        try {
-            if (mCamera != null) {
-                mSurfaceView.setWillNotDraw(false);
-                mCamera.setPreviewDisplay(holder);
-            }
-        } catch (Exception exception) {
-            Log.e(TAG, "Exception caused by setPreviewDisplay()", exception);
+        if (mCamera != null) {
+            mSurfaceView.setWillNotDraw(false);
         }
+        cameraThread.post(
+            new Runnable() {
+                @Override
+                public void run() {
+                    surfaceReady = true;
+                    try {
+                        if (mCamera != null) {
+                            mCamera.setPreviewDisplay(holder);
+                        }
+                    } catch (Exception exception) {
+                        Log.e(TAG, "Exception caused by setPreviewDisplay()", exception);
+                        notifyPreviewFailed("Failed to start preview");
+                    }
+                }
+            }
+        );
     }
 
     public void surfaceDestroyed(SurfaceHolder holder) {
-        // Surface will be destroyed when we return, so stop the preview.
+        // Surface will be destroyed when we return, so stop the preview and wait for it.
         try {
-            if (mCamera != null) {
-                mCamera.stopPreview();
-            }
+            cameraThread.invoke(
+                new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        surfaceReady = false;
+                        if (mCamera != null) {
+                            mCamera.stopPreview();
+                        }
+                        return null;
+                    }
+                }
+            );
         } catch (Exception exception) {
             Log.e(TAG, "Exception caused by surfaceDestroyed()", exception);
         }
     }
 
-    private Camera.Size getOptimalPreviewSize(List<Camera.Size> sizes, int w, int h) {
-        final double ASPECT_TOLERANCE = 0.1;
+    // keeps mPreviewSize when the camera lists no preview sizes
+    private int[] getOptimalPreviewSize(int[][] sizes, int w, int h) {
         double targetRatio = (double) w / h;
         if (displayOrientation == 90 || displayOrientation == 270) {
             targetRatio = (double) h / w;
         }
 
-        if (sizes == null) {
-            return null;
-        }
-
-        Camera.Size optimalSize = null;
-        double minDiff = Double.MAX_VALUE;
-
-        int targetHeight = h;
-
-        // Try to find an size match aspect ratio and size
-        for (Camera.Size size : sizes) {
-            double ratio = (double) size.width / size.height;
-            if (Math.abs(ratio - targetRatio) > ASPECT_TOLERANCE) continue;
-            if (Math.abs(size.height - targetHeight) < minDiff) {
-                optimalSize = size;
-                minDiff = Math.abs(size.height - targetHeight);
-            }
-        }
-
-        // Cannot find the one match the aspect ratio, ignore the requirement
+        int[] optimalSize = sizeSelector.select(SizeSelector.ASPECT_FIRST, sizes, w, h, targetRatio);
         if (optimalSize == null) {
-            minDiff = Double.MAX_VALUE;
-            for (Camera.Size size : sizes) {
-                if (Math.abs(size.height - targetHeight) < minDiff) {
-                    optimalSize = size;
-                    minDiff = Math.abs(size.height - targetHeight);
-                }
-            }
+            return mPreviewSize;
         }
-
-        Log.d(TAG, "optimal preview size: w: " + optimalSize.width + " h: " + optimalSize.height);
+        Log.d(TAG, "optimal preview size: w: " + optimalSize[0] + " h: " + optimalSize[1]);
         return optimalSize;
     }
 
-    public void surfaceChanged(SurfaceHolder holder, int format, int w, int h) {
-        if (mCamera != null) {
-            try {
-                // Now that the size is known, set up the camera parameters and begin
-                // the preview.
-                mSupportedPreviewSizes = mCamera.getParameters().getSupportedPreviewSizes();
-                if (mSupportedPreviewSizes != null) {
-                    mPreviewSize = getOptimalPreviewSize(mSupportedPreviewSizes, w, h);
+    public void surfaceChanged(SurfaceHolder holder, int format, final int w, final int h) {
+        cameraThread.post(
+            new Runnable() {
+                @Override
+                public void run() {
+                    if (mCamera != null) {
+                        try {
+                            // Now that the size is known, set up the camera parameters and begin
+                            // the preview.
+                            if (mSupportedPreviewSizes != null) {
+                                mPreviewSize = getOptimalPreviewSize(mSupportedPreviewSizes, w, h);
+                            }
+                            startCamera();
+                        } catch (Exception exception) {
+                            Log.e(TAG, "Exception caused by surfaceChanged()", exception);
+                            notifyPreviewFailed("Failed to start preview");
+                        }
+                    }
                 }
-                startCamera();
-            } catch (Exception exception) {
-                Log.e(TAG, "Exception caused by surfaceChanged()", exception);
             }
-        }
+        );
     }
 
+    // Runs on the camera thread
     private void startCamera() {
-        Camera.Parameters parameters = mCamera.getParameters();
-        parameters.setPreviewSize(mPreviewSize.width, mPreviewSize.height);
-        requestLayout();
+        Camera.Parameters parameters = cameraParameters.get();
+        parameters.setPreviewSize(mPreviewSize[0], mPreviewSize[1]);
+        post(
+            new Runnable() {
+                @Override
+                public void run() {
+                    requestLayout();
+                }
+            }
+        );
         //mCamera.setDisplayOrientation(90);
-        mCamera.setParameters(parameters);
+        cameraParameters.apply(parameters);
         mCamera.startPreview();
+        // a SurfaceView tells nothing about the frames drawn into it, and the camera draws as soon as it is started
+        if (mTextureView == null) {
+            notifyFirstFrame();
+        }
     }
 
     //  Texture Callbacks
 
-    public void onSurfaceTextureAvailable(SurfaceTexture surface, int width, int height) {
+    public void onSurfaceTextureAvailable(final SurfaceTexture surface, final int width, final int height) {
         // The Surface has been created, acquire the camera and tell it where
         // to draw.
-        try {
-            mSurface = surface;
-            if (mSupportedPreviewSizes != null) {
-                mPreviewSize = getOptimalPreviewSize(mSupportedPreviewSizes, width, height);
-            }
-            if (mCamera != null) {
-                mTextureView.setAlpha(opacity);
-                mCamera.setPreviewTexture(surface);
-                startCamera();
-            }
-        } catch (Exception exception) {
-            Log.e(TAG, "Exception caused by onSurfaceTextureAvailable()", exception);
+        mSurface = surface;
+        if (mCamera != null) {
+            mTextureView.setAlpha(opacity);
         }
+        cameraThread.post(
+            new Runnable() {
+                @Override
+                public void run() {
+                    surfaceReady = true;
+                    try {
+                        if (mSupportedPreviewSizes != null) {
+                            mPreviewSize = getOptimalPreviewSize(mSupportedPreviewSizes, width, height);
+                        }
+                        if (mCamera != null) {
+                            mCamera.setPreviewTexture(surface);
+                            startCamera();
+                        }
+                    } catch (Exception exception) {
+                        Log.e(TAG, "Exception caused by onSurfaceTextureAvailable()", exception);
+                        notifyPreviewFailed("Failed to start preview");
+                    }
+                }
+            }
+        );
     }
 
     public void onSurfaceTextureSizeChanged(SurfaceTexture surface, int width, int height) {}
 
     public boolean onSurfaceTextureDestroyed(SurfaceTexture surface) {
         try {
-            if (mCamera != null) {
-                mCamera.stopPreview();
-            }
+            cameraThread.invoke(
+                new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        surfaceReady = false;
+                        if (mCamera != null) {
+                            mCamera.stopPreview();
+                        }
+                        return null;
+                    }
+                }
+            );
         } catch (Exception exception) {
             Log.e(TAG, "Exception caused by onSurfaceTextureDestroyed()", exception);
             return false;
@@ -369,12 +522,21 @@ class Preview extends RelativeLayout implements SurfaceHolder.Callback, TextureV
         return true;
     }
 
-    public void onSurfaceTextureUpdated(SurfaceTexture surface) {}
+    public void onSurfaceTextureUpdated(SurfaceTexture surface) {
+        notifyFirstFrame();
+    }
 
-    public void setOneShotPreviewCallback(Camera.PreviewCallback callback) {
-        if (mCamera != null) {
-            mCamera.setOneShotPreviewCallback(callback);
-        }
+    public void setOneShotPreviewCallback(final Camera.PreviewCallback callback) {
+        cameraThread.post(
+            new Runnable() {
+                @Override
+                public void run() {
+                    if (mCamera != null) {
+                        mCamera.setOneShotPreviewCallback(callback);
+                    }
+                }
+            }
+        );
     }
 
     public void setOpacity(final float opacity) {
@@ -0,0 +1,87 @@
+package com.ahm.capacitor.camera.preview;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The most recent preview frames with the time they arrived, kept for zero shutter lag captures.
+ *
+ * The ring never allocates: it only holds on to callback buffers handed to it. Adding a frame to a full ring evicts
+ * the oldest one, whose buffer goes back to the camera. Frames are kept oldest first, and the ring is small enough
+ * that removing a frame from the middle by shifting is cheaper than anything cleverer.
+ */
+final class PreviewFrameRing {
+
+    private final byte[][] frames;
+    private final long[] timestamps;
+    private int size;
+
+    PreviewFrameRing(int capacity) {
+        frames = new byte[Math.max(1, capacity)][];
+        timestamps = new long[frames.length];
+    }
+
+    int capacity() {
+        return frames.length;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Adds the newest frame.
+     *
+     * @return the evicted oldest frame when the ring was full, or {@code null}
+     */
+    synchronized byte[] add(byte[] frame, long nanos) {
+        byte[] evicted = null;
+        if (size == frames.length) {
+            evicted = remove(0);
+        }
+        frames[size] = frame;
+        timestamps[size] = nanos;
+        size++;
+        return evicted;
+    }
+
+    /**
+     * Removes and returns the frame that arrived closest to {@code nanos}. Ownership of the frame passes to the caller.
+     *
+     * @return the frame, or {@code null} when the ring is empty
+     */
+    synchronized byte[] takeClosest(long nanos) {
+        if (size == 0) {
+            return null;
+        }
+        int closest = 0;
+        for (int i = 1; i < size; i++) {
+            if (Math.abs(timestamps[i] - nanos) < Math.abs(timestamps[closest] - nanos)) {
+                closest = i;
+            }
+        }
+        return remove(closest);
+    }
+
+    /**
+     * Empties the ring, returning every frame it held.
+     */
+    synchronized List<byte[]> clear() {
+        List<byte[]> cleared = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            cleared.add(frames[i]);
+            frames[i] = null;
+        }
+        size = 0;
+        return cleared;
+    }
+
+    private byte[] remove(int index) {
+        byte[] frame = frames[index];
+        System.arraycopy(frames, index + 1, frames, index, size - index - 1);
+        System.arraycopy(timestamps, index + 1, timestamps, index, size - index - 1);
+        size--;
+        frames[size] = null;
+        return frame;
+    }
+}
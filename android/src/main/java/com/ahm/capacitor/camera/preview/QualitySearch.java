@@ -0,0 +1,156 @@
+package com.ahm.capacitor.camera.preview;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Finds the highest quality, up to the one asked for, at which a lossy picture fits in {@code maxBytes}.
+ *
+ * The search narrows the range of qualities that may fit with every encode, guessing the next quality by
+ * interpolating between the sizes seen so far. The first guess comes from the quality to size samples of the last
+ * search of the same scene: consecutive captures of one scene compress alike, so a search usually takes one encode to
+ * confirm the remembered quality and one more to see that the next quality up is too large. Scenes are named by the
+ * caller, by source and size, and only the most recently used few are remembered. A search stops after
+ * {@link #MAX_ENCODES} encodes with the best result so far.
+ */
+class QualitySearch {
+
+    interface Encoder {
+        byte[] encode(int quality) throws IOException;
+    }
+
+    /**
+     * Thrown when a picture is larger than {@code maxBytes} even at the lowest quality tried.
+     */
+    static class BudgetExceededException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        BudgetExceededException(int maxBytes) {
+            super("Picture does not fit in " + maxBytes + " bytes");
+        }
+    }
+
+    static final int MIN_QUALITY = 1;
+    static final int MAX_ENCODES = 6;
+    private static final int MAX_SCENES = 8;
+
+    // quality to size samples of the last search of each scene, least recently used first
+    private final LinkedHashMap<String, TreeMap<Integer, Integer>> scenes = new LinkedHashMap<String, TreeMap<Integer, Integer>>(
+        16,
+        0.75f,
+        true
+    ) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, TreeMap<Integer, Integer>> eldest) {
+            return size() > MAX_SCENES;
+        }
+    };
+
+    private int lastEncodes;
+
+    /**
+     * Encodes a picture in {@code format} to fit in {@code maxBytes}. Lossless formats have no quality to trade for
+     * size, so they are encoded once and have to fit as they are.
+     *
+     * @throws BudgetExceededException when the picture does not fit
+     */
+    byte[] fit(String scene, OutputFormat format, int quality, int maxBytes, Encoder encoder) throws IOException {
+        if (format.lossless) {
+            byte[] encoded = encoder.encode(quality);
+            if (encoded.length > maxBytes) {
+                throw new BudgetExceededException(maxBytes);
+            }
+            return encoded;
+        }
+        return search(format.id + " " + scene, quality, maxBytes, encoder);
+    }
+
+    /**
+     * @return the output of {@code encoder} at the highest quality found that fits in {@code maxBytes}
+     * @throws BudgetExceededException when no quality tried fits
+     */
+    byte[] search(String scene, int quality, int maxBytes, Encoder encoder) throws IOException {
+        // qualities above low are not known to fit, qualities above high are known not to
+        int low = MIN_QUALITY - 1;
+        int high = Math.max(MIN_QUALITY, Math.min(100, quality));
+        TreeMap<Integer, Integer> samples = new TreeMap<>();
+        byte[] best = null;
+
+        int next = guess(getSamples(scene), maxBytes, low, high);
+        int encodes = 0;
+        while (low < high && encodes < MAX_ENCODES) {
+            byte[] encoded = encoder.encode(next);
+            encodes++;
+            samples.put(next, encoded.length);
+            if (encoded.length <= maxBytes) {
+                best = encoded;
+                low = next;
+            } else {
+                high = next - 1;
+            }
+
+            if (best == null && encodes == MAX_ENCODES - 1) {
+                // last chance: anything that fits at all beats failing the capture
+                next = MIN_QUALITY;
+            } else {
+                next = guess(samples, maxBytes, low, high);
+            }
+        }
+
+        synchronized (this) {
+            scenes.put(scene, samples);
+            lastEncodes = encodes;
+        }
+        if (best == null) {
+            throw new BudgetExceededException(maxBytes);
+        }
+        return best;
+    }
+
+    /**
+     * Number of encodes the last search took.
+     */
+    synchronized int getLastEncodes() {
+        return lastEncodes;
+    }
+
+    private synchronized TreeMap<Integer, Integer> getSamples(String scene) {
+        TreeMap<Integer, Integer> samples = scenes.get(scene);
+        return samples == null ? new TreeMap<Integer, Integer>() : samples;
+    }
+
+    /**
+     * The quality in {@code low + 1} to {@code high} most likely to be the highest that fits in {@code maxBytes}, given
+     * quality to size {@code samples}: interpolated between the qualities just below and above the budget, scaled down
+     * from the lowest quality that was too large, or the highest quality in range without samples.
+     */
+    static int guess(TreeMap<Integer, Integer> samples, int maxBytes, int low, int high) {
+        Map.Entry<Integer, Integer> over = null;
+        for (Map.Entry<Integer, Integer> sample : samples.entrySet()) {
+            if (sample.getValue() > maxBytes) {
+                over = sample;
+                break;
+            }
+        }
+        Map.Entry<Integer, Integer> fit = null;
+        for (Map.Entry<Integer, Integer> sample : samples.headMap(over == null ? Integer.MAX_VALUE : over.getKey()).entrySet()) {
+            fit = sample;
+        }
+
+        int quality;
+        if (over == null && fit == null) {
+            quality = high;
+        } else if (over == null) {
+            quality = fit.getKey();
+        } else if (fit == null) {
+            quality = (int) ((long) over.getKey() * maxBytes / over.getValue());
+        } else {
+            int sizeRange = Math.max(1, over.getValue() - fit.getValue());
+            quality = fit.getKey() + (int) ((long) (maxBytes - fit.getValue()) * (over.getKey() - fit.getKey()) / sizeRange);
+        }
+        return Math.max(low + 1, Math.min(high, quality));
+    }
+}
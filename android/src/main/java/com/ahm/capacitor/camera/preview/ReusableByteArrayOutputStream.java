@@ -0,0 +1,21 @@
+package com.ahm.capacitor.camera.preview;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * A {@link ByteArrayOutputStream} whose backing array can be read in place, so encoded images can be consumed without
+ * the copy made by {@link #toByteArray()}. Call {@link #reset()} before reuse; the grown array is kept.
+ */
+class ReusableByteArrayOutputStream extends ByteArrayOutputStream {
+
+    ReusableByteArrayOutputStream(int initialSize) {
+        super(initialSize);
+    }
+
+    /**
+     * The backing array; only the first {@link #size()} bytes are valid.
+     */
+    synchronized byte[] buffer() {
+        return buf;
+    }
+}
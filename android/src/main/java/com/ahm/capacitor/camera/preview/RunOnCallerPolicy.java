@@ -0,0 +1,17 @@
+package com.ahm.capacitor.camera.preview;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Runs work a saturated executor cannot take on the thread that submitted it, like
+ * {@link ThreadPoolExecutor.CallerRunsPolicy}, but also once the executor is shut down, which that policy silently
+ * discards. Work handed over while the fragment is being torn down still reports back to whoever waits for it.
+ */
+class RunOnCallerPolicy implements RejectedExecutionHandler {
+
+    @Override
+    public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+        runnable.run();
+    }
+}
@@ -0,0 +1,192 @@
+package com.ahm.capacitor.camera.preview;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Picks a preview or picture size out of the sizes a camera supports, as {@code {width, height}} pairs.
+ *
+ * How a size is scored is up to the {@link Strategy}. The same choice is made on every capture and every layout pass,
+ * so the last few results are remembered by strategy, size table, requested size and aspect ratio. Size tables are
+ * compared by identity: they come from {@link CameraCapabilities} and never change.
+ */
+final class SizeSelector {
+
+    interface Strategy {
+        /**
+         * @return the chosen size, or {@code null} if there is none
+         */
+        int[] select(int[][] sizes, int width, int height, double aspectRatio);
+    }
+
+    private static final double ASPECT_TOLERANCE = 0.1;
+    // pictures taken without a size are kept below 2 megapixels
+    static final int PICTURE_PIXEL_BUDGET = 2048 * 1024;
+
+    /**
+     * Of the sizes within {@link #ASPECT_TOLERANCE} of {@code aspectRatio}, the one whose height is closest to
+     * {@code height}; if no size has that aspect ratio, the closest height overall. Used for the preview, with the
+     * view's size and aspect ratio.
+     */
+    static final Strategy ASPECT_FIRST = new Strategy() {
+        @Override
+        public int[] select(int[][] sizes, int width, int height, double aspectRatio) {
+            int[] best = null;
+            int bestDifference = Integer.MAX_VALUE;
+            for (int[] size : sizes) {
+                boolean matchesAspectRatio = Math.abs((double) size[0] / size[1] - aspectRatio) <= ASPECT_TOLERANCE;
+                if (matchesAspectRatio && Math.abs(size[1] - height) < bestDifference) {
+                    best = size;
+                    bestDifference = Math.abs(size[1] - height);
+                }
+            }
+            if (best != null) {
+                return best;
+            }
+            for (int[] size : sizes) {
+                if (Math.abs(size[1] - height) < bestDifference) {
+                    best = size;
+                    bestDifference = Math.abs(size[1] - height);
+                }
+            }
+            return best;
+        }
+    };
+
+    /**
+     * The size asked for if the camera has it. Otherwise, among the sizes closest to {@code aspectRatio}, the one whose
+     * area is closest to {@code width x height}. Used for pictures taken at a size, with the preview's aspect ratio.
+     */
+    static final Strategy AREA_CLOSEST = new Strategy() {
+        @Override
+        public int[] select(int[][] sizes, int width, int height, double aspectRatio) {
+            return pictureSize(sizes, width, height, aspectRatio, false);
+        }
+    };
+
+    /**
+     * Among the sizes closest to {@code aspectRatio}, the widest one below {@link #PICTURE_PIXEL_BUDGET} pixels. Used
+     * for pictures taken without a size, with the preview's aspect ratio.
+     */
+    static final Strategy MAX_UNDER_BUDGET = new Strategy() {
+        @Override
+        public int[] select(int[][] sizes, int width, int height, double aspectRatio) {
+            return pictureSize(sizes, width, height, aspectRatio, true);
+        }
+    };
+
+    private static final class Key {
+
+        final Strategy strategy;
+        final int[][] sizes;
+        final int width;
+        final int height;
+        final double aspectRatio;
+
+        Key(Strategy strategy, int[][] sizes, int width, int height, double aspectRatio) {
+            this.strategy = strategy;
+            this.sizes = sizes;
+            this.width = width;
+            this.height = height;
+            this.aspectRatio = aspectRatio;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return (
+                strategy == other.strategy &&
+                sizes == other.sizes &&
+                width == other.width &&
+                height == other.height &&
+                Double.compare(aspectRatio, other.aspectRatio) == 0
+            );
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = System.identityHashCode(strategy);
+            hash = hash * 31 + System.identityHashCode(sizes);
+            hash = hash * 31 + width;
+            hash = hash * 31 + height;
+            long bits = Double.doubleToLongBits(aspectRatio);
+            return hash * 31 + (int) (bits ^ (bits >>> 32));
+        }
+    }
+
+    private final int maxEntries;
+    // results by input, least recently used first; a null result is remembered too
+    private final LinkedHashMap<Key, int[]> results = new LinkedHashMap<Key, int[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, int[]> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    /**
+     * @param maxEntries how many results to remember, 0 to choose again every time
+     */
+    SizeSelector(int maxEntries) {
+        this.maxEntries = Math.max(0, maxEntries);
+    }
+
+    /**
+     * @return a copy of the chosen size, or {@code null} if {@code sizes} is empty
+     */
+    synchronized int[] select(Strategy strategy, int[][] sizes, int width, int height, double aspectRatio) {
+        Key key = new Key(strategy, sizes, width, height, aspectRatio);
+        int[] size;
+        if (results.containsKey(key)) {
+            size = results.get(key);
+        } else {
+            size = strategy.select(sizes, width, height, aspectRatio);
+            if (maxEntries > 0) {
+                results.put(key, size);
+            }
+        }
+        return size == null ? null : size.clone();
+    }
+
+    /**
+     * The picture strategies. A size that is closer to the aspect ratio by more than the tolerance replaces the choice
+     * so far; one within the tolerance of the best aspect ratio replaces it only if it is closer in area, or wider when
+     * {@code underBudget}. If no size qualifies, the size asked for is returned as it is.
+     */
+    private static int[] pictureSize(int[][] sizes, int width, int height, double aspectRatio, boolean underBudget) {
+        // sizes are listed in landscape
+        int requestedWidth = Math.max(width, height);
+        int requestedHeight = Math.min(width, height);
+        if (aspectRatio < 1.0) {
+            aspectRatio = 1.0 / aspectRatio;
+        }
+
+        int[] best = { requestedWidth, requestedHeight };
+        double bestDifference = Double.MAX_VALUE;
+        for (int[] size : sizes) {
+            if (size[0] == requestedWidth && size[1] == requestedHeight) {
+                return size;
+            }
+
+            double difference = Math.abs(aspectRatio - (double) size[0] / size[1]);
+            boolean withinBudget = size[0] * size[1] < PICTURE_PIXEL_BUDGET;
+            if (difference < bestDifference - ASPECT_TOLERANCE) {
+                if (!underBudget || withinBudget) {
+                    best = size;
+                    bestDifference = difference;
+                }
+            } else if (difference < bestDifference + ASPECT_TOLERANCE) {
+                if (underBudget) {
+                    if (best[0] < size[0] && withinBudget) {
+                        best = size;
+                    }
+                } else if (Math.abs(width * height - size[0] * size[1]) < Math.abs(width * height - best[0] * best[1])) {
+                    best = size;
+                }
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,260 @@
+package com.ahm.capacitor.camera.preview;
+
+import android.graphics.Bitmap;
+import android.util.Base64;
+import android.util.Log;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns preview frames into Base64 encoded samples, or files, on a dedicated worker thread.
+ *
+ * The preview callback only hands over the pooled callback buffer; rotation, compression and Base64 encoding all
+ * happen on the worker, so the camera thread delivering preview frames is never blocked by a sample. The queue is
+ * bounded, and samples requested while it is full fail fast instead of piling up frames in memory. Samples with a
+ * {@code maxBytes} are compressed at the highest quality that fits, found by a {@link QualitySearch}. JPEG samples are
+ * compressed straight from the frame by a {@link FrameEncoder}; other {@link OutputFormat}s go through a pooled bitmap.
+ */
+class SnapshotPipeline {
+
+    interface Callback {
+        void onEncoded(String image);
+        void onError(String message);
+    }
+
+    private static final String TAG = "SnapshotPipeline";
+    private static final int MAX_PENDING = 2;
+
+    private final FrameBufferPool buffers;
+    private final ChunkedTransfer.Sink chunks;
+    private final CaptureFileWriter writer;
+    private final QualitySearch qualitySearch;
+    private final BitmapPool bitmaps;
+    private volatile FrameEncoder frameEncoder;
+    // only touched from the worker thread
+    private final ReusableByteArrayOutputStream output = new ReusableByteArrayOutputStream(256 * 1024);
+    private int[] pixels = new int[0];
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+        1,
+        1,
+        0L,
+        TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(MAX_PENDING),
+        new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "CameraPreview-snapshot");
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }
+        }
+    );
+
+    SnapshotPipeline(
+        FrameBufferPool buffers,
+        ChunkedTransfer.Sink chunks,
+        CaptureFileWriter writer,
+        QualitySearch qualitySearch,
+        BitmapPool bitmaps,
+        FrameEncoder frameEncoder
+    ) {
+        this.buffers = buffers;
+        this.chunks = chunks;
+        this.writer = writer;
+        this.qualitySearch = qualitySearch;
+        this.bitmaps = bitmaps;
+        this.frameEncoder = frameEncoder;
+    }
+
+    /**
+     * Replaces the encoder of JPEG samples, from the next sample on. The encoder is only used by the worker thread.
+     */
+    void setFrameEncoder(FrameEncoder frameEncoder) {
+        this.frameEncoder = frameEncoder;
+    }
+
+    /**
+     * Queues an NV21 frame for encoding. Ownership of {@code frame} passes to the pipeline, which returns it to the
+     * buffer pool once it has been encoded.
+     *
+     * @param rotation clockwise rotation applied before encoding
+     * @param mirror mirror the rotated frame horizontally
+     * @param maxBytes when positive, the sample is compressed at the highest quality up to {@code quality} that fits
+     * @param filePath when set, the sample is written to this file and the callback receives the path instead of Base64
+     * @param chunkSize when positive and there is no file, the Base64 is sent in chunks of this many characters and the
+     *     callback receives the transfer id
+     */
+    void encode(
+        final byte[] frame,
+        final int width,
+        final int height,
+        final int format,
+        final int rotation,
+        final boolean mirror,
+        final OutputFormat outputFormat,
+        final int quality,
+        final int maxBytes,
+        final String filePath,
+        final int chunkSize,
+        final Callback callback
+    ) {
+        try {
+            executor.execute(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        encodeFrame(
+                            frame,
+                            width,
+                            height,
+                            format,
+                            rotation,
+                            mirror,
+                            outputFormat,
+                            quality,
+                            maxBytes,
+                            filePath,
+                            chunkSize,
+                            callback
+                        );
+                    }
+                }
+            );
+        } catch (RejectedExecutionException e) {
+            buffers.release(frame);
+            callback.onError(executor.isShutdown() ? "Camera was stopped" : "Too many pending samples");
+        }
+    }
+
+    /**
+     * Stops the worker once the samples already queued are encoded, so each of their callbacks is still called and their
+     * frames go back to the pool. Samples queued afterwards fail.
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    private void encodeFrame(
+        byte[] frame,
+        int width,
+        int height,
+        int format,
+        int rotation,
+        boolean mirror,
+        final OutputFormat outputFormat,
+        int quality,
+        int maxBytes,
+        String filePath,
+        int chunkSize,
+        Callback callback
+    ) {
+        byte[] rotated = null;
+        Bitmap bitmap = null;
+        try {
+            byte[] rotatedFrame = frame;
+            if (rotation != 0 || mirror) {
+                rotated = buffers.acquire();
+                NV21Transform.transform(frame, rotated, width, height, rotation, mirror, false);
+                rotatedFrame = rotated;
+            }
+            // switch width/height when rotating 90/270 deg
+            final boolean transposed = rotation == 90 || rotation == 270;
+            final byte[] data = rotatedFrame;
+            final int outputWidth = transposed ? height : width;
+            final int outputHeight = transposed ? width : height;
+            if (outputFormat != OutputFormat.JPEG) {
+                bitmap = toBitmap(data, outputWidth, outputHeight);
+            }
+            final Bitmap image = bitmap;
+            final int frameFormat = format;
+
+            byte[] encoded;
+            int length;
+            if (maxBytes > 0) {
+                encoded = qualitySearch.fit(
+                    "preview " + outputWidth + "x" + outputHeight,
+                    outputFormat,
+                    quality,
+                    maxBytes,
+                    new QualitySearch.Encoder() {
+                        @Override
+                        public byte[] encode(int quality) throws IOException {
+                            compress(data, frameFormat, outputWidth, outputHeight, image, outputFormat, quality);
+                            return Arrays.copyOf(output.buffer(), output.size());
+                        }
+                    }
+                );
+                length = encoded.length;
+            } else {
+                compress(data, format, outputWidth, outputHeight, image, outputFormat, quality);
+                encoded = output.buffer();
+                length = output.size();
+            }
+
+            if (filePath == null && chunkSize > 0) {
+                callback.onEncoded(ChunkedTransfer.send(encoded, 0, length, chunkSize, chunks));
+            } else if (filePath == null) {
+                callback.onEncoded(Base64.encodeToString(encoded, 0, length, Base64.NO_WRAP));
+            } else {
+                if (encoded == output.buffer()) {
+                    // the output buffer is reused by the next sample, so the writer gets its own copy
+                    encoded = Arrays.copyOf(encoded, length);
+                }
+                writer.write(
+                    encoded,
+                    0,
+                    encoded.length,
+                    filePath,
+                    new CaptureFileWriter.Callback() {
+                        @Override
+                        public void onWritten(String path) {
+                            callback.onEncoded(path);
+                        }
+
+                        @Override
+                        public void onError(String message) {
+                            callback.onError(message);
+                        }
+                    }
+                );
+            }
+        } catch (IOException e) {
+            callback.onError(e.getMessage());
+        } catch (RuntimeException e) {
+            Log.d(TAG, "encode failed", e);
+            callback.onError("IO Error");
+        } finally {
+            buffers.release(frame);
+            buffers.release(rotated);
+            bitmaps.release(bitmap);
+        }
+    }
+
+    /**
+     * Compresses the frame into {@link #output}: a JPEG straight from {@code frame}, anything else from {@code bitmap}.
+     */
+    private void compress(byte[] frame, int format, int width, int height, Bitmap bitmap, OutputFormat outputFormat, int quality)
+        throws IOException {
+        output.reset();
+        if (outputFormat == OutputFormat.JPEG) {
+            frameEncoder.encode(frame, format, width, height, quality, output);
+        } else {
+            outputFormat.encode(bitmap, quality, output);
+        }
+    }
+
+    private Bitmap toBitmap(byte[] nv21, int width, int height) {
+        if (pixels.length < width * height) {
+            pixels = new int[width * height];
+        }
+        NV21Transform.toArgb(nv21, pixels, width, height);
+        Bitmap bitmap = bitmaps.acquire(width, height);
+        bitmap.setPixels(pixels, 0, width, 0, 0, width, height);
+        return bitmap;
+    }
+}
@@ -0,0 +1,20 @@
+package com.ahm.capacitor.camera.preview;
+
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encodes frames with the platform's native JPEG encoder through {@link YuvImage}, which takes NV21 and YUY2 frames.
+ */
+final class YuvImageFrameEncoder implements FrameEncoder {
+
+    @Override
+    public void encode(byte[] frame, int format, int width, int height, int quality, OutputStream out) throws IOException {
+        YuvImage image = new YuvImage(frame, format, width, height, null);
+        if (!image.compressToJpeg(new Rect(0, 0, width, height), quality, out)) {
+            throw new IOException("Failed to encode sample");
+        }
+    }
+}
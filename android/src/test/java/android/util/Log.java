@@ -0,0 +1,44 @@
+package android.util;
+
+/**
+ * Stands in for the platform's {@code Log}, whose methods only throw on the JVM, so the error paths of classes that log
+ * can be unit tested. Every other Android class still fails when it is called from a unit test.
+ */
+public final class Log {
+
+    private Log() {}
+
+    public static int d(String tag, String msg) {
+        return println("D", tag, msg, null);
+    }
+
+    public static int d(String tag, String msg, Throwable tr) {
+        return println("D", tag, msg, tr);
+    }
+
+    public static int i(String tag, String msg) {
+        return println("I", tag, msg, null);
+    }
+
+    public static int w(String tag, String msg) {
+        return println("W", tag, msg, null);
+    }
+
+    public static int w(String tag, String msg, Throwable tr) {
+        return println("W", tag, msg, tr);
+    }
+
+    public static int e(String tag, String msg) {
+        return println("E", tag, msg, null);
+    }
+
+    public static int e(String tag, String msg, Throwable tr) {
+        return println("E", tag, msg, tr);
+    }
+
+    private static int println(String level, String tag, String msg, Throwable tr) {
+        String line = level + "/" + tag + ": " + msg + (tr == null ? "" : ": " + tr);
+        System.out.println(line);
+        return line.length();
+    }
+}
@@ -0,0 +1,137 @@
+package com.ahm.capacitor.camera.preview;
+
+import static org.junit.Assert.*;
+
+import android.graphics.ImageFormat;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import org.junit.Test;
+
+public class BaselineJpegEncoderTest {
+
+    @Test
+    public void encode_decodesToTheFrame() throws IOException {
+        // not a multiple of the 16x16 MCU, so the edges are padded
+        byte[] frame = frame(56, 40);
+        BufferedImage image = JpegTransformTest.decode(encode(new BaselineJpegEncoder(), frame, 56, 40, 90));
+
+        assertEquals(56, image.getWidth());
+        assertEquals(40, image.getHeight());
+        assertSimilar(frame, 56, 40, image, 6);
+    }
+
+    @Test
+    public void encode_keepsChroma() throws IOException {
+        // pure red in full range YCbCr
+        byte[] frame = new byte[16 * 16 * 3 / 2];
+        fill(frame, 16, 16, 76, 85, 255);
+        int rgb = JpegTransformTest.decode(encode(new BaselineJpegEncoder(), frame, 16, 16, 95)).getRGB(8, 8);
+
+        assertTrue(Integer.toHexString(rgb), ((rgb >> 16) & 0xFF) > 240);
+        assertTrue(Integer.toHexString(rgb), ((rgb >> 8) & 0xFF) < 16);
+        assertTrue(Integer.toHexString(rgb), (rgb & 0xFF) < 16);
+    }
+
+    @Test
+    public void encode_optimizedTablesAndRestartsDecodeToTheSamePixels() throws IOException {
+        byte[] frame = frame(160, 120);
+        byte[] standard = encode(new BaselineJpegEncoder(), frame, 160, 120, 80);
+        byte[] optimized = encode(new BaselineJpegEncoder(0, true), frame, 160, 120, 80);
+        byte[] restarts = encode(new BaselineJpegEncoder(7, true), frame, 160, 120, 80);
+
+        assertTrue(optimized.length + " >= " + standard.length, optimized.length < standard.length);
+        BufferedImage expected = JpegTransformTest.decode(standard);
+        assertSamePixels(expected, JpegTransformTest.decode(optimized));
+        assertSamePixels(expected, JpegTransformTest.decode(restarts));
+    }
+
+    @Test
+    public void encode_reusesScratchSpaceAcrossFrames() throws IOException {
+        BaselineJpegEncoder encoder = new BaselineJpegEncoder(0, true);
+        byte[] first = encode(encoder, frame(64, 48), 64, 48, 70);
+        encode(encoder, frame(320, 240), 320, 240, 40);
+        assertArrayEquals(first, encode(encoder, frame(64, 48), 64, 48, 70));
+    }
+
+    @Test(expected = IOException.class)
+    public void encode_rejectsOtherFormats() throws IOException {
+        new BaselineJpegEncoder().encode(frame(16, 16), ImageFormat.YUY2, 16, 16, 90, new ByteArrayOutputStream());
+    }
+
+    @Test
+    public void optimalTable_limitsCodesTo16Bits() {
+        // Fibonacci frequencies make the deepest possible Huffman tree
+        long[] frequencies = new long[257];
+        long a = 1;
+        long b = 1;
+        for (int symbol = 0; symbol < 40; symbol++) {
+            frequencies[symbol] = a;
+            long next = a + b;
+            a = b;
+            b = next;
+        }
+        int[] table = BaselineJpegEncoder.optimalTable(frequencies);
+
+        int codes = 0;
+        // Kraft: the codes, plus the reserved one, must fit in a 16 bit tree
+        long space = 0;
+        for (int length = 1; length <= 16; length++) {
+            codes += table[length - 1];
+            space += (long) table[length - 1] << (16 - length);
+        }
+        assertEquals(40, codes);
+        assertEquals(16 + 40, table.length);
+        assertTrue(space < 1 << 16);
+    }
+
+    private static byte[] encode(BaselineJpegEncoder encoder, byte[] frame, int width, int height, int quality) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.encode(frame, ImageFormat.NV21, width, height, quality, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * An NV21 frame with a smooth luma pattern and neutral chroma.
+     */
+    static byte[] frame(int width, int height) {
+        byte[] frame = new byte[width * height * 3 / 2];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                frame[y * width + x] = (byte) (64 + (x * 96) / width + (y * 64) / height);
+            }
+        }
+        for (int i = width * height; i < frame.length; i++) {
+            frame[i] = (byte) 128;
+        }
+        return frame;
+    }
+
+    private static void fill(byte[] frame, int width, int height, int y, int u, int v) {
+        for (int i = 0; i < width * height; i++) {
+            frame[i] = (byte) y;
+        }
+        for (int i = width * height; i < frame.length; i += 2) {
+            frame[i] = (byte) v;
+            frame[i + 1] = (byte) u;
+        }
+    }
+
+    private static void assertSimilar(byte[] frame, int width, int height, BufferedImage image, int tolerance) {
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int expected = frame[y * width + x] & 0xFF;
+                int green = (image.getRGB(x, y) >> 8) & 0xFF;
+                assertEquals("pixel " + x + "," + y, expected, green, tolerance);
+            }
+        }
+    }
+
+    private static void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals("pixel " + x + "," + y, expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.ahm.capacitor.camera.preview;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+public class CameraCapabilitiesTest {
+
+    @Test
+    public void getZoomIndex_picksClosestRatio() {
+        CameraCapabilities capabilities = capabilities(new int[] { 100, 120, 150, 200, 400 }, 0, 0, 0);
+
+        assertEquals(0, capabilities.getZoomIndex(1));
+        assertEquals(0, capabilities.getZoomIndex(0.5f));
+        assertEquals(2, capabilities.getZoomIndex(1.6f));
+        assertEquals(3, capabilities.getZoomIndex(2.9f));
+        assertEquals(4, capabilities.getZoomIndex(10));
+        assertEquals(4, capabilities.getMaxZoom());
+    }
+
+    @Test
+    public void getExposureCompensationIndex_roundsToStepWithinRange() {
+        CameraCapabilities capabilities = capabilities(new int[0], -6, 6, 1 / 3f);
+
+        assertTrue(capabilities.isExposureCompensationSupported());
+        assertEquals(0, capabilities.getExposureCompensationIndex(0));
+        assertEquals(3, capabilities.getExposureCompensationIndex(1));
+        assertEquals(-2, capabilities.getExposureCompensationIndex(-0.6f));
+        assertEquals(6, capabilities.getExposureCompensationIndex(5));
+        assertEquals(-6, capabilities.getExposureCompensationIndex(-5));
+        assertFalse(capabilities(new int[0], 0, 0, 0).isExposureCompensationSupported());
+    }
+
+    private static CameraCapabilities capabilities(int[] zoomRatios, int minExposure, int maxExposure, float exposureStep) {
+        return new CameraCapabilities(
+            new int[][] { { 1280, 720 } },
+            new int[][] { { 1280, 720 } },
+            null,
+            Arrays.asList("auto"),
+            zoomRatios,
+            minExposure,
+            maxExposure,
+            exposureStep,
+            new int[][] { { 30000, 30000 } },
+            1,
+            1
+        );
+    }
+}
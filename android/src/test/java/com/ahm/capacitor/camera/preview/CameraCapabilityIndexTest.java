@@ -0,0 +1,111 @@
+package com.ahm.capacitor.camera.preview;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CameraCapabilityIndexTest {
+
+    private static final String FINGERPRINT = "vendor/device/device:14/AP1A/1:user/release-keys";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void get_readsWhatAnEarlierIndexWrote() {
+        File file = new File(folder.getRoot(), "capabilities");
+        new CameraCapabilityIndex(file, FINGERPRINT).put(0, back());
+        new CameraCapabilityIndex(file, FINGERPRINT).put(1, front());
+
+        CameraCapabilityIndex index = new CameraCapabilityIndex(file, FINGERPRINT);
+        assertEquals(back(), index.get(0));
+        assertEquals(front(), index.get(1));
+        assertNull(index.get(2));
+        assertFalse(new File(folder.getRoot(), "capabilities.tmp").exists());
+    }
+
+    @Test
+    public void get_keepsWhatTheCameraDoesNotSupport() {
+        File file = new File(folder.getRoot(), "capabilities");
+        new CameraCapabilityIndex(file, FINGERPRINT).put(1, front());
+
+        CameraCapabilities capabilities = new CameraCapabilityIndex(file, FINGERPRINT).get(1);
+        assertNull(capabilities.getFlashModes());
+        assertFalse(capabilities.isZoomSupported());
+        assertEquals(0, capabilities.getMaxZoom());
+    }
+
+    @Test
+    public void get_ignoresIndexOfAnotherBuild() {
+        File file = new File(folder.getRoot(), "capabilities");
+        new CameraCapabilityIndex(file, FINGERPRINT).put(0, back());
+
+        CameraCapabilityIndex index = new CameraCapabilityIndex(file, FINGERPRINT + ".1");
+        assertNull(index.get(0));
+        index.put(1, front());
+        assertNull(new CameraCapabilityIndex(file, FINGERPRINT).get(1));
+        assertEquals(front(), new CameraCapabilityIndex(file, FINGERPRINT + ".1").get(1));
+    }
+
+    @Test
+    public void get_ignoresDamagedIndex() throws IOException {
+        File file = new File(folder.getRoot(), "capabilities");
+        new CameraCapabilityIndex(file, FINGERPRINT).put(0, back());
+        byte[] truncated = Arrays.copyOf(Files.readAllBytes(file.toPath()), (int) file.length() - 6);
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(truncated);
+        out.close();
+
+        CameraCapabilityIndex index = new CameraCapabilityIndex(file, FINGERPRINT);
+        assertNull(index.get(0));
+        index.put(0, back());
+        assertEquals(back(), new CameraCapabilityIndex(file, FINGERPRINT).get(0));
+    }
+
+    @Test
+    public void get_keepsCapabilitiesInMemoryWithoutFile() {
+        CameraCapabilityIndex index = new CameraCapabilityIndex(null, null);
+        assertNull(index.get(0));
+        index.put(0, back());
+        assertEquals(back(), index.get(0));
+    }
+
+    private static CameraCapabilities back() {
+        return new CameraCapabilities(
+            new int[][] { { 1920, 1080 }, { 1280, 720 }, { 640, 480 } },
+            new int[][] { { 4032, 3024 }, { 1920, 1080 } },
+            Arrays.asList("off", "auto", "on", "torch"),
+            Arrays.asList("auto", "continuous-picture", "continuous-video"),
+            new int[] { 100, 150, 200, 400 },
+            -12,
+            12,
+            1 / 6f,
+            new int[][] { { 15000, 30000 }, { 30000, 30000 } },
+            1,
+            1
+        );
+    }
+
+    private static CameraCapabilities front() {
+        return new CameraCapabilities(
+            new int[][] { { 1280, 720 } },
+            new int[][] { { 2592, 1944 } },
+            null,
+            Arrays.asList("fixed"),
+            new int[0],
+            0,
+            0,
+            0,
+            new int[][] { { 30000, 30000 } },
+            0,
+            0
+        );
+    }
+}
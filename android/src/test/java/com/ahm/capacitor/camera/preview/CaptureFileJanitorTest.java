@@ -0,0 +1,90 @@
+package com.ahm.capacitor.camera.preview;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CaptureFileJanitorTest {
+
+    private static final long NOW = 1000000000L;
+    private static final long MINUTE = 60 * 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void trim_deletesLeastRecentlyUsedUntilWithinSize() throws IOException {
+        File oldest = capture("cpcp_capture_1.jpg", 100, NOW - 3 * MINUTE);
+        File middle = capture("cpcp_capture_2.jpg", 100, NOW - 2 * MINUTE);
+        File newest = capture("cpcp_capture_3.jpg", 100, NOW - MINUTE);
+        CaptureFileJanitor janitor = new CaptureFileJanitor(folder.getRoot(), 250, 0);
+
+        assertEquals(200, janitor.trim(NOW, null));
+        assertFalse(oldest.exists());
+        assertTrue(middle.exists());
+        assertTrue(newest.exists());
+        assertEquals(1, janitor.getFilesDeleted());
+        assertEquals(100, janitor.getBytesDeleted());
+        assertEquals(200, janitor.getBytesStored());
+    }
+
+    @Test
+    public void trim_deletesFilesPastMaximumAge() throws IOException {
+        File expired = capture("cpcp_capture_1.jpg", 10, NOW - 10 * MINUTE);
+        File recent = capture("cpcp_capture_2.jpg", 10, NOW - MINUTE);
+        CaptureFileJanitor janitor = new CaptureFileJanitor(folder.getRoot(), 0, 5 * MINUTE);
+
+        assertEquals(10, janitor.trim(NOW, null));
+        assertFalse(expired.exists());
+        assertTrue(recent.exists());
+    }
+
+    @Test
+    public void trim_keepsFileJustWritten() throws IOException {
+        File older = capture("cpcp_capture_1.jpg", 100, NOW - 2 * MINUTE);
+        File written = capture("cpcp_capture_2.jpg", 500, NOW - 3 * MINUTE);
+        CaptureFileJanitor janitor = new CaptureFileJanitor(folder.getRoot(), 200, 0);
+
+        janitor.trim(NOW, written);
+        assertTrue(written.exists());
+        assertFalse(older.exists());
+    }
+
+    @Test
+    public void trim_leavesOtherFilesAlone() throws IOException {
+        File video = capture("videoTmp.mp4", 1000, NOW - 10 * MINUTE);
+        File other = capture("cpcp_capture_1.png", 1000, NOW - 10 * MINUTE);
+        CaptureFileJanitor janitor = new CaptureFileJanitor(folder.getRoot(), 1, MINUTE);
+
+        assertEquals(0, janitor.trim(NOW, null));
+        assertTrue(video.exists());
+        assertTrue(other.exists());
+        assertEquals(0, janitor.getFilesDeleted());
+    }
+
+    @Test
+    public void trim_withoutLimitsKeepsEverything() throws IOException {
+        capture("cpcp_capture_1.jpg", 100, NOW - 100 * MINUTE);
+        CaptureFileJanitor janitor = new CaptureFileJanitor(folder.getRoot(), 0, 0);
+
+        assertEquals(100, janitor.trim(NOW, null));
+        assertEquals(0, janitor.getFilesDeleted());
+    }
+
+    private File capture(String name, int size, long lastModified) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[size]);
+        } finally {
+            out.close();
+        }
+        assertTrue(file.setLastModified(lastModified));
+        return file;
+    }
+}
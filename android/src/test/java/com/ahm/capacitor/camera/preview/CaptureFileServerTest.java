@@ -0,0 +1,160 @@
+package com.ahm.capacitor.camera.preview;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CaptureFileServerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private CaptureFileServer server;
+    private byte[] picture;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new CaptureFileServer(folder.getRoot());
+        picture = new byte[1000];
+        for (int i = 0; i < picture.length; i++) {
+            picture[i] = (byte) i;
+        }
+        write("cpcp_capture_1234abcd.jpg", picture);
+    }
+
+    @Test
+    public void handle_servesWholeFile() throws IOException {
+        CaptureFileServer.Response response = get("cpcp_capture_1234abcd.jpg", null);
+
+        assertEquals(200, response.status);
+        assertEquals("image/jpeg", response.mimeType);
+        assertEquals("1000", response.headers.get("Content-Length"));
+        assertEquals("bytes", response.headers.get("Accept-Ranges"));
+        assertArrayEquals(picture, read(response.body));
+    }
+
+    @Test
+    public void handle_servesByteRanges() throws IOException {
+        CaptureFileServer.Response response = get("cpcp_capture_1234abcd.jpg", "bytes=10-19");
+        assertEquals(206, response.status);
+        assertEquals("bytes 10-19/1000", response.headers.get("Content-Range"));
+        assertEquals("10", response.headers.get("Content-Length"));
+        assertArrayEquals(Arrays.copyOfRange(picture, 10, 20), read(response.body));
+
+        response = get("cpcp_capture_1234abcd.jpg", "bytes=990-");
+        assertEquals("bytes 990-999/1000", response.headers.get("Content-Range"));
+        assertArrayEquals(Arrays.copyOfRange(picture, 990, 1000), read(response.body));
+
+        response = get("cpcp_capture_1234abcd.jpg", "bytes=-5");
+        assertEquals("bytes 995-999/1000", response.headers.get("Content-Range"));
+        assertArrayEquals(Arrays.copyOfRange(picture, 995, 1000), read(response.body));
+
+        // an end past the file is clamped
+        response = get("cpcp_capture_1234abcd.jpg", "bytes=998-5000");
+        assertEquals("bytes 998-999/1000", response.headers.get("Content-Range"));
+        assertEquals(2, read(response.body).length);
+    }
+
+    @Test
+    public void handle_rejectsUnsatisfiableRanges() throws IOException {
+        CaptureFileServer.Response response = get("cpcp_capture_1234abcd.jpg", "bytes=1000-");
+        assertEquals(416, response.status);
+        assertEquals("bytes */1000", response.headers.get("Content-Range"));
+
+        assertEquals(416, get("cpcp_capture_1234abcd.jpg", "bytes=20-10").status);
+        assertEquals(416, get("cpcp_capture_1234abcd.jpg", "bytes=-0").status);
+    }
+
+    @Test
+    public void handle_ignoresRangesItDoesNotSupport() throws IOException {
+        assertEquals(200, get("cpcp_capture_1234abcd.jpg", "bytes=0-1,5-6").status);
+        assertEquals(200, get("cpcp_capture_1234abcd.jpg", "items=0-1").status);
+        assertEquals(200, get("cpcp_capture_1234abcd.jpg", "bytes=a-b").status);
+    }
+
+    @Test
+    public void handle_answersHeadWithoutBody() throws IOException {
+        CaptureFileServer.Response response = server.handle("HEAD", CaptureFileServer.PATH_PREFIX + "cpcp_capture_1234abcd.jpg", null);
+
+        assertEquals(200, response.status);
+        assertEquals("1000", response.headers.get("Content-Length"));
+        assertEquals(0, read(response.body).length);
+        assertEquals(405, server.handle("POST", CaptureFileServer.PATH_PREFIX + "cpcp_capture_1234abcd.jpg", null).status);
+    }
+
+    @Test
+    public void handle_servesVideos() throws IOException {
+        write("videoTmp_1.mp4", new byte[] { 1, 2, 3 });
+
+        CaptureFileServer.Response response = get("videoTmp_1.mp4", "bytes=1-");
+        assertEquals(206, response.status);
+        assertEquals("video/mp4", response.mimeType);
+        assertArrayEquals(new byte[] { 2, 3 }, read(response.body));
+    }
+
+    @Test
+    public void handle_servesWebpCaptures() throws IOException {
+        write("cpcp_capture_1234abcd.webp", new byte[] { 1, 2, 3 });
+
+        CaptureFileServer.Response response = get("cpcp_capture_1234abcd.webp", null);
+        assertEquals(200, response.status);
+        assertEquals("image/webp", response.mimeType);
+    }
+
+    @Test
+    public void handle_servesOnlyOwnFiles() throws IOException {
+        write("secrets.txt", new byte[] { 1 });
+        folder.newFolder("nested");
+        write("nested/cpcp_capture_00000000.jpg", new byte[] { 1 });
+
+        assertEquals(404, get("secrets.txt", null).status);
+        assertEquals(404, get("nested/cpcp_capture_00000000.jpg", null).status);
+        assertEquals(404, get("../cpcp_capture_1234abcd.jpg", null).status);
+        assertEquals(404, get("cpcp_capture_missing.jpg", null).status);
+        assertNull(server.handle("GET", "/index.html", null));
+    }
+
+    @Test
+    public void pathFor_mapsOwnFilesOnly() {
+        String capture = new File(folder.getRoot(), "cpcp_capture_1234abcd.jpg").getPath();
+        assertEquals(CaptureFileServer.PATH_PREFIX + "cpcp_capture_1234abcd.jpg", server.pathFor(capture));
+
+        assertNull(server.pathFor(new File(folder.getRoot(), "secrets.txt").getPath()));
+        assertNull(server.pathFor("/elsewhere/cpcp_capture_1234abcd.jpg"));
+        assertNull(server.pathFor("/9j/4AAQSkZJRgABAQ"));
+        assertNull(server.pathFor(null));
+    }
+
+    private CaptureFileServer.Response get(String name, String range) throws IOException {
+        return server.handle("GET", CaptureFileServer.PATH_PREFIX + name, range);
+    }
+
+    private void write(String name, byte[] data) throws IOException {
+        FileOutputStream out = new FileOutputStream(new File(folder.getRoot(), name));
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}
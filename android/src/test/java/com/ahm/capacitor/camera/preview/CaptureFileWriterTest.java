@@ -0,0 +1,124 @@
+package com.ahm.capacitor.camera.preview;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CaptureFileWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final CaptureFileWriter writer = new CaptureFileWriter();
+
+    @After
+    public void tearDown() {
+        writer.shutdown();
+    }
+
+    @Test
+    public void write_storesRangeAndRecordsMetrics() throws Exception {
+        writer.configure(CaptureFileWriter.SyncPolicy.FULL, null);
+        byte[] data = new byte[4096];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 7);
+        }
+        File file = new File(folder.getRoot(), "cpcp_capture_1.jpg");
+
+        RecordingCallback callback = new RecordingCallback();
+        writer.write(data, 96, 4000, file.getPath(), callback);
+        callback.await();
+
+        assertEquals(file.getPath(), callback.path);
+        assertNull(callback.error);
+        assertArrayEquals(Arrays.copyOfRange(data, 96, 4096), Files.readAllBytes(file.toPath()));
+        assertEquals(1, writer.getFilesWritten());
+        assertEquals(4000, writer.getBytesWritten());
+        assertTrue(writer.getMaxWriteMillis() >= writer.getAverageWriteMillis());
+    }
+
+    @Test
+    public void write_reportsErrorsAndLeavesNoFile() throws Exception {
+        File file = new File(folder.getRoot(), "missing/cpcp_capture_1.jpg");
+
+        RecordingCallback callback = new RecordingCallback();
+        writer.write(new byte[10], 0, 10, file.getPath(), callback);
+        callback.await();
+
+        assertNull(callback.path);
+        assertEquals("IO Error when writing picture", callback.error);
+        assertFalse(file.exists());
+        assertEquals(0, writer.getFilesWritten());
+    }
+
+    @Test
+    public void write_trimsDirectoryAfterEachWrite() throws Exception {
+        writer.configure(CaptureFileWriter.SyncPolicy.NONE, new CaptureFileJanitor(folder.getRoot(), 150, 0));
+        File first = new File(folder.getRoot(), "cpcp_capture_1.jpg");
+        File second = new File(folder.getRoot(), "cpcp_capture_2.jpg");
+
+        RecordingCallback callback = new RecordingCallback();
+        writer.write(new byte[100], 0, 100, first.getPath(), callback);
+        callback.await();
+        assertTrue(first.setLastModified(System.currentTimeMillis() - 60000));
+        callback = new RecordingCallback();
+        writer.write(new byte[100], 0, 100, second.getPath(), callback);
+        callback.await();
+
+        assertFalse(first.exists());
+        assertTrue(second.exists());
+        assertEquals(1, writer.getJanitor().getFilesDeleted());
+    }
+
+    @Test
+    public void write_afterShutdownStillWritesOnCaller() throws Exception {
+        writer.shutdown();
+        File file = new File(folder.getRoot(), "cpcp_capture_1.jpg");
+
+        RecordingCallback callback = new RecordingCallback();
+        writer.write(new byte[10], 0, 10, file.getPath(), callback);
+        callback.await();
+
+        assertEquals(file.getPath(), callback.path);
+        assertEquals(10, file.length());
+    }
+
+    @Test
+    public void syncPolicy_fromString() {
+        assertEquals(CaptureFileWriter.SyncPolicy.DATA, CaptureFileWriter.SyncPolicy.fromString("data"));
+        assertEquals(CaptureFileWriter.SyncPolicy.FULL, CaptureFileWriter.SyncPolicy.fromString("full"));
+        assertEquals(CaptureFileWriter.SyncPolicy.NONE, CaptureFileWriter.SyncPolicy.fromString("none"));
+        assertEquals(CaptureFileWriter.SyncPolicy.NONE, CaptureFileWriter.SyncPolicy.fromString(null));
+    }
+
+    private static class RecordingCallback implements CaptureFileWriter.Callback {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+        volatile String path;
+        volatile String error;
+
+        @Override
+        public void onWritten(String path) {
+            this.path = path;
+            done.countDown();
+        }
+
+        @Override
+        public void onError(String message) {
+            this.error = message;
+            done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue("write timed out", done.await(5, TimeUnit.SECONDS));
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.ahm.capacitor.camera.preview;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import org.junit.Test;
+
+public class CaptureQueueTest {
+
+    private static final long MS = 1000000L;
+
+    @Test
+    public void next_servesRequestsInOrderOneAtATime() {
+        CaptureQueue queue = new CaptureQueue(3, CaptureQueue.OverflowPolicy.REJECT_NEWEST);
+        CaptureRequest first = request("1");
+        CaptureRequest second = request("2");
+        assertNull(queue.offer(first, 0));
+        assertNull(queue.offer(second, 0));
+
+        assertSame(first, queue.next(0));
+        assertNull(queue.next(0));
+        assertFalse(queue.finish(second, 0));
+        assertTrue(queue.finish(first, 0));
+        assertFalse(queue.finish(first, 0));
+        assertSame(second, queue.next(0));
+    }
+
+    @Test
+    public void offer_rejectsNewestWhenFull() {
+        CaptureQueue queue = new CaptureQueue(1, CaptureQueue.OverflowPolicy.REJECT_NEWEST);
+        CaptureRequest active = request("1");
+        queue.offer(active, 0);
+        queue.next(0);
+        CaptureRequest waiting = request("2");
+        CaptureRequest overflow = request("3");
+        assertNull(queue.offer(waiting, 0));
+        assertSame(overflow, queue.offer(overflow, 0));
+        queue.finish(active, 0);
+        assertSame(waiting, queue.next(0));
+    }
+
+    @Test
+    public void offer_dropsOldestWhenFull() {
+        CaptureQueue queue = new CaptureQueue(1, CaptureQueue.OverflowPolicy.DROP_OLDEST);
+        CaptureRequest active = request("1");
+        queue.offer(active, 0);
+        queue.next(0);
+        CaptureRequest waiting = request("2");
+        CaptureRequest newest = request("3");
+        queue.offer(waiting, 0);
+        assertSame(waiting, queue.offer(newest, 0));
+        queue.finish(active, 0);
+        assertSame(newest, queue.next(0));
+    }
+
+    @Test
+    public void offer_acceptsWhenIdleEvenWithoutDepth() {
+        CaptureQueue queue = new CaptureQueue(0, CaptureQueue.OverflowPolicy.REJECT_NEWEST);
+        assertNull(queue.offer(request("1"), 0));
+        queue.next(0);
+        CaptureRequest busy = request("2");
+        assertSame(busy, queue.offer(busy, 0));
+    }
+
+    @Test
+    public void request_reportsQueueWaitAndServiceTimeSeparately() {
+        CaptureQueue queue = new CaptureQueue(3, CaptureQueue.OverflowPolicy.REJECT_NEWEST);
+        CaptureRequest request = request("1");
+        queue.offer(request, 10 * MS);
+        queue.next(25 * MS);
+        queue.finish(request, 125 * MS);
+        assertEquals(15, request.getQueueWaitMillis());
+        assertEquals(100, request.getServiceMillis());
+    }
+
+    @Test
+    public void drain_returnsActiveThenWaiting() {
+        CaptureQueue queue = new CaptureQueue(3, CaptureQueue.OverflowPolicy.REJECT_NEWEST);
+        CaptureRequest active = request("1");
+        CaptureRequest waiting = request("2");
+        queue.offer(active, 0);
+        queue.offer(waiting, 0);
+        queue.next(0);
+
+        List<CaptureRequest> drained = queue.drain();
+        assertEquals(2, drained.size());
+        assertSame(active, drained.get(0));
+        assertSame(waiting, drained.get(1));
+        assertFalse(queue.finish(active, 0));
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void request_collectsResultsInPictureOrder() {
+        CaptureRequest burst = new CaptureRequest("1", 3, 0, 0, 85);
+        assertEquals(0, burst.pictureArrived(0));
+        assertEquals(1, burst.pictureArrived(40 * MS));
+        assertEquals(2, burst.pictureArrived(100 * MS));
+
+        assertFalse(burst.setResult(2, "c"));
+        assertFalse(burst.setResult(0, "a"));
+        assertTrue(burst.setResult(1, "b"));
+        assertArrayEquals(new String[] { "a", "b", "c" }, burst.getResults());
+        assertArrayEquals(new long[] { 40, 60 }, burst.getPictureIntervalsMillis());
+    }
+
+    @Test
+    public void shots_ofFailedBurstAreNotCreditedToNextRequest() {
+        CaptureQueue queue = new CaptureQueue(3, CaptureQueue.OverflowPolicy.REJECT_NEWEST);
+        CaptureRequest burst = new CaptureRequest("1", 3, 0, 0, 85);
+        CaptureRequest next = request("2");
+        queue.offer(burst, 0);
+        assertSame(burst, queue.next(0));
+        queue.startShots(burst);
+
+        assertSame(burst, queue.shotArrived());
+        assertEquals(0, burst.pictureArrived(0));
+        assertSame(burst, queue.nextShot());
+
+        // the first picture fails to process while the second is being taken
+        assertTrue(queue.finish(burst, 0));
+        queue.offer(next, 0);
+        assertNull(queue.next(0));
+
+        assertNull(queue.shotArrived());
+        assertNull(queue.nextShot());
+        assertSame(next, queue.next(0));
+        queue.startShots(next);
+        assertSame(next, queue.shotArrived());
+        assertEquals(0, next.pictureArrived(0));
+        assertNull(queue.nextShot());
+    }
+
+    @Test
+    public void pictureArrived_ignoresPicturesBeyondCount() {
+        CaptureRequest request = request("1");
+        assertEquals(0, request.pictureArrived(0));
+        assertEquals(-1, request.pictureArrived(0));
+        assertEquals(0, request.getPictureIntervalsMillis().length);
+    }
+
+    private static CaptureRequest request(String id) {
+        return new CaptureRequest(id, 0, 0, 85);
+    }
+}
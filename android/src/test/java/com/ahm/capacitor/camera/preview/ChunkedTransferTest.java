@@ -0,0 +1,83 @@
+package com.ahm.capacitor.camera.preview;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class ChunkedTransferTest {
+
+    @Test
+    public void send_chunksConcatenateToBase64() {
+        byte[] data = new byte[10000];
+        new Random(7).nextBytes(data);
+
+        for (int length = 9990; length <= 10000; length++) {
+            RecordingSink sink = new RecordingSink();
+            String transferId = ChunkedTransfer.send(data, 0, length, 1000, sink);
+
+            StringBuilder joined = new StringBuilder();
+            for (int i = 0; i < sink.chunks.size(); i++) {
+                assertEquals(transferId, sink.transferIds.get(i));
+                assertEquals(i, (int) sink.indices.get(i));
+                assertEquals(sink.chunks.size(), (int) sink.counts.get(i));
+                assertTrue(sink.chunks.get(i).length() <= 1000);
+                joined.append(sink.chunks.get(i));
+            }
+            assertEquals(14, sink.chunks.size());
+            assertEquals(Base64.getEncoder().encodeToString(Arrays.copyOf(data, length)), joined.toString());
+        }
+    }
+
+    @Test
+    public void send_roundsChunkSizeDownToWholeGroups() {
+        RecordingSink sink = new RecordingSink();
+        ChunkedTransfer.send(new byte[] { 1, 2, 3, 4, 5, 6, 7 }, 0, 7, 6, sink);
+
+        // 6 characters round down to one group of 4
+        assertEquals(3, sink.chunks.size());
+        assertEquals("AQID", sink.chunks.get(0));
+        assertEquals("BAUG", sink.chunks.get(1));
+        assertEquals("Bw==", sink.chunks.get(2));
+    }
+
+    @Test
+    public void send_encodesRangeOfArray() {
+        byte[] data = { 9, 9, 'a', 'b', 'c', 'd', 9 };
+        RecordingSink sink = new RecordingSink();
+        ChunkedTransfer.send(data, 2, 4, 1024, sink);
+
+        assertEquals(1, sink.chunks.size());
+        assertEquals("YWJjZA==", sink.chunks.get(0));
+    }
+
+    @Test
+    public void send_deliversEmptyDataAsSingleEmptyChunk() {
+        RecordingSink sink = new RecordingSink();
+        String transferId = ChunkedTransfer.send(new byte[0], 0, 0, 1024, sink);
+
+        assertEquals(1, sink.chunks.size());
+        assertEquals("", sink.chunks.get(0));
+        assertNotEquals(transferId, ChunkedTransfer.send(new byte[0], 0, 0, 1024, new RecordingSink()));
+    }
+
+    private static class RecordingSink implements ChunkedTransfer.Sink {
+
+        final List<String> transferIds = new ArrayList<>();
+        final List<Integer> indices = new ArrayList<>();
+        final List<Integer> counts = new ArrayList<>();
+        final List<String> chunks = new ArrayList<>();
+
+        @Override
+        public void onChunk(String transferId, int index, int count, String chunk) {
+            transferIds.add(transferId);
+            indices.add(index);
+            counts.add(count);
+            chunks.add(chunk);
+        }
+    }
+}
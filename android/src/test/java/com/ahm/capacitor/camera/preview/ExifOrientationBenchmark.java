@@ -0,0 +1,87 @@
+package com.ahm.capacitor.camera.preview;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark of {@link ExifOrientation#read} on pictures taken by real cameras, whose EXIF segments carry maker
+ * notes, thumbnails and dozens of tags ahead of the orientation. Run from the host with
+ * {@code ./gradlew compileDebugUnitTestJavaWithJavac} and then {@link #main} on the unit test classpath, passing a
+ * JPEG file or a directory of them as the argument; by default the pictures in {@code src/test/resources/camera} are
+ * read. The comparison with {@code ExifInterface} needs the platform and is in the device benchmark
+ * {@code ExifOrientationDeviceBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExifOrientationBenchmark {
+
+    @Param({ "src/test/resources/camera" })
+    public String pictures;
+
+    private byte[][] jpegs;
+
+    @Setup
+    public void setUp() throws IOException {
+        jpegs = read(new File(pictures));
+    }
+
+    /**
+     * Reads the orientation of every picture, so the time is per set of pictures.
+     */
+    @Benchmark
+    public int scanner() {
+        int orientations = 0;
+        for (byte[] jpeg : jpegs) {
+            orientations += ExifOrientation.read(jpeg);
+        }
+        return orientations;
+    }
+
+    static byte[][] read(File pictures) throws IOException {
+        File[] files = pictures.isDirectory() ? pictures.listFiles() : new File[] { pictures };
+        List<byte[]> jpegs = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName().toLowerCase();
+                if (file.isFile() && (name.endsWith(".jpg") || name.endsWith(".jpeg"))) {
+                    jpegs.add(Files.readAllBytes(file.toPath()));
+                }
+            }
+        }
+        if (jpegs.isEmpty()) {
+            throw new IOException("No camera JPEGs in " + pictures.getAbsolutePath());
+        }
+        return jpegs.toArray(new byte[0][]);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        OptionsBuilder options = new OptionsBuilder();
+        options.include(ExifOrientationBenchmark.class.getSimpleName());
+        if (args.length > 0) {
+            options.param("pictures", args[0]);
+        }
+        new Runner(options.build()).run();
+    }
+}
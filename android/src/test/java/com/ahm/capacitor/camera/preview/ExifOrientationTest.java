@@ -0,0 +1,162 @@
+package com.ahm.capacitor.camera.preview;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import org.junit.Test;
+
+public class ExifOrientationTest {
+
+    @Test
+    public void read_findsTagInEitherByteOrder() throws IOException {
+        assertEquals(6, ExifOrientation.read(withExif(false, 6)));
+        assertEquals(8, ExifOrientation.read(withExif(true, 8)));
+    }
+
+    @Test
+    public void read_defaultsToNormal() throws IOException {
+        byte[] jpeg = JpegTransformTest.encode(JpegTransformTest.picture(16, 16, BufferedImage.TYPE_INT_RGB), false);
+        assertEquals(ExifOrientation.NORMAL, ExifOrientation.read(jpeg));
+        assertEquals(ExifOrientation.NORMAL, ExifOrientation.read(withExif(true, 42)));
+        assertEquals(ExifOrientation.NORMAL, ExifOrientation.read(new byte[] { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF }));
+    }
+
+    @Test
+    public void read_doesNotAllocate() throws IOException {
+        byte[] jpeg = withExif(true, 6);
+        for (int i = 0; i < 10000; i++) {
+            ExifOrientation.read(jpeg);
+        }
+
+        long before = allocatedBytes();
+        int sum = 0;
+        for (int i = 0; i < 10000; i++) {
+            sum += ExifOrientation.read(jpeg);
+        }
+        long allocated = allocatedBytes() - before;
+
+        assertEquals(60000, sum);
+        if (before >= 0) {
+            // leave room for the measurement itself
+            assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+        }
+    }
+
+    @Test
+    public void write_rewritesBigEndianTag() throws IOException {
+        byte[] jpeg = withExif(false, 6);
+        assertTrue(ExifOrientation.write(jpeg, 3));
+        assertEquals(3, orientationOf(jpeg, false));
+    }
+
+    @Test
+    public void write_rewritesLittleEndianTag() throws IOException {
+        byte[] jpeg = withExif(true, 6);
+        assertTrue(ExifOrientation.write(jpeg, 8));
+        assertEquals(8, orientationOf(jpeg, true));
+    }
+
+    @Test
+    public void write_reportsMissingTag() throws IOException {
+        byte[] jpeg = JpegTransformTest.encode(JpegTransformTest.picture(16, 16, BufferedImage.TYPE_INT_RGB), false);
+        byte[] copy = jpeg.clone();
+        assertFalse(ExifOrientation.write(jpeg, 3));
+        assertArrayEquals(copy, jpeg);
+        assertFalse(ExifOrientation.write(new byte[] { 1, 2, 3 }, 3));
+    }
+
+    @Test
+    public void transform_resetsOrientationToNormal() throws IOException {
+        byte[] jpeg = withExif(true, 6);
+        byte[] rotated = JpegTransform.transform(jpeg, JpegTransform.fromExifOrientation(6));
+        assertEquals(ExifOrientation.NORMAL, orientationOf(rotated, true));
+        // the original picture is left alone
+        assertEquals(6, orientationOf(jpeg, true));
+    }
+
+    /**
+     * A 32x16 JPEG, or {@code jpeg}, with an EXIF segment holding a single orientation entry right after SOI.
+     */
+    static byte[] withExif(boolean littleEndian, int orientation) throws IOException {
+        byte[] jpeg = JpegTransformTest.encode(JpegTransformTest.picture(32, 16, BufferedImage.TYPE_INT_RGB), false);
+        return withExif(jpeg, littleEndian, orientation);
+    }
+
+    static byte[] withExif(byte[] jpeg, boolean littleEndian, int orientation) throws IOException {
+        ByteArrayOutputStream tiff = new ByteArrayOutputStream();
+        tiff.write(littleEndian ? 'I' : 'M');
+        tiff.write(littleEndian ? 'I' : 'M');
+        writeShort(tiff, 42, littleEndian);
+        writeInt(tiff, 8, littleEndian);
+        // IFD0: an unrelated entry, then the orientation
+        writeShort(tiff, 2, littleEndian);
+        writeShort(tiff, 0x010F, littleEndian);
+        writeShort(tiff, 2, littleEndian);
+        writeInt(tiff, 4, littleEndian);
+        tiff.write(new byte[] { 'A', 'c', 'm', 0 });
+        writeShort(tiff, 0x0112, littleEndian);
+        writeShort(tiff, 3, littleEndian);
+        writeInt(tiff, 1, littleEndian);
+        writeShort(tiff, orientation, littleEndian);
+        writeShort(tiff, 0, littleEndian);
+        writeInt(tiff, 0, littleEndian);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(jpeg, 0, 2);
+        out.write(0xFF);
+        out.write(0xE1);
+        int length = 2 + 6 + tiff.size();
+        out.write(length >> 8);
+        out.write(length);
+        out.write(new byte[] { 'E', 'x', 'i', 'f', 0, 0 });
+        tiff.writeTo(out);
+        out.write(jpeg, 2, jpeg.length - 2);
+        return out.toByteArray();
+    }
+
+    /**
+     * Reads the orientation of a picture built by {@link #withExif}, possibly after being transformed.
+     */
+    private static int orientationOf(byte[] jpeg, boolean littleEndian) {
+        for (int i = 0; i + 8 < jpeg.length; i++) {
+            boolean tag = littleEndian ? jpeg[i] == 0x12 && jpeg[i + 1] == 0x01 : jpeg[i] == 0x01 && jpeg[i + 1] == 0x12;
+            if (tag) {
+                int b0 = jpeg[i + 8] & 0xFF;
+                int b1 = jpeg[i + 9] & 0xFF;
+                return littleEndian ? (b1 << 8) | b0 : (b0 << 8) | b1;
+            }
+        }
+        return -1;
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    static void writeShort(ByteArrayOutputStream out, int value, boolean littleEndian) {
+        if (littleEndian) {
+            out.write(value);
+            out.write(value >> 8);
+        } else {
+            out.write(value >> 8);
+            out.write(value);
+        }
+    }
+
+    static void writeInt(ByteArrayOutputStream out, int value, boolean littleEndian) {
+        if (littleEndian) {
+            writeShort(out, value, true);
+            writeShort(out, value >>> 16, true);
+        } else {
+            writeShort(out, value >>> 16, false);
+            writeShort(out, value, false);
+        }
+    }
+}
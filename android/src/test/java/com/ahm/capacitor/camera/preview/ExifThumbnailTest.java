@@ -0,0 +1,79 @@
+package com.ahm.capacitor.camera.preview;
+
+import static com.ahm.capacitor.camera.preview.ExifOrientationTest.writeInt;
+import static com.ahm.capacitor.camera.preview.ExifOrientationTest.writeShort;
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import org.junit.Test;
+
+public class ExifThumbnailTest {
+
+    @Test
+    public void extract_findsThumbnailInEitherByteOrder() throws IOException {
+        byte[] thumbnail = JpegTransformTest.encode(JpegTransformTest.picture(8, 8, BufferedImage.TYPE_INT_RGB), false);
+        assertArrayEquals(thumbnail, ExifThumbnail.extract(withThumbnail(thumbnail, true, thumbnail.length)));
+        assertArrayEquals(thumbnail, ExifThumbnail.extract(withThumbnail(thumbnail, false, thumbnail.length)));
+    }
+
+    @Test
+    public void extract_ignoresMissingOrBrokenThumbnails() throws IOException {
+        byte[] thumbnail = JpegTransformTest.encode(JpegTransformTest.picture(8, 8, BufferedImage.TYPE_INT_RGB), false);
+        // no IFD1
+        assertNull(ExifThumbnail.extract(ExifOrientationTest.withExif(true, 6)));
+        // length past the end of the segment
+        assertNull(ExifThumbnail.extract(withThumbnail(thumbnail, true, thumbnail.length + 1)));
+        // not a JPEG
+        byte[] garbage = thumbnail.clone();
+        garbage[1] = 0;
+        assertNull(ExifThumbnail.extract(withThumbnail(garbage, false, garbage.length)));
+        assertNull(ExifThumbnail.extract(new byte[] { 1, 2, 3 }));
+    }
+
+    /**
+     * A 32x16 JPEG with an EXIF segment holding an orientation in IFD0 and {@code thumbnail} in IFD1, whose length tag
+     * says {@code length}.
+     */
+    private static byte[] withThumbnail(byte[] thumbnail, boolean littleEndian, int length) throws IOException {
+        ByteArrayOutputStream tiff = new ByteArrayOutputStream();
+        tiff.write(littleEndian ? 'I' : 'M');
+        tiff.write(littleEndian ? 'I' : 'M');
+        writeShort(tiff, 42, littleEndian);
+        writeInt(tiff, 8, littleEndian);
+        // IFD0 at 8: the orientation, then IFD1 at 8 + 2 + 12 + 4
+        writeShort(tiff, 1, littleEndian);
+        writeShort(tiff, 0x0112, littleEndian);
+        writeShort(tiff, 3, littleEndian);
+        writeInt(tiff, 1, littleEndian);
+        writeShort(tiff, 6, littleEndian);
+        writeShort(tiff, 0, littleEndian);
+        writeInt(tiff, 26, littleEndian);
+        // IFD1 at 26: the thumbnail offset and length, then the thumbnail at 26 + 2 + 24 + 4
+        writeShort(tiff, 2, littleEndian);
+        writeShort(tiff, 0x0201, littleEndian);
+        writeShort(tiff, 4, littleEndian);
+        writeInt(tiff, 1, littleEndian);
+        writeInt(tiff, 56, littleEndian);
+        writeShort(tiff, 0x0202, littleEndian);
+        writeShort(tiff, 4, littleEndian);
+        writeInt(tiff, 1, littleEndian);
+        writeInt(tiff, length, littleEndian);
+        writeInt(tiff, 0, littleEndian);
+        tiff.write(thumbnail);
+
+        byte[] jpeg = JpegTransformTest.encode(JpegTransformTest.picture(32, 16, BufferedImage.TYPE_INT_RGB), false);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(jpeg, 0, 2);
+        out.write(0xFF);
+        out.write(0xE1);
+        int segmentLength = 2 + 6 + tiff.size();
+        out.write(segmentLength >> 8);
+        out.write(segmentLength);
+        out.write(new byte[] { 'E', 'x', 'i', 'f', 0, 0 });
+        tiff.writeTo(out);
+        out.write(jpeg, 2, jpeg.length - 2);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,125 @@
+package com.ahm.capacitor.camera.preview;
+
+import static org.junit.Assert.*;
+
+import android.graphics.ImageFormat;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class FrameBufferPoolTest {
+
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+    private static final int FRAME_LENGTH = WIDTH * HEIGHT * 3 / 2;
+
+    @Test
+    public void acquire_reusesReleasedBuffers() {
+        FrameBufferPool pool = new FrameBufferPool(2);
+        pool.resize(16);
+        byte[] first = pool.acquire();
+        pool.release(first);
+        assertSame(first, pool.acquire());
+        assertEquals(1, pool.getAllocationCount());
+    }
+
+    @Test
+    public void resize_dropsStaleBuffers() {
+        FrameBufferPool pool = new FrameBufferPool(2);
+        pool.resize(16);
+        byte[] stale = pool.acquire();
+        pool.resize(32);
+        pool.release(stale);
+        assertEquals(32, pool.acquire().length);
+    }
+
+    @Test
+    public void release_keepsAtMostCapacity() {
+        FrameBufferPool pool = new FrameBufferPool(1);
+        pool.resize(16);
+        byte[] a = pool.acquire();
+        byte[] b = pool.acquire();
+        pool.release(a);
+        pool.release(b);
+        assertSame(a, pool.acquire());
+        assertNotSame(b, pool.acquire());
+        assertEquals(3, pool.getAllocationCount());
+    }
+
+    @Test
+    public void snapshotPipeline_doesNotAllocateInSteadyState() throws InterruptedException {
+        FrameBufferPool pool = new FrameBufferPool(3);
+        pool.resize(FRAME_LENGTH);
+        FrameEncoder encoder = new FrameEncoder() {
+            @Override
+            public void encode(byte[] frame, int format, int width, int height, int quality, OutputStream out) throws IOException {
+                out.write(frame, 0, 64);
+            }
+        };
+        ChunkedTransfer.Sink sink = new ChunkedTransfer.Sink() {
+            @Override
+            public void onChunk(String transferId, int index, int count, String chunk) {}
+        };
+        SnapshotPipeline pipeline = new SnapshotPipeline(pool, sink, null, new QualitySearch(), new BitmapPool(0), encoder);
+        Samples samples = new Samples();
+        try {
+            // warm up: fill the pool and let the JIT settle
+            for (int i = 0; i < 50; i++) {
+                samples.take(pipeline, pool);
+            }
+            int allocations = pool.getAllocationCount();
+            long allocatedBytes = samples.workerAllocatedBytes;
+
+            for (int i = 0; i < 50; i++) {
+                samples.take(pipeline, pool);
+            }
+
+            assertNull(samples.error);
+            assertEquals(allocations, pool.getAllocationCount());
+            if (allocatedBytes >= 0) {
+                // a single frame-sized allocation over 50 samples would already exceed this
+                assertTrue(samples.workerAllocatedBytes - allocatedBytes < FRAME_LENGTH);
+            }
+        } finally {
+            pipeline.shutdown();
+        }
+    }
+
+    // Takes samples the way CameraActivity does: the camera fills a pooled callback buffer, which is handed to the
+    // pipeline to be rotated into another pooled buffer, encoded and sent in chunks.
+    private static final class Samples implements SnapshotPipeline.Callback {
+
+        // measured on the pipeline's worker thread once each sample is done
+        volatile long workerAllocatedBytes;
+        volatile String error;
+        private final Semaphore done = new Semaphore(0);
+
+        void take(SnapshotPipeline pipeline, FrameBufferPool pool) throws InterruptedException {
+            pipeline.encode(pool.acquire(), WIDTH, HEIGHT, ImageFormat.NV21, 270, true, OutputFormat.JPEG, 85, 0, null, 1024, this);
+            assertTrue(done.tryAcquire(5, TimeUnit.SECONDS));
+        }
+
+        @Override
+        public void onEncoded(String image) {
+            workerAllocatedBytes = allocatedBytes();
+            done.release();
+        }
+
+        @Override
+        public void onError(String message) {
+            error = message;
+            done.release();
+        }
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,144 @@
+package com.ahm.capacitor.camera.preview;
+
+import android.graphics.ImageFormat;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark for {@link BaselineJpegEncoder}: standard tables, optimized tables and restart markers, with the JDK's
+ * own JPEG writer encoding the same picture from RGB as a reference. {@link YuvImageFrameEncoder} needs the device and
+ * is compared with it by the {@code FrameEncoderDeviceBenchmark} instrumented test. Run from the host with
+ * {@code ./gradlew compileDebugUnitTestJavaWithJavac} and then {@link #main} on the unit test classpath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameEncoderBenchmark {
+
+    private static final int QUALITY = 85;
+
+    @Param({ "640x480", "1280x720", "1920x1080" })
+    public String size;
+
+    private int width;
+    private int height;
+    private byte[] frame;
+    private BufferedImage image;
+    private ReusableByteArrayOutputStream output;
+    private BaselineJpegEncoder standard;
+    private BaselineJpegEncoder optimized;
+    private BaselineJpegEncoder restarts;
+    private ImageWriter imageWriter;
+    private ImageWriteParam imageWriteParam;
+
+    @Setup
+    public void setUp() {
+        String[] parts = size.split("x");
+        width = Integer.parseInt(parts[0]);
+        height = Integer.parseInt(parts[1]);
+        frame = frame(width, height);
+        image = toImage(frame, width, height);
+        output = new ReusableByteArrayOutputStream(width * height);
+        standard = new BaselineJpegEncoder();
+        optimized = new BaselineJpegEncoder(0, true);
+        restarts = new BaselineJpegEncoder(width / 16, false);
+        imageWriter = ImageIO.getImageWritersByFormatName("jpeg").next();
+        imageWriteParam = imageWriter.getDefaultWriteParam();
+        imageWriteParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        imageWriteParam.setCompressionQuality(QUALITY / 100f);
+    }
+
+    @TearDown
+    public void tearDown() {
+        imageWriter.dispose();
+    }
+
+    @Benchmark
+    public int baselineStandardTables() throws IOException {
+        return encode(standard);
+    }
+
+    @Benchmark
+    public int baselineOptimizedTables() throws IOException {
+        return encode(optimized);
+    }
+
+    @Benchmark
+    public int baselineRestartEveryRow() throws IOException {
+        return encode(restarts);
+    }
+
+    @Benchmark
+    public int imageIoFromRgb() throws IOException {
+        output.reset();
+        MemoryCacheImageOutputStream stream = new MemoryCacheImageOutputStream(output);
+        imageWriter.setOutput(stream);
+        imageWriter.write(null, new IIOImage(image, null, null), imageWriteParam);
+        stream.close();
+        return output.size();
+    }
+
+    private int encode(BaselineJpegEncoder encoder) throws IOException {
+        output.reset();
+        encoder.encode(frame, ImageFormat.NV21, width, height, QUALITY, output);
+        return output.size();
+    }
+
+    /**
+     * Gradients with some sensor-like noise, closer to a camera frame than flat colors or pure noise.
+     */
+    private static byte[] frame(int width, int height) {
+        Random random = new Random(1);
+        byte[] frame = new byte[width * height * 3 / 2];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                frame[y * width + x] = (byte) (48 + (x * 128) / width + (y * 48) / height + random.nextInt(9));
+            }
+        }
+        for (int y = 0; y < height / 2; y++) {
+            for (int x = 0; x < width / 2; x++) {
+                int i = width * height + y * width + x * 2;
+                frame[i] = (byte) (96 + (x * 64) / width + random.nextInt(5));
+                frame[i + 1] = (byte) (160 - (y * 64) / height + random.nextInt(5));
+            }
+        }
+        return frame;
+    }
+
+    private static BufferedImage toImage(byte[] frame, int width, int height) {
+        int[] argb = new int[width * height];
+        NV21Transform.toArgb(frame, argb, width, height);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, width, height, argb, 0, width);
+        return image;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(FrameEncoderBenchmark.class.getSimpleName()).build()).run();
+    }
+}
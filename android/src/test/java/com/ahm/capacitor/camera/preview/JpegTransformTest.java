@@ -0,0 +1,200 @@
+package com.ahm.capacitor.camera.preview;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import org.junit.Test;
+
+public class JpegTransformTest {
+
+    private static final int[] TRANSFORMS = {
+        JpegTransform.FLIP_H,
+        JpegTransform.FLIP_V,
+        JpegTransform.TRANSPOSE,
+        JpegTransform.ROTATE_90,
+        JpegTransform.ROTATE_180,
+        JpegTransform.ROTATE_270,
+        JpegTransform.TRANSVERSE,
+    };
+
+    @Test
+    public void transform_matchesPixelTransformOfColorPicture() throws IOException {
+        byte[] jpeg = encode(picture(64, 48, BufferedImage.TYPE_INT_RGB), false);
+        BufferedImage original = decode(jpeg);
+
+        for (int transform : TRANSFORMS) {
+            BufferedImage transformed = decode(JpegTransform.transform(jpeg, transform));
+            assertSimilar("transform " + transform, transformPixels(original, transform), transformed);
+        }
+    }
+
+    @Test
+    public void transform_readsPicturesWithRestartMarkers() throws IOException {
+        byte[] jpeg = encode(picture(64, 48, BufferedImage.TYPE_INT_RGB), false, 2);
+        BufferedImage original = decode(jpeg);
+
+        BufferedImage transformed = decode(JpegTransform.transform(jpeg, JpegTransform.ROTATE_90));
+        assertSimilar("rotate 90", transformPixels(original, JpegTransform.ROTATE_90), transformed);
+    }
+
+    @Test
+    public void transform_matchesPixelTransformOfGrayscalePicture() throws IOException {
+        byte[] jpeg = encode(picture(40, 24, BufferedImage.TYPE_BYTE_GRAY), false);
+        BufferedImage original = decode(jpeg);
+
+        for (int transform : TRANSFORMS) {
+            BufferedImage transformed = decode(JpegTransform.transform(jpeg, transform));
+            assertSimilar("transform " + transform, transformPixels(original, transform), transformed);
+        }
+    }
+
+    @Test
+    public void transform_trimsPartialMcusOnMirroredEdges() throws IOException {
+        byte[] jpeg = encode(picture(70, 50, BufferedImage.TYPE_INT_RGB), false);
+
+        // rotating 90 degrees mirrors the source rows into columns: 50 rows trim to 48 columns
+        BufferedImage rotated = decode(JpegTransform.transform(jpeg, JpegTransform.ROTATE_90));
+        assertEquals(48, rotated.getWidth());
+        assertEquals(70, rotated.getHeight());
+
+        // a transpose mirrors nothing, so nothing is trimmed
+        BufferedImage transposed = decode(JpegTransform.transform(jpeg, JpegTransform.TRANSPOSE));
+        assertEquals(50, transposed.getWidth());
+        assertEquals(70, transposed.getHeight());
+    }
+
+    @Test(expected = IOException.class)
+    public void transform_rejectsProgressiveJpeg() throws IOException {
+        JpegTransform.transform(encode(picture(32, 32, BufferedImage.TYPE_INT_RGB), true), JpegTransform.ROTATE_90);
+    }
+
+    @Test(expected = IOException.class)
+    public void transform_rejectsOtherData() throws IOException {
+        JpegTransform.transform(new byte[] { 1, 2, 3, 4, 5 }, JpegTransform.ROTATE_90);
+    }
+
+    @Test
+    public void compose_combinesTransforms() {
+        assertEquals(JpegTransform.ROTATE_180, JpegTransform.compose(JpegTransform.ROTATE_90, JpegTransform.ROTATE_90));
+        assertEquals(JpegTransform.ROTATE_270, JpegTransform.compose(JpegTransform.ROTATE_180, JpegTransform.ROTATE_90));
+        assertEquals(JpegTransform.NONE, JpegTransform.compose(JpegTransform.ROTATE_90, JpegTransform.ROTATE_270));
+        assertEquals(JpegTransform.TRANSVERSE, JpegTransform.compose(JpegTransform.ROTATE_90, JpegTransform.FLIP_V));
+        assertEquals(JpegTransform.TRANSPOSE, JpegTransform.compose(JpegTransform.ROTATE_270, JpegTransform.FLIP_V));
+
+        BufferedImage image = picture(16, 8, BufferedImage.TYPE_INT_RGB);
+        for (int first : TRANSFORMS) {
+            for (int second : TRANSFORMS) {
+                BufferedImage expected = transformPixels(transformPixels(image, first), second);
+                BufferedImage actual = transformPixels(image, JpegTransform.compose(first, second));
+                assertSimilar(first + " then " + second, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void exifOrientation_roundTrips() {
+        for (int orientation = 1; orientation <= 8; orientation++) {
+            assertEquals(orientation, JpegTransform.toExifOrientation(JpegTransform.fromExifOrientation(orientation)));
+        }
+        assertEquals(JpegTransform.ROTATE_90, JpegTransform.fromExifOrientation(6));
+        assertEquals(JpegTransform.ROTATE_270, JpegTransform.fromExifOrientation(8));
+        assertEquals(JpegTransform.NONE, JpegTransform.fromExifOrientation(0));
+    }
+
+    static BufferedImage picture(int width, int height, int type) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        Random random = new Random(width * 31 + height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                // smooth gradients with a little noise, so every corner looks different
+                int r = Math.min(255, x * 255 / width + random.nextInt(16));
+                int g = Math.min(255, y * 255 / height + random.nextInt(16));
+                int b = Math.min(255, (x + y) * 127 / (width + height) + (x < width / 3 ? 100 : 0));
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        return image;
+    }
+
+    static byte[] encode(BufferedImage image, boolean progressive) throws IOException {
+        return encode(image, progressive, 0);
+    }
+
+    static byte[] encode(BufferedImage image, boolean progressive, int restartInterval) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(0.9f);
+        if (progressive) {
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MemoryCacheImageOutputStream output = new MemoryCacheImageOutputStream(bytes);
+        writer.setOutput(output);
+        IIOMetadata metadata = null;
+        if (restartInterval > 0) {
+            metadata = writer.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(image), param);
+            String format = metadata.getNativeMetadataFormatName();
+            IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(format);
+            IIOMetadataNode restart = new IIOMetadataNode("dri");
+            restart.setAttribute("interval", Integer.toString(restartInterval));
+            root.getElementsByTagName("markerSequence").item(0).appendChild(restart);
+            metadata.setFromTree(format, root);
+        }
+        writer.write(null, new IIOImage(image, null, metadata), param);
+        output.close();
+        writer.dispose();
+        return bytes.toByteArray();
+    }
+
+    static BufferedImage decode(byte[] jpeg) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(jpeg));
+        assertNotNull("not decodable", image);
+        return image;
+    }
+
+    static BufferedImage transformPixels(BufferedImage image, int transform) {
+        boolean transpose = (transform & JpegTransform.TRANSPOSE) != 0;
+        int width = transpose ? image.getHeight() : image.getWidth();
+        int height = transpose ? image.getWidth() : image.getHeight();
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int sx = (transform & JpegTransform.FLIP_H) != 0 ? width - 1 - x : x;
+                int sy = (transform & JpegTransform.FLIP_V) != 0 ? height - 1 - y : y;
+                result.setRGB(x, y, transpose ? image.getRGB(sy, sx) : image.getRGB(sx, sy));
+            }
+        }
+        return result;
+    }
+
+    private static void assertSimilar(String message, BufferedImage expected, BufferedImage actual) {
+        assertEquals(message, expected.getWidth(), actual.getWidth());
+        assertEquals(message, expected.getHeight(), actual.getHeight());
+        long error = 0;
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                int a = expected.getRGB(x, y);
+                int b = actual.getRGB(x, y);
+                for (int shift = 0; shift < 24; shift += 8) {
+                    error += Math.abs(((a >> shift) & 0xFF) - ((b >> shift) & 0xFF));
+                }
+            }
+        }
+        // only IDCT rounding and chroma upsampling at the mirrored edges may differ
+        double meanError = (double) error / (expected.getWidth() * expected.getHeight() * 3);
+        assertTrue(message + ": mean error " + meanError, meanError < 1.5);
+    }
+}
@@ -0,0 +1,67 @@
+package com.ahm.capacitor.camera.preview;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark for {@link NV21Transform#rotate}. Run from the host with
+ * {@code ./gradlew compileDebugUnitTestJavaWithJavac} and then {@link #main} on the unit test classpath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NV21TransformBenchmark {
+
+    @Param({ "640x480", "1280x720", "1920x1080", "3840x2160" })
+    public String size;
+
+    @Param({ "90", "180", "270" })
+    public int rotation;
+
+    private int width;
+    private int height;
+    private byte[] frame;
+    private byte[] output;
+
+    @Setup
+    public void setUp() {
+        String[] parts = size.split("x");
+        width = Integer.parseInt(parts[0]);
+        height = Integer.parseInt(parts[1]);
+        frame = new byte[width * height * 3 / 2];
+        new Random(1).nextBytes(frame);
+        output = new byte[frame.length];
+    }
+
+    @Benchmark
+    public byte[] rotateIntoReusedBuffer() {
+        NV21Transform.rotate(frame, output, width, height, rotation);
+        return output;
+    }
+
+    @Benchmark
+    public byte[] rotateAllocating() {
+        return NV21Transform.rotate(frame, width, height, rotation);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(NV21TransformBenchmark.class.getSimpleName()).build()).run();
+    }
+}
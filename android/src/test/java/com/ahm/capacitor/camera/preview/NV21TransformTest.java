@@ -0,0 +1,155 @@
+package com.ahm.capacitor.camera.preview;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class NV21TransformTest {
+
+    private static final int[][] SIZES = { { 2, 2 }, { 6, 4 }, { 34, 66 }, { 100, 62 }, { 640, 480 }, { 3, 5 }, { 7, 4 } };
+
+    @Test
+    public void rotate_matchesPerPixelReference() {
+        Random random = new Random(42);
+        for (int[] size : SIZES) {
+            byte[] frame = randomFrame(random, size[0], size[1]);
+            for (int rotation = 90; rotation < 360; rotation += 90) {
+                byte[] expected = referenceRotate(frame, size[0], size[1], rotation);
+                byte[] actual = NV21Transform.rotate(frame, size[0], size[1], rotation);
+                assertArrayEquals(size[0] + "x" + size[1] + " @" + rotation, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void rotate_zeroReturnsInput() {
+        byte[] frame = new byte[6 * 4 * 3 / 2];
+        assertSame(frame, NV21Transform.rotate(frame, 6, 4, 0));
+    }
+
+    @Test
+    public void rotate_fullTurnIsIdentity() {
+        byte[] frame = randomFrame(new Random(7), 64, 48);
+        byte[] turned = NV21Transform.rotate(NV21Transform.rotate(frame, 64, 48, 90), 48, 64, 270);
+        assertArrayEquals(frame, turned);
+    }
+
+    @Test
+    public void transform_matchesRotateThenMirror() {
+        Random random = new Random(3);
+        int[][] sizes = { { 2, 2 }, { 6, 4 }, { 34, 66 }, { 320, 240 } };
+        for (int[] size : sizes) {
+            byte[] frame = randomFrame(random, size[0], size[1]);
+            for (int rotation = 0; rotation < 360; rotation += 90) {
+                int outWidth = rotation % 180 == 0 ? size[0] : size[1];
+                int outHeight = rotation % 180 == 0 ? size[1] : size[0];
+                byte[] rotated = referenceRotate(frame, size[0], size[1], rotation);
+                for (int mirror = 1; mirror < 4; mirror++) {
+                    boolean horizontal = (mirror & 1) != 0;
+                    boolean vertical = (mirror & 2) != 0;
+                    byte[] expected = referenceMirror(rotated, outWidth, outHeight, horizontal, vertical);
+                    byte[] actual = NV21Transform.transform(frame, size[0], size[1], rotation, horizontal, vertical);
+                    assertArrayEquals(size[0] + "x" + size[1] + " @" + rotation + " mirror " + mirror, expected, actual);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void transform_bothMirrorsAreHalfTurn() {
+        byte[] frame = randomFrame(new Random(11), 64, 48);
+        assertArrayEquals(NV21Transform.rotate(frame, 64, 48, 180), NV21Transform.transform(frame, 64, 48, 0, true, true));
+    }
+
+    @Test
+    public void toArgb_convertsFullRangeColors() {
+        // 4x2 frame: a white and a black 2x2 block, neither with color
+        byte[] frame = {
+            (byte) 255, (byte) 255, 0, 0,
+            (byte) 255, (byte) 255, 0, 0,
+            (byte) 128, (byte) 128, (byte) 128, (byte) 128,
+        };
+        int[] argb = new int[8];
+        NV21Transform.toArgb(frame, argb, 4, 2);
+        int white = 0xffffffff;
+        int black = 0xff000000;
+        assertArrayEquals(new int[] { white, white, black, black, white, white, black, black }, argb);
+
+        // Y 76, V 255, U 85 is JFIF red
+        byte[] red = { 76, 76, 76, 76, (byte) 255, 85 };
+        argb = new int[4];
+        NV21Transform.toArgb(red, argb, 2, 2);
+        assertEquals(0xff, argb[0] >>> 24);
+        assertTrue(((argb[0] >> 16) & 0xff) >= 253);
+        assertTrue(((argb[0] >> 8) & 0xff) <= 2);
+        assertTrue((argb[0] & 0xff) <= 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rotate_rejectsInvalidRotation() {
+        NV21Transform.rotate(new byte[24], 4, 4, 45);
+    }
+
+    private static byte[] randomFrame(Random random, int width, int height) {
+        byte[] frame = new byte[width * height + 2 * ((width + 1) / 2) * ((height + 1) / 2)];
+        random.nextBytes(frame);
+        return frame;
+    }
+
+    private static byte[] referenceMirror(byte[] yuv, int width, int height, boolean horizontal, boolean vertical) {
+        byte[] output = new byte[yuv.length];
+        int frameSize = width * height;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int outX = horizontal ? width - 1 - x : x;
+                int outY = vertical ? height - 1 - y : y;
+                output[outY * width + outX] = yuv[y * width + x];
+            }
+        }
+        for (int y = 0; y < height / 2; y++) {
+            for (int x = 0; x < width / 2; x++) {
+                int outX = horizontal ? width / 2 - 1 - x : x;
+                int outY = vertical ? height / 2 - 1 - y : y;
+                int in = frameSize + y * width + 2 * x;
+                int out = frameSize + outY * width + 2 * outX;
+                output[out] = yuv[in];
+                output[out + 1] = yuv[in + 1];
+            }
+        }
+        return output;
+    }
+
+    // The original CameraActivity.rotateNV21 implementation, kept as the reference for byte-identical output.
+    private static byte[] referenceRotate(final byte[] yuv, final int width, final int height, final int rotation) {
+        final byte[] output = new byte[yuv.length];
+        final int frameSize = width * height;
+        final boolean swap = rotation % 180 != 0;
+        final boolean xflip = rotation % 270 != 0;
+        final boolean yflip = rotation >= 180;
+
+        for (int j = 0; j < height; j++) {
+            for (int i = 0; i < width; i++) {
+                final int yIn = j * width + i;
+                final int uIn = frameSize + (j >> 1) * width + (i & ~1);
+                final int vIn = uIn + 1;
+
+                final int wOut = swap ? height : width;
+                final int hOut = swap ? width : height;
+                final int iSwapped = swap ? j : i;
+                final int jSwapped = swap ? i : j;
+                final int iOut = xflip ? wOut - iSwapped - 1 : iSwapped;
+                final int jOut = yflip ? hOut - jSwapped - 1 : jSwapped;
+
+                final int yOut = jOut * wOut + iOut;
+                final int uOut = frameSize + (jOut >> 1) * wOut + (iOut & ~1);
+                final int vOut = uOut + 1;
+
+                output[yOut] = (byte) (0xff & yuv[yIn]);
+                output[uOut] = (byte) (0xff & yuv[uIn]);
+                output[vOut] = (byte) (0xff & yuv[vIn]);
+            }
+        }
+        return output;
+    }
+}
@@ -0,0 +1,24 @@
+package com.ahm.capacitor.camera.preview;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class OutputFormatTest {
+
+    @Test
+    public void fromString_matchesOptionValues() {
+        assertEquals(OutputFormat.JPEG, OutputFormat.fromString(null));
+        assertEquals(OutputFormat.JPEG, OutputFormat.fromString("jpeg"));
+        assertEquals(OutputFormat.WEBP_LOSSY, OutputFormat.fromString("webp-lossy"));
+        assertEquals(OutputFormat.WEBP_LOSSLESS, OutputFormat.fromString("webp-lossless"));
+        assertNull(OutputFormat.fromString("png"));
+    }
+
+    @Test
+    public void fromFileName_matchesExtensions() {
+        assertEquals(OutputFormat.JPEG, OutputFormat.fromFileName("cpcp_capture_1.jpg"));
+        assertEquals("image/webp", OutputFormat.fromFileName("cpcp_capture_1.webp").mimeType);
+        assertNull(OutputFormat.fromFileName("cpcp_capture_1.png"));
+    }
+}
@@ -0,0 +1,66 @@
+package com.ahm.capacitor.camera.preview;
+
+import static org.junit.Assert.*;
+
+import java.util.Map;
+import org.junit.Test;
+
+public class ParameterTransactionTest {
+
+    private static final String FLATTENED = "zoom=0;flash-mode=off;focus-mode=auto;preview-size=1280x720";
+
+    @Test
+    public void set_schedulesOnlyOnFirstChange() {
+        ParameterTransaction transaction = new ParameterTransaction();
+        transaction.reset(FLATTENED);
+
+        assertTrue(transaction.set("zoom", "1"));
+        assertFalse(transaction.set("zoom", "2"));
+        assertFalse(transaction.set("flash-mode", "torch"));
+        assertEquals("2", transaction.get("zoom"));
+        assertEquals("auto", transaction.get("focus-mode"));
+    }
+
+    @Test
+    public void set_dropsChangesBackToTheCurrentValue() {
+        ParameterTransaction transaction = new ParameterTransaction();
+        transaction.reset(FLATTENED);
+
+        assertFalse(transaction.set("flash-mode", "off"));
+        assertTrue(transaction.isEmpty());
+        transaction.set("zoom", "3");
+        transaction.set("zoom", "0");
+        assertTrue(transaction.isEmpty());
+        assertTrue(transaction.commit().isEmpty());
+    }
+
+    @Test
+    public void commit_returnsLastValueOfEachChangedKeyInOrder() {
+        ParameterTransaction transaction = new ParameterTransaction();
+        transaction.reset(FLATTENED);
+        transaction.set("flash-mode", "torch");
+        transaction.set("zoom", "4");
+        transaction.set("zoom", "5");
+        transaction.set("exposure-compensation", "-2");
+
+        Map<String, String> changes = transaction.commit();
+        assertArrayEquals(new String[] { "flash-mode", "zoom", "exposure-compensation" }, changes.keySet().toArray());
+        assertEquals("5", changes.get("zoom"));
+        assertTrue(transaction.isEmpty());
+        // committed values are now current, so setting them again is no change
+        assertFalse(transaction.set("zoom", "5"));
+        assertTrue(transaction.isEmpty());
+    }
+
+    @Test
+    public void reset_dropsPendingChanges() {
+        ParameterTransaction transaction = new ParameterTransaction();
+        transaction.reset(FLATTENED);
+        transaction.set("zoom", "2");
+
+        transaction.reset(null);
+        assertTrue(transaction.isEmpty());
+        assertNull(transaction.get("zoom"));
+        assertTrue(transaction.set("zoom", "0"));
+    }
+}
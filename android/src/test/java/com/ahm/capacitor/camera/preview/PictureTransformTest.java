@@ -0,0 +1,98 @@
+package com.ahm.capacitor.camera.preview;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class PictureTransformTest {
+
+    @Test
+    public void outputSize_followsPictureOrientation() {
+        assertArrayEquals(new int[] { 1280, 720 }, PictureTransform.outputSize(4000, 3000, 720, 1280));
+        assertArrayEquals(new int[] { 720, 1280 }, PictureTransform.outputSize(3000, 4000, 720, 1280));
+        assertArrayEquals(new int[] { 800, 800 }, PictureTransform.outputSize(4000, 3000, 800, 800));
+    }
+
+    @Test
+    public void outputSize_keepsPictureSizeWithoutRequest() {
+        assertArrayEquals(new int[] { 4000, 3000 }, PictureTransform.outputSize(4000, 3000, 0, 1280));
+    }
+
+    @Test
+    public void thumbnailSize_fitsLongEdgeKeepingAspectRatio() {
+        assertArrayEquals(new int[] { 320, 240 }, PictureTransform.thumbnailSize(4000, 3000, 320));
+        assertArrayEquals(new int[] { 180, 320 }, PictureTransform.thumbnailSize(2160, 3840, 320));
+        assertArrayEquals(new int[] { 160, 120 }, PictureTransform.thumbnailSize(160, 120, 320));
+        assertArrayEquals(new int[] { 320, 1 }, PictureTransform.thumbnailSize(4000, 4, 320));
+    }
+
+    @Test
+    public void sampleSize_neverDropsBelowOutput() {
+        assertEquals(1, PictureTransform.sampleSize(4000, 3000, 4000, 3000));
+        assertEquals(1, PictureTransform.sampleSize(4000, 3000, 2001, 1000));
+        assertEquals(2, PictureTransform.sampleSize(4000, 3000, 2000, 1500));
+        assertEquals(4, PictureTransform.sampleSize(4000, 3000, 640, 480));
+        // a crop to a square is limited by the short side
+        assertEquals(2, PictureTransform.sampleSize(4000, 3000, 1000, 1000));
+    }
+
+    @Test
+    public void coverRegion_cutsOffOverflowingSides() {
+        // a 720x1280 preview covering a square view shows its middle 720x720
+        assertArrayEquals(new float[] { 0, 0.21875f, 1, 0.78125f }, PictureTransform.coverRegion(720, 1280, 1080, 1080), 1e-6f);
+        assertArrayEquals(new float[] { 0.125f, 0, 0.875f, 1 }, PictureTransform.coverRegion(1280, 720, 540, 405), 1e-6f);
+        assertArrayEquals(new float[] { 0, 0, 1, 1 }, PictureTransform.coverRegion(1280, 720, 640, 360), 1e-6f);
+    }
+
+    @Test
+    public void sourceRegion_undoesTransform() {
+        float[] region = { 0.1f, 0.2f, 0.5f, 0.6f };
+        assertArrayEquals(region, PictureTransform.sourceRegion(JpegTransform.NONE, region), 1e-6f);
+        // rotated clockwise, the left of the upright picture is the bottom of the stored one
+        float[] rotated = PictureTransform.sourceRegion(JpegTransform.fromExifOrientation(6), region);
+        assertArrayEquals(new float[] { 0.2f, 0.5f, 0.6f, 0.9f }, rotated, 1e-6f);
+        float[] mirrored = PictureTransform.sourceRegion(JpegTransform.FLIP_V, region);
+        assertArrayEquals(new float[] { 0.1f, 0.4f, 0.5f, 0.8f }, mirrored, 1e-6f);
+    }
+
+    @Test
+    public void pixelRect_coversAtLeastOnePixel() {
+        float[] region = { 0.2f, 0.5f, 0.6f, 0.9f };
+        assertArrayEquals(new int[] { 800, 1500, 2400, 2700 }, PictureTransform.pixelRect(region, 4000, 3000));
+        assertArrayEquals(new int[] { 5, 5, 6, 6 }, PictureTransform.pixelRect(new float[] { 0.5f, 0.5f, 0.5f, 0.5f }, 10, 10));
+        assertArrayEquals(new int[] { 9, 0, 10, 10 }, PictureTransform.pixelRect(new float[] { 1, 0, 1, 1.2f }, 10, 10));
+    }
+
+    @Test
+    public void matrixValues_rotatesClockwise() {
+        float[] m = PictureTransform.matrixValues(JpegTransform.fromExifOrientation(6), 40, 30, 30, 40);
+
+        // the top left corner ends up top right, the bottom left corner top left
+        assertPoint(30, 0, m, 0, 0);
+        assertPoint(0, 0, m, 0, 30);
+        assertPoint(0, 40, m, 40, 30);
+    }
+
+    @Test
+    public void matrixValues_mirrorsVertically() {
+        float[] m = PictureTransform.matrixValues(JpegTransform.FLIP_V, 40, 30, 40, 30);
+
+        assertPoint(0, 30, m, 0, 0);
+        assertPoint(40, 0, m, 40, 30);
+    }
+
+    @Test
+    public void matrixValues_scalesAndCentersCrop() {
+        // 40x30 covering 20x20 is scaled by 2/3 to about 26.7x20 and centered horizontally
+        float[] m = PictureTransform.matrixValues(JpegTransform.NONE, 40, 30, 20, 20);
+
+        assertPoint(-10f / 3, 0, m, 0, 0);
+        assertPoint(20 + 10f / 3, 20, m, 40, 30);
+        assertPoint(10, 10, m, 20, 15);
+    }
+
+    private static void assertPoint(float expectedX, float expectedY, float[] m, float x, float y) {
+        assertEquals(expectedX, m[0] * x + m[1] * y + m[2], 1e-4f);
+        assertEquals(expectedY, m[3] * x + m[4] * y + m[5], 1e-4f);
+    }
+}
@@ -0,0 +1,55 @@
+package com.ahm.capacitor.camera.preview;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import org.junit.Test;
+
+public class PreviewFrameRingTest {
+
+    @Test
+    public void add_evictsOldestWhenFull() {
+        PreviewFrameRing ring = new PreviewFrameRing(2);
+        byte[] first = new byte[1];
+        byte[] second = new byte[1];
+        byte[] third = new byte[1];
+
+        assertNull(ring.add(first, 10));
+        assertNull(ring.add(second, 20));
+        assertSame(first, ring.add(third, 30));
+        assertEquals(2, ring.size());
+    }
+
+    @Test
+    public void takeClosest_removesFrameNearestToRequestTime() {
+        PreviewFrameRing ring = new PreviewFrameRing(4);
+        byte[] at10 = new byte[1];
+        byte[] at40 = new byte[1];
+        byte[] at70 = new byte[1];
+        ring.add(at10, 10);
+        ring.add(at40, 40);
+        ring.add(at70, 70);
+
+        assertSame(at40, ring.takeClosest(50));
+        assertEquals(2, ring.size());
+        assertSame(at70, ring.takeClosest(60));
+        assertSame(at10, ring.takeClosest(60));
+        assertNull(ring.takeClosest(60));
+    }
+
+    @Test
+    public void clear_returnsEveryFrame() {
+        PreviewFrameRing ring = new PreviewFrameRing(3);
+        byte[] first = new byte[1];
+        byte[] second = new byte[1];
+        ring.add(first, 10);
+        ring.add(second, 20);
+
+        List<byte[]> cleared = ring.clear();
+        assertEquals(2, cleared.size());
+        assertSame(first, cleared.get(0));
+        assertSame(second, cleared.get(1));
+        assertEquals(0, ring.size());
+        assertNull(ring.add(new byte[1], 30));
+    }
+}
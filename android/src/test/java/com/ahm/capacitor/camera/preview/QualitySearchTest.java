@@ -0,0 +1,102 @@
+package com.ahm.capacitor.camera.preview;
+
+import static org.junit.Assert.*;
+
+import java.util.TreeMap;
+import org.junit.Test;
+
+public class QualitySearchTest {
+
+    private final QualitySearch search = new QualitySearch();
+
+    @Test
+    public void search_keepsRequestedQualityWhenItFits() throws Exception {
+        FakeEncoder encoder = new FakeEncoder(1000, 100);
+
+        byte[] jpeg = search.search("preview 640x480", 85, 10000, encoder);
+
+        assertEquals(9500, jpeg.length);
+        assertEquals(1, encoder.encodes);
+    }
+
+    @Test
+    public void search_findsHighestQualityThatFits() throws Exception {
+        // a curve the interpolation does not match exactly
+        FakeEncoder encoder = new FakeEncoder(0, 0) {
+            @Override
+            int size(int quality) {
+                return 2000 + quality * quality;
+            }
+        };
+
+        byte[] jpeg = search.search("picture 1280x720", 90, 5000, encoder);
+
+        // 54 * 54 + 2000 = 4916, 55 * 55 + 2000 = 5025
+        assertEquals(4916, jpeg.length);
+        assertTrue(encoder.encodes <= QualitySearch.MAX_ENCODES);
+    }
+
+    @Test
+    public void search_isSeededFromTheSameScene() throws Exception {
+        search.search("picture 1280x720", 90, 5000, new FakeEncoder(1000, 100));
+
+        FakeEncoder encoder = new FakeEncoder(1000, 100);
+        byte[] jpeg = search.search("picture 1280x720", 90, 5000, encoder);
+
+        assertEquals(5000, jpeg.length);
+        // the remembered quality, and the next one up
+        assertEquals(2, encoder.encodes);
+    }
+
+    @Test
+    public void search_failsWhenNothingFits() throws Exception {
+        FakeEncoder encoder = new FakeEncoder(1000, 100);
+        try {
+            search.search("picture 1280x720", 90, 500, encoder);
+            fail();
+        } catch (QualitySearch.BudgetExceededException e) {
+            assertEquals("Picture does not fit in 500 bytes", e.getMessage());
+        }
+        assertEquals(QualitySearch.MIN_QUALITY, encoder.lowestQuality);
+        assertTrue(encoder.encodes <= QualitySearch.MAX_ENCODES);
+    }
+
+    @Test
+    public void guess_interpolatesBetweenSamples() {
+        TreeMap<Integer, Integer> samples = new TreeMap<>();
+        assertEquals(90, QualitySearch.guess(samples, 5000, 0, 90));
+
+        samples.put(80, 10000);
+        assertEquals(40, QualitySearch.guess(samples, 5000, 0, 90));
+
+        // 20 + (5000 - 3000) * (80 - 20) / (10000 - 3000)
+        samples.put(20, 3000);
+        assertEquals(37, QualitySearch.guess(samples, 5000, 0, 90));
+        // never outside the range still open
+        assertEquals(50, QualitySearch.guess(samples, 5000, 49, 90));
+    }
+
+    private static class FakeEncoder implements QualitySearch.Encoder {
+
+        private final int base;
+        private final int perQuality;
+        int encodes;
+        int lowestQuality = Integer.MAX_VALUE;
+
+        FakeEncoder(int base, int perQuality) {
+            this.base = base;
+            this.perQuality = perQuality;
+        }
+
+        int size(int quality) {
+            return base + perQuality * quality;
+        }
+
+        @Override
+        public byte[] encode(int quality) {
+            encodes++;
+            lowestQuality = Math.min(lowestQuality, quality);
+            return new byte[size(quality)];
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.ahm.capacitor.camera.preview;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark for {@link SizeSelector}, choosing from the size tables of {@link SizeSelectorTest} the way a layout
+ * pass and a capture do, with and without remembered results. Run from the host with
+ * {@code ./gradlew compileDebugUnitTestJavaWithJavac} and then {@link #main} on the unit test classpath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SizeSelectorBenchmark {
+
+    private SizeSelector memoized;
+    private SizeSelector uncached;
+
+    @Setup
+    public void setUp() {
+        memoized = new SizeSelector(8);
+        uncached = new SizeSelector(0);
+    }
+
+    @Benchmark
+    public int[] previewMemoized() {
+        return memoized.select(SizeSelector.ASPECT_FIRST, SizeSelectorTest.PREVIEW_SIZES, 1080, 2340, 2340 / 1080.0);
+    }
+
+    @Benchmark
+    public int[] previewUncached() {
+        return uncached.select(SizeSelector.ASPECT_FIRST, SizeSelectorTest.PREVIEW_SIZES, 1080, 2340, 2340 / 1080.0);
+    }
+
+    @Benchmark
+    public int[] pictureMemoized() {
+        return memoized.select(SizeSelector.AREA_CLOSEST, SizeSelectorTest.PICTURE_SIZES, 3000, 1700, 1920 / 1080.0);
+    }
+
+    @Benchmark
+    public int[] pictureUncached() {
+        return uncached.select(SizeSelector.AREA_CLOSEST, SizeSelectorTest.PICTURE_SIZES, 3000, 1700, 1920 / 1080.0);
+    }
+
+    @Benchmark
+    public int[] pictureUnderBudgetUncached() {
+        return uncached.select(SizeSelector.MAX_UNDER_BUDGET, SizeSelectorTest.PICTURE_SIZES, 0, 0, 1920 / 1080.0);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SizeSelectorBenchmark.class.getSimpleName()).build()).run();
+    }
+}
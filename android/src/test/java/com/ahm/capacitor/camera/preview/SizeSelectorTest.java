@@ -0,0 +1,126 @@
+package com.ahm.capacitor.camera.preview;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class SizeSelectorTest {
+
+    // size tables of the kind phones list for their back camera, largest first
+    static final int[][] PREVIEW_SIZES = {
+        { 1920, 1080 },
+        { 1440, 1080 },
+        { 1280, 960 },
+        { 1280, 720 },
+        { 1088, 1088 },
+        { 960, 720 },
+        { 720, 720 },
+        { 720, 480 },
+        { 640, 480 },
+        { 352, 288 },
+        { 320, 240 },
+        { 176, 144 },
+    };
+    static final int[][] PICTURE_SIZES = {
+        { 4032, 3024 },
+        { 4000, 3000 },
+        { 4032, 2268 },
+        { 4000, 2250 },
+        { 3264, 2448 },
+        { 3024, 3024 },
+        { 2976, 2976 },
+        { 3264, 1836 },
+        { 2592, 1944 },
+        { 2048, 1536 },
+        { 1920, 1080 },
+        { 1600, 1200 },
+        { 1440, 1080 },
+        { 1280, 960 },
+        { 1280, 720 },
+        { 1024, 768 },
+        { 800, 600 },
+        { 640, 480 },
+        { 320, 240 },
+    };
+
+    @Test
+    public void aspectFirst_picksClosestHeightWithTheAspectRatio() {
+        // a portrait 1080x1920 view in front of a camera rotated by 90 degrees
+        assertArrayEquals(new int[] { 1920, 1080 }, SizeSelector.ASPECT_FIRST.select(PREVIEW_SIZES, 1080, 1920, 1920 / 1080.0));
+        assertArrayEquals(new int[] { 640, 480 }, SizeSelector.ASPECT_FIRST.select(PREVIEW_SIZES, 600, 450, 4 / 3.0));
+    }
+
+    @Test
+    public void aspectFirst_fallsBackToClosestHeight() {
+        assertArrayEquals(new int[] { 1280, 720 }, SizeSelector.ASPECT_FIRST.select(PREVIEW_SIZES, 2000, 800, 2.5));
+        assertNull(SizeSelector.ASPECT_FIRST.select(new int[0][], 2000, 800, 2.5));
+    }
+
+    @Test
+    public void areaClosest_prefersExactMatchInEitherOrientation() {
+        assertArrayEquals(new int[] { 1920, 1080 }, SizeSelector.AREA_CLOSEST.select(PICTURE_SIZES, 1080, 1920, 4 / 3.0));
+    }
+
+    @Test
+    public void areaClosest_picksClosestAreaWithThePreviewAspectRatio() {
+        // portrait preview ratios count as landscape
+        assertArrayEquals(new int[] { 3264, 1836 }, SizeSelector.AREA_CLOSEST.select(PICTURE_SIZES, 3000, 1700, 1080 / 1920.0));
+        assertArrayEquals(new int[] { 1280, 960 }, SizeSelector.AREA_CLOSEST.select(PICTURE_SIZES, 1300, 1000, 4 / 3.0));
+        // nothing to choose from, the size asked for is kept
+        assertArrayEquals(new int[] { 1700, 900 }, SizeSelector.AREA_CLOSEST.select(new int[0][], 900, 1700, 4 / 3.0));
+    }
+
+    @Test
+    public void maxUnderBudget_picksLargestBelowTwoMegapixels() {
+        assertArrayEquals(new int[] { 1600, 1200 }, SizeSelector.MAX_UNDER_BUDGET.select(PICTURE_SIZES, 0, 0, 4 / 3.0));
+        assertArrayEquals(new int[] { 1920, 1080 }, SizeSelector.MAX_UNDER_BUDGET.select(PICTURE_SIZES, 0, 0, 16 / 9.0));
+    }
+
+    @Test
+    public void select_remembersResultsByInput() {
+        final int[] calls = new int[1];
+        SizeSelector.Strategy counting = new SizeSelector.Strategy() {
+            @Override
+            public int[] select(int[][] sizes, int width, int height, double aspectRatio) {
+                calls[0]++;
+                return SizeSelector.ASPECT_FIRST.select(sizes, width, height, aspectRatio);
+            }
+        };
+        SizeSelector selector = new SizeSelector(2);
+
+        int[] first = selector.select(counting, PREVIEW_SIZES, 1080, 1920, 16 / 9.0);
+        first[0] = 0;
+        assertArrayEquals(new int[] { 1920, 1080 }, selector.select(counting, PREVIEW_SIZES, 1080, 1920, 16 / 9.0));
+        assertEquals(1, calls[0]);
+
+        // another table, even with the same sizes, is chosen from again
+        int[][] other = PREVIEW_SIZES.clone();
+        selector.select(counting, other, 1080, 1920, 16 / 9.0);
+        assertEquals(2, calls[0]);
+        selector.select(counting, PREVIEW_SIZES, 1080, 1920, 16 / 9.0);
+        assertEquals(2, calls[0]);
+        // a third input pushes out the least recently used one
+        selector.select(counting, PREVIEW_SIZES, 720, 1280, 16 / 9.0);
+        selector.select(counting, PREVIEW_SIZES, 1080, 1920, 16 / 9.0);
+        assertEquals(3, calls[0]);
+        selector.select(counting, other, 1080, 1920, 16 / 9.0);
+        assertEquals(4, calls[0]);
+    }
+
+    @Test
+    public void select_withoutMemoryChoosesEveryTime() {
+        final int[] calls = new int[1];
+        SizeSelector.Strategy counting = new SizeSelector.Strategy() {
+            @Override
+            public int[] select(int[][] sizes, int width, int height, double aspectRatio) {
+                calls[0]++;
+                return null;
+            }
+        };
+        SizeSelector selector = new SizeSelector(0);
+
+        assertNull(selector.select(counting, PREVIEW_SIZES, 1080, 1920, 16 / 9.0));
+        assertNull(selector.select(counting, PREVIEW_SIZES, 1080, 1920, 16 / 9.0));
+        assertEquals(2, calls[0]);
+    }
+}
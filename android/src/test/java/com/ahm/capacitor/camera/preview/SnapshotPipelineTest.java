@@ -0,0 +1,94 @@
+package com.ahm.capacitor.camera.preview;
+
+import static org.junit.Assert.*;
+
+import android.graphics.ImageFormat;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class SnapshotPipelineTest {
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    @Test
+    public void shutdown_settlesSamplesAlreadyQueued() throws InterruptedException {
+        FrameBufferPool pool = new FrameBufferPool(4);
+        pool.resize(WIDTH * HEIGHT * 3 / 2);
+        final CountDownLatch encoding = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+        FrameEncoder encoder = new FrameEncoder() {
+            @Override
+            public void encode(byte[] frame, int format, int width, int height, int quality, OutputStream out) throws IOException {
+                encoding.countDown();
+                try {
+                    proceed.await();
+                } catch (InterruptedException e) {
+                    throw new IOException("interrupted");
+                }
+                out.write(frame, 0, 16);
+            }
+        };
+        ChunkedTransfer.Sink sink = new ChunkedTransfer.Sink() {
+            @Override
+            public void onChunk(String transferId, int index, int count, String chunk) {}
+        };
+        SnapshotPipeline pipeline = new SnapshotPipeline(pool, sink, null, new QualitySearch(), new BitmapPool(0), encoder);
+        Results results = new Results(3);
+
+        encode(pipeline, pool, results);
+        assertTrue(encoding.await(5, TimeUnit.SECONDS));
+        encode(pipeline, pool, results);
+        pipeline.shutdown();
+        encode(pipeline, pool, results);
+        proceed.countDown();
+
+        assertTrue(results.done.await(5, TimeUnit.SECONDS));
+        assertEquals(2, results.encoded);
+        assertEquals(1, results.errors.size());
+        assertEquals("Camera was stopped", results.errors.get(0));
+        // frames go back to the pool after their callback, so wait for the worker to finish
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if ("CameraPreview-snapshot".equals(thread.getName())) {
+                thread.join(5000);
+            }
+        }
+        // every frame went back to the pool, so taking as many again allocates nothing
+        for (int i = 0; i < 3; i++) {
+            pool.acquire();
+        }
+        assertEquals(3, pool.getAllocationCount());
+    }
+
+    private static void encode(SnapshotPipeline pipeline, FrameBufferPool pool, Results results) {
+        pipeline.encode(pool.acquire(), WIDTH, HEIGHT, ImageFormat.NV21, 0, false, OutputFormat.JPEG, 85, 0, null, 1024, results);
+    }
+
+    private static final class Results implements SnapshotPipeline.Callback {
+
+        final CountDownLatch done;
+        volatile int encoded;
+        final List<String> errors = new ArrayList<>();
+
+        Results(int count) {
+            done = new CountDownLatch(count);
+        }
+
+        @Override
+        public synchronized void onEncoded(String image) {
+            encoded++;
+            done.countDown();
+        }
+
+        @Override
+        public synchronized void onError(String message) {
+            errors.add(message);
+            done.countDown();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+import type { PluginListenerHandle } from '@capacitor/core';
+
+import type {
+  CameraPreviewBurstOptions,
+  CameraPreviewBurstResult,
+  CameraPreviewCaptureChunk,
+  CameraPreviewCaptureResult,
+  CameraPreviewPictureOptions,
+  CameraPreviewPlugin,
+  CameraSampleOptions,
+} from './definitions';
+
+/** How the native side marks a result whose pictures were sent as chunks: the values are their transfer ids */
+interface Chunked {
+  chunked?: boolean;
+}
+
+/**
+ * Collects the `captureChunk` events sent for pictures requested with a `chunkSize`, and joins them once the call
+ * resolves. Chunks are sent on the same bridge queue as the result, so every chunk has arrived by then.
+ */
+class ChunkReassembler {
+  private readonly transfers = new Map<string, string[]>();
+  private listener: Promise<PluginListenerHandle> | undefined;
+
+  constructor(private readonly plugin: CameraPreviewPlugin) {}
+
+  /** Registers the chunk listener the first time a chunked result is asked for */
+  listen(): Promise<PluginListenerHandle> {
+    if (!this.listener) {
+      this.listener = this.plugin.addListener('captureChunk', (chunk) => this.add(chunk));
+    }
+    return this.listener;
+  }
+
+  /** Joins and forgets the chunks of a transfer */
+  take(transferId: string): string {
+    const chunks = this.transfers.get(transferId);
+    this.transfers.delete(transferId);
+    if (!chunks) {
+      throw new Error(`No chunks received for ${transferId}`);
+    }
+    for (let i = 0; i < chunks.length; i++) {
+      if (chunks[i] === undefined) {
+        throw new Error(`Chunk ${i} of ${transferId} is missing`);
+      }
+    }
+    return chunks.join('');
+  }
+
+  private add(chunk: CameraPreviewCaptureChunk): void {
+    let chunks = this.transfers.get(chunk.transferId);
+    if (!chunks) {
+      chunks = new Array<string>(chunk.count);
+      this.transfers.set(chunk.transferId, chunks);
+    }
+    chunks[chunk.index] = chunk.data;
+  }
+}
+
+/**
+ * Wraps the registered plugin so that `capture`, `captureBurst` and `captureSample` resolve with whole pictures when
+ * they are asked for in chunks.
+ */
+export function withChunkedResults(plugin: CameraPreviewPlugin): CameraPreviewPlugin {
+  const reassembler = new ChunkReassembler(plugin);
+
+  const capture = async (options: CameraPreviewPictureOptions): Promise<CameraPreviewCaptureResult> => {
+    if (options?.chunkSize) {
+      await reassembler.listen();
+    }
+    const result: CameraPreviewCaptureResult & Chunked = await plugin.capture(options);
+    if (result.chunked) {
+      result.value = reassembler.take(result.value);
+      delete result.chunked;
+    }
+    return result;
+  };
+
+  const captureBurst = async (options: CameraPreviewBurstOptions): Promise<CameraPreviewBurstResult> => {
+    if (options?.chunkSize) {
+      await reassembler.listen();
+    }
+    const result: CameraPreviewBurstResult & Chunked = await plugin.captureBurst(options);
+    if (result.chunked) {
+      result.values = result.values.map((transferId) => reassembler.take(transferId));
+      delete result.chunked;
+    }
+    return result;
+  };
+
+  const captureSample = async (options: CameraSampleOptions): Promise<{ value: string }> => {
+    if (options?.chunkSize) {
+      await reassembler.listen();
+    }
+    const result: { value: string } & Chunked = await plugin.captureSample(options);
+    if (result.chunked) {
+      result.value = reassembler.take(result.value);
+      delete result.chunked;
+    }
+    return result;
+  };
+
+  return new Proxy(plugin, {
+    get(target, prop, receiver) {
+      switch (prop) {
+        case 'capture':
+          return capture;
+        case 'captureBurst':
+          return captureBurst;
+        case 'captureSample':
+          return captureSample;
+        default:
+          return Reflect.get(target, prop, receiver);
+      }
+    },
+  });
+}
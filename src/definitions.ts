@@ -1,3 +1,5 @@
+import type { PluginListenerHandle } from '@capacitor/core';
+
 export type CameraPosition = 'rear' | 'front';
 export interface CameraPreviewOptions {
   /** Parent element to attach the video preview element to (applicable to the web platform only) */
@@ -34,42 +36,200 @@ export interface CameraPreviewOptions {
   enableOpacity?: boolean;
   /** Defaults to false - Android only.  Set if camera preview will support pinch to zoom. */
   enableZoom?: boolean;
+  /** Defaults to 3 - Android only. How many `capture` calls may wait while a picture is being taken. */
+  captureQueueDepth?: number;
+  /** Defaults to 'rejectNewest' - Android only. Which `capture` call is rejected when the capture queue is full. */
+  captureQueuePolicy?: CaptureQueuePolicy;
+  /** Defaults to false - Android only. Keep the latest preview frames so that captures no larger than the preview are served instantly from them. */
+  zeroShutterLag?: boolean;
+  /** Defaults to 4 - Android only. How many preview frames are kept when `zeroShutterLag` is enabled. */
+  zeroShutterLagFrames?: number;
+  /** Defaults to 0 - Android only. Milliseconds the camera is kept open, with its preview stopped, while the app is paused, so a quick return only restarts the preview. 0 releases the camera on every pause. */
+  warmStandbyTimeout?: number;
+  /** Defaults to true - Android only. Serve captures whose `width` and `height` fit within the preview size from the next preview frame instead of taking a full picture. */
+  autoPreviewCapture?: boolean;
+  /** Defaults to 'lossless' - Android only. How pictures are made upright when `disableExifHeaderStripping` is false: rotated losslessly, or by only rewriting the EXIF orientation tag. */
+  orientationMode?: OrientationMode;
+  /** Defaults to 'none' - Android only. Whether files written for `storeToFile` are forced to storage, data only or data and metadata, before the capture resolves. */
+  storeToFileSync?: StoreToFileSync;
+  /** Defaults to 268435456 (256 MB) - Android only. Total size the pictures written for `storeToFile` are kept within by deleting the least recently used ones; 0 for no limit. */
+  storeToFileMaxBytes?: number;
+  /** Defaults to 0 - Android only. Seconds after which pictures written for `storeToFile` that were not used are deleted; 0 for no limit. */
+  storeToFileMaxAge?: number;
+  /** Defaults to 'platform' - Android only. Which encoder compresses JPEG samples: the platform's native one, or one in plain Java that can be tuned with `snapshotOptimizeHuffman` and `snapshotRestartInterval`. */
+  snapshotEncoder?: SnapshotEncoder;
+  /** Defaults to false - Android only. With `snapshotEncoder: 'java'`, build Huffman tables for every sample, for smaller samples at the cost of a second coding pass. */
+  snapshotOptimizeHuffman?: boolean;
+  /** Defaults to 0 - Android only. With `snapshotEncoder: 'java'`, write a restart marker every that many 16x16 blocks; 0 for none. */
+  snapshotRestartInterval?: number;
+}
+
+export type CaptureQueuePolicy = 'rejectNewest' | 'dropOldest';
+export type OrientationMode = 'lossless' | 'exifTag';
+export type StoreToFileSync = 'none' | 'data' | 'full';
+export type SnapshotEncoder = 'platform' | 'java';
+export type CameraPreviewOutputFormat = 'jpeg' | 'webp-lossy' | 'webp-lossless';
+
+export interface CameraPreviewStorageMetrics {
+  /** Pictures written for `storeToFile` */
+  filesWritten: number;
+  /** Bytes written for `storeToFile` */
+  bytesWritten: number;
+  /** Average milliseconds to write a picture, including forcing it to storage */
+  averageWriteTime: number;
+  /** Longest write in milliseconds */
+  maxWriteTime: number;
+  /** Milliseconds taken by the latest write */
+  lastWriteTime: number;
+  /** Pictures waiting to be written */
+  pendingWrites: number;
+  /** Pictures deleted to stay within `storeToFileMaxBytes` and `storeToFileMaxAge` */
+  filesDeleted: number;
+  /** Bytes deleted to stay within `storeToFileMaxBytes` and `storeToFileMaxAge` */
+  bytesDeleted: number;
+  /** Bytes used by the pictures that are kept */
+  bytesStored: number;
+}
+export interface CameraPreviewStartResult {
+  /** Android only. Milliseconds from calling `start` to the preview showing its first frame, absent when no frame was seen in time */
+  timeToFirstFrame?: number;
 }
+
 export interface CameraPreviewPictureOptions {
-  /** The picture height, optional, default 0 (Device default) */
+  /** The picture height, optional, default 0 (Device default). On Android, set together with `width` the picture is scaled and cropped to exactly this size */
   height?: number;
-  /** The picture width, optional, default 0 (Device default) */
+  /** The picture width, optional, default 0 (Device default). On Android, set together with `height` the picture is scaled and cropped to exactly this size */
   width?: number;
   /** The picture quality, 0 - 100, default 85 on `iOS/Android`.
    *
    * If left undefined, the `web` implementation will export a PNG, otherwise a JPEG will be generated */
   quality?: number;
+  /** Android only. Send the base64 picture from native code in chunks of at most this many characters instead of in one piece, which bounds native memory use for large pictures. The chunks are reassembled before the call resolves. Ignored when `storeToFile` is set. */
+  chunkSize?: number;
+  /** Android only. The largest picture allowed, in bytes. Pictures larger than this at `quality` are recompressed at the highest quality that fits; the call fails if none does. */
+  maxBytes?: number;
+  /** Android only. The image format, default `jpeg`. WebP pictures are encoded from the decoded camera picture. */
+  format?: CameraPreviewOutputFormat;
+  /** Android only. Also make a base64 JPEG thumbnail of every picture, at most this many pixels on its long edge. Thumbnails are ready before their pictures, see `onThumbnail`. */
+  thumbnailSize?: number;
+  /** Android only. Called with each thumbnail as soon as it is ready, ahead of the call resolving. */
+  onThumbnail?: (thumbnail: CameraPreviewThumbnail) => void;
+  /** Android only. Keep only the part of the picture the preview shows, decoding just that region. Applied before `width` and `height`. */
+  cropToPreview?: boolean;
+}
+
+export interface CameraPreviewCaptureResult {
+  /** The base64 encoded picture, or its file path when `storeToFile` is set */
+  value: string;
+  /** Android only. With `storeToFile`, a URL of the WebView's own origin serving the picture, for `<img>` or `fetch()` */
+  url?: string;
+  /** Android only. The base64 encoded thumbnail, when a `thumbnailSize` was given */
+  thumbnail?: string;
+  /** Android only. Whether the picture was taken with the camera's picture path or from a preview frame */
+  source?: 'picture' | 'preview';
+  /** Android only. Milliseconds the capture waited behind other captures */
+  queueWaitTime?: number;
+  /** Android only. Milliseconds from starting the capture to having the picture */
+  serviceTime?: number;
+}
+
+export interface CameraPreviewBurstOptions extends CameraPreviewPictureOptions {
+  /** The number of pictures to take, default 3 */
+  count?: number;
+}
+
+export interface CameraPreviewBurstResult {
+  /** The base64 encoded pictures, or their file paths when `storeToFile` is set, in the order they were taken */
+  values: string[];
+  /** Android only. With `storeToFile`, URLs of the WebView's own origin serving the pictures */
+  urls?: string[];
+  /** Android only. The base64 encoded thumbnails, when a `thumbnailSize` was given, in the order of `values` */
+  thumbnails?: string[];
+  /** Milliseconds between consecutive pictures, one entry fewer than `values` */
+  frameIntervals: number[];
+  /** The average of `frameIntervals`, 0 for a single picture */
+  averageFrameInterval: number;
+  /** Milliseconds the burst waited behind other captures */
+  queueWaitTime: number;
+  /** Milliseconds from starting the burst to having every picture */
+  serviceTime: number;
 }
 
 export interface CameraSampleOptions {
   /** The picture quality, 0 - 100, default 85 */
   quality?: number;
+  /** Android only. Send the base64 sample in chunks of at most this many characters, see `CameraPreviewPictureOptions.chunkSize` */
+  chunkSize?: number;
+  /** Android only. The largest sample allowed, in bytes, see `CameraPreviewPictureOptions.maxBytes` */
+  maxBytes?: number;
+  /** Android only. The image format, default `jpeg` */
+  format?: CameraPreviewOutputFormat;
+}
+
+export interface CameraPreviewCaptureChunk {
+  /** Identifies the picture the chunk belongs to */
+  transferId: string;
+  /** The position of the chunk, from 0 */
+  index: number;
+  /** The number of chunks the picture is sent in */
+  count: number;
+  /** A piece of the base64 encoded picture */
+  data: string;
+}
+
+export interface CameraPreviewThumbnail {
+  /** Identifies the capture the thumbnail belongs to */
+  thumbnailId: string;
+  /** The position of the picture in a burst, 0 for `capture` */
+  index: number;
+  /** The base64 encoded JPEG thumbnail */
+  value: string;
 }
 
 export type CameraPreviewFlashMode = 'off' | 'on' | 'auto' | 'red-eye' | 'torch';
 
+export interface CameraPreviewSettings {
+  /** The flash mode, one of those listed by `getSupportedFlashModes` */
+  flash?: CameraPreviewFlashMode | string;
+  /** The zoom ratio, 1 for none. The closest ratio the camera supports is used */
+  zoom?: number;
+  /** The focus mode, such as `auto`, `continuous-picture` or `fixed` */
+  focusMode?: string;
+  /** The exposure compensation in EV. The closest step within the camera's range is used */
+  exposure?: number;
+}
+
 export interface CameraOpacityOptions {
   /** The percent opacity to set for camera view, default 1 */
   opacity?: number;
 }
 
 export interface CameraPreviewPlugin {
-  start(options: CameraPreviewOptions): Promise<void>;
+  start(options: CameraPreviewOptions): Promise<CameraPreviewStartResult>;
   startRecordVideo(options: CameraPreviewOptions): Promise<void>;
   stop(): Promise<void>;
   stopRecordVideo(): Promise<void>;
-  capture(options: CameraPreviewPictureOptions): Promise<{ value: string }>;
+  capture(options: CameraPreviewPictureOptions): Promise<CameraPreviewCaptureResult>;
+  captureBurst(options: CameraPreviewBurstOptions): Promise<CameraPreviewBurstResult>;
   captureSample(options: CameraSampleOptions): Promise<{ value: string }>;
   getSupportedFlashModes(): Promise<{
     result: CameraPreviewFlashMode[];
   }>;
   setFlashMode(options: { flashMode: CameraPreviewFlashMode | string }): Promise<void>;
+  /** Android only. Changes all the given settings at once, or none of them if the camera does not support one. */
+  setSettings(options: CameraPreviewSettings): Promise<void>;
   flip(): Promise<void>;
   setOpacity(options: CameraOpacityOptions): Promise<void>;
   isCameraStarted(): Promise<{ value: boolean }>;
+  getStorageMetrics(): Promise<CameraPreviewStorageMetrics>;
+  /** Android only. Pieces of pictures requested with a `chunkSize`; they are reassembled by `capture`, `captureBurst` and `captureSample` themselves. */
+  addListener(
+    eventName: 'captureChunk',
+    listenerFunc: (chunk: CameraPreviewCaptureChunk) => void,
+  ): Promise<PluginListenerHandle>;
+  /** Android only. Thumbnails of pictures requested with a `thumbnailSize`; they are passed to `onThumbnail` and added to the results by `capture` and `captureBurst` themselves. */
+  addListener(
+    eventName: 'captureThumbnail',
+    listenerFunc: (thumbnail: CameraPreviewThumbnail) => void,
+  ): Promise<PluginListenerHandle>;
 }
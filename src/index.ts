@@ -1,10 +1,16 @@
 import { registerPlugin } from '@capacitor/core';
 
+import { withChunkedResults } from './chunked';
 import type { CameraPreviewPlugin } from './definitions';
+import { withThumbnails } from './thumbnails';
 
-const CameraPreview = registerPlugin<CameraPreviewPlugin>('CameraPreview', {
-  web: () => import('./web').then((m) => new m.CameraPreviewWeb()),
-});
+const CameraPreview = withThumbnails(
+  withChunkedResults(
+    registerPlugin<CameraPreviewPlugin>('CameraPreview', {
+      web: () => import('./web').then((m) => new m.CameraPreviewWeb()),
+    }),
+  ),
+);
 
 export * from './definitions';
 export { CameraPreview };
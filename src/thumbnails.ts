@@ -0,0 +1,110 @@
+import type { PluginListenerHandle } from '@capacitor/core';
+
+import type {
+  CameraPreviewBurstOptions,
+  CameraPreviewBurstResult,
+  CameraPreviewCaptureResult,
+  CameraPreviewPictureOptions,
+  CameraPreviewPlugin,
+  CameraPreviewThumbnail,
+} from './definitions';
+
+interface Capture {
+  thumbnails: string[];
+  onThumbnail?: (thumbnail: CameraPreviewThumbnail) => void;
+}
+
+/**
+ * Routes the `captureThumbnail` events of captures requested with a `thumbnailSize` to their own capture. The native
+ * side does not know the calls by any id the web side has, so every capture is tagged with a `thumbnailId` of its own.
+ */
+class ThumbnailRouter {
+  private readonly captures = new Map<string, Capture>();
+  private listener: Promise<PluginListenerHandle> | undefined;
+  private nextId = 0;
+
+  constructor(private readonly plugin: CameraPreviewPlugin) {}
+
+  /** Starts collecting the thumbnails of a capture, registering the thumbnail listener the first time */
+  async open(onThumbnail?: (thumbnail: CameraPreviewThumbnail) => void): Promise<string> {
+    if (!this.listener) {
+      this.listener = this.plugin.addListener('captureThumbnail', (thumbnail) => this.add(thumbnail));
+    }
+    await this.listener;
+    const thumbnailId = `thumbnail-${Date.now()}-${this.nextId++}`;
+    this.captures.set(thumbnailId, { thumbnails: [], onThumbnail });
+    return thumbnailId;
+  }
+
+  /** Forgets a capture, returning its thumbnails. Thumbnails are sent ahead of the result, so every one has arrived. */
+  close(thumbnailId: string): string[] {
+    const capture = this.captures.get(thumbnailId);
+    this.captures.delete(thumbnailId);
+    return capture ? capture.thumbnails : [];
+  }
+
+  private add(thumbnail: CameraPreviewThumbnail): void {
+    const capture = this.captures.get(thumbnail.thumbnailId);
+    if (!capture) {
+      return;
+    }
+    capture.thumbnails[thumbnail.index] = thumbnail.value;
+    capture.onThumbnail?.(thumbnail);
+  }
+}
+
+/**
+ * Wraps the plugin so that `capture` and `captureBurst` hand thumbnails to `onThumbnail` as they arrive and add them to
+ * their results.
+ */
+export function withThumbnails(plugin: CameraPreviewPlugin): CameraPreviewPlugin {
+  const router = new ThumbnailRouter(plugin);
+
+  const capture = async (options: CameraPreviewPictureOptions): Promise<CameraPreviewCaptureResult> => {
+    if (!options?.thumbnailSize) {
+      return plugin.capture(options);
+    }
+    const { onThumbnail, ...nativeOptions } = options;
+    const thumbnailId = await router.open(onThumbnail);
+    try {
+      const result = await plugin.capture({ ...nativeOptions, thumbnailId } as CameraPreviewPictureOptions);
+      const [thumbnail] = router.close(thumbnailId);
+      if (thumbnail !== undefined) {
+        result.thumbnail = thumbnail;
+      }
+      return result;
+    } catch (e) {
+      router.close(thumbnailId);
+      throw e;
+    }
+  };
+
+  const captureBurst = async (options: CameraPreviewBurstOptions): Promise<CameraPreviewBurstResult> => {
+    if (!options?.thumbnailSize) {
+      return plugin.captureBurst(options);
+    }
+    const { onThumbnail, ...nativeOptions } = options;
+    const thumbnailId = await router.open(onThumbnail);
+    try {
+      const result = await plugin.captureBurst({ ...nativeOptions, thumbnailId } as CameraPreviewBurstOptions);
+      result.thumbnails = router.close(thumbnailId);
+      return result;
+    } catch (e) {
+      router.close(thumbnailId);
+      throw e;
+    }
+  };
+
+  return new Proxy(plugin, {
+    get(target, prop, receiver) {
+      switch (prop) {
+        case 'capture':
+          return capture;
+        case 'captureBurst':
+          return captureBurst;
+        default:
+          return Reflect.get(target, prop, receiver);
+      }
+    },
+  });
+}
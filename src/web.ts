@@ -3,10 +3,15 @@ import { WebPlugin } from '@capacitor/core';
 import type {
   CameraPreviewOptions,
   CameraPreviewPictureOptions,
+  CameraPreviewBurstOptions,
+  CameraPreviewBurstResult,
   CameraPreviewPlugin,
   CameraPreviewFlashMode,
+  CameraPreviewSettings,
   CameraSampleOptions,
   CameraOpacityOptions,
+  CameraPreviewStorageMetrics,
+  CameraPreviewStartResult,
 } from './definitions';
 
 export class CameraPreviewWeb extends WebPlugin implements CameraPreviewPlugin {
@@ -16,7 +21,7 @@ export class CameraPreviewWeb extends WebPlugin implements CameraPreviewPlugin {
    */
   private isBackCamera: boolean;
 
-  async start(options: CameraPreviewOptions): Promise<void> {
+  async start(options: CameraPreviewOptions): Promise<CameraPreviewStartResult> {
     // eslint-disable-next-line no-async-promise-executor
     return new Promise(async (resolve, reject) => {
       await navigator.mediaDevices
@@ -79,7 +84,7 @@ export class CameraPreviewWeb extends WebPlugin implements CameraPreviewPlugin {
               //video.src = window.URL.createObjectURL(stream);
               videoElement.srcObject = stream;
               videoElement.play();
-              resolve();
+              resolve({});
             },
             (err) => {
               reject(err);
@@ -149,6 +154,11 @@ export class CameraPreviewWeb extends WebPlugin implements CameraPreviewPlugin {
     });
   }
 
+  // eslint-disable-next-line @typescript-eslint/no-unused-vars
+  async captureBurst(_options: CameraPreviewBurstOptions): Promise<CameraPreviewBurstResult> {
+    throw new Error('captureBurst not supported under the web platform');
+  }
+
   async captureSample(_options: CameraSampleOptions): Promise<any> {
     return this.capture(_options);
   }
@@ -164,6 +174,11 @@ export class CameraPreviewWeb extends WebPlugin implements CameraPreviewPlugin {
     throw new Error('setFlashMode not supported under the web platform');
   }
 
+  // eslint-disable-next-line @typescript-eslint/no-unused-vars
+  async setSettings(_options: CameraPreviewSettings): Promise<void> {
+    throw new Error('setSettings not supported under the web platform');
+  }
+
   async flip(): Promise<void> {
     throw new Error('flip not supported under the web platform');
   }
@@ -175,6 +190,10 @@ export class CameraPreviewWeb extends WebPlugin implements CameraPreviewPlugin {
     }
   }
 
+  async getStorageMetrics(): Promise<CameraPreviewStorageMetrics> {
+    throw new Error('getStorageMetrics not supported under the web platform');
+  }
+
   async isCameraStarted(): Promise<{ value: boolean }> {
     throw this.unimplemented('Not implemented on web.');
   }